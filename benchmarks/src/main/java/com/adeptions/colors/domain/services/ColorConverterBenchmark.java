@@ -0,0 +1,134 @@
+/*
+ * ColorConverterBenchmark.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.services;
+
+import com.adeptions.colors.dtos.ColorParams;
+import com.adeptions.colors.dtos.ConversionResult;
+import com.adeptions.colors.enums.ColorType;
+import org.openjdk.jmh.annotations.*;
+// (single-type import - as the services package has its own Warmup)
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.adeptions.colors.domain.services.ConverterFixture.params;
+
+/**
+ * Throughput of each ColorConverter conversion path - with the converted color cache hit (same color
+ * every time) or missed (cache disabled, so every call goes through the full conversion)
+ *
+ * Run with '-prof gc' for allocation rates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ColorConverterBenchmark {
+	private static final String PROFILE_CMYK = "ISOcoated_v2_300_eci";
+	private static final String PROFILE_CMYK_COPY = PROFILE_CMYK + "_copy";
+	private static final String PROFILE_SRGB = "sRFB";
+
+	@Param({"Rgb2Cmyk", "Cmyk2Rgb", "Cmyk2Cmyk", "Rgb2Rgb", "Xyz2Cmyk", "Xyz2Rgb", "Cmyk2Xyz", "Rgb2Xyz",
+			"Rgb2CmykCrude", "Cmyk2RgbCrude", "Xyz2RgbCrude", "Rgb2XyzCrude"})
+	public String path;
+
+	@Param({"hit", "miss"})
+	public String cache;
+
+	private ConverterFixture context;
+	private ColorConverter converter;
+	private ColorParams params;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		Map<String,String> overrides = new HashMap<String,String>();
+		overrides.put("converted.color.cache", String.valueOf("hit".equals(cache)));
+		overrides.put("colorprofiles.files.path", copyCmykProfile().toString());
+		context = new ConverterFixture(overrides);
+		converter = context.getConverter();
+		params = createParams(path);
+		// first conversion processes the profiles (and, for a hit, populates the cache)...
+		converter.convert(params);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.shutdown();
+	}
+
+	@Benchmark
+	public ConversionResult convert() throws Exception {
+		return converter.convert(params);
+	}
+
+	static ColorParams createParams(String path) throws Exception {
+		switch (path) {
+			case "Rgb2Cmyk":
+				return params(ColorType.CMYK, "r", "10", "g", "120", "b", "200");
+			case "Cmyk2Rgb":
+				return params(ColorType.RGB, "c", "0.1", "m", "0.5", "y", "0.2", "k", "0.1");
+			case "Cmyk2Cmyk":
+				// same source and target profile would be a no-op - so convert to a copy of the profile...
+				return params(ColorType.CMYK, "c", "0.1", "m", "0.5", "y", "0.2", "k", "0.1",
+						"sourceProfile", PROFILE_CMYK, "profile", PROFILE_CMYK_COPY);
+			case "Rgb2Rgb":
+				return params(ColorType.RGB, "r", "10", "g", "120", "b", "200", "profile", PROFILE_SRGB);
+			case "Xyz2Cmyk":
+				return params(ColorType.CMYK, "cie-x", "0.3", "cie-y", "0.3", "cie-z", "0.3");
+			case "Xyz2Rgb":
+				return params(ColorType.RGB, "cie-x", "0.3", "cie-y", "0.3", "cie-z", "0.3");
+			case "Cmyk2Xyz":
+				return params(ColorType.XYZ, "c", "0.1", "m", "0.5", "y", "0.2", "k", "0.1");
+			case "Rgb2Xyz":
+				return params(ColorType.XYZ, "r", "10", "g", "120", "b", "200");
+			case "Rgb2CmykCrude":
+				return params(ColorType.CMYK, "r", "10", "g", "120", "b", "200", "crude", "true");
+			case "Cmyk2RgbCrude":
+				return params(ColorType.RGB, "c", "0.1", "m", "0.5", "y", "0.2", "k", "0.1", "crude", "true");
+			case "Xyz2RgbCrude":
+				return params(ColorType.RGB, "cie-x", "0.3", "cie-y", "0.3", "cie-z", "0.3", "crude", "true");
+			case "Rgb2XyzCrude":
+				return params(ColorType.XYZ, "r", "10", "g", "120", "b", "200", "crude", "true");
+			default:
+				throw new IllegalArgumentException("Unknown path '" + path + "'");
+		}
+	}
+
+	/**
+	 * @return a directory holding a copy of the CMYK profile (under a different name)
+	 */
+	private static Path copyCmykProfile() throws IOException {
+		Path result = Files.createTempDirectory("benchmark-profiles");
+		result.toFile().deleteOnExit();
+		Path copy = result.resolve(PROFILE_CMYK_COPY + ColorParams.ICC_EXT);
+		try (InputStream inputStream = new ClassPathResource("profiles/" + PROFILE_CMYK + ColorParams.ICC_EXT).getInputStream()) {
+			Files.copy(inputStream, copy);
+		}
+		copy.toFile().deleteOnExit();
+		return result;
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * ColorSpacePoolBenchmark.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.services;
+
+import org.openjdk.jmh.annotations.*;
+// (single-type import - as the services package has its own Warmup)
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.color.ICC_ColorSpace;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of ColorSpacePool get/release (for each color space strategy) at various thread counts
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ColorSpacePoolBenchmark {
+	private static final String PROFILE_CMYK = "ISOcoated_v2_300_eci.icc";
+
+	@Param({"pooled", "thread-affine"})
+	public String strategy;
+
+	private ConverterFixture context;
+	private ColorSpacePool colorSpacePool;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		context = new ConverterFixture(Collections.singletonMap("colorspace.pool.strategy", strategy));
+		colorSpacePool = context.getColorSpacePool();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.shutdown();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public ICC_ColorSpace borrowRelease1() throws Exception {
+		return borrowRelease();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public ICC_ColorSpace borrowRelease4() throws Exception {
+		return borrowRelease();
+	}
+
+	@Benchmark
+	@Threads(16)
+	public ICC_ColorSpace borrowRelease16() throws Exception {
+		return borrowRelease();
+	}
+
+	private ICC_ColorSpace borrowRelease() throws Exception {
+		ICC_ColorSpace result = colorSpacePool.get(PROFILE_CMYK);
+		colorSpacePool.release(PROFILE_CMYK, result);
+		return result;
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * ConcurrentLfuCacheBenchmark.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.utils;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the converted color cache (ConcurrentLfuCache) under contention at various thread counts
+ *
+ * Keys are skewed (a few hot keys, a long tail of cold ones) and each operation is a get - with a put
+ * on a miss (as the converter does).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentLfuCacheBenchmark {
+	private static final int KEYS_SIZE = 1 << 16;
+	private static final int KEY_SPACE = 100000;
+
+	@State(Scope.Benchmark)
+	public static class SharedCache {
+		@Param({"1000", "100000"})
+		public int capacity;
+
+		ConcurrentLfuCache<Object> cache;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			cache = new ConcurrentLfuCache<Object>(capacity);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class ThreadKeys {
+		final long[] keys = new long[KEYS_SIZE];
+		final Object value = new Object();
+		int index;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			Random random = new Random(Thread.currentThread().getId());
+			for (int i = 0; i < KEYS_SIZE; i++) {
+				// cubing a uniform value skews towards low (hot) keys...
+				double uniform = random.nextDouble();
+				keys[i] = (long)(uniform * uniform * uniform * KEY_SPACE);
+			}
+		}
+
+		long nextKey() {
+			return keys[index++ & (KEYS_SIZE - 1)];
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void getOrPut1(SharedCache shared, ThreadKeys keys, Blackhole blackhole) {
+		getOrPut(shared, keys, blackhole);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void getOrPut4(SharedCache shared, ThreadKeys keys, Blackhole blackhole) {
+		getOrPut(shared, keys, blackhole);
+	}
+
+	@Benchmark
+	@Threads(16)
+	public void getOrPut16(SharedCache shared, ThreadKeys keys, Blackhole blackhole) {
+		getOrPut(shared, keys, blackhole);
+	}
+
+	private static void getOrPut(SharedCache shared, ThreadKeys keys, Blackhole blackhole) {
+		long key = keys.nextKey();
+		Object value = shared.cache.get(key);
+		if (value == null) {
+			shared.cache.put(key, keys.value);
+		}
+		blackhole.consume(value);
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * ColorParamsBenchmark.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.dtos;
+
+import com.adeptions.colors.enums.ColorType;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of parsing request params into ColorParams
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ColorParamsBenchmark {
+	private Map<String,String[]> rgbParams;
+	private Map<String,String[]> cmykParams;
+	private Map<String,String[]> cmykPercentParams;
+	private Map<String,String[]> xyzParams;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		rgbParams = params("r", "10", "g", "120", "b", "200", "profile", "ISOcoated_v2_300_eci");
+		cmykParams = params("c", "0.1", "m", "0.5", "y", "0.2", "k", "0.1");
+		cmykPercentParams = params("c", "10%", "m", "50%", "y", "20%", "k", "10%");
+		xyzParams = params("cie-x", "0.3", "cie-y", "0.3", "cie-z", "0.3");
+	}
+
+	@Benchmark
+	public ColorParams parseRgb() throws Exception {
+		return new ColorParams(ColorType.CMYK, rgbParams);
+	}
+
+	@Benchmark
+	public ColorParams parseCmyk() throws Exception {
+		return new ColorParams(ColorType.RGB, cmykParams);
+	}
+
+	@Benchmark
+	public ColorParams parseCmykPercent() throws Exception {
+		return new ColorParams(ColorType.RGB, cmykPercentParams);
+	}
+
+	@Benchmark
+	public ColorParams parseXyz() throws Exception {
+		return new ColorParams(ColorType.RGB, xyzParams);
+	}
+
+	private static Map<String,String[]> params(String... namesAndValues) {
+		Map<String,String[]> result = new HashMap<String,String[]>();
+		for (int index = 0; index < namesAndValues.length; index += 2) {
+			result.put(namesAndValues[index], new String[] {namesAndValues[index + 1]});
+		}
+		return result;
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * ConversionResultJsonBenchmark.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.dtos;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of encoding conversion results as JSON - Jackson against the hand-rolled encoding
+ * (uncached, i.e. a fresh result each time, and memoized, i.e. a cached result)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConversionResultJsonBenchmark {
+	private ObjectMapper objectMapper;
+	private ConversionResult cachedResult;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		objectMapper = new ObjectMapper();
+		cachedResult = ConversionResult.createRgbResult(0.04f, 0.47f, 0.78f);
+	}
+
+	@Benchmark
+	public byte[] jackson() throws Exception {
+		return objectMapper.writeValueAsBytes(ConversionResult.createRgbResult(0.04f, 0.47f, 0.78f));
+	}
+
+	@Benchmark
+	public byte[] handRolled() {
+		return ConversionResult.createRgbResult(0.04f, 0.47f, 0.78f).toJsonBytes();
+	}
+
+	@Benchmark
+	public byte[] jacksonCached() throws Exception {
+		return objectMapper.writeValueAsBytes(cachedResult);
+	}
+
+	@Benchmark
+	public byte[] handRolledCached() {
+		return cachedResult.toJsonBytes();
+	}
+}
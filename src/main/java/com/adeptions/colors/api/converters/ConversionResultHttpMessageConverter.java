@@ -0,0 +1,72 @@
+/*
+ * ConversionResultHttpMessageConverter.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.api.converters;
+
+import com.adeptions.colors.domain.components.Configuration;
+import com.adeptions.colors.dtos.ConversionResult;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes conversion results as their pre-encoded JSON bytes (see ConversionResult.toJsonBytes) - straight
+ * to the response, without going through Jackson
+ *
+ * Only used for writing (and only if enabled by the converted.color.cache.json setting) - otherwise
+ * results are left to the Jackson converter.
+ */
+@Component
+public class ConversionResultHttpMessageConverter extends AbstractHttpMessageConverter<ConversionResult> {
+	private boolean enabled;
+
+	public ConversionResultHttpMessageConverter(Configuration config) {
+		super(StandardCharsets.UTF_8, MediaType.APPLICATION_JSON, new MediaType("application", "*+json"));
+		enabled = config.isConvertedColorCacheJson();
+	}
+
+	@Override
+	protected boolean supports(Class<?> clazz) {
+		return enabled && ConversionResult.class.isAssignableFrom(clazz);
+	}
+
+	@Override
+	public boolean canRead(Class<?> clazz, MediaType mediaType) {
+		return false;
+	}
+
+	@Override
+	protected ConversionResult readInternal(Class<? extends ConversionResult> clazz, HttpInputMessage inputMessage) throws IOException, HttpMessageNotReadableException {
+		throw new HttpMessageNotReadableException("Conversion results cannot be read");
+	}
+
+	@Override
+	protected Long getContentLength(ConversionResult result, MediaType contentType) throws IOException {
+		return (long)result.toJsonBytes().length;
+	}
+
+	@Override
+	protected void writeInternal(ConversionResult result, HttpOutputMessage outputMessage) throws IOException {
+		outputMessage.getBody().write(result.toJsonBytes());
+	}
+}
@@ -18,26 +18,60 @@
 package com.adeptions.colors.api.endpoints;
 
 import com.adeptions.colors.api.options.EndpointOptions;
+import com.adeptions.colors.domain.components.Configuration;
+import com.adeptions.colors.domain.services.BinaryConverter;
+import com.adeptions.colors.domain.services.ConversionETags;
+import com.adeptions.colors.domain.services.ConversionExecutor;
+import com.adeptions.colors.domain.services.StreamConverter;
+import com.adeptions.colors.dtos.BatchConversionRequest;
+import com.adeptions.colors.dtos.BinaryConversionRequest;
+import com.adeptions.colors.dtos.ColorStreamReader;
+import com.adeptions.colors.dtos.ColorStreamWriter;
 import com.adeptions.colors.dtos.ConversionResult;
 import com.adeptions.colors.domain.services.ColorConverter;
 import com.adeptions.colors.dtos.ColorParams;
 import com.adeptions.colors.exceptions.BadRequestException;
 import com.adeptions.colors.exceptions.ConversionException;
+import com.adeptions.colors.exceptions.ServiceUnavailableException;
 import com.adeptions.colors.enums.ColorType;
+import com.adeptions.colors.enums.StreamFormat;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 
 public abstract class AbstractColorEndpoint {
+	private static final String[] STREAM_SHARED_PARAM_NAMES = {ColorParams.PARAM_NAME_PROFILE, ColorParams.PARAM_NAME_SOURCE_PROFILE, ColorParams.PARAM_NAME_CRUDE};
+
 	protected Logger logger = LoggerFactory.getLogger(this.getClass());
 	protected EndpointOptions options;
 
@@ -48,18 +82,140 @@ public abstract class AbstractColorEndpoint {
 	@Autowired
 	protected ColorConverter converter;
 
+	@Autowired
+	protected Configuration config;
+
+	@Autowired
+	protected StreamConverter streamConverter;
+
+	@Autowired
+	protected BinaryConverter binaryConverter;
+
+	@Autowired
+	protected ObjectMapper objectMapper;
+
+	@Autowired
+	protected ConversionETags conversionETags;
+
+	@Autowired
+	protected ConversionExecutor conversionExecutor;
+
 	protected abstract ColorType getTargetColorType();
 
 	/**
-	 * Conversion GET
+	 * Conversion GET (with ETag and Cache-Control - a conditional GET that matches is answered 304 without converting)
+	 *
+	 * Cache hits (and all conversions when the conversion executor is disabled) are answered directly on the
+	 * request thread - only executor conversions are answered asynchronously.
 	 * @param request
-	 * @return the result of the conversion
+	 * @param webRequest
+	 * @param response
+	 * @return the result of the conversion (or a DeferredResult of it)
 	 * @throws Exception
 	 */
 	@RequestMapping(method= RequestMethod.GET)
-	public @ResponseBody ConversionResult doGet(HttpServletRequest request) throws Exception {
+	public @ResponseBody Object doGet(HttpServletRequest request, WebRequest webRequest, HttpServletResponse response) throws Exception {
 		ColorParams params = new ColorParams(getTargetColorType(), request.getParameterMap());
-		return converter.convert(params);
+		String eTag = conversionETags.getETag(params);
+		String cacheControl = eTag != null ? conversionETags.getCacheControl() : null;
+		if (eTag != null && webRequest.checkNotModified(eTag)) {
+			response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+			return null;
+		}
+		ConversionResult cached = converter.getCached(params);
+		if (cached != null) {
+			return completed(cached, response, cacheControl);
+		} else if (conversionExecutor.isEnabled()) {
+			return deferred(conversionExecutor.convert(params), response, cacheControl);
+		}
+		return completed(converter.convertUncached(params), response, cacheControl);
+	}
+
+	/**
+	 * Batch conversion POST
+	 * @param batch the colors to be converted (and the profile options shared by all colors)
+	 * @return the results of the conversions (in the same order as the colors) - or a DeferredResult of them
+	 * @throws Exception
+	 */
+	@RequestMapping(method= RequestMethod.POST, consumes = MediaType.APPLICATION_JSON_VALUE)
+	public @ResponseBody Object doPost(@RequestBody BatchConversionRequest batch) throws Exception {
+		List<ColorParams> paramsList = batch.toColorParams(getTargetColorType(), config.getBatchMaxColors());
+		if (conversionExecutor.isEnabled()) {
+			return deferred(conversionExecutor.convertBatch(paramsList), null, null);
+		}
+		return completed(converter.convertBatch(paramsList), null, null);
+	}
+
+	/**
+	 * Streaming conversion POST (NDJSON or CSV) - results are written in the same format, one per row,
+	 * as the rows are read
+	 * @param request
+	 * @param response
+	 * @throws Exception
+	 */
+	@RequestMapping(method= RequestMethod.POST, consumes = {StreamFormat.CONTENT_TYPE_NDJSON, StreamFormat.CONTENT_TYPE_CSV})
+	public void doPostStream(HttpServletRequest request, HttpServletResponse response) throws Exception {
+		StreamFormat format = StreamFormat.fromContentType(request.getContentType());
+		// profile options given as query params apply to every row...
+		Map<String,String[]> sharedParams = new HashMap<String,String[]>();
+		for (String paramName: STREAM_SHARED_PARAM_NAMES) {
+			if (request.getParameterValues(paramName) != null) {
+				sharedParams.put(paramName, request.getParameterValues(paramName));
+			}
+		}
+		BufferedReader reader = new BufferedReader(new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8));
+		response.setContentType(format.getContentType());
+		response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+		Writer writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+		streamConverter.convert(getTargetColorType(),
+				new ColorStreamReader(reader, format, objectMapper, sharedParams),
+				new ColorStreamWriter(writer, format, getTargetColorType(), objectMapper));
+	}
+
+	/**
+	 * Binary bulk conversion POST - packed source colors in, packed target colors out (see BinaryConversionRequest
+	 * for the format)
+	 * @param request
+	 * @param response
+	 * @throws Exception
+	 */
+	@RequestMapping(method= RequestMethod.POST, consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+	public void doPostBinary(HttpServletRequest request, HttpServletResponse response) throws Exception {
+		ReadableByteChannel in = Channels.newChannel(request.getInputStream());
+		BinaryConversionRequest binaryRequest = BinaryConversionRequest.read(in, config.getBinaryMaxColors());
+		binaryConverter.convert(binaryRequest, getTargetColorType(), in, binaryResponseChannel(binaryRequest, response));
+	}
+
+	/**
+	 * @return the response body channel - the response headers are only set on the first write
+	 * (so that a request found to be bad before anything is written still gets an error response)
+	 */
+	private WritableByteChannel binaryResponseChannel(final BinaryConversionRequest binaryRequest, final HttpServletResponse response) {
+		return new WritableByteChannel() {
+			private WritableByteChannel channel;
+
+			@Override
+			public int write(ByteBuffer buffer) throws IOException {
+				if (channel == null) {
+					response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+					response.setContentLengthLong(binaryRequest.getResponseLength(getTargetColorType()));
+					channel = Channels.newChannel(response.getOutputStream());
+				}
+				return channel.write(buffer);
+			}
+
+			@Override
+			public boolean isOpen() {
+				return channel == null || channel.isOpen();
+			}
+
+			@Override
+			public void close() throws IOException {
+				if (channel != null) {
+					channel.close();
+				}
+			}
+		};
 	}
 
 	/**
@@ -74,12 +230,52 @@ public abstract class AbstractColorEndpoint {
 		return options;
 	}
 
+	/**
+	 * @param cacheControl the Cache-Control header for a successful result (or null for none)
+	 * @return the result (answered directly - without going async)
+	 */
+	private static <T> T completed(T result, HttpServletResponse response, String cacheControl) {
+		if (cacheControl != null) {
+			response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+		}
+		return result;
+	}
+
+	/**
+	 * @param cacheControl the Cache-Control header for a successful result (or null for none)
+	 */
+	private <T> DeferredResult<T> deferred(CompletableFuture<T> future, final HttpServletResponse response, final String cacheControl) {
+		final DeferredResult<T> result = new DeferredResult<T>(conversionExecutor.getTimeout());
+		future.whenComplete(new BiConsumer<T,Throwable>() {
+			@Override
+			public void accept(T converted, Throwable e) {
+				if (e != null) {
+					// error result is handled by the exception handlers below...
+					result.setErrorResult(e);
+				} else {
+					if (cacheControl != null && !result.isSetOrExpired()) {
+						response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+					}
+					result.setResult(converted);
+				}
+			}
+		});
+		return result;
+	}
+
 	@ExceptionHandler
 	void handleConversionException(ConversionException e, HttpServletResponse response) throws IOException {
 		logger.error(e.getMessage());
 		response.sendError(HttpStatus.INTERNAL_SERVER_ERROR.value(), e.getMessage());
 	}
 
+	@ExceptionHandler
+	void handleServiceUnavailableException(ServiceUnavailableException e, HttpServletResponse response) throws IOException {
+		logger.warn(e.getMessage());
+		response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfter()));
+		response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), e.getMessage());
+	}
+
 	@ExceptionHandler
 	void handleBadRequestException(BadRequestException e, HttpServletResponse response) throws IOException {
 		logger.error(e.getMessage());
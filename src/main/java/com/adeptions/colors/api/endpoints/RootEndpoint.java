@@ -18,6 +18,7 @@
 package com.adeptions.colors.api.endpoints;
 
 import com.adeptions.colors.api.endpoints.cmyk.CmykEndpoint;
+import com.adeptions.colors.api.endpoints.images.ImagesEndpoint;
 import com.adeptions.colors.api.endpoints.profiles.ProfilesEndpoint;
 import com.adeptions.colors.api.endpoints.rgb.RgbEndpoint;
 import com.adeptions.colors.api.endpoints.xyz.XyzEndpoint;
@@ -41,6 +42,7 @@ public class RootEndpoint {
 	private static final EndpointOptions options = new EndpointOptions(RequestMethod.GET)
 		.addSubCollections(
 				new SubCollectionOption(CmykEndpoint.ENDPOINT_URI_CMYK, "Converts RGB or CIE-XYZ colors to CMYK"),
+				new SubCollectionOption(ImagesEndpoint.ENDPOINT_URI_IMAGES, "Converts RGB or CMYK images to RGB or CMYK (multipart POST)"),
 				new SubCollectionOption(ProfilesEndpoint.ENDPOINT_URI_PROFILES, "Collection of color profiles (for use when converting colors)"),
 				new SubCollectionOption(RgbEndpoint.ENDPOINT_URI_RGB, "Converts CMYK or CIE-XYZ colors to RGB"),
 				new SubCollectionOption(XyzEndpoint.ENDPOINT_URI_XYZ, "Converts CMYK or RGB colors to CIE-XYZ")
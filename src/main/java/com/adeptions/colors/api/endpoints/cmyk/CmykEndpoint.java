@@ -36,7 +36,7 @@ public class CmykEndpoint extends AbstractColorEndpoint {
 	public static final String ENDPOINT_URI_CMYK = "cmyk";
 
 	public CmykEndpoint() {
-		super(new EndpointOptions(RequestMethod.GET)
+		super(new EndpointOptions(RequestMethod.GET, RequestMethod.POST)
 				.addParameters(
 						new ParameterOption(ColorParams.PARAM_NAME_RED,
 								"The RED component of the color to be converted",
@@ -0,0 +1,167 @@
+/*
+ * ImagesEndpoint.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.api.endpoints.images;
+
+import com.adeptions.colors.domain.services.ImageConverter;
+import com.adeptions.colors.dtos.ColorParams;
+import com.adeptions.colors.enums.ColorType;
+import com.adeptions.colors.exceptions.BadRequestException;
+import com.adeptions.colors.exceptions.ConversionException;
+import com.adeptions.colors.exceptions.ServiceUnavailableException;
+import com.adeptions.colors.exceptions.UnsupportedMediaTypeException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Endpoint for converting whole images (PNG, JPEG or TIFF - depending on the available image readers/writers)
+ */
+@Controller
+@RequestMapping("/" + ImagesEndpoint.ENDPOINT_URI_IMAGES)
+public class ImagesEndpoint {
+	public static final String ENDPOINT_URI_IMAGES = "images";
+	public static final String PARAM_NAME_IMAGE = "image";
+	public static final String PARAM_NAME_TYPE = "type";
+	public static final String PARAM_NAME_FORMAT = "format";
+	// CMYK output formats to try (in order) when no format is given - Java 8 has no TIFF writer...
+	private static final String[] CMYK_DEFAULT_FORMATS = {"tiff", "jpeg"};
+
+	@Autowired
+	ImageConverter imageConverter;
+
+	/**
+	 * Image conversion POST (multipart)
+	 * @param image the image to convert
+	 * @param type the target color type (rgb or cmyk)
+	 * @param profile the target profile (optional)
+	 * @param sourceProfile the source profile (optional)
+	 * @param format the output image format (optional - defaults to the input format, or TIFF/JPEG for CMYK)
+	 * @param response
+	 * @throws Exception
+	 */
+	@RequestMapping(method= RequestMethod.POST, consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+	public void doPost(@RequestParam(PARAM_NAME_IMAGE) MultipartFile image,
+					   @RequestParam(PARAM_NAME_TYPE) String type,
+					   @RequestParam(value = ColorParams.PARAM_NAME_PROFILE, required = false) String profile,
+					   @RequestParam(value = ColorParams.PARAM_NAME_SOURCE_PROFILE, required = false) String sourceProfile,
+					   @RequestParam(value = PARAM_NAME_FORMAT, required = false) String format,
+					   HttpServletResponse response) throws Exception {
+		ColorType targetType = parseTargetType(type);
+		String inputFormat;
+		BufferedImage sourceImage;
+		ImageInputStream inputStream = ImageIO.createImageInputStream(image.getInputStream());
+		if (inputStream == null) {
+			throw new BadRequestException("Cannot read image");
+		}
+		try {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(inputStream);
+			if (!readers.hasNext()) {
+				throw new BadRequestException("Unsupported image format");
+			}
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(inputStream, true, true);
+				inputFormat = reader.getFormatName();
+				// checked from the header - before the raster is decoded...
+				imageConverter.checkSize(reader.getWidth(0), reader.getHeight(0));
+				sourceImage = reader.read(0);
+			} catch (IOException e) {
+				throw new BadRequestException("Cannot read image - " + e.getMessage(), e);
+			} finally {
+				reader.dispose();
+			}
+		} finally {
+			inputStream.close();
+		}
+		BufferedImage converted = imageConverter.convert(sourceImage, profileName(sourceProfile), targetType, profileName(profile));
+		String[] outputFormats = format != null ? new String[] {format}
+				: (targetType == ColorType.CMYK ? CMYK_DEFAULT_FORMATS : new String[] {inputFormat});
+		ImageWriter writer = null;
+		for (int index = 0; index < outputFormats.length && writer == null; index++) {
+			writer = findWriter(outputFormats[index], converted);
+		}
+		if (writer == null) {
+			throw new UnsupportedMediaTypeException("Cannot write " + targetType.name() + " image as '"
+					+ String.join("' or '", outputFormats) + "'");
+		}
+		try {
+			String[] mimeTypes = writer.getOriginatingProvider().getMIMETypes();
+			response.setContentType(mimeTypes != null && mimeTypes.length > 0 ? mimeTypes[0] : MediaType.APPLICATION_OCTET_STREAM_VALUE);
+			ImageOutputStream outputStream = ImageIO.createImageOutputStream(response.getOutputStream());
+			try {
+				writer.setOutput(outputStream);
+				writer.write(converted);
+			} finally {
+				outputStream.close();
+			}
+		} finally {
+			writer.dispose();
+		}
+	}
+
+	private static ImageWriter findWriter(String format, BufferedImage image) {
+		Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+		while (writers.hasNext()) {
+			ImageWriter candidate = writers.next();
+			if (candidate.getOriginatingProvider().canEncodeImage(image)) {
+				return candidate;
+			}
+		}
+		return null;
+	}
+
+	private static ColorType parseTargetType(String type) throws BadRequestException {
+		if (ColorType.RGB.name().equalsIgnoreCase(type)) {
+			return ColorType.RGB;
+		} else if (ColorType.CMYK.name().equalsIgnoreCase(type)) {
+			return ColorType.CMYK;
+		}
+		throw new BadRequestException("Parameter '" + PARAM_NAME_TYPE + "' must be 'rgb' or 'cmyk'");
+	}
+
+	private static String profileName(String profile) {
+		if (profile == null || profile.isEmpty()) {
+			return null;
+		}
+		return profile + (!profile.endsWith(ColorParams.ICC_EXT) ? ColorParams.ICC_EXT : "");
+	}
+
+	@ExceptionHandler
+	void handleConversionException(ConversionException e, HttpServletResponse response) throws IOException {
+		if (e instanceof ServiceUnavailableException) {
+			response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(((ServiceUnavailableException)e).getRetryAfter()));
+		}
+		response.sendError(e.getStatusCode(), e.getMessage());
+	}
+}
@@ -0,0 +1,44 @@
+/*
+ * MetricsEndpoint.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.api.endpoints.metrics;
+
+import com.adeptions.colors.domain.services.Metrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.Map;
+
+/**
+ * Endpoint for metrics (conversion latencies, color space pool usage and cache stats)
+ */
+@Controller
+@RequestMapping("/" + MetricsEndpoint.ENDPOINT_URI_METRICS)
+public class MetricsEndpoint {
+	public static final String ENDPOINT_URI_METRICS = "metrics";
+
+	@Autowired
+	Metrics metrics;
+
+	@RequestMapping(method= RequestMethod.GET)
+	public @ResponseBody Map<String,Object> doGet() {
+		return metrics.getMetrics();
+	}
+}
@@ -23,13 +23,14 @@ import com.adeptions.colors.domain.services.Profiles;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.Map;
 
 /**
- * Endpoint for info on a specific profile
+ * Endpoint for info on a specific profile (with an ETag)
  */
 @Controller
 @RequestMapping("/" + ProfilesEndpoint.ENDPOINT_URI_PROFILES + "/{profile}")
@@ -38,8 +39,11 @@ public class ProfileEndpoint {
 	Profiles profiles;
 
 	@RequestMapping(method= RequestMethod.GET)
-	public @ResponseBody Map<String,Object> doGet(@PathVariable("profile") String profile) throws Exception {
+	public @ResponseBody Map<String,Object> doGet(@PathVariable("profile") String profile, WebRequest webRequest) throws Exception {
 		String profileName = profile + (!profile.endsWith(ColorParams.ICC_EXT) ? ColorParams.ICC_EXT : "");
+		if (webRequest.checkNotModified(profiles.getProfileETag(profileName))) {
+			return null;
+		}
 		return profiles.getProfileInfo(profileName);
 	}
 
@@ -25,6 +25,7 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.WebRequest;
 
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
@@ -32,7 +33,7 @@ import java.util.List;
 import java.util.Map;
 
 /**
- * Endpoint for listing available profiles
+ * Endpoint for listing available profiles (with an ETag - so that pollers can make conditional requests)
  */
 @Controller
 @RequestMapping("/" + ProfilesEndpoint.ENDPOINT_URI_PROFILES)
@@ -43,7 +44,10 @@ public class ProfilesEndpoint {
 	Profiles profiles;
 
 	@RequestMapping(method= RequestMethod.GET)
-	public @ResponseBody List<Map<String,Object>> doGet() throws Exception {
+	public @ResponseBody List<Map<String,Object>> doGet(WebRequest webRequest) throws Exception {
+		if (webRequest.checkNotModified(profiles.getCatalogETag())) {
+			return null;
+		}
 		return profiles.listProfiles();
 	}
 
@@ -0,0 +1,56 @@
+/*
+ * ReadyEndpoint.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.api.endpoints.ready;
+
+import com.adeptions.colors.domain.services.ConversionCacheSnapshot;
+import com.adeptions.colors.domain.services.Warmup;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Endpoint for readiness - responds 503 (Service Unavailable) until startup warm-up (and cache snapshot restore) has completed
+ */
+@Controller
+@RequestMapping("/" + ReadyEndpoint.ENDPOINT_URI_READY)
+public class ReadyEndpoint {
+	public static final String ENDPOINT_URI_READY = "ready";
+
+	@Autowired
+	Warmup warmup;
+
+	@Autowired
+	ConversionCacheSnapshot cacheSnapshot;
+
+	@RequestMapping(method= RequestMethod.GET)
+	public ResponseEntity<Map<String,Object>> doGet() {
+		Map<String,Object> result = new LinkedHashMap<String,Object>();
+		boolean ready = warmup.isReady();
+		result.put("ready", ready);
+		result.put("profiles", warmup.getProfileCount());
+		result.put("warmedProfiles", warmup.getWarmedProfileCount());
+		result.put("restoredConversions", cacheSnapshot.getRestoredCount());
+		return new ResponseEntity<Map<String,Object>>(result, ready ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE);
+	}
+}
@@ -36,7 +36,7 @@ public class RgbEndpoint extends AbstractColorEndpoint {
 	public static final String ENDPOINT_URI_RGB = "rgb";
 
 	public RgbEndpoint() {
-		super(new EndpointOptions(RequestMethod.GET)
+		super(new EndpointOptions(RequestMethod.GET, RequestMethod.POST)
 				.addParameters(
 						new ParameterOption(ColorParams.PARAM_NAME_CYAN,
 								"The CYAN component of the color to be converted",
@@ -17,10 +17,17 @@
  */
 package com.adeptions.colors.domain.components;
 
+import com.adeptions.colors.dtos.ColorParams;
+import com.adeptions.colors.enums.ColorSpaceStrategy;
 import org.apache.commons.pool2.impl.GenericKeyedObjectPoolConfig;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Reads environment settings at startup
  */
@@ -28,6 +35,13 @@ import org.springframework.stereotype.Component;
 public class Configuration {
 	private static final String PTY_CONVERTED_COLOR_CACHE = "converted.color.cache";
 	private static final String PTY_CONVERTED_COLOR_CACHE_SIZE = "converted.color.cache.size";
+	private static final String PTY_CONVERTED_COLOR_CACHE_JSON = "converted.color.cache.json";
+	private static final String PTY_CONVERTED_COLOR_CACHE_CMYK_BITS = "converted.color.cache.cmyk.bits";
+	private static final String PTY_CONVERTED_COLOR_CACHE_XYZ_BITS = "converted.color.cache.xyz.bits";
+	private static final String PTY_CONVERTED_COLOR_CACHE_FILE = "converted.color.cache.file";
+	private static final String PTY_CONVERTED_COLOR_CACHE_FILE_SLOTS = "converted.color.cache.file.slots";
+	private static final String PTY_CONVERTED_COLOR_CACHE_SNAPSHOT = "converted.color.cache.snapshot";
+	private static final String PTY_CONVERTED_COLOR_CACHE_SNAPSHOT_SIZE = "converted.color.cache.snapshot.size";
 	private static final String PTY_COLORSPACE_POOL_MAX_PER_KEY  = "colorspace.pool.max.per.key";
 	private static final String PTY_COLORSPACE_POOL_MAX_TOTAL = "colorspace.pool.max.total";
 	private static final String PTY_COLORSPACE_POOL_MIN_IDLE_PER_KEY = "colorspace.pool.min.idle.per.key";
@@ -37,15 +51,78 @@ public class Configuration {
 	private static final String PTY_COLORSPACE_POOL_SOFT_MIN_EVICTABLE_IDLE_TIME = "colorspace.pool.soft.min.evictable.idle.time";
 	private static final String PTY_COLORSPACE_POOL_TIME_BETWEEN_EVICTION_RUNS = "colorspace.pool.time.between.eviction.runs";
 	private static final String PTY_COLORSPACE_POOL_BLOCK_WHEN_EXHAUSTED = "colorspace.pool.block.when.exhausted";
+	private static final String PTY_COLORSPACE_POOL_ADMISSION_QUEUE_SIZE = "colorspace.pool.admission.queue.size";
+	private static final String PTY_COLORSPACE_POOL_ADMISSION_MAX_WAIT = "colorspace.pool.admission.max.wait";
+	private static final String PTY_COLORSPACE_POOL_PROFILE_MAX = "colorspace.pool.profile.max";
+	private static final String PTY_COLORSPACE_POOL_PROFILE_MAX_IDLE = "colorspace.pool.profile.max.idle";
+	private static final String PTY_COLORSPACE_POOL_ADAPTIVE = "colorspace.pool.adaptive";
+	private static final String PTY_COLORSPACE_POOL_ADAPTIVE_INTERVAL = "colorspace.pool.adaptive.interval";
+	private static final String PTY_COLORSPACE_POOL_ADAPTIVE_MIN_PER_KEY = "colorspace.pool.adaptive.min.per.key";
+	private static final String PTY_COLORSPACE_POOL_STRATEGY = "colorspace.pool.strategy";
+	private static final String PTY_COLORSPACE_THREAD_IDLE_TIME = "colorspace.thread.idle.time";
+	private static final String PTY_COLORSPACE_THREAD_SWEEP_INTERVAL = "colorspace.thread.sweep.interval";
 	private static final String PTY_COLORPROFILES_RESOURCES_PATH = "colorprofiles.resources.path";
 	private static final String PTY_COLORPROFILES_DEFAULT_CMYK = "colorprofiles.default.cmyk";
 	private static final String PTY_COLORPROFILES_FILES_PATH = "colorprofiles.files.path";
+	private static final String PTY_COLORPROFILES_FILES_WATCH = "colorprofiles.files.watch";
+	private static final String PTY_HTTP_CACHE = "http.cache";
+	private static final String PTY_HTTP_CACHE_MAX_AGE = "http.cache.max.age";
+	private static final String PTY_CONVERSION_ASYNC = "conversion.async";
+	private static final String PTY_CONVERSION_ASYNC_TIMEOUT = "conversion.async.timeout";
+	private static final String PTY_CONVERSION_EXECUTOR_THREADS = "conversion.executor.threads";
+	private static final String PTY_CONVERSION_EXECUTOR_QUEUE_SIZE = "conversion.executor.queue.size";
+	private static final String PTY_ADMISSION_RETRY_AFTER = "admission.retry.after";
+	private static final String PTY_WARMUP = "warmup";
+	private static final String PTY_WARMUP_INSTANCES_PER_PROFILE = "warmup.instances.per.profile";
+	private static final String PTY_WARMUP_PROFILES = "warmup.profiles";
+	private static final String PTY_BATCH_MAX_COLORS = "batch.max.colors";
+	private static final String PTY_STREAM_BATCH_SIZE = "stream.batch.size";
+	private static final String PTY_BINARY_MAX_COLORS = "binary.max.colors";
+	private static final String PTY_IMAGE_MAX_PIXELS = "image.max.pixels";
+	private static final String PTY_IMAGE_PARALLELISM = "image.parallelism";
+	private static final String PTY_TRANSFORM_LUTS = "transform.luts";
+	private static final String PTY_TRANSFORM_LUTS_GRID_POINTS = "transform.luts.grid.points";
+	private static final String PTY_TRANSFORM_LUTS_GRID_POINTS_CMYK = "transform.luts.grid.points.cmyk";
+	private static final String PTY_TRANSFORM_LUTS_TOLERANCE = "transform.luts.tolerance";
+	private static final String PTY_DENSE_RGB_TABLES_MEMORY_MB = "dense.rgb.tables.memory.mb";
+	private static final String PTY_DENSE_RGB_TABLES_MIN_CONVERSIONS = "dense.rgb.tables.min.conversions";
+	private static final String PTY_DENSE_RGB_TABLES_EAGER = "dense.rgb.tables.eager";
+
+	private static final String ICC_EXT = ".icc";
 
 	private static final int DEFAULT_CONVERTED_COLOR_CACHE_SIZE = 1024;
+	private static final int DEFAULT_CONVERTED_COLOR_CACHE_FILE_SLOTS = 1 << 20;
+	private static final int DEFAULT_CONVERTED_COLOR_CACHE_SNAPSHOT_SIZE = 10000;
+	private static final int DEFAULT_COLORSPACE_POOL_ADMISSION_QUEUE_SIZE = 100;
+	private static final long DEFAULT_COLORSPACE_POOL_ADMISSION_MAX_WAIT = 1000L;
+	private static final long DEFAULT_COLORSPACE_POOL_ADAPTIVE_INTERVAL = 10000L;
+	private static final int DEFAULT_COLORSPACE_POOL_ADAPTIVE_MIN_PER_KEY = 1;
+	private static final long DEFAULT_COLORSPACE_THREAD_IDLE_TIME = 300000L;
+	private static final long DEFAULT_COLORSPACE_THREAD_SWEEP_INTERVAL = 60000L;
+	private static final long DEFAULT_HTTP_CACHE_MAX_AGE = 86400L;
+	private static final long DEFAULT_CONVERSION_ASYNC_TIMEOUT = 30000L;
+	private static final int DEFAULT_CONVERSION_EXECUTOR_QUEUE_SIZE = 1000;
+	private static final long DEFAULT_ADMISSION_RETRY_AFTER = 1L;
+	private static final int DEFAULT_WARMUP_INSTANCES_PER_PROFILE = 2;
+	private static final int DEFAULT_BATCH_MAX_COLORS = 10000;
+	private static final int DEFAULT_STREAM_BATCH_SIZE = 256;
+	private static final int DEFAULT_BINARY_MAX_COLORS = 50000000;
+	private static final long DEFAULT_IMAGE_MAX_PIXELS = 50000000L;
+	private static final int DEFAULT_TRANSFORM_LUTS_GRID_POINTS = 33;
+	private static final int DEFAULT_TRANSFORM_LUTS_GRID_POINTS_CMYK = 17;
+	private static final float DEFAULT_TRANSFORM_LUTS_TOLERANCE = 0.002f;
+	private static final int DEFAULT_DENSE_RGB_TABLES_MIN_CONVERSIONS = 1000;
 
 	// converted color cache settings...
 	private boolean useConvertedColorCache = false;
 	private int convertedColorCacheSize = DEFAULT_CONVERTED_COLOR_CACHE_SIZE;
+	private boolean convertedColorCacheJson;
+	private int convertedColorCacheCmykBits = ColorParams.PACKED_CMYK_BITS;
+	private int convertedColorCacheXyzBits = ColorParams.PACKED_XYZ_BITS;
+	private String convertedColorCacheFile;
+	private int convertedColorCacheFileSlots = DEFAULT_CONVERTED_COLOR_CACHE_FILE_SLOTS;
+	private String convertedColorCacheSnapshot;
+	private int convertedColorCacheSnapshotSize = DEFAULT_CONVERTED_COLOR_CACHE_SNAPSHOT_SIZE;
 	// colorspace pool settings...
 	private Integer colorSpacePoolMaxPerKey;
 	private Integer colorSpacePoolMaxTotal;
@@ -56,14 +133,64 @@ public class Configuration {
 	private Long colorSpacePoolSoftMinEvictableIdleTime;
 	private Long colorSpacePoolTimeBetweenEvictionRuns;
 	private Boolean colorSpacePoolBlockWhenExhausted;
+	private int colorSpacePoolAdmissionQueueSize = DEFAULT_COLORSPACE_POOL_ADMISSION_QUEUE_SIZE;
+	private long colorSpacePoolAdmissionMaxWait = DEFAULT_COLORSPACE_POOL_ADMISSION_MAX_WAIT;
+	private Map<String,Integer> colorSpacePoolProfileMax = new HashMap<String,Integer>();
+	private Map<String,Integer> colorSpacePoolProfileMaxIdle = new HashMap<String,Integer>();
+	private boolean colorSpacePoolAdaptive = false;
+	private long colorSpacePoolAdaptiveInterval = DEFAULT_COLORSPACE_POOL_ADAPTIVE_INTERVAL;
+	private int colorSpacePoolAdaptiveMinPerKey = DEFAULT_COLORSPACE_POOL_ADAPTIVE_MIN_PER_KEY;
+	private ColorSpaceStrategy colorSpaceStrategy = ColorSpaceStrategy.POOLED;
+	private long colorSpaceThreadIdleTime = DEFAULT_COLORSPACE_THREAD_IDLE_TIME;
+	private long colorSpaceThreadSweepInterval = DEFAULT_COLORSPACE_THREAD_SWEEP_INTERVAL;
 	// color profile settings...
 	private String colorProfilesResourcesPath;
 	private String colorProfilesDefaultCmykProfile;
 	private String colorProfilesFilesPath;
+	private boolean colorProfilesFilesWatch;
+	// HTTP caching settings...
+	private boolean httpCache = true;
+	private long httpCacheMaxAge = DEFAULT_HTTP_CACHE_MAX_AGE;
+	// warm-up settings...
+	private boolean conversionAsync = true;
+	private long conversionAsyncTimeout = DEFAULT_CONVERSION_ASYNC_TIMEOUT;
+	private int conversionExecutorThreads = 0;
+	private int conversionExecutorQueueSize = DEFAULT_CONVERSION_EXECUTOR_QUEUE_SIZE;
+
+	private long admissionRetryAfter = DEFAULT_ADMISSION_RETRY_AFTER;
+
+	private boolean warmup = true;
+	private int warmupInstancesPerProfile = DEFAULT_WARMUP_INSTANCES_PER_PROFILE;
+	private List<String> warmupProfiles = new ArrayList<String>();
+	// batch conversion settings...
+	private int batchMaxColors = DEFAULT_BATCH_MAX_COLORS;
+	// streaming conversion settings...
+	private int streamBatchSize = DEFAULT_STREAM_BATCH_SIZE;
+
+	private int binaryMaxColors = DEFAULT_BINARY_MAX_COLORS;
+	// image conversion settings...
+	private long imageMaxPixels = DEFAULT_IMAGE_MAX_PIXELS;
+	private int imageParallelism = 0;
+	// transform LUT settings...
+	private boolean useTransformLuts = false;
+	private int transformLutsGridPoints = DEFAULT_TRANSFORM_LUTS_GRID_POINTS;
+	private int transformLutsGridPointsCmyk = DEFAULT_TRANSFORM_LUTS_GRID_POINTS_CMYK;
+	private float transformLutsTolerance = DEFAULT_TRANSFORM_LUTS_TOLERANCE;
+	// dense RGB table settings...
+	private int denseRgbTablesMemoryMb = 0;
+	private int denseRgbTablesMinConversions = DEFAULT_DENSE_RGB_TABLES_MIN_CONVERSIONS;
+	private boolean denseRgbTablesEager = false;
 
 	public Configuration(Environment environment) {
 		useConvertedColorCache = getBoolSetting(environment, PTY_CONVERTED_COLOR_CACHE, true);
 		convertedColorCacheSize = getIntSetting(environment, PTY_CONVERTED_COLOR_CACHE_SIZE, DEFAULT_CONVERTED_COLOR_CACHE_SIZE);
+		convertedColorCacheJson = getBoolSetting(environment, PTY_CONVERTED_COLOR_CACHE_JSON, true);
+		convertedColorCacheCmykBits = Math.min(ColorParams.PACKED_CMYK_BITS, Math.max(1, getIntSetting(environment, PTY_CONVERTED_COLOR_CACHE_CMYK_BITS, ColorParams.PACKED_CMYK_BITS)));
+		convertedColorCacheXyzBits = Math.min(ColorParams.PACKED_XYZ_BITS, Math.max(1, getIntSetting(environment, PTY_CONVERTED_COLOR_CACHE_XYZ_BITS, ColorParams.PACKED_XYZ_BITS)));
+		convertedColorCacheFile = getStringSetting(environment, PTY_CONVERTED_COLOR_CACHE_FILE);
+		convertedColorCacheFileSlots = Math.max(1, getIntSetting(environment, PTY_CONVERTED_COLOR_CACHE_FILE_SLOTS, DEFAULT_CONVERTED_COLOR_CACHE_FILE_SLOTS));
+		convertedColorCacheSnapshot = getStringSetting(environment, PTY_CONVERTED_COLOR_CACHE_SNAPSHOT);
+		convertedColorCacheSnapshotSize = Math.max(0, getIntSetting(environment, PTY_CONVERTED_COLOR_CACHE_SNAPSHOT_SIZE, DEFAULT_CONVERTED_COLOR_CACHE_SNAPSHOT_SIZE));
 		colorSpacePoolMaxPerKey = getIntegerSetting(environment, PTY_COLORSPACE_POOL_MAX_PER_KEY);
 		colorSpacePoolMaxTotal = getIntegerSetting(environment, PTY_COLORSPACE_POOL_MAX_TOTAL);
 		colorSpacePoolMinIdlePerKey = getIntegerSetting(environment, PTY_COLORSPACE_POOL_MIN_IDLE_PER_KEY);
@@ -73,9 +200,42 @@ public class Configuration {
 		colorSpacePoolSoftMinEvictableIdleTime = getLongSetting(environment, PTY_COLORSPACE_POOL_SOFT_MIN_EVICTABLE_IDLE_TIME);
 		colorSpacePoolTimeBetweenEvictionRuns = getLongSetting(environment, PTY_COLORSPACE_POOL_TIME_BETWEEN_EVICTION_RUNS);
 		colorSpacePoolBlockWhenExhausted = getBooleanSetting(environment, PTY_COLORSPACE_POOL_BLOCK_WHEN_EXHAUSTED);
+		colorSpacePoolAdmissionQueueSize = Math.max(0, getIntSetting(environment, PTY_COLORSPACE_POOL_ADMISSION_QUEUE_SIZE, DEFAULT_COLORSPACE_POOL_ADMISSION_QUEUE_SIZE));
+		colorSpacePoolAdmissionMaxWait = Math.max(0L, getLongSetting(environment, PTY_COLORSPACE_POOL_ADMISSION_MAX_WAIT, DEFAULT_COLORSPACE_POOL_ADMISSION_MAX_WAIT));
+		colorSpacePoolProfileMax = getProfileIntSetting(environment, PTY_COLORSPACE_POOL_PROFILE_MAX);
+		colorSpacePoolProfileMaxIdle = getProfileIntSetting(environment, PTY_COLORSPACE_POOL_PROFILE_MAX_IDLE);
+		colorSpacePoolAdaptive = getBoolSetting(environment, PTY_COLORSPACE_POOL_ADAPTIVE, false);
+		colorSpacePoolAdaptiveInterval = Math.max(1L, getLongSetting(environment, PTY_COLORSPACE_POOL_ADAPTIVE_INTERVAL, DEFAULT_COLORSPACE_POOL_ADAPTIVE_INTERVAL));
+		colorSpacePoolAdaptiveMinPerKey = Math.max(1, getIntSetting(environment, PTY_COLORSPACE_POOL_ADAPTIVE_MIN_PER_KEY, DEFAULT_COLORSPACE_POOL_ADAPTIVE_MIN_PER_KEY));
+		colorSpaceStrategy = getColorSpaceStrategySetting(environment, PTY_COLORSPACE_POOL_STRATEGY);
+		colorSpaceThreadIdleTime = getLongSetting(environment, PTY_COLORSPACE_THREAD_IDLE_TIME, DEFAULT_COLORSPACE_THREAD_IDLE_TIME);
+		colorSpaceThreadSweepInterval = Math.max(1L, getLongSetting(environment, PTY_COLORSPACE_THREAD_SWEEP_INTERVAL, DEFAULT_COLORSPACE_THREAD_SWEEP_INTERVAL));
 		colorProfilesResourcesPath = getStringSetting(environment, PTY_COLORPROFILES_RESOURCES_PATH);
 		colorProfilesDefaultCmykProfile = getStringSetting(environment, PTY_COLORPROFILES_DEFAULT_CMYK);
 		colorProfilesFilesPath = getStringSetting(environment, PTY_COLORPROFILES_FILES_PATH);
+		colorProfilesFilesWatch = getBoolSetting(environment, PTY_COLORPROFILES_FILES_WATCH, true);
+		httpCache = getBoolSetting(environment, PTY_HTTP_CACHE, true);
+		httpCacheMaxAge = Math.max(0L, getLongSetting(environment, PTY_HTTP_CACHE_MAX_AGE, DEFAULT_HTTP_CACHE_MAX_AGE));
+		conversionAsync = getBoolSetting(environment, PTY_CONVERSION_ASYNC, true);
+		conversionAsyncTimeout = getLongSetting(environment, PTY_CONVERSION_ASYNC_TIMEOUT, DEFAULT_CONVERSION_ASYNC_TIMEOUT);
+		conversionExecutorThreads = getIntSetting(environment, PTY_CONVERSION_EXECUTOR_THREADS, 0);
+		conversionExecutorQueueSize = Math.max(1, getIntSetting(environment, PTY_CONVERSION_EXECUTOR_QUEUE_SIZE, DEFAULT_CONVERSION_EXECUTOR_QUEUE_SIZE));
+		admissionRetryAfter = Math.max(0L, getLongSetting(environment, PTY_ADMISSION_RETRY_AFTER, DEFAULT_ADMISSION_RETRY_AFTER));
+		warmup = getBoolSetting(environment, PTY_WARMUP, true);
+		warmupInstancesPerProfile = Math.max(1, getIntSetting(environment, PTY_WARMUP_INSTANCES_PER_PROFILE, DEFAULT_WARMUP_INSTANCES_PER_PROFILE));
+		warmupProfiles = getStringListSetting(environment, PTY_WARMUP_PROFILES);
+		batchMaxColors = getIntSetting(environment, PTY_BATCH_MAX_COLORS, DEFAULT_BATCH_MAX_COLORS);
+		streamBatchSize = Math.max(1, getIntSetting(environment, PTY_STREAM_BATCH_SIZE, DEFAULT_STREAM_BATCH_SIZE));
+		binaryMaxColors = Math.max(0, getIntSetting(environment, PTY_BINARY_MAX_COLORS, DEFAULT_BINARY_MAX_COLORS));
+		imageMaxPixels = getLongSetting(environment, PTY_IMAGE_MAX_PIXELS, DEFAULT_IMAGE_MAX_PIXELS);
+		imageParallelism = getIntSetting(environment, PTY_IMAGE_PARALLELISM, 0);
+		useTransformLuts = getBoolSetting(environment, PTY_TRANSFORM_LUTS, false);
+		transformLutsGridPoints = Math.max(2, getIntSetting(environment, PTY_TRANSFORM_LUTS_GRID_POINTS, DEFAULT_TRANSFORM_LUTS_GRID_POINTS));
+		transformLutsGridPointsCmyk = Math.max(2, getIntSetting(environment, PTY_TRANSFORM_LUTS_GRID_POINTS_CMYK, DEFAULT_TRANSFORM_LUTS_GRID_POINTS_CMYK));
+		transformLutsTolerance = getFloatSetting(environment, PTY_TRANSFORM_LUTS_TOLERANCE, DEFAULT_TRANSFORM_LUTS_TOLERANCE);
+		denseRgbTablesMemoryMb = getIntSetting(environment, PTY_DENSE_RGB_TABLES_MEMORY_MB, 0);
+		denseRgbTablesMinConversions = getIntSetting(environment, PTY_DENSE_RGB_TABLES_MIN_CONVERSIONS, DEFAULT_DENSE_RGB_TABLES_MIN_CONVERSIONS);
+		denseRgbTablesEager = getBoolSetting(environment, PTY_DENSE_RGB_TABLES_EAGER, false);
 	}
 
 	public boolean isUseConvertedColorCache() {
@@ -86,6 +246,34 @@ public class Configuration {
 		return convertedColorCacheSize;
 	}
 
+	public boolean isConvertedColorCacheJson() {
+		return convertedColorCacheJson;
+	}
+
+	public int getConvertedColorCacheCmykBits() {
+		return convertedColorCacheCmykBits;
+	}
+
+	public int getConvertedColorCacheXyzBits() {
+		return convertedColorCacheXyzBits;
+	}
+
+	public String getConvertedColorCacheFile() {
+		return convertedColorCacheFile;
+	}
+
+	public int getConvertedColorCacheFileSlots() {
+		return convertedColorCacheFileSlots;
+	}
+
+	public String getConvertedColorCacheSnapshot() {
+		return convertedColorCacheSnapshot;
+	}
+
+	public int getConvertedColorCacheSnapshotSize() {
+		return convertedColorCacheSnapshotSize;
+	}
+
 	public GenericKeyedObjectPoolConfig getColorSpacePoolConfig() {
 		GenericKeyedObjectPoolConfig result = new GenericKeyedObjectPoolConfig();
 		if (colorSpacePoolMaxTotal != null) {
@@ -118,6 +306,52 @@ public class Configuration {
 		return result;
 	}
 
+	public int getColorSpacePoolAdmissionQueueSize() {
+		return colorSpacePoolAdmissionQueueSize;
+	}
+
+	public long getColorSpacePoolAdmissionMaxWait() {
+		return colorSpacePoolAdmissionMaxWait;
+	}
+
+	/**
+	 * @return the max instances for individual profiles (by profile name - profiles not listed use the max per key)
+	 */
+	public Map<String,Integer> getColorSpacePoolProfileMax() {
+		return colorSpacePoolProfileMax;
+	}
+
+	/**
+	 * @return the max idle instances for individual profiles (by profile name - profiles not listed use the max idle per key)
+	 */
+	public Map<String,Integer> getColorSpacePoolProfileMaxIdle() {
+		return colorSpacePoolProfileMaxIdle;
+	}
+
+	public boolean isColorSpacePoolAdaptive() {
+		return colorSpacePoolAdaptive;
+	}
+
+	public long getColorSpacePoolAdaptiveInterval() {
+		return colorSpacePoolAdaptiveInterval;
+	}
+
+	public int getColorSpacePoolAdaptiveMinPerKey() {
+		return colorSpacePoolAdaptiveMinPerKey;
+	}
+
+	public ColorSpaceStrategy getColorSpaceStrategy() {
+		return colorSpaceStrategy;
+	}
+
+	public long getColorSpaceThreadIdleTime() {
+		return colorSpaceThreadIdleTime;
+	}
+
+	public long getColorSpaceThreadSweepInterval() {
+		return colorSpaceThreadSweepInterval;
+	}
+
 	public String getColorProfilesResourcesPath() {
 		return colorProfilesResourcesPath;
 	}
@@ -130,6 +364,98 @@ public class Configuration {
 		return colorProfilesFilesPath;
 	}
 
+	public boolean isColorProfilesFilesWatch() {
+		return colorProfilesFilesWatch;
+	}
+
+	public boolean isHttpCache() {
+		return httpCache;
+	}
+
+	public long getHttpCacheMaxAge() {
+		return httpCacheMaxAge;
+	}
+
+	public boolean isConversionAsync() {
+		return conversionAsync;
+	}
+
+	public long getConversionAsyncTimeout() {
+		return conversionAsyncTimeout;
+	}
+
+	public int getConversionExecutorThreads() {
+		return conversionExecutorThreads;
+	}
+
+	public int getConversionExecutorQueueSize() {
+		return conversionExecutorQueueSize;
+	}
+
+	public long getAdmissionRetryAfter() {
+		return admissionRetryAfter;
+	}
+
+	public boolean isWarmup() {
+		return warmup;
+	}
+
+	public int getWarmupInstancesPerProfile() {
+		return warmupInstancesPerProfile;
+	}
+
+	public List<String> getWarmupProfiles() {
+		return warmupProfiles;
+	}
+
+	public int getBatchMaxColors() {
+		return batchMaxColors;
+	}
+
+	public int getStreamBatchSize() {
+		return streamBatchSize;
+	}
+
+	public int getBinaryMaxColors() {
+		return binaryMaxColors;
+	}
+
+	public long getImageMaxPixels() {
+		return imageMaxPixels;
+	}
+
+	public int getImageParallelism() {
+		return imageParallelism;
+	}
+
+	public boolean isUseTransformLuts() {
+		return useTransformLuts;
+	}
+
+	public int getTransformLutsGridPoints() {
+		return transformLutsGridPoints;
+	}
+
+	public int getTransformLutsGridPointsCmyk() {
+		return transformLutsGridPointsCmyk;
+	}
+
+	public float getTransformLutsTolerance() {
+		return transformLutsTolerance;
+	}
+
+	public int getDenseRgbTablesMemoryMb() {
+		return denseRgbTablesMemoryMb;
+	}
+
+	public int getDenseRgbTablesMinConversions() {
+		return denseRgbTablesMinConversions;
+	}
+
+	public boolean isDenseRgbTablesEager() {
+		return denseRgbTablesEager;
+	}
+
 	private static int getIntSetting(Environment environment, String settingName, int defaultValue) {
 		Integer result = getIntegerSetting(environment, settingName);
 		if (result == null) {
@@ -164,6 +490,27 @@ public class Configuration {
 		return result;
 	}
 
+	private static long getLongSetting(Environment environment, String settingName, long defaultValue) {
+		Long result = getLongSetting(environment, settingName);
+		if (result == null) {
+			return defaultValue;
+		}
+		return result;
+	}
+
+	private static float getFloatSetting(Environment environment, String settingName, float defaultValue) {
+		float result = defaultValue;
+		String ptyValue = environment.getProperty(settingName);
+		if (ptyValue != null && !ptyValue.isEmpty()) {
+			try {
+				result = Float.parseFloat(ptyValue);
+			} catch (NumberFormatException nfe) {
+				// swallow
+			}
+		}
+		return result;
+	}
+
 	private static boolean getBoolSetting(Environment environment, String settingName, boolean defaultValue) {
 		Boolean result = getBooleanSetting(environment, settingName);
 		if (result == null) {
@@ -181,6 +528,39 @@ public class Configuration {
 		return result;
 	}
 
+	private static ColorSpaceStrategy getColorSpaceStrategySetting(Environment environment, String settingName) {
+		ColorSpaceStrategy result = ColorSpaceStrategy.POOLED;
+		String ptyValue = environment.getProperty(settingName);
+		if (ptyValue != null && !ptyValue.isEmpty()) {
+			try {
+				result = ColorSpaceStrategy.valueOf(ptyValue.trim().toUpperCase().replace('-', '_'));
+			} catch (IllegalArgumentException iae) {
+				// swallow
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Reads a list of profile name and number pairs (e.g. "ISOcoated_v2_300_eci:80,sRGB:4") - profile names are
+	 * given the .icc extension if they do not have it
+	 */
+	private static Map<String,Integer> getProfileIntSetting(Environment environment, String settingName) {
+		Map<String,Integer> result = new HashMap<String,Integer>();
+		for (String value: getStringListSetting(environment, settingName)) {
+			int separator = value.lastIndexOf(':');
+			if (separator > 0) {
+				String profile = value.substring(0, separator).trim();
+				try {
+					result.put(profile + (!profile.endsWith(ICC_EXT) ? ICC_EXT : ""), Integer.parseInt(value.substring(separator + 1).trim()));
+				} catch (NumberFormatException nfe) {
+					// swallow
+				}
+			}
+		}
+		return result;
+	}
+
 	private static String getStringSetting(Environment environment, String settingName) {
 		String result = environment.getProperty(settingName);
 		if (result != null && result.isEmpty()) {
@@ -188,4 +568,17 @@ public class Configuration {
 		}
 		return result;
 	}
+
+	private static List<String> getStringListSetting(Environment environment, String settingName) {
+		List<String> result = new ArrayList<String>();
+		String ptyValue = environment.getProperty(settingName);
+		if (ptyValue != null) {
+			for (String value: ptyValue.split(",")) {
+				if (!value.trim().isEmpty()) {
+					result.add(value.trim());
+				}
+			}
+		}
+		return result;
+	}
 }
@@ -25,107 +25,112 @@ import org.springframework.stereotype.Component;
 
 import java.awt.color.ICC_ColorSpace;
 import java.awt.color.ICC_Profile;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * PooledColorSpaceFactory
  *
- * Loads color space (ICC_ColorSpace) from resources or file
+ * Creates color space (ICC_ColorSpace) instances from the profile bytes held by the profile byte store
+ *
+ * Each instance is tagged with the generation of the profile bytes it was created from - and is only
+ * valid while that generation is installed (so that a reloaded profile replaces its instances)
  */
 @Component
 public class PooledColorSpaceFactory implements KeyedPooledObjectFactory<String,ICC_ColorSpace> {
 	public static final String PROFILE_NAME_SRGB = "sRFB.icc";
 
-	private String colorProfilesResourcesPath;
-	private String colorProfilesFilesPath;
+	private static final long SRGB_GENERATION = 0L;
+
+	private ProfileByteStore profileByteStore;
+	private final ConcurrentMap<String,Queue<ProfileColorSpace>> prepared = new ConcurrentHashMap<String,Queue<ProfileColorSpace>>();
 
-	public PooledColorSpaceFactory(Configuration config) throws IOException {
-		colorProfilesResourcesPath = config.getColorProfilesResourcesPath();
-		colorProfilesFilesPath = config.getColorProfilesFilesPath();
+	public PooledColorSpaceFactory(ProfileByteStore profileByteStore) {
+		this.profileByteStore = profileByteStore;
 	}
 
-	private ICC_ColorSpace loadColorspace(String filepath) throws IOException, BadRequestException {
+	private ProfileColorSpace loadColorspace(String filepath) throws IOException, BadRequestException {
 		// make sure filepath can't escape our directories...
 		if (filepath.contains("/") || filepath.contains("\\")) {
 			throw new BadRequestException("Color profile '" + filepath + "' contains invalid characters");
 		}
 		if (PROFILE_NAME_SRGB.equals(filepath)) {
 			ICC_Profile profile = ICC_Profile.getInstance(ICC_ColorSpace.CS_sRGB);
-			return new ICC_ColorSpace(profile);
+			return new ProfileColorSpace(new ICC_ColorSpace(profile), SRGB_GENERATION);
 		}
-		ICC_ColorSpace result = tryLoadingFromResource(filepath);
+		ProfileColorSpace result = pollPrepared(filepath);
 		if (result == null) {
-			result = tryLoadingFromFile(filepath);
-			if (result == null) {
+			ProfileBytes bytes = profileByteStore.get(filepath);
+			if (bytes == null) {
 				throw new BadRequestException("Cannot find profile '" + filepath + "'");
 			}
+			result = new ProfileColorSpace(new ICC_ColorSpace(bytes.createProfile()), bytes.getGeneration());
 		}
 		return result;
 	}
 
-	private ICC_ColorSpace tryLoadingFromResource(String filepath) {
-		ICC_ColorSpace result = null;
-		if (colorProfilesResourcesPath != null) {
-			InputStream inputStream = null;
-			try {
-				ClassLoader loader = Thread.currentThread().getContextClassLoader();
-				inputStream = loader.getResourceAsStream(colorProfilesResourcesPath + "/" + filepath);
-				if (inputStream != null) {
-					ICC_Profile profile = ICC_Profile.getInstance(inputStream);
-					result = new ICC_ColorSpace(profile);
-				}
-			} catch (IOException e) {
-				// swallow exception to return null - and let caller throw bad request exception
-			} finally {
-				if (inputStream != null) {
-					try {
-						inputStream.close();
-					} catch (IOException e) {
-						// fail on close quietly
-					}
+	private ProfileColorSpace pollPrepared(String profile) {
+		Queue<ProfileColorSpace> queue = prepared.get(profile);
+		if (queue != null) {
+			for (ProfileColorSpace result = queue.poll(); result != null; result = queue.poll()) {
+				if (isCurrent(profile, result)) {
+					return result;
 				}
 			}
 		}
-		return result;
+		return null;
 	}
 
-	private ICC_ColorSpace tryLoadingFromFile(String filepath)  {
-		ICC_ColorSpace result = null;
-		if (colorProfilesFilesPath != null) {
-			InputStream inputStream = null;
-			try {
-				inputStream = new FileInputStream(colorProfilesFilesPath + "/" + filepath);
-				ICC_Profile profile = ICC_Profile.getInstance(inputStream);
-				result = new ICC_ColorSpace(profile);
-			} catch (IOException e) {
-				// swallow exception to return null - and let caller throw bad request exception
-			} finally {
-				if (inputStream != null) {
-					try {
-						inputStream.close();
-					} catch (IOException e) {
-						// fail on close quietly
-					}
-				}
-			}
+	private boolean isCurrent(String profile, PooledObject<ICC_ColorSpace> pooledObject) {
+		if (!(pooledObject instanceof ProfileColorSpace)) {
+			return false;
 		}
-		return result;
+		long generation = ((ProfileColorSpace)pooledObject).generation;
+		return generation == SRGB_GENERATION ? PROFILE_NAME_SRGB.equals(profile) : generation == profileByteStore.getGeneration(profile);
 	}
 
-	private PooledObject<ICC_ColorSpace> wrap(ICC_ColorSpace colorSpace) {
-		return new DefaultPooledObject<ICC_ColorSpace>(colorSpace);
+	/**
+	 * Creates an instance from a specific version of a profile's bytes (whether or not that version is installed)
+	 *
+	 * @param bytes the profile bytes
+	 * @return the pooled object (tagged with the generation of the bytes)
+	 */
+	public PooledObject<ICC_ColorSpace> makeObject(ProfileBytes bytes) {
+		return new ProfileColorSpace(new ICC_ColorSpace(bytes.createProfile()), bytes.getGeneration());
+	}
+
+	/**
+	 * Offers an already created (and warmed) instance - to be handed out in preference to creating
+	 * a new instance (so long as the version of the profile it was created from is still installed)
+	 *
+	 * @param profile the profile name
+	 * @param pooledObject the instance (as created by makeObject(ProfileBytes))
+	 */
+	public void offerPrepared(String profile, PooledObject<ICC_ColorSpace> pooledObject) {
+		Queue<ProfileColorSpace> queue = prepared.get(profile);
+		if (queue == null) {
+			Queue<ProfileColorSpace> added = new ConcurrentLinkedQueue<ProfileColorSpace>();
+			queue = prepared.putIfAbsent(profile, added);
+			if (queue == null) {
+				queue = added;
+			}
+		}
+		queue.add((ProfileColorSpace)pooledObject);
 	}
 
 	@Override
 	public PooledObject<ICC_ColorSpace> makeObject(String profile) throws Exception {
-		return wrap(loadColorspace(profile));
+		return loadColorspace(profile);
 	}
 
 	@Override
 	public boolean validateObject(String profile, PooledObject<ICC_ColorSpace> pooledObject) {
-		return pooledObject != null && pooledObject.getObject() != null && (pooledObject.getObject() instanceof ICC_ColorSpace);
+		// instances created from a version of the profile that has since been replaced are not valid...
+		return pooledObject != null && pooledObject.getObject() != null && (pooledObject.getObject() instanceof ICC_ColorSpace)
+				&& isCurrent(profile, pooledObject);
 	}
 
 	@Override
@@ -142,4 +147,13 @@ public class PooledColorSpaceFactory implements KeyedPooledObjectFactory<String,
 	public void passivateObject(String profile, PooledObject<ICC_ColorSpace> pooledObject) throws Exception {
 		// no passivation of resource required
 	}
+
+	private static final class ProfileColorSpace extends DefaultPooledObject<ICC_ColorSpace> {
+		private final long generation;
+
+		private ProfileColorSpace(ICC_ColorSpace colorSpace, long generation) {
+			super(colorSpace);
+			this.generation = generation;
+		}
+	}
 }
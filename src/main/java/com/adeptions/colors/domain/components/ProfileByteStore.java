@@ -0,0 +1,190 @@
+/*
+ * ProfileByteStore.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.components;
+
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Holds the raw bytes of each color profile - so that a profile is only read once, however many
+ * color space instances get created from it
+ *
+ * Each profile version is read once into a heap array - a file that is changed (or truncated) after
+ * it has been read does not affect the bytes already held
+ */
+@Component
+public class ProfileByteStore {
+	public static final long NO_GENERATION = -1L;
+
+	private String colorProfilesResourcesPath;
+	private String colorProfilesFilesPath;
+	private final ConcurrentMap<String,ProfileBytes> profiles = new ConcurrentHashMap<String,ProfileBytes>();
+	private final Function<String,ProfileBytes> loader = new Function<String,ProfileBytes>() {
+		@Override
+		public ProfileBytes apply(String filepath) {
+			ProfileBytes result = tryLoadingFromResource(filepath);
+			if (result == null) {
+				result = tryLoadingFromFile(filepath);
+			}
+			return result;
+		}
+	};
+
+	public ProfileByteStore(Configuration config) {
+		colorProfilesResourcesPath = config.getColorProfilesResourcesPath();
+		colorProfilesFilesPath = config.getColorProfilesFilesPath();
+	}
+
+	/**
+	 * Gets the installed bytes of a profile (reading and installing them if they have not yet been read)
+	 *
+	 * @param filepath the profile file name (already checked for invalid characters)
+	 * @return the bytes (or null if the profile cannot be found)
+	 */
+	public ProfileBytes get(String filepath) {
+		return profiles.computeIfAbsent(filepath, loader);
+	}
+
+	/**
+	 * @param filepath the profile file name
+	 * @return the installed bytes of a profile (or null if none are installed)
+	 */
+	public ProfileBytes getInstalled(String filepath) {
+		return profiles.get(filepath);
+	}
+
+	/**
+	 * Reads the current bytes of a profile - without installing them
+	 *
+	 * @param filepath the profile file name (already checked for invalid characters)
+	 * @return the bytes (or null if the profile cannot be found)
+	 */
+	public ProfileBytes read(String filepath) {
+		return loader.apply(filepath);
+	}
+
+	/**
+	 * Installs (replaces) the bytes of a profile - color space instances created from previously
+	 * installed bytes are no longer current
+	 *
+	 * @param filepath the profile file name
+	 * @param bytes the bytes to install
+	 */
+	public void install(String filepath, ProfileBytes bytes) {
+		profiles.put(filepath, bytes);
+	}
+
+	/**
+	 * Installs the bytes of a profile only if none are installed
+	 *
+	 * @param filepath the profile file name
+	 * @param bytes the bytes to install
+	 * @return the bytes already installed (or null if the given bytes were installed)
+	 */
+	public ProfileBytes installIfAbsent(String filepath, ProfileBytes bytes) {
+		return profiles.putIfAbsent(filepath, bytes);
+	}
+
+	/**
+	 * Forgets the installed bytes of a profile - so that they are read again the next time they are needed
+	 *
+	 * @param filepath the profile file name
+	 */
+	public void remove(String filepath) {
+		profiles.remove(filepath);
+	}
+
+	/**
+	 * @param filepath the profile file name
+	 * @return the generation of the installed bytes (or NO_GENERATION if none are installed)
+	 */
+	public long getGeneration(String filepath) {
+		ProfileBytes bytes = getInstalled(filepath);
+		return bytes == null ? NO_GENERATION : bytes.getGeneration();
+	}
+
+	public int getProfileCount() {
+		return profiles.size();
+	}
+
+	/**
+	 * @return the number of bytes held
+	 */
+	public long getHeapBytes() {
+		long result = 0;
+		for (ProfileBytes bytes: profiles.values()) {
+			result += bytes.getSize();
+		}
+		return result;
+	}
+
+	private ProfileBytes tryLoadingFromResource(String filepath) {
+		ProfileBytes result = null;
+		if (colorProfilesResourcesPath != null) {
+			InputStream inputStream = null;
+			try {
+				ClassLoader loader = Thread.currentThread().getContextClassLoader();
+				inputStream = loader.getResourceAsStream(colorProfilesResourcesPath + "/" + filepath);
+				if (inputStream != null) {
+					ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+					byte[] buffer = new byte[8192];
+					int read;
+					while ((read = inputStream.read(buffer)) != -1) {
+						outputStream.write(buffer, 0, read);
+					}
+					result = new ProfileBytes(outputStream.toByteArray());
+				}
+			} catch (IOException e) {
+				// swallow exception to return null - and let caller throw bad request exception
+			} finally {
+				if (inputStream != null) {
+					try {
+						inputStream.close();
+					} catch (IOException e) {
+						// fail on close quietly
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	private ProfileBytes tryLoadingFromFile(String filepath) {
+		ProfileBytes result = null;
+		if (colorProfilesFilesPath != null) {
+			Path path = Paths.get(colorProfilesFilesPath, filepath);
+			if (Files.isRegularFile(path)) {
+				try {
+					result = new ProfileBytes(Files.readAllBytes(path));
+				} catch (IOException e) {
+					// swallow exception to return null - and let caller throw bad request exception
+				}
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * ProfileBytes.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.components;
+
+import com.adeptions.colors.domain.utils.ContentHash;
+
+import java.awt.color.ICC_Profile;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The raw bytes of one version of a color profile (held on the heap)
+ *
+ * Each version read is given a unique generation - so that color space instances created from
+ * an older version can be recognised once a newer version has been installed.
+ */
+public final class ProfileBytes {
+	private static final AtomicLong generations = new AtomicLong();
+
+	private final byte[] bytes;
+	private final long generation;
+	private final String contentHash;
+	private final long contentHashPrefix;
+
+	ProfileBytes(byte[] bytes) {
+		this.bytes = bytes;
+		generation = generations.incrementAndGet();
+		contentHash = ContentHash.of(bytes);
+		contentHashPrefix = Long.parseUnsignedLong(contentHash.substring(0, 16), 16);
+	}
+
+	/**
+	 * @return a new profile instance created from the bytes
+	 * @throws IllegalArgumentException if the bytes are not a valid profile
+	 */
+	public ICC_Profile createProfile() {
+		// the profile parser does not modify (or hold on to) the array - so it can be shared...
+		return ICC_Profile.getInstance(bytes);
+	}
+
+	public long getGeneration() {
+		return generation;
+	}
+
+	public String getContentHash() {
+		return contentHash;
+	}
+
+	/**
+	 * @return the first 64 bits of the content hash
+	 */
+	public long getContentHashPrefix() {
+		return contentHashPrefix;
+	}
+
+	public int getSize() {
+		return bytes.length;
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * BinaryConverter.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.services;
+
+import com.adeptions.colors.dtos.BinaryConversionRequest;
+import com.adeptions.colors.enums.ColorType;
+import com.adeptions.colors.exceptions.BadRequestException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Converts binary (packed) bulk conversion requests - colors are read, converted and written a block at a time
+ * through reused buffers and component arrays (so there are no per-color objects)
+ */
+@Service
+public class BinaryConverter {
+	private static final int BLOCK_COLORS = 4096;
+
+	@Autowired
+	ColorConverter converter;
+
+	/**
+	 * Nothing is written until the first block has been read, validated and converted - so a bad request
+	 * can still be reported as such.  Once anything has been written, any failure is rethrown as an
+	 * IOException (aborting the response rather than appending an error to it).
+	 *
+	 * @param request the request header (already read from the channel)
+	 * @param targetType the target color type
+	 * @param in the rest of the request body (the packed source colors)
+	 * @param out the response body
+	 * @throws Exception
+	 */
+	public void convert(BinaryConversionRequest request, ColorType targetType, ReadableByteChannel in, WritableByteChannel out) throws Exception {
+		ColorType sourceType = request.getSourceType();
+		int blockColors = Math.max(1, Math.min(BLOCK_COLORS, request.getCount()));
+		ByteBuffer input = ByteBuffer.allocate(blockColors * BinaryConversionRequest.colorSize(sourceType));
+		ByteBuffer output = ByteBuffer.allocate(BinaryConversionRequest.RESPONSE_HEADER_SIZE + (blockColors * BinaryConversionRequest.colorSize(targetType)));
+		float[][] sourceComponents = new float[sourceType == ColorType.CMYK ? 4 : 3][blockColors];
+		float[][] targetComponents = new float[targetType == ColorType.CMYK ? 4 : 3][blockColors];
+		boolean written = false;
+		int done = 0;
+		try {
+			do {
+				int count = Math.min(blockColors, request.getCount() - done);
+				input.clear();
+				input.limit(count * BinaryConversionRequest.colorSize(sourceType));
+				if (!BinaryConversionRequest.readFully(in, input)) {
+					throw new BadRequestException("Binary request body ended after " + done + " of " + request.getCount() + " colors");
+				}
+				input.flip();
+				unpack(sourceType, input, sourceComponents, count, done);
+				if (count > 0) {
+					converter.convertComponents(sourceType, request.getSourceProfile(), targetType, request.getTargetProfile(), request.isCrude(),
+							sourceComponents, targetComponents, count);
+				}
+				output.clear();
+				if (!written) {
+					output.put((byte)BinaryConversionRequest.VERSION);
+					output.put((byte)BinaryConversionRequest.typeCode(targetType));
+					output.putShort((short)0);
+					output.putInt(request.getCount());
+				}
+				pack(targetType, targetComponents, count, output);
+				output.flip();
+				written = true;
+				writeFully(out, output);
+				done += count;
+			} while (done < request.getCount());
+		} catch (Exception e) {
+			if (!written || e instanceof IOException) {
+				throw e;
+			}
+			throw new IOException("Binary response aborted after " + done + " of " + request.getCount() + " colors - " + e.getMessage(), e);
+		}
+	}
+
+	private static void unpack(ColorType colorType, ByteBuffer buffer, float[][] components, int count, int offset) throws BadRequestException {
+		for (int index = 0; index < count; index++) {
+			for (float[] component: components) {
+				if (colorType == ColorType.RGB) {
+					component[index] = buffer.get() & 0xff;
+				} else {
+					float value = buffer.getFloat();
+					if (!(value >= 0f && value <= 1f)) {
+						throw new BadRequestException("Color " + (offset + index) + " has a component out of the range 0 to 1");
+					}
+					component[index] = value;
+				}
+			}
+		}
+	}
+
+	private static void pack(ColorType colorType, float[][] components, int count, ByteBuffer buffer) {
+		for (int index = 0; index < count; index++) {
+			for (float[] component: components) {
+				if (colorType == ColorType.RGB) {
+					buffer.put((byte)Math.max(0, Math.min(255, (int)component[index])));
+				} else {
+					buffer.putFloat(component[index]);
+				}
+			}
+		}
+	}
+
+	private static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+}
@@ -24,73 +24,436 @@ import com.adeptions.colors.dtos.ConversionResult;
 import com.adeptions.colors.exceptions.BadRequestException;
 import com.adeptions.colors.exceptions.ConversionException;
 import com.adeptions.colors.enums.ColorType;
-import com.adeptions.colors.domain.utils.LRUCache;
+import com.adeptions.colors.domain.utils.CachedConversion;
+import com.adeptions.colors.domain.utils.ConcurrentLfuCache;
+import com.adeptions.colors.domain.utils.CrudeKernels;
+import com.adeptions.colors.domain.utils.DenseRgbTable;
+import com.adeptions.colors.domain.utils.LatencyHistogram;
+import com.adeptions.colors.domain.utils.ProfilePairIds;
+import com.adeptions.colors.domain.utils.SrgbTransfer;
+import com.adeptions.colors.domain.utils.TransformKey;
+import com.adeptions.colors.domain.utils.TransformLut;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.awt.color.ICC_ColorSpace;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongPredicate;
 
 /**
  * Converts colors
  */
 @Service
 public class ColorConverter {
-	protected LRUCache<String,ConversionResult> convertedColorCache;
+	private static final int PROFILE_PAIR_ID_BITS = 11;
+	private static final int PROFILE_PAIR_ID_SHIFT = ColorParams.PACKED_COLOR_BITS;
+	private static final int CRUDE_SHIFT = PROFILE_PAIR_ID_SHIFT + PROFILE_PAIR_ID_BITS;
+	private static final int TARGET_TYPE_SHIFT = CRUDE_SHIFT + 1;
+	private static final int SOURCE_TYPE_SHIFT = TARGET_TYPE_SHIFT + 2;
+	private static final long NO_CACHE_KEY = -1L;
+	private static final int COLOR_TYPES = ColorType.values().length;
+	private static final String[] PATH_MODES = {"default", "profile", "crude"};
+	private static final int PATH_MODE_DEFAULT = 0;
+	private static final int PATH_MODE_PROFILE = 1;
+	private static final int PATH_MODE_CRUDE = 2;
+	private static final int NO_CRUDE_KERNEL = -1;
+	private static final int CRUDE_KERNEL_RGB_CMYK = 0;
+	private static final int CRUDE_KERNEL_CMYK_RGB = 1;
+	private static final int CRUDE_KERNEL_XYZ_RGB = 2;
+	private static final int CRUDE_KERNEL_RGB_XYZ = 3;
+	private static final int CRUDE_KERNELS = 4;
+
+	protected ConcurrentLfuCache<ConversionResult> convertedColorCache;
+	protected ProfilePairIds profilePairIds = new ProfilePairIds(PROFILE_PAIR_ID_BITS);
 	protected boolean useConvertedColorCache = false;
 	protected String defaultCmykProfile;
+	protected int cmykKeyBits;
+	protected int xyzKeyBits;
+	private final LatencyHistogram[] pathLatencies = new LatencyHistogram[COLOR_TYPES * COLOR_TYPES * PATH_MODES.length];
+	private final LatencyHistogram cacheHitLatency = new LatencyHistogram();
+	private final LongAdder conversionErrors = new LongAdder();
+	private final AtomicLong profileInvalidations = new AtomicLong();
+	private final AtomicInteger profileChanges = new AtomicInteger();
 
 	@Autowired
 	ColorSpacePool colorSpacePool;
 
+	@Autowired
+	TransformLuts transformLuts;
+
+	@Autowired
+	DenseRgbTables denseRgbTables;
+
+	@Autowired
+	PersistentConversionCache persistentCache;
+
 	ColorConverter(Configuration config) {
 		useConvertedColorCache = config.isUseConvertedColorCache();
 		if (useConvertedColorCache) {
-			convertedColorCache = new LRUCache<String,ConversionResult>(config.getConvertedColorCacheSize());
+			convertedColorCache = new ConcurrentLfuCache<ConversionResult>(config.getConvertedColorCacheSize());
 		}
 		defaultCmykProfile = config.getColorProfilesDefaultCmykProfile();
+		cmykKeyBits = config.getConvertedColorCacheCmykBits();
+		xyzKeyBits = config.getConvertedColorCacheXyzBits();
+		for (int index = 0; index < pathLatencies.length; index++) {
+			pathLatencies[index] = new LatencyHistogram();
+		}
 	}
 
 	public ConversionResult convert(ColorParams params) throws Exception {
+		ConversionResult result = getCached(params);
+		return result != null ? result : convertUncached(params);
+	}
+
+	/**
+	 * @param params the conversion params
+	 * @return the result from the converted color cache (or null if not cached)
+	 */
+	public ConversionResult getCached(ColorParams params) {
+		long started = System.nanoTime();
 		ConversionResult result = resultFromCache(params);
-		if (result == null) {
-			Map<String,ICC_ColorSpace> colorSpacesUsed = new HashMap<String,ICC_ColorSpace>();
-			try {
-				switch (params.getTargetType()) {
-					case CMYK:
-						result = convertToCmyk(params, colorSpacesUsed);
-						break;
-					case RGB:
-						result = convertToRgb(params, colorSpacesUsed);
-						break;
-					case XYZ:
-						result = convertToXyz(params, colorSpacesUsed);
-						break;
-					default:
-						throw new ConversionException("Non-implemented target color type '" + params.getTargetType().name() + "'");
+		if (result != null) {
+			cacheHitLatency.recordSince(started);
+		}
+		return result;
+	}
+
+	/**
+	 * Converts without looking in the converted color cache (e.g. because getCached has already missed) - the
+	 * result is still added to the cache
+	 *
+	 * @param params the conversion params
+	 * @return the result of the conversion
+	 * @throws Exception
+	 */
+	public ConversionResult convertUncached(ColorParams params) throws Exception {
+		long started = System.nanoTime();
+		long invalidations = profileInvalidations.get();
+		ConversionResult result;
+		Map<String,ICC_ColorSpace> colorSpacesUsed = colorSpacesUsedMap();
+		try {
+			result = convert(params, colorSpacesUsed, invalidations);
+		} catch (Exception e) {
+			conversionErrors.increment();
+			throw e;
+		} finally {
+			releaseColorSpaces(colorSpacesUsed);
+		}
+		cacheResult(params, result, invalidations);
+		pathLatency(params).recordSince(started);
+		return result;
+	}
+
+	/**
+	 * Converts a batch of colors - each color space needed is borrowed from the pool only once for the whole batch
+	 * and crude conversions are run together through the batch kernels
+	 *
+	 * @param paramsList the params for each color
+	 * @return the results (in the same order as the params)
+	 * @throws Exception
+	 */
+	public List<ConversionResult> convertBatch(List<ColorParams> paramsList) throws Exception {
+		ConversionResult[] results = new ConversionResult[paramsList.size()];
+		// indices of the crude conversions (by kernel) still to be done...
+		int[][] crudeIndices = new int[CRUDE_KERNELS][];
+		int[] crudeCounts = new int[CRUDE_KERNELS];
+		long invalidations = profileInvalidations.get();
+		Map<String,ICC_ColorSpace> colorSpacesUsed = colorSpacesUsedMap();
+		try {
+			for (int index = 0; index < results.length; index++) {
+				ColorParams params = paramsList.get(index);
+				long started = System.nanoTime();
+				ConversionResult result = resultFromCache(params);
+				int kernel = result == null ? crudeKernel(params) : NO_CRUDE_KERNEL;
+				if (result != null) {
+					cacheHitLatency.recordSince(started);
+				} else if (kernel != NO_CRUDE_KERNEL) {
+					if (crudeIndices[kernel] == null) {
+						crudeIndices[kernel] = new int[results.length - index];
+					}
+					crudeIndices[kernel][crudeCounts[kernel]++] = index;
+				} else {
+					try {
+						result = convert(params, colorSpacesUsed, invalidations);
+					} catch (Exception e) {
+						conversionErrors.increment();
+						throw e;
+					}
+					cacheResult(params, result, invalidations);
+					pathLatency(params).recordSince(started);
+				}
+				results[index] = result;
+			}
+		} finally {
+			releaseColorSpaces(colorSpacesUsed);
+		}
+		for (int kernel = 0; kernel < CRUDE_KERNELS; kernel++) {
+			if (crudeCounts[kernel] > 0) {
+				convertCrude(kernel, paramsList, crudeIndices[kernel], crudeCounts[kernel], results, invalidations);
+			}
+		}
+		return new ArrayList<ConversionResult>(Arrays.asList(results));
+	}
+
+	/**
+	 * @return the crude batch kernel for the params (or NO_CRUDE_KERNEL if not a crude conversion that has one)
+	 */
+	private static int crudeKernel(ColorParams params) {
+		return crudeKernel(params.getSourceType(), params.getTargetType(), params.isCrudeConversion());
+	}
+
+	private static int crudeKernel(ColorType sourceType, ColorType targetType, boolean crude) {
+		if (crude) {
+			switch (sourceType) {
+				case RGB:
+					return targetType == ColorType.CMYK ? CRUDE_KERNEL_RGB_CMYK : (targetType == ColorType.XYZ ? CRUDE_KERNEL_RGB_XYZ : NO_CRUDE_KERNEL);
+				case CMYK:
+					return targetType == ColorType.RGB ? CRUDE_KERNEL_CMYK_RGB : NO_CRUDE_KERNEL;
+				case XYZ:
+					return targetType == ColorType.RGB ? CRUDE_KERNEL_XYZ_RGB : NO_CRUDE_KERNEL;
+			}
+		}
+		return NO_CRUDE_KERNEL;
+	}
+
+	private static void runCrudeKernel(int kernel, float[][] input, float[][] output, int count) {
+		switch (kernel) {
+			case CRUDE_KERNEL_RGB_CMYK:
+				CrudeKernels.rgbToCmyk(input[0], input[1], input[2], output[0], output[1], output[2], output[3], count);
+				break;
+			case CRUDE_KERNEL_CMYK_RGB:
+				CrudeKernels.cmykToRgb(input[0], input[1], input[2], input[3], output[0], output[1], output[2], count);
+				break;
+			case CRUDE_KERNEL_XYZ_RGB:
+				CrudeKernels.xyzToRgb(input[0], input[1], input[2], output[0], output[1], output[2], count);
+				break;
+			case CRUDE_KERNEL_RGB_XYZ:
+				CrudeKernels.rgbToXyz(input[0], input[1], input[2], output[0], output[1], output[2], count);
+				break;
+		}
+	}
+
+	private void convertCrude(int kernel, List<ColorParams> paramsList, int[] indices, int count, ConversionResult[] results,
+							  long invalidations) {
+		long started = System.nanoTime();
+		boolean cmykInput = kernel == CRUDE_KERNEL_CMYK_RGB;
+		float[][] input = new float[cmykInput ? 4 : 3][count];
+		float[][] output = new float[kernel == CRUDE_KERNEL_RGB_CMYK ? 4 : 3][count];
+		for (int index = 0; index < count; index++) {
+			ColorParams params = paramsList.get(indices[index]);
+			switch (params.getSourceType()) {
+				case RGB:
+					input[0][index] = params.getRedValue();
+					input[1][index] = params.getGreenValue();
+					input[2][index] = params.getBlueValue();
+					break;
+				case CMYK:
+					input[0][index] = params.getCyanValue();
+					input[1][index] = params.getMagentaValue();
+					input[2][index] = params.getYellowValue();
+					input[3][index] = params.getBlackValue();
+					break;
+				case XYZ:
+					input[0][index] = params.getCieXValue();
+					input[1][index] = params.getCieYValue();
+					input[2][index] = params.getCieZValue();
+					break;
+			}
+		}
+		runCrudeKernel(kernel, input, output, count);
+		for (int index = 0; index < count; index++) {
+			ConversionResult result;
+			switch (kernel) {
+				case CRUDE_KERNEL_RGB_CMYK:
+					result = ConversionResult.createCmykResult(output[0][index], output[1][index], output[2][index], output[3][index]);
+					break;
+				case CRUDE_KERNEL_CMYK_RGB:
+					result = ConversionResult.createRgbResult(Integer.valueOf((int)output[0][index]), Integer.valueOf((int)output[1][index]),
+							Integer.valueOf((int)output[2][index]));
+					break;
+				case CRUDE_KERNEL_XYZ_RGB:
+					result = ConversionResult.createRgbResult(output[0][index], output[1][index], output[2][index]);
+					break;
+				default:
+					result = ConversionResult.createXyzResult(output[0][index], output[1][index], output[2][index]);
+					break;
+			}
+			results[indices[index]] = result;
+			cacheResult(paramsList.get(indices[index]), result, invalidations);
+		}
+		// latency recorded per color (amortized over the batch)...
+		long perColor = (System.nanoTime() - started) / count;
+		pathLatency(paramsList.get(indices[0])).record(perColor, count);
+	}
+
+	/**
+	 * Converts a block of colors held as component arrays (one array per component) - with no per-color objects
+	 * and without using the converted color cache
+	 *
+	 * RGB components (in and out) are 0 to 255 (output RGB is rounded exactly as for single conversions), CMYK and
+	 * CIE-XYZ components are 0 to 1.
+	 *
+	 * @param sourceType the source color type
+	 * @param sourceProfile the source profile (or null)
+	 * @param targetType the target color type
+	 * @param targetProfile the target profile (or null)
+	 * @param crude whether to use crude conversion
+	 * @param input the source components
+	 * @param output the target components (filled by the conversion)
+	 * @param count the number of colors
+	 * @throws Exception
+	 */
+	public void convertComponents(ColorType sourceType, String sourceProfile, ColorType targetType, String targetProfile,
+								  boolean crude, float[][] input, float[][] output, int count) throws Exception {
+		if (count == 0) {
+			return;
+		}
+		long started = System.nanoTime();
+		long invalidations = profileInvalidations.get();
+		int kernel = crudeKernel(sourceType, targetType, crude);
+		int mode = PATH_MODE_DEFAULT;
+		if (kernel != NO_CRUDE_KERNEL) {
+			mode = PATH_MODE_CRUDE;
+			runCrudeKernel(kernel, input, output, count);
+			if (kernel == CRUDE_KERNEL_CMYK_RGB) {
+				for (float[] component: output) {
+					for (int index = 0; index < count; index++) {
+						component[index] = (int)component[index];
+					}
 				}
-			} finally {
-				for (Map.Entry<String,ICC_ColorSpace> entry : colorSpacesUsed.entrySet()) {
-					colorSpacePool.release(entry.getKey(), entry.getValue());
+			} else if (kernel == CRUDE_KERNEL_XYZ_RGB) {
+				roundRgb(output, count);
+			}
+		} else {
+			if (sourceProfile != null || targetProfile != null) {
+				mode = PATH_MODE_PROFILE;
+			}
+			TransformKey key = transformKey(sourceType, sourceProfile, targetType, targetProfile);
+			if (key == null) {
+				// no actual conversion...
+				for (int component = 0; component < output.length; component++) {
+					System.arraycopy(input[component], 0, output[component], 0, count);
 				}
+			} else {
+				transformComponents(key, input, output, count, invalidations);
 			}
 		}
-		cacheResult(params, result);
-		return result;
+		// latency recorded per color (amortized over the block)...
+		long perColor = (System.nanoTime() - started) / count;
+		pathLatencies[pathIndex(sourceType, targetType, mode)].record(perColor, count);
+	}
+
+	private void transformComponents(TransformKey key, float[][] input, float[][] output, int count, long invalidations) throws Exception {
+		boolean rgbInput = key.getSourceType() == ColorType.RGB;
+		float[] color = new float[input.length];
+		Map<String,ICC_ColorSpace> colorSpacesUsed = colorSpacesUsedMap();
+		try {
+			for (int index = 0; index < count; index++) {
+				for (int component = 0; component < color.length; component++) {
+					color[component] = rgbInput ? input[component][index] / 255f : input[component][index];
+				}
+				float[] converted = transform(key, color, colorSpacesUsed, invalidations);
+				for (int component = 0; component < output.length; component++) {
+					output[component][index] = converted[component];
+				}
+			}
+		} catch (Exception e) {
+			conversionErrors.increment();
+			throw e;
+		} finally {
+			releaseColorSpaces(colorSpacesUsed);
+		}
+		if (key.getTargetType() == ColorType.RGB) {
+			roundRgb(output, count);
+		}
+	}
+
+	private static void roundRgb(float[][] rgb, int count) {
+		for (float[] component: rgb) {
+			for (int index = 0; index < count; index++) {
+				component[index] = Math.round(component[index] * 255f);
+			}
+		}
+	}
+
+	/**
+	 * @return the transform for a (non crude) conversion - with default profiles applied as for single conversions
+	 * (or null if there is no actual conversion)
+	 */
+	private TransformKey transformKey(ColorType sourceType, String sourceProfile, ColorType targetType, String targetProfile) {
+		switch (targetType) {
+			case CMYK:
+				if (sourceType == ColorType.CMYK) {
+					return sourceProfile == null || targetProfile == null || sourceProfile.equals(targetProfile) ? null
+							: new TransformKey(ColorType.CMYK, sourceProfile, ColorType.CMYK, targetProfile);
+				}
+				return new TransformKey(sourceType, sourceType == ColorType.RGB ? sourceProfile : null,
+						ColorType.CMYK, targetProfile != null ? targetProfile : defaultCmykProfile);
+			case RGB:
+				if (sourceType == ColorType.RGB) {
+					return (sourceProfile == null && targetProfile == null) || (sourceProfile != null && sourceProfile.equals(targetProfile)) ? null
+							: new TransformKey(ColorType.RGB, sourceProfile, ColorType.RGB, targetProfile);
+				} else if (sourceType == ColorType.CMYK) {
+					return new TransformKey(ColorType.CMYK, sourceProfile != null ? sourceProfile : defaultCmykProfile, ColorType.RGB, targetProfile);
+				}
+				return new TransformKey(ColorType.XYZ, null, ColorType.RGB, targetProfile != null ? targetProfile : PooledColorSpaceFactory.PROFILE_NAME_SRGB);
+			default:
+				if (sourceType == ColorType.XYZ) {
+					return null;
+				}
+				return new TransformKey(sourceType, sourceProfile != null ? sourceProfile
+						: (sourceType == ColorType.CMYK ? defaultCmykProfile : PooledColorSpaceFactory.PROFILE_NAME_SRGB), ColorType.XYZ, null);
+		}
+	}
+
+	private ConversionResult convert(ColorParams params, Map<String,ICC_ColorSpace> colorSpacesUsed, long invalidations) throws Exception {
+		switch (params.getTargetType()) {
+			case CMYK:
+				return convertToCmyk(params, colorSpacesUsed, invalidations);
+			case RGB:
+				return convertToRgb(params, colorSpacesUsed, invalidations);
+			case XYZ:
+				return convertToXyz(params, colorSpacesUsed, invalidations);
+			default:
+				throw new ConversionException("Non-implemented target color type '" + params.getTargetType().name() + "'");
+		}
+	}
+
+	/**
+	 * @return the map for tracking borrowed color spaces (or null if color spaces are thread-affine and need no tracking)
+	 */
+	Map<String,ICC_ColorSpace> colorSpacesUsedMap() {
+		return colorSpacePool.isThreadAffine() ? null : new HashMap<String,ICC_ColorSpace>();
+	}
+
+	void releaseColorSpaces(Map<String,ICC_ColorSpace> colorSpacesUsed) {
+		if (colorSpacesUsed == null) {
+			return;
+		}
+		for (Map.Entry<String,ICC_ColorSpace> entry : colorSpacesUsed.entrySet()) {
+			colorSpacePool.release(entry.getKey(), entry.getValue());
+		}
 	}
 
-	private ConversionResult convertToCmyk(ColorParams params, Map<String,ICC_ColorSpace> colorSpacesUsed) throws Exception {
+	private ConversionResult convertToCmyk(ColorParams params, Map<String,ICC_ColorSpace> colorSpacesUsed, long invalidations) throws Exception {
 		ConversionResult result = null;
 		switch (params.getSourceType()) {
 			case CMYK:
-				result = Cmyk2Cmyk(params, colorSpacesUsed);
+				result = Cmyk2Cmyk(params, colorSpacesUsed, invalidations);
 				break;
 			case RGB:
-				result = Rgb2Cmyk(params, colorSpacesUsed);
+				result = Rgb2Cmyk(params, colorSpacesUsed, invalidations);
 				break;
 			case XYZ:
-				result = Xyz2Cmyk(params, colorSpacesUsed);
+				result = Xyz2Cmyk(params, colorSpacesUsed, invalidations);
 				break;
 			default:
 				throw new ConversionException("Non-implemented source color type '" + params.getSourceType().name() + "'");
@@ -98,17 +461,17 @@ public class ColorConverter {
 		return result;
 	}
 
-	private ConversionResult convertToRgb(ColorParams params, Map<String,ICC_ColorSpace> colorSpacesUsed) throws Exception {
+	private ConversionResult convertToRgb(ColorParams params, Map<String,ICC_ColorSpace> colorSpacesUsed, long invalidations) throws Exception {
 		ConversionResult result = null;
 		switch (params.getSourceType()) {
 			case CMYK:
-				result = Cmyk2Rgb(params, colorSpacesUsed);
+				result = Cmyk2Rgb(params, colorSpacesUsed, invalidations);
 				break;
 			case RGB:
-				result = Rgb2Rgb(params, colorSpacesUsed);
+				result = Rgb2Rgb(params, colorSpacesUsed, invalidations);
 				break;
 			case XYZ:
-				result = Xyz2Rgb(params, colorSpacesUsed);
+				result = Xyz2Rgb(params, colorSpacesUsed, invalidations);
 				break;
 			default:
 				throw new ConversionException("Non-implemented source color type '" + params.getSourceType().name() + "'");
@@ -116,14 +479,14 @@ public class ColorConverter {
 		return result;
 	}
 
-	private ConversionResult convertToXyz(ColorParams params, Map<String,ICC_ColorSpace> colorSpacesUsed) throws Exception {
+	private ConversionResult convertToXyz(ColorParams params, Map<String,ICC_ColorSpace> colorSpacesUsed, long invalidations) throws Exception {
 		ConversionResult result = null;
 		switch (params.getSourceType()) {
 			case CMYK:
-				result = Cmyk2Xyz(params, colorSpacesUsed);
+				result = Cmyk2Xyz(params, colorSpacesUsed, invalidations);
 				break;
 			case RGB:
-				result = Rgb2Xyz(params, colorSpacesUsed);
+				result = Rgb2Xyz(params, colorSpacesUsed, invalidations);
 				break;
 			case XYZ:
 				// no conversion...
@@ -135,29 +498,15 @@ public class ColorConverter {
 		return result;
 	}
 
-	private ConversionResult Rgb2Cmyk(ColorParams params, Map<String,ICC_ColorSpace> colorSpacesUsed) throws Exception {
+	private ConversionResult Rgb2Cmyk(ColorParams params, Map<String,ICC_ColorSpace> colorSpacesUsed, long invalidations) throws Exception {
 		if (params.isCrudeConversion()) {
 			return Rgb2CmykCrude(params);
 		}
-		String sourceProfile = params.getSourceProfile();
 		String targetProfile = params.getTargetProfile();
 		if (targetProfile == null) {
 			targetProfile = defaultCmykProfile;
 		}
-		ICC_ColorSpace targetColorSpace = colorSpacePool.get(targetProfile);
-		colorSpacesUsed.put(targetProfile, targetColorSpace);
-		checkCorrectColorSpace(targetProfile, ColorType.CMYK, targetColorSpace);
-		float[] cmyk = null;
-		float[] rgb = params.getRGB();
-		if (sourceProfile == null) {
-			cmyk = targetColorSpace.fromRGB(rgb);
-		} else {
-			ICC_ColorSpace sourceColorSpace = colorSpacePool.get(sourceProfile);
-			colorSpacesUsed.put(sourceProfile, sourceColorSpace);
-			checkCorrectColorSpace(sourceProfile, ColorType.RGB, sourceColorSpace);
-			float[] ciexyz = sourceColorSpace.toCIEXYZ(rgb);
-			cmyk = targetColorSpace.fromCIEXYZ(ciexyz);
-		}
+		float[] cmyk = transform(ColorType.RGB, params.getSourceProfile(), ColorType.CMYK, targetProfile, params.getRGB(), colorSpacesUsed, invalidations);
 		return ConversionResult.createCmykResult(cmyk);
 	}
 
@@ -172,19 +521,16 @@ public class ColorConverter {
 		return ConversionResult.createCmykResult((c-k)/(1-k), (m-k)/(1-k), (y-k)/(1-k), k);
 	}
 
-	private ConversionResult Xyz2Cmyk(ColorParams params, Map<String,ICC_ColorSpace> colorSpacesUsed) throws Exception {
+	private ConversionResult Xyz2Cmyk(ColorParams params, Map<String,ICC_ColorSpace> colorSpacesUsed, long invalidations) throws Exception {
 		String targetProfile = params.getTargetProfile();
 		if (targetProfile == null) {
 			targetProfile = defaultCmykProfile;
 		}
-		ICC_ColorSpace targetColorSpace = colorSpacePool.get(targetProfile);
-		colorSpacesUsed.put(targetProfile, targetColorSpace);
-		checkCorrectColorSpace(targetProfile, ColorType.CMYK, targetColorSpace);
-		float[] cmyk = targetColorSpace.fromCIEXYZ(params.getCieXYZ());
+		float[] cmyk = transform(ColorType.XYZ, null, ColorType.CMYK, targetProfile, params.getCieXYZ(), colorSpacesUsed, invalidations);
 		return ConversionResult.createCmykResult(cmyk);
 	}
 
-	private ConversionResult Cmyk2Cmyk(ColorParams params, Map<String,ICC_ColorSpace> colorSpacesUsed) throws Exception {
+	private ConversionResult Cmyk2Cmyk(ColorParams params, Map<String,ICC_ColorSpace> colorSpacesUsed, long invalidations) throws Exception {
 		String sourceProfile = params.getSourceProfile();
 		String targetProfile = params.getTargetProfile();
 		if (sourceProfile == null || targetProfile == null || sourceProfile.equals(targetProfile)) {
@@ -192,42 +538,20 @@ public class ColorConverter {
 			return ConversionResult.createCmykResult(params.getCyanValue(), params.getMagentaValue(), params.getYellowValue(), params.getBlackValue());
 		}
 		// convert CMYK in specified color space to CMYK in target color space...
-		ICC_ColorSpace sourceColorSpace = colorSpacePool.get(sourceProfile);
-		colorSpacesUsed.put(sourceProfile, sourceColorSpace);
-		checkCorrectColorSpace(sourceProfile, ColorType.CMYK, sourceColorSpace);
-		ICC_ColorSpace targetColorSpace = colorSpacePool.get(targetProfile);
-		colorSpacesUsed.put(targetProfile, targetColorSpace);
-		checkCorrectColorSpace(targetProfile, ColorType.CMYK, targetColorSpace);
-		float[] ciexyz = sourceColorSpace.toCIEXYZ(params.getCMYK());
-		float[] cmyk = targetColorSpace.fromCIEXYZ(ciexyz);
+		float[] cmyk = transform(ColorType.CMYK, sourceProfile, ColorType.CMYK, targetProfile, params.getCMYK(), colorSpacesUsed, invalidations);
 		return ConversionResult.createCmykResult(cmyk);
 	}
 
-	private ConversionResult Cmyk2Rgb(ColorParams params, Map<String,ICC_ColorSpace> colorSpacesUsed) throws Exception {
+	private ConversionResult Cmyk2Rgb(ColorParams params, Map<String,ICC_ColorSpace> colorSpacesUsed, long invalidations) throws Exception {
 		if (params.isCrudeConversion()) {
 			return Cmyk2RgbCrude(params);
 		}
 		String sourceProfile = params.getSourceProfile();
-		String targetProfile = params.getTargetProfile();
 		if (sourceProfile == null) {
 			sourceProfile = defaultCmykProfile;
 		}
-		ICC_ColorSpace sourceColorSpace = colorSpacePool.get(sourceProfile);
-		colorSpacesUsed.put(sourceProfile, sourceColorSpace);
-		checkCorrectColorSpace(sourceProfile, ColorType.CMYK, sourceColorSpace);
-		float[] cmyk = params.getCMYK();
-		float[] rgb;
-		if (targetProfile == null) {
-			// no target RGB profile...
-			rgb = sourceColorSpace.toRGB(cmyk);
-		} else {
-			// use specified target RGB profile...
-			ICC_ColorSpace targetColorSpace = colorSpacePool.get(targetProfile);
-			colorSpacesUsed.put(targetProfile, targetColorSpace);
-			checkCorrectColorSpace(targetProfile, ColorType.RGB, targetColorSpace);
-			float[] ciexyz = sourceColorSpace.toCIEXYZ(cmyk);
-			rgb = targetColorSpace.fromCIEXYZ(ciexyz);
-		}
+		// with no target RGB profile the conversion is to sRGB...
+		float[] rgb = transform(ColorType.CMYK, sourceProfile, ColorType.RGB, params.getTargetProfile(), params.getCMYK(), colorSpacesUsed, invalidations);
 		return ConversionResult.createRgbResult(rgb);
 	}
 
@@ -235,38 +559,22 @@ public class ColorConverter {
 		float red = (1 - params.getCyanValue()) * (1 - params.getBlackValue()) * 255f;
 		float green = (1 - params.getMagentaValue()) * (1 - params.getBlackValue()) * 255f;
 		float blue = (1 - params.getYellowValue()) * (1 - params.getBlackValue()) * 255f;
-		return ConversionResult.createRgbResult((int)red, (int)green, (int)blue);
+		return ConversionResult.createRgbResult(Integer.valueOf((int)red), Integer.valueOf((int)green), Integer.valueOf((int)blue));
 	}
 
-	private ConversionResult Rgb2Rgb(ColorParams params, Map<String,ICC_ColorSpace> colorSpacesUsed) throws Exception {
+	private ConversionResult Rgb2Rgb(ColorParams params, Map<String,ICC_ColorSpace> colorSpacesUsed, long invalidations) throws Exception {
 		String sourceProfile = params.getSourceProfile();
 		String targetProfile = params.getTargetProfile();
-		ICC_ColorSpace sourceColorSpace;
-		float[] rgb = null;
 		if ((sourceProfile == null && targetProfile == null) || (sourceProfile != null && sourceProfile.equals(targetProfile))) {
 			// no actual conversion...
 			return ConversionResult.createRgbResult(params.getRedValue(), params.getGreenValue(), params.getBlueValue());
-		} else if (targetProfile == null) {
-			// convert RGB in specified color space to sRFB...
-			sourceColorSpace = colorSpacePool.get(sourceProfile);
-			colorSpacesUsed.put(sourceProfile, sourceColorSpace);
-			checkCorrectColorSpace(sourceProfile, ColorType.RGB, sourceColorSpace);
-			rgb = sourceColorSpace.toRGB(params.getRGB());
-		} else {
-			// convert RGB in specified color space to RGB in target color space...
-			sourceColorSpace = colorSpacePool.get(sourceProfile);
-			colorSpacesUsed.put(sourceProfile, sourceColorSpace);
-			checkCorrectColorSpace(sourceProfile, ColorType.RGB, sourceColorSpace);
-			ICC_ColorSpace targetColorSpace = colorSpacePool.get(targetProfile);
-			colorSpacesUsed.put(targetProfile, targetColorSpace);
-			checkCorrectColorSpace(targetProfile, ColorType.RGB, targetColorSpace);
-			float[] ciexyz = sourceColorSpace.toCIEXYZ(params.getRGB());
-			rgb = targetColorSpace.fromCIEXYZ(ciexyz);
 		}
+		// convert RGB in source color space (or sRGB) to RGB in target color space (or sRGB)...
+		float[] rgb = transform(ColorType.RGB, sourceProfile, ColorType.RGB, targetProfile, params.getRGB(), colorSpacesUsed, invalidations);
 		return ConversionResult.createRgbResult(rgb);
 	}
 
-	private ConversionResult Xyz2Rgb(ColorParams params, Map<String,ICC_ColorSpace> colorSpacesUsed) throws Exception {
+	private ConversionResult Xyz2Rgb(ColorParams params, Map<String,ICC_ColorSpace> colorSpacesUsed, long invalidations) throws Exception {
 		if (params.isCrudeConversion()) {
 			return Xyz2RgbCrude(params);
 		}
@@ -274,10 +582,7 @@ public class ColorConverter {
 		if (targetProfile == null) {
 			targetProfile = PooledColorSpaceFactory.PROFILE_NAME_SRGB;
 		}
-		ICC_ColorSpace targetColorSpace = colorSpacePool.get(targetProfile);
-		colorSpacesUsed.put(targetProfile, targetColorSpace);
-		checkCorrectColorSpace(targetProfile, ColorType.RGB, targetColorSpace);
-		float[] rgb = targetColorSpace.fromCIEXYZ(params.getCieXYZ());
+		float[] rgb = transform(ColorType.XYZ, null, ColorType.RGB, targetProfile, params.getCieXYZ(), colorSpacesUsed, invalidations);
 		return ConversionResult.createRgbResult(rgb);
 	}
 
@@ -289,25 +594,19 @@ public class ColorConverter {
 //		double gLinear = (-x * 0.9692f) + (y * 1.8760f) - (z * 0.0416f);
 		double gLinear = (-x * 0.9692f) + (y * 1.8760f) + (z * 0.0416f);
 		double bLinear = (x * 0.0556f) - (y * 0.2040f) + (z * 1.0570f);
-		rLinear = (rLinear <= 0.0031308f) ? 12.92f * rLinear : 1.055f * Math.pow(rLinear, (1.0f/2.4f)) - 0.055f;
-		gLinear = (gLinear <= 0.0031308f) ? 12.92f * gLinear : 1.055f * Math.pow(gLinear, (1.0f/2.4f)) - 0.055f;
-		bLinear = (bLinear <= 0.0031308f) ? 12.92f * bLinear : 1.055f * Math.pow(bLinear, (1.0f/2.4f)) - 0.055f;
-		return ConversionResult.createRgbResult((float)rLinear, (float)gLinear, (float)bLinear);
+		return ConversionResult.createRgbResult(SrgbTransfer.compand(rLinear), SrgbTransfer.compand(gLinear), SrgbTransfer.compand(bLinear));
 	}
 
-	private ConversionResult Cmyk2Xyz(ColorParams params, Map<String,ICC_ColorSpace> colorSpacesUsed) throws Exception {
+	private ConversionResult Cmyk2Xyz(ColorParams params, Map<String,ICC_ColorSpace> colorSpacesUsed, long invalidations) throws Exception {
 		String sourceProfile = params.getSourceProfile();
 		if (sourceProfile == null) {
 			sourceProfile = defaultCmykProfile;
 		}
-		ICC_ColorSpace sourceColorSpace = colorSpacePool.get(sourceProfile);
-		colorSpacesUsed.put(sourceProfile, sourceColorSpace);
-		checkCorrectColorSpace(sourceProfile, ColorType.CMYK, sourceColorSpace);
-		float[] xyz = sourceColorSpace.toCIEXYZ(params.getCMYK());
+		float[] xyz = transform(ColorType.CMYK, sourceProfile, ColorType.XYZ, null, params.getCMYK(), colorSpacesUsed, invalidations);
 		return ConversionResult.createXyzResult(xyz);
 	}
 
-	private ConversionResult Rgb2Xyz(ColorParams params, Map<String,ICC_ColorSpace> colorSpacesUsed) throws Exception {
+	private ConversionResult Rgb2Xyz(ColorParams params, Map<String,ICC_ColorSpace> colorSpacesUsed, long invalidations) throws Exception {
 		if (params.isCrudeConversion()) {
 			return Rgb2XyzCrude(params);
 		}
@@ -315,38 +614,347 @@ public class ColorConverter {
 		if (sourceProfile == null) {
 			sourceProfile = PooledColorSpaceFactory.PROFILE_NAME_SRGB;
 		}
-		ICC_ColorSpace sourceColorSpace = colorSpacePool.get(sourceProfile);
-		colorSpacesUsed.put(sourceProfile, sourceColorSpace);
-		checkCorrectColorSpace(sourceProfile, ColorType.RGB, sourceColorSpace);
-		float[] xyz = sourceColorSpace.toCIEXYZ(params.getRGB());
+		float[] xyz = transform(ColorType.RGB, sourceProfile, ColorType.XYZ, null, params.getRGB(), colorSpacesUsed, invalidations);
 		return ConversionResult.createXyzResult(xyz);
 	}
 
 	private ConversionResult Rgb2XyzCrude(ColorParams params) {
-		float rLinear = params.getRedValue().floatValue() / 255f;
-		float gLinear = params.getGreenValue().floatValue() / 255f;
-		float bLinear = params.getBlueValue().floatValue() / 255f;
-		double r = (rLinear > 0.04045f) ? Math.pow((rLinear + 0.055f)/(1f + 0.055f), 2.2f) : (rLinear / 12.92f);
-		double g = (gLinear > 0.04045f) ? Math.pow((gLinear + 0.055f)/(1f + 0.055f), 2.2f) : (gLinear / 12.92f);
-		double b = (bLinear > 0.04045f) ? Math.pow((bLinear + 0.055f)/(1f + 0.055f), 2.2f) : (bLinear / 12.92f);
+		double r = SrgbTransfer.linearize(params.getRedValue());
+		double g = SrgbTransfer.linearize(params.getGreenValue());
+		double b = SrgbTransfer.linearize(params.getBlueValue());
 		return ConversionResult.createXyzResult(
 				(float)((r * 0.4124f) + (g * 0.3576f) + (b * 0.1805f)),
 				(float)((r * 0.2126f) + (g * 0.7152f) + (b * 0.0722f)),
 				(float)((r * 0.0193f) + (g * 0.1192f) + (b * 0.9505f)));
 	}
 
+	/**
+	 * Transforms color components from source to target - using the dense RGB table (ahead of any transform LUT)
+	 * or transform LUT if one is available (otherwise the full ICC transform using color spaces borrowed from the pool)
+	 */
+	float[] transform(ColorType sourceType, String sourceProfile, ColorType targetType, String targetProfile,
+					  float[] input, Map<String,ICC_ColorSpace> colorSpacesUsed, long invalidations) throws Exception {
+		return transform(new TransformKey(sourceType, sourceProfile, targetType, targetProfile), input, colorSpacesUsed, invalidations);
+	}
+
+	/**
+	 * @param invalidations the profile invalidation count when the conversion started - if a profile has been
+	 *                      invalidated since then the result may be stale, so it is not put in the dense RGB table
+	 */
+	private float[] transform(TransformKey key, float[] input, Map<String,ICC_ColorSpace> colorSpacesUsed, long invalidations) throws Exception {
+		ColorType sourceType = key.getSourceType();
+		String sourceProfile = key.getSourceProfile();
+		ColorType targetType = key.getTargetType();
+		String targetProfile = key.getTargetProfile();
+		DenseRgbTable denseTable = null;
+		int denseIndex = 0;
+		if (sourceType == ColorType.RGB && denseRgbTables.isEnabled()) {
+			denseTable = denseRgbTables.get(key);
+			if (denseTable != null) {
+				denseIndex = DenseRgbTable.index(input);
+				float[] result = denseTable.get(denseIndex);
+				if (result != null) {
+					return result;
+				}
+			}
+		}
+		// a transform with a dense table fills it with exact (ICC) results - rather than using its LUT...
+		TransformLut lut = denseTable == null ? transformLuts.get(key) : null;
+		float[] result;
+		if (lut != null) {
+			result = lut.transform(input);
+		} else {
+			ICC_ColorSpace sourceColorSpace = null;
+			ICC_ColorSpace targetColorSpace = null;
+			if (targetProfile != null) {
+				targetColorSpace = borrowColorSpace(targetProfile, targetType, colorSpacesUsed);
+			}
+			if (sourceProfile != null) {
+				sourceColorSpace = borrowColorSpace(sourceProfile, sourceType, colorSpacesUsed);
+			}
+			result = key.apply(sourceColorSpace, targetColorSpace, input);
+		}
+		if (denseTable != null) {
+			if (canCache(invalidations)) {
+				denseTable.put(denseIndex, result);
+			}
+		} else if (sourceType == ColorType.RGB) {
+			// counted whether converted by LUT or ICC - so that hot transforms get a table either way...
+			denseRgbTables.countConversion(key);
+		}
+		return result;
+	}
+
+	private ICC_ColorSpace borrowColorSpace(String profile, ColorType requiredType, Map<String,ICC_ColorSpace> colorSpacesUsed) throws Exception {
+		ICC_ColorSpace result;
+		if (colorSpacesUsed == null) {
+			result = colorSpacePool.get(profile);
+		} else {
+			result = colorSpacesUsed.get(profile);
+			if (result == null) {
+				result = colorSpacePool.get(profile);
+				colorSpacesUsed.put(profile, result);
+			}
+		}
+		checkCorrectColorSpace(profile, requiredType, result);
+		return result;
+	}
+
+	/**
+	 * @return the current profile invalidation count - to be taken when a conversion starts and passed to transform
+	 */
+	long getProfileInvalidations() {
+		return profileInvalidations.get();
+	}
+
+	/**
+	 * Marks the start of a change to a profile (a reload or removal) - conversions that overlap the change
+	 * (up to the matching endProfileChange) do not cache their results
+	 */
+	public void beginProfileChange() {
+		profileChanges.incrementAndGet();
+		profileInvalidations.incrementAndGet();
+	}
+
+	public void endProfileChange() {
+		profileInvalidations.incrementAndGet();
+		profileChanges.decrementAndGet();
+	}
+
+	/**
+	 * Removes the cached conversions that used a profile (e.g. because the profile has been reloaded) - and stops
+	 * conversions already in progress from caching their results
+	 *
+	 * @param profile the profile name
+	 * @return the number of cached conversions removed
+	 */
+	public int invalidateProfile(final String profile) {
+		profileInvalidations.incrementAndGet();
+		if (convertedColorCache == null) {
+			return 0;
+		}
+		final boolean defaultCmyk = profile.equals(defaultCmykProfile);
+		return convertedColorCache.removeIf(new LongPredicate() {
+			@Override
+			public boolean test(long key) {
+				return cacheKeyUsesProfile(key, profile, defaultCmyk);
+			}
+		});
+	}
+
+	private boolean cacheKeyUsesProfile(long key, String profile, boolean defaultCmyk) {
+		if ((key & (1L << CRUDE_SHIFT)) != 0L) {
+			// crude conversions don't use profiles...
+			return false;
+		}
+		String[] profiles = profilePairIds.getProfiles((int)((key >>> PROFILE_PAIR_ID_SHIFT) & ((1 << PROFILE_PAIR_ID_BITS) - 1)));
+		if (profiles == null) {
+			return false;
+		} else if (profile.equals(profiles[0]) || profile.equals(profiles[1])) {
+			return true;
+		}
+		// with no profile specified a CMYK source or target uses the default CMYK profile...
+		int cmyk = ColorType.CMYK.ordinal();
+		return defaultCmyk && ((profiles[0] == null && ((key >>> SOURCE_TYPE_SHIFT) & 3L) == cmyk)
+				|| (profiles[1] == null && ((key >>> TARGET_TYPE_SHIFT) & 3L) == cmyk));
+	}
+
+	public ConcurrentLfuCache<ConversionResult> getConvertedColorCache() {
+		return convertedColorCache;
+	}
+
+	/**
+	 * Gets the most frequently used conversions in the converted color cache - tagged with the contents of
+	 * the profiles they use (so that they can be checked when restored)
+	 *
+	 * @param max the maximum number of conversions
+	 * @return the conversions (most frequently used first)
+	 */
+	public List<CachedConversion> getHottestCached(int max) {
+		List<CachedConversion> result = new ArrayList<CachedConversion>();
+		if (convertedColorCache == null) {
+			return result;
+		}
+		ColorType[] colorTypes = ColorType.values();
+		for (Map.Entry<Long,ConversionResult> entry: convertedColorCache.getHottest(max).entrySet()) {
+			long key = entry.getKey();
+			String[] profiles = profilePairIds.getProfiles((int)((key >>> PROFILE_PAIR_ID_SHIFT) & ((1 << PROFILE_PAIR_ID_BITS) - 1)));
+			if (profiles == null) {
+				continue;
+			}
+			ColorType sourceType = colorTypes[(int)((key >>> SOURCE_TYPE_SHIFT) & 3L)];
+			ColorType targetType = colorTypes[(int)((key >>> TARGET_TYPE_SHIFT) & 3L)];
+			boolean crude = (key & (1L << CRUDE_SHIFT)) != 0L;
+			long tag = persistentCacheTag(sourceType, profiles[0], targetType, profiles[1], crude);
+			if (tag != PersistentConversionCache.NO_TAG) {
+				result.add(new CachedConversion(sourceType, profiles[0], targetType, profiles[1], crude,
+						key & ((1L << ColorParams.PACKED_COLOR_BITS) - 1L), tag, entry.getValue()));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Restores conversions into the converted color cache - conversions whose profiles no longer have
+	 * the same contents are discarded
+	 *
+	 * @param conversions the conversions (most frequently used first)
+	 * @return the number of conversions restored
+	 */
+	public int restoreCached(List<CachedConversion> conversions) {
+		if (convertedColorCache == null) {
+			return 0;
+		}
+		long invalidations = profileInvalidations.get();
+		int result = 0;
+		for (CachedConversion conversion: conversions) {
+			long tag = persistentCacheTag(conversion.getSourceType(), conversion.getSourceProfile(),
+					conversion.getTargetType(), conversion.getTargetProfile(), conversion.isCrude());
+			if (tag == conversion.getTag() && tag != PersistentConversionCache.NO_TAG && canCache(invalidations)) {
+				int profilePairId = profilePairIds.intern(conversion.getSourceProfile(), conversion.getTargetProfile());
+				if (profilePairId != ProfilePairIds.UNKNOWN) {
+					convertedColorCache.put(((long)conversion.getSourceType().ordinal() << SOURCE_TYPE_SHIFT)
+							| ((long)conversion.getTargetType().ordinal() << TARGET_TYPE_SHIFT)
+							| (conversion.isCrude() ? 1L << CRUDE_SHIFT : 0L)
+							| ((long)profilePairId << PROFILE_PAIR_ID_SHIFT)
+							| conversion.getPackedColor(), conversion.getResult());
+					result++;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the latencies of (uncached) conversions by path - named as source type, target type and
+	 * mode ('default' profiles, explicit 'profile' or 'crude'), e.g. "RGB>CMYK:profile"
+	 */
+	public Map<String,LatencyHistogram> getPathLatencies() {
+		Map<String,LatencyHistogram> result = new LinkedHashMap<String,LatencyHistogram>();
+		for (ColorType sourceType: ColorType.values()) {
+			for (ColorType targetType: ColorType.values()) {
+				for (int mode = 0; mode < PATH_MODES.length; mode++) {
+					LatencyHistogram histogram = pathLatencies[pathIndex(sourceType, targetType, mode)];
+					if (histogram.getCount() > 0) {
+						result.put(sourceType.name() + ">" + targetType.name() + ":" + PATH_MODES[mode], histogram);
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the latencies of conversions answered from the converted color cache
+	 */
+	public LatencyHistogram getCacheHitLatency() {
+		return cacheHitLatency;
+	}
+
+	public long getConversionErrors() {
+		return conversionErrors.sum();
+	}
+
+	private LatencyHistogram pathLatency(ColorParams params) {
+		int mode = PATH_MODE_DEFAULT;
+		if (params.isCrudeConversion()) {
+			mode = PATH_MODE_CRUDE;
+		} else if (params.getSourceProfile() != null || params.getTargetProfile() != null) {
+			mode = PATH_MODE_PROFILE;
+		}
+		return pathLatencies[pathIndex(params.getSourceType(), params.getTargetType(), mode)];
+	}
+
+	private static int pathIndex(ColorType sourceType, ColorType targetType, int mode) {
+		return (((sourceType.ordinal() * COLOR_TYPES) + targetType.ordinal()) * PATH_MODES.length) + mode;
+	}
+
 	private ConversionResult resultFromCache(ColorParams params) {
 		ConversionResult result = null;
 		if (useConvertedColorCache) {
-			result = convertedColorCache.get(params.getTargetType().name() + "<" + params.getCacheKey());
+			long key = cacheKey(params, false);
+			if (key != NO_CACHE_KEY) {
+				result = convertedColorCache.get(key);
+			}
+		}
+		if (result == null && persistentCache.isEnabled()) {
+			long invalidations = profileInvalidations.get();
+			result = persistentCache.get(persistentCacheKey(params), persistentCacheTag(params), params.getTargetType());
+			if (result != null && useConvertedColorCache && canCache(invalidations)) {
+				long key = cacheKey(params, true);
+				if (key != NO_CACHE_KEY) {
+					convertedColorCache.put(key, result);
+				}
+			}
 		}
 		return result;
 	}
 
-	private void cacheResult(ColorParams params, ConversionResult converted) {
-		if (useConvertedColorCache) {
-			convertedColorCache.put(params.getTargetType().name() + "<" + params.getCacheKey(), converted);
+	/**
+	 * @param invalidations the profile invalidation count when the conversion started - if a profile has been
+	 *                      invalidated since then the result may be stale, so it is not cached
+	 */
+	private void cacheResult(ColorParams params, ConversionResult converted, long invalidations) {
+		if (useConvertedColorCache && canCache(invalidations)) {
+			long key = cacheKey(params, true);
+			if (key != NO_CACHE_KEY) {
+				convertedColorCache.put(key, converted);
+			}
+		}
+		if (persistentCache.isEnabled()) {
+			// tagged (by profile contents) before checking invalidations - so a reload cannot slip in between...
+			long tag = persistentCacheTag(params);
+			if (canCache(invalidations)) {
+				persistentCache.put(persistentCacheKey(params), tag, converted);
+			}
+		}
+	}
+
+	private long persistentCacheTag(ColorParams params) {
+		return persistentCacheTag(params.getSourceType(), params.getSourceProfile(), params.getTargetType(), params.getTargetProfile(),
+				params.isCrudeConversion());
+	}
+
+	private long persistentCacheTag(ColorType sourceType, String sourceProfile, ColorType targetType, String targetProfile, boolean crude) {
+		return persistentCache.tag(crude ? null : transformKey(sourceType, sourceProfile, targetType, targetProfile), crude);
+	}
+
+	private boolean canCache(long invalidations) {
+		// changes in progress checked first - ending a change counts as an invalidation...
+		return profileChanges.get() == 0 && invalidations == profileInvalidations.get();
+	}
+
+	/**
+	 * Builds the persistent cache key for a conversion - as the cache key but without the profile pair id (which
+	 * is not stable across restarts; the persistent cache tags entries with profile contents instead)
+	 */
+	private long persistentCacheKey(ColorParams params) {
+		return ((long)params.getSourceType().ordinal() << SOURCE_TYPE_SHIFT)
+				| ((long)params.getTargetType().ordinal() << TARGET_TYPE_SHIFT)
+				| (params.isCrudeConversion() ? 1L << CRUDE_SHIFT : 0L)
+				| params.getPackedColor(cmykKeyBits, xyzKeyBits);
+	}
+
+	/**
+	 * Builds the cache key for a conversion - packing source & target types, crude flag, profile pair id
+	 * and packed source color into a long
+	 *
+	 * @param params the conversion params
+	 * @param intern whether to intern the profile pair (only done once a conversion has succeeded - so
+	 *               that requests for non-existent profiles cannot use up profile pair ids)
+	 * @return the key (or NO_CACHE_KEY if the profile pair has no id)
+	 */
+	private long cacheKey(ColorParams params, boolean intern) {
+		int profilePairId = intern ? profilePairIds.intern(params.getSourceProfile(), params.getTargetProfile())
+				: profilePairIds.find(params.getSourceProfile(), params.getTargetProfile());
+		if (profilePairId == ProfilePairIds.UNKNOWN) {
+			return NO_CACHE_KEY;
 		}
+		return ((long)params.getSourceType().ordinal() << SOURCE_TYPE_SHIFT)
+				| ((long)params.getTargetType().ordinal() << TARGET_TYPE_SHIFT)
+				| (params.isCrudeConversion() ? 1L << CRUDE_SHIFT : 0L)
+				| ((long)profilePairId << PROFILE_PAIR_ID_SHIFT)
+				| params.getPackedColor(cmykKeyBits, xyzKeyBits);
 	}
 
 	private void checkCorrectColorSpace(String profile, ColorType requiredType, ICC_ColorSpace colorSpace) throws BadRequestException {
@@ -19,31 +19,476 @@ package com.adeptions.colors.domain.services;
 
 import com.adeptions.colors.domain.components.Configuration;
 import com.adeptions.colors.domain.components.PooledColorSpaceFactory;
+import com.adeptions.colors.domain.utils.LatencyHistogram;
+import com.adeptions.colors.enums.ColorSpaceStrategy;
+import com.adeptions.colors.exceptions.ServiceUnavailableException;
 import org.apache.commons.pool2.impl.GenericKeyedObjectPool;
+import org.apache.commons.pool2.impl.GenericKeyedObjectPoolConfig;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
 import java.awt.color.ICC_ColorSpace;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Pool for the ICC_ColorSpace objects
  * It's really only the ICC_Profile that isn't thread safe and requires pooling
  * but also the performance of conversions by the actual ICC_ColorSpace is improved by
  * keeping them and re-using them (the first conversion requires the profile to be processed)
+ *
+ * With the thread-affine strategy each thread keeps its own instances (so get/release do not
+ * go through the commons pool at all)
+ *
+ * Instances are validated (against the installed version of their profile) when borrowed and returned.
+ *
+ * Pooled borrows go through admission control - when all instances of a profile are in use only a bounded
+ * number of requests may wait (each for a bounded time) and the rest are rejected with a ServiceUnavailableException.
+ * Admission is also what applies per-profile limits (the commons pool only has limits for all keys) and, in
+ * adaptive mode, grows or shrinks each profile's capacity according to how contended it has been.
  */
 @Service
 public class ColorSpacePool {
 	private GenericKeyedObjectPool<String,ICC_ColorSpace> pool;
+	private ThreadColorSpaces threadColorSpaces;
+	private ScheduledExecutorService sweeper;
+	private final Set<String> profiles = ConcurrentHashMap.newKeySet();
+	private final LatencyHistogram borrowWait = new LatencyHistogram();
+	private final LongAdder exhaustedCount = new LongAdder();
+	private final ConcurrentMap<String,Admission> admissions = new ConcurrentHashMap<String,Admission>();
+	private int defaultMaxPerKey;
+	private int defaultMaxIdlePerKey;
+	private Map<String,Integer> profileMax;
+	private Map<String,Integer> profileMaxIdle;
+	private boolean adaptive;
+	private int adaptiveMinPerKey;
+	private ScheduledExecutorService sizer;
+	private int admissionQueueSize;
+	private long admissionMaxWait;
+	private long retryAfter;
+	private final LongAdder rejectedQueueFull = new LongAdder();
+	private final LongAdder rejectedTimedOut = new LongAdder();
 
 	public ColorSpacePool(Configuration config,
 						  PooledColorSpaceFactory pooledColorSpaceFactory) {
-		pool = new GenericKeyedObjectPool<String,ICC_ColorSpace>(pooledColorSpaceFactory, config.getColorSpacePoolConfig());
+		if (config.getColorSpaceStrategy() == ColorSpaceStrategy.THREAD_AFFINE) {
+			threadColorSpaces = new ThreadColorSpaces(pooledColorSpaceFactory, config.getColorSpaceThreadIdleTime());
+			sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "colorspace-sweeper");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			long interval = config.getColorSpaceThreadSweepInterval();
+			sweeper.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					threadColorSpaces.sweep();
+				}
+			}, interval, interval, TimeUnit.MILLISECONDS);
+		} else {
+			GenericKeyedObjectPoolConfig poolConfig = config.getColorSpacePoolConfig();
+			defaultMaxPerKey = poolConfig.getMaxTotalPerKey();
+			defaultMaxIdlePerKey = poolConfig.getMaxIdlePerKey();
+			profileMax = config.getColorSpacePoolProfileMax();
+			profileMaxIdle = config.getColorSpacePoolProfileMaxIdle();
+			// per-profile limits are applied here - so the commons pool limits must allow the largest of them...
+			if (defaultMaxPerKey > 0 && !profileMax.isEmpty()) {
+				poolConfig.setMaxTotalPerKey(Math.max(defaultMaxPerKey, Collections.max(profileMax.values())));
+			}
+			if (defaultMaxIdlePerKey >= 0 && !profileMaxIdle.isEmpty()) {
+				poolConfig.setMaxIdlePerKey(Math.max(defaultMaxIdlePerKey, Collections.max(profileMaxIdle.values())));
+			}
+			pool = new GenericKeyedObjectPool<String,ICC_ColorSpace>(pooledColorSpaceFactory, poolConfig);
+			// validation is what retires instances of a profile that has been reloaded...
+			pool.setTestOnBorrow(true);
+			pool.setTestOnReturn(true);
+			adaptive = config.isColorSpacePoolAdaptive();
+			adaptiveMinPerKey = config.getColorSpacePoolAdaptiveMinPerKey();
+			admissionQueueSize = config.getColorSpacePoolAdmissionQueueSize();
+			admissionMaxWait = config.getColorSpacePoolAdmissionMaxWait();
+			retryAfter = config.getAdmissionRetryAfter();
+			if (adaptive || !profileMaxIdle.isEmpty()) {
+				sizer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "colorspace-pool-sizer");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+				long interval = config.getColorSpacePoolAdaptiveInterval();
+				sizer.scheduleWithFixedDelay(new Runnable() {
+					@Override
+					public void run() {
+						resize();
+					}
+				}, interval, interval, TimeUnit.MILLISECONDS);
+			}
+		}
 	}
 
 	public ICC_ColorSpace get(String profile) throws Exception {
-		return pool.borrowObject(profile);
+		if (threadColorSpaces != null) {
+			return threadColorSpaces.get(profile);
+		}
+		long started = System.nanoTime();
+		Admission admission = admit(profile);
+		ICC_ColorSpace result = null;
+		try {
+			try {
+				result = pool.borrowObject(profile, remainingWait(started));
+			} catch (NoSuchElementException e) {
+				// a new instance fails validation if its profile was reloaded while it was being created - so try again...
+				result = pool.borrowObject(profile, remainingWait(started));
+			}
+		} catch (NoSuchElementException e) {
+			// pool exhausted (or timed out waiting)...
+			exhaustedCount.increment();
+			throw new ServiceUnavailableException("No color space available for profile '" + profile + "' - pool exhausted", retryAfter);
+		} finally {
+			borrowWait.recordSince(started);
+			if (result == null && admission != null) {
+				admission.release();
+			}
+		}
+		if (!profiles.contains(profile)) {
+			profiles.add(profile);
+		}
+		return result;
+	}
+
+	private long remainingWait(long started) {
+		return Math.max(1L, admissionMaxWait - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
 	}
 
 	public void release(String profile, ICC_ColorSpace colorSpace) {
-		pool.returnObject(profile, colorSpace);
+		if (pool != null) {
+			try {
+				pool.returnObject(profile, colorSpace);
+			} finally {
+				Admission admission = admissions.get(profile);
+				if (admission != null) {
+					admission.release();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Takes an admission permit for the profile - waiting (if the wait queue is not full) until one is free or
+	 * the max wait has elapsed
+	 *
+	 * @return the admission taken (or null if admission control does not apply)
+	 * @throws ServiceUnavailableException if the wait queue is full or no permit became free in time
+	 */
+	private Admission admit(String profile) throws ServiceUnavailableException {
+		Admission result = admissions.get(profile);
+		if (result == null) {
+			Integer max = profileMax.get(profile);
+			int capacity = max != null ? max : defaultMaxPerKey;
+			if (capacity <= 0) {
+				return null;
+			}
+			Integer maxIdle = profileMaxIdle.get(profile);
+			Admission added = new Admission(capacity, maxIdle != null ? maxIdle : defaultMaxIdlePerKey);
+			result = admissions.putIfAbsent(profile, added);
+			if (result == null) {
+				result = added;
+			}
+		}
+		if (result.permits.tryAcquire()) {
+			result.acquired();
+			return result;
+		}
+		result.contended.increment();
+		if (result.waiting.incrementAndGet() > admissionQueueSize) {
+			result.waiting.decrementAndGet();
+			result.rejected.increment();
+			rejectedQueueFull.increment();
+			throw new ServiceUnavailableException("Too many requests waiting for profile '" + profile + "'", retryAfter);
+		}
+		boolean acquired = false;
+		try {
+			acquired = result.permits.tryAcquire(admissionMaxWait, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			result.waiting.decrementAndGet();
+		}
+		if (!acquired) {
+			result.rejected.increment();
+			rejectedTimedOut.increment();
+			throw new ServiceUnavailableException("Timed out waiting for profile '" + profile + "'", retryAfter);
+		}
+		result.acquired();
+		return result;
+	}
+
+	/**
+	 * Adapts each profile's capacity to the load seen since the last run (if adaptive) and destroys idle
+	 * instances beyond each profile's idle limit
+	 */
+	private void resize() {
+		for (Map.Entry<String,Admission> entry: admissions.entrySet()) {
+			Admission admission = entry.getValue();
+			if (adaptive) {
+				admission.adapt(adaptiveMinPerKey);
+			}
+			int idleLimit = admission.maxIdle < 0 ? admission.capacity : Math.min(admission.maxIdle, admission.capacity);
+			try {
+				trimIdle(entry.getKey(), admission, idleLimit);
+			} catch (Exception e) {
+				// instances get trimmed on the next run...
+			}
+		}
+	}
+
+	/**
+	 * Destroys idle instances beyond the idle limit - only while the profile is not in use (all of its admission
+	 * permits are taken for the trim), so that trimming cannot take a slot from a request or borrow an instance
+	 * when there are none idle (which would create a new instance just to destroy it)
+	 */
+	private void trimIdle(String profile, Admission admission, int idleLimit) throws Exception {
+		if (pool.getNumIdle(profile) <= idleLimit) {
+			return;
+		}
+		int permits = admission.capacity;
+		if (!admission.permits.tryAcquire(permits)) {
+			// in use - trimmed on a later run...
+			return;
+		}
+		try {
+			// borrowing takes an idle instance (there is no commons pool call for destroying idle instances of one key)...
+			while (pool.getNumIdle(profile) > idleLimit) {
+				pool.invalidateObject(profile, pool.borrowObject(profile, 1L));
+			}
+		} catch (NoSuchElementException e) {
+			// idle instances failed validation (so were destroyed anyway)...
+		} finally {
+			admission.permits.release(permits);
+		}
+	}
+
+	/**
+	 * Replaces the instances for a profile (after a new version of the profile has been installed) - idle
+	 * instances are destroyed and the given number of new instances added (borrowed instances are destroyed
+	 * when they are returned)
+	 *
+	 * With the thread-affine strategy each thread replaces its own instance on next use.
+	 *
+	 * @param profile the profile name
+	 * @param instances the number of new instances to add
+	 * @throws Exception
+	 */
+	public void replaceInstances(String profile, int instances) throws Exception {
+		if (pool != null) {
+			pool.clear(profile);
+			for (int instance = 0; instance < instances; instance++) {
+				pool.addObject(profile);
+			}
+		}
+	}
+
+	/**
+	 * @return whether instances are thread-affine (i.e. releasing is unnecessary)
+	 */
+	public boolean isThreadAffine() {
+		return threadColorSpaces != null;
+	}
+
+	/**
+	 * @return the number of ICC_ColorSpace instances currently held (borrowed or idle)
+	 */
+	public int getInstanceCount() {
+		if (threadColorSpaces != null) {
+			return threadColorSpaces.getInstanceCount();
+		}
+		return pool.getNumActive() + pool.getNumIdle();
+	}
+
+	/**
+	 * @param profile the profile name
+	 * @return the number of ICC_ColorSpace instances currently held for the profile
+	 */
+	public int getInstanceCount(String profile) {
+		if (threadColorSpaces != null) {
+			return threadColorSpaces.getInstanceCount(profile);
+		}
+		return pool.getNumActive(profile) + pool.getNumIdle(profile);
+	}
+
+	/**
+	 * @return the profiles that color spaces have been obtained for
+	 */
+	public Set<String> getProfiles() {
+		return threadColorSpaces != null ? threadColorSpaces.getProfiles() : Collections.unmodifiableSet(profiles);
+	}
+
+	/**
+	 * @param profile the profile name
+	 * @return the number of pooled instances currently borrowed for the profile (always 0 for thread-affine)
+	 */
+	public int getActiveCount(String profile) {
+		return pool != null ? pool.getNumActive(profile) : 0;
+	}
+
+	/**
+	 * @param profile the profile name
+	 * @return the number of pooled instances currently idle for the profile (always 0 for thread-affine)
+	 */
+	public int getIdleCount(String profile) {
+		return pool != null ? pool.getNumIdle(profile) : 0;
+	}
+
+	/**
+	 * @return the time taken to borrow from the pool (not recorded for thread-affine)
+	 */
+	public LatencyHistogram getBorrowWait() {
+		return borrowWait;
+	}
+
+	/**
+	 * @return the number of times a borrow failed because the pool was exhausted
+	 */
+	public long getExhaustedCount() {
+		return exhaustedCount.sum();
+	}
+
+	/**
+	 * @return the number of borrows rejected by admission control because the wait queue was full
+	 */
+	public long getRejectedQueueFullCount() {
+		return rejectedQueueFull.sum();
+	}
+
+	/**
+	 * @return the number of borrows rejected by admission control because no instance became free in time
+	 */
+	public long getRejectedTimedOutCount() {
+		return rejectedTimedOut.sum();
+	}
+
+	/**
+	 * @param profile the profile name
+	 * @return the number of requests currently waiting for an instance of the profile
+	 */
+	public int getWaitingCount(String profile) {
+		Admission admission = admissions.get(profile);
+		return admission != null ? admission.waiting.get() : 0;
+	}
+
+	/**
+	 * @param profile the profile name
+	 * @return the number of instances the profile may currently have in use (or -1 if not limited)
+	 */
+	public int getCapacity(String profile) {
+		Admission admission = admissions.get(profile);
+		return admission != null ? admission.capacity : -1;
+	}
+
+	/**
+	 * @param profile the profile name
+	 * @return the number of borrows of the profile rejected by admission control
+	 */
+	public long getRejectedCount(String profile) {
+		Admission admission = admissions.get(profile);
+		return admission != null ? admission.rejected.sum() : 0L;
+	}
+
+	public long getCreatedCount() {
+		return pool != null ? pool.getCreatedCount() : 0L;
+	}
+
+	public long getDestroyedCount() {
+		return pool != null ? pool.getDestroyedCount() : 0L;
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (sweeper != null) {
+			sweeper.shutdownNow();
+		}
+		if (sizer != null) {
+			sizer.shutdownNow();
+		}
+	}
+
+	private static final class Admission {
+		private final AdmissionPermits permits;
+		private final int maxCapacity;
+		private final int maxIdle;
+		private volatile int capacity;
+		private final AtomicInteger waiting = new AtomicInteger();
+		private final LongAdder rejected = new LongAdder();
+		// load seen since the capacity was last adapted...
+		private final LongAdder contended = new LongAdder();
+		private final AtomicInteger inUse = new AtomicInteger();
+		private final AtomicInteger peakInUse = new AtomicInteger();
+
+		private Admission(int capacity, int maxIdle) {
+			this.permits = new AdmissionPermits(capacity);
+			this.maxCapacity = capacity;
+			this.maxIdle = maxIdle;
+			this.capacity = capacity;
+		}
+
+		private void acquired() {
+			int used = inUse.incrementAndGet();
+			int peak = peakInUse.get();
+			while (used > peak && !peakInUse.compareAndSet(peak, used)) {
+				peak = peakInUse.get();
+			}
+		}
+
+		private void release() {
+			inUse.decrementAndGet();
+			permits.release();
+		}
+
+		/**
+		 * Grows the capacity (by half) if requests have had to wait - otherwise shrinks it (by half the unused
+		 * capacity) towards the peak number of instances in use
+		 */
+		private void adapt(int minCapacity) {
+			long contentions = contended.sumThenReset();
+			int peak = peakInUse.getAndSet(inUse.get());
+			int current = capacity;
+			int adapted = current;
+			if (contentions > 0) {
+				adapted = Math.min(maxCapacity, current + Math.max(1, current / 2));
+			} else if (peak < current) {
+				adapted = Math.max(Math.min(minCapacity, maxCapacity), Math.max(peak, current - Math.max(1, (current - peak) / 2)));
+			}
+			if (adapted > current) {
+				permits.release(adapted - current);
+			} else if (adapted < current) {
+				permits.reduce(current - adapted);
+			}
+			capacity = adapted;
+		}
+	}
+
+	private static final class AdmissionPermits extends Semaphore {
+		private AdmissionPermits(int permits) {
+			super(permits, true);
+		}
+
+		private void reduce(int reduction) {
+			reducePermits(reduction);
+		}
 	}
 }
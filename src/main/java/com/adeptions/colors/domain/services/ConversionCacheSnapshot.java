@@ -0,0 +1,216 @@
+/*
+ * ConversionCacheSnapshot.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.services;
+
+import com.adeptions.colors.domain.components.Configuration;
+import com.adeptions.colors.domain.utils.CachedConversion;
+import com.adeptions.colors.domain.utils.MappedSlotTable;
+import com.adeptions.colors.dtos.ColorParams;
+import com.adeptions.colors.enums.ColorType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Snapshots the hottest converted color cache entries to a file on (graceful) shutdown - and restores them at
+ * startup (before the service reports ready), so that a restart does not start with a cold cache
+ *
+ * Entries are tagged with the contents of the profiles they were converted with - entries whose profiles
+ * have changed (or gone) by the time they are restored are discarded.
+ */
+@Service
+public class ConversionCacheSnapshot {
+	private static final int MAGIC = 0x434f4c53;
+	private static final int VERSION = 1;
+	private static final String NO_PROFILE = "";
+
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+	private Path file;
+	private int size;
+	private int packedColorFormat;
+	private volatile int restoredCount;
+
+	@Autowired
+	ColorConverter converter;
+
+	public ConversionCacheSnapshot(Configuration config) {
+		String filename = config.getConvertedColorCacheSnapshot();
+		file = filename != null && config.isUseConvertedColorCache() ? Paths.get(filename) : null;
+		size = config.getConvertedColorCacheSnapshotSize();
+		packedColorFormat = ColorParams.getPackedColorFormat(config.getConvertedColorCacheCmykBits(), config.getConvertedColorCacheXyzBits());
+	}
+
+	public boolean isEnabled() {
+		return file != null;
+	}
+
+	/**
+	 * Restores the converted color cache from the snapshot (if there is one)
+	 *
+	 * @return the number of entries restored
+	 */
+	public int restore() {
+		if (file == null) {
+			return 0;
+		}
+		long started = System.currentTimeMillis();
+		List<CachedConversion> conversions;
+		try {
+			conversions = read();
+		} catch (NoSuchFileException e) {
+			return 0;
+		} catch (IOException | RuntimeException e) {
+			logger.warn("Cannot read converted color cache snapshot '" + file + "' - " + e.getMessage());
+			return 0;
+		}
+		restoredCount = converter.restoreCached(conversions);
+		logger.info("Restored " + restoredCount + " of " + conversions.size() + " converted color cache entries in "
+				+ (System.currentTimeMillis() - started) + "ms");
+		return restoredCount;
+	}
+
+	/**
+	 * Writes the hottest converted color cache entries to the snapshot
+	 */
+	@PreDestroy
+	public void save() {
+		if (file == null || size == 0) {
+			return;
+		}
+		List<CachedConversion> conversions = converter.getHottestCached(size);
+		// written alongside then moved into place - so a partly written snapshot is never read...
+		Path writing = file.resolveSibling(file.getFileName() + ".tmp");
+		try {
+			write(writing, conversions);
+			Files.move(writing, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			logger.info("Saved " + conversions.size() + " converted color cache entries to snapshot '" + file + "'");
+		} catch (IOException e) {
+			logger.warn("Cannot write converted color cache snapshot '" + file + "' - " + e.getMessage());
+		}
+	}
+
+	public int getRestoredCount() {
+		return restoredCount;
+	}
+
+	/**
+	 * Writes the snapshot - the distinct conversions (types, profiles and tag) followed by the entries
+	 */
+	private void write(Path path, List<CachedConversion> conversions) throws IOException {
+		Map<String,Integer> groupIndices = new HashMap<String,Integer>();
+		List<CachedConversion> groups = new ArrayList<CachedConversion>();
+		int[] entryGroups = new int[conversions.size()];
+		for (int index = 0; index < conversions.size(); index++) {
+			CachedConversion conversion = conversions.get(index);
+			String group = conversion.getSourceType() + "|" + conversion.getSourceProfile() + "|" + conversion.getTargetType()
+					+ "|" + conversion.getTargetProfile() + "|" + conversion.isCrude() + "|" + conversion.getTag();
+			Integer groupIndex = groupIndices.get(group);
+			if (groupIndex == null) {
+				groupIndex = groups.size();
+				groupIndices.put(group, groupIndex);
+				groups.add(conversion);
+			}
+			entryGroups[index] = groupIndex;
+		}
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeInt(packedColorFormat);
+			output.writeInt(groups.size());
+			for (CachedConversion group: groups) {
+				output.writeByte(group.getSourceType().ordinal());
+				output.writeUTF(group.getSourceProfile() != null ? group.getSourceProfile() : NO_PROFILE);
+				output.writeByte(group.getTargetType().ordinal());
+				output.writeUTF(group.getTargetProfile() != null ? group.getTargetProfile() : NO_PROFILE);
+				output.writeBoolean(group.isCrude());
+				output.writeLong(group.getTag());
+			}
+			output.writeInt(conversions.size());
+			for (int index = 0; index < conversions.size(); index++) {
+				output.writeInt(entryGroups[index]);
+				output.writeLong(conversions.get(index).getPackedColor());
+				for (float value: PersistentConversionCache.components(conversions.get(index).getResult())) {
+					output.writeFloat(value);
+				}
+			}
+		}
+	}
+
+	private List<CachedConversion> read() throws IOException {
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+				throw new IOException("Not a snapshot file");
+			} else if (input.readInt() != packedColorFormat) {
+				// colors were packed differently - none of the entries would match...
+				logger.info("Converted color cache snapshot '" + file + "' has a different packed color format - not restored");
+				return new ArrayList<CachedConversion>();
+			}
+			ColorType[] colorTypes = ColorType.values();
+			CachedConversion[] groups = new CachedConversion[input.readInt()];
+			for (int index = 0; index < groups.length; index++) {
+				ColorType sourceType = colorTypes[input.readUnsignedByte()];
+				String sourceProfile = readProfile(input);
+				ColorType targetType = colorTypes[input.readUnsignedByte()];
+				String targetProfile = readProfile(input);
+				boolean crude = input.readBoolean();
+				long tag = input.readLong();
+				groups[index] = new CachedConversion(sourceType, sourceProfile, targetType, targetProfile, crude, 0L, tag, null);
+			}
+			int count = input.readInt();
+			List<CachedConversion> result = new ArrayList<CachedConversion>(count);
+			float[] values = new float[MappedSlotTable.VALUES];
+			for (int index = 0; index < count; index++) {
+				CachedConversion group = groups[input.readInt()];
+				long packedColor = input.readLong();
+				for (int value = 0; value < values.length; value++) {
+					values[value] = input.readFloat();
+				}
+				result.add(new CachedConversion(group.getSourceType(), group.getSourceProfile(), group.getTargetType(),
+						group.getTargetProfile(), group.isCrude(), packedColor, group.getTag(),
+						PersistentConversionCache.fromComponents(group.getTargetType(), values)));
+			}
+			return result;
+		}
+	}
+
+	private static String readProfile(DataInputStream input) throws IOException {
+		String result = input.readUTF();
+		if (result.contains("/") || result.contains("\\")) {
+			// profile names are only ever file names...
+			throw new IOException("Invalid profile name '" + result + "'");
+		}
+		return NO_PROFILE.equals(result) ? null : result;
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * ConversionETags.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.services;
+
+import com.adeptions.colors.domain.components.Configuration;
+import com.adeptions.colors.domain.components.PooledColorSpaceFactory;
+import com.adeptions.colors.dtos.ColorParams;
+import com.adeptions.colors.enums.ColorType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ETags (and Cache-Control) for conversion GETs
+ *
+ * A conversion result depends only on the conversion params and the contents of the profiles used - so the
+ * ETag is a 64-bit mix of the normalized params and the (catalog held) content hash prefixes of the profiles
+ * (a profile that is reloaded with different content therefore changes the ETag). ETags are weak if transform LUTs are in use - as the
+ * result of a conversion may then change (within tolerance) once a LUT has been built. ETags for CMYK and
+ * CIE-XYZ sources are also weak if converted colors are cached - as those colors are quantized in cache keys,
+ * so the result may be that of a nearby color that was converted (and cached) first.
+ */
+@Service
+public class ConversionETags {
+	private static final long NO_PROFILE_HASH = 1L;
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private boolean enabled;
+	private boolean weak;
+	private boolean quantizedWeak;
+	private String defaultCmykProfile;
+	private String cacheControl;
+
+	@Autowired
+	Profiles profiles;
+
+	public ConversionETags(Configuration config) {
+		enabled = config.isHttpCache();
+		weak = config.isUseTransformLuts();
+		quantizedWeak = config.isUseConvertedColorCache() || config.getConvertedColorCacheFile() != null;
+		defaultCmykProfile = config.getColorProfilesDefaultCmykProfile();
+		cacheControl = CacheControl.maxAge(config.getHttpCacheMaxAge(), TimeUnit.SECONDS).cachePublic().getHeaderValue();
+	}
+
+	/**
+	 * @param params the conversion params
+	 * @return the ETag (or null if HTTP caching is disabled or a profile used is not known)
+	 */
+	public String getETag(ColorParams params) {
+		if (!enabled) {
+			return null;
+		}
+		long hash = mix(((long)params.getSourceType().ordinal() << 8) | ((long)params.getTargetType().ordinal() << 1)
+				| (params.isCrudeConversion() ? 1L : 0L));
+		switch (params.getSourceType()) {
+			case RGB:
+				hash = mix(hash ^ ((params.getRedValue() << 16) | (params.getGreenValue() << 8) | params.getBlueValue()));
+				break;
+			case CMYK:
+				hash = mix(hash ^ exact(params.getCyanValue(), params.getMagentaValue()));
+				hash = mix(hash ^ exact(params.getYellowValue(), params.getBlackValue()));
+				break;
+			case XYZ:
+				hash = mix(hash ^ exact(params.getCieXValue(), params.getCieYValue()));
+				hash = mix(hash ^ exact(params.getCieZValue(), 0f));
+				break;
+		}
+		if (!params.isCrudeConversion()) {
+			long sourceHash = profileHash(params.getSourceProfile(), params.getSourceType());
+			long targetHash = profileHash(params.getTargetProfile(), params.getTargetType());
+			if (sourceHash == 0L || targetHash == 0L) {
+				return null;
+			}
+			hash = mix(mix(hash ^ sourceHash) ^ targetHash);
+		}
+		boolean quantized = quantizedWeak && params.getSourceType() != ColorType.RGB;
+		return (weak || quantized ? "W/\"" : "\"") + hex(hash) + "\"";
+	}
+
+	/**
+	 * @return the Cache-Control header value for conversion results
+	 */
+	public String getCacheControl() {
+		return cacheControl;
+	}
+
+	private static long exact(float value1, float value2) {
+		return ((long)Float.floatToIntBits(value1) << 32) | (Float.floatToIntBits(value2) & 0xffffffffL);
+	}
+
+	/**
+	 * @return the profile's content hash prefix - NO_PROFILE_HASH if no profile applies or 0 if the profile is not known
+	 */
+	private long profileHash(String profile, ColorType type) {
+		if (profile == null) {
+			// with no profile specified CMYK uses the default CMYK profile and RGB uses sRGB...
+			profile = type == ColorType.CMYK ? defaultCmykProfile : (type == ColorType.RGB ? PooledColorSpaceFactory.PROFILE_NAME_SRGB : null);
+		}
+		return profile == null ? NO_PROFILE_HASH : profiles.getContentHashPrefix(profile);
+	}
+
+	private static String hex(long hash) {
+		char[] chars = new char[16];
+		for (int index = chars.length - 1; index >= 0; index--) {
+			chars[index] = HEX_DIGITS[(int)hash & 15];
+			hash >>>= 4;
+		}
+		return new String(chars);
+	}
+
+	private static long mix(long hash) {
+		hash *= 0x9e3779b97f4a7c15L;
+		return hash ^ (hash >>> 32);
+	}
+}
@@ -0,0 +1,193 @@
+/*
+ * ConversionExecutor.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.services;
+
+import com.adeptions.colors.domain.components.Configuration;
+import com.adeptions.colors.dtos.ColorParams;
+import com.adeptions.colors.dtos.ConversionResult;
+import com.adeptions.colors.enums.ColorSpaceStrategy;
+import com.adeptions.colors.exceptions.ServiceUnavailableException;
+import org.apache.commons.pool2.impl.GenericKeyedObjectPoolConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs conversions on a bounded executor (sized to the color space pool) - so that request threads are
+ * not tied up waiting for color spaces or slow ICC transforms
+ *
+ * When the queue is full the conversion is rejected (its future completes with a ServiceUnavailableException)
+ * rather than queueing without limit or running on the request thread.
+ */
+@Service
+public class ConversionExecutor {
+	private final boolean enabled;
+	private final long timeout;
+	private final long retryAfter;
+	private ThreadPoolExecutor executor;
+	private final LongAdder rejected = new LongAdder();
+
+	@Autowired
+	ColorConverter converter;
+
+	public ConversionExecutor(Configuration config) {
+		enabled = config.isConversionAsync();
+		timeout = config.getConversionAsyncTimeout();
+		retryAfter = config.getAdmissionRetryAfter();
+		if (enabled) {
+			int threads = config.getConversionExecutorThreads();
+			if (threads <= 0) {
+				threads = poolSizedThreads(config);
+			}
+			final AtomicInteger threadCount = new AtomicInteger();
+			executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<Runnable>(config.getConversionExecutorQueueSize()),
+					new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable runnable) {
+							Thread thread = new Thread(runnable, "conversion-" + threadCount.incrementAndGet());
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+		}
+	}
+
+	/**
+	 * @return the number of threads - so that every thread can hold a source and a target color space without
+	 * exhausting the pool (or one per processor if the pool is unbounded or instances are thread-affine)
+	 */
+	private static int poolSizedThreads(Configuration config) {
+		int result = Runtime.getRuntime().availableProcessors();
+		if (config.getColorSpaceStrategy() != ColorSpaceStrategy.THREAD_AFFINE) {
+			GenericKeyedObjectPoolConfig poolConfig = config.getColorSpacePoolConfig();
+			int perKey = poolConfig.getMaxTotalPerKey();
+			int total = poolConfig.getMaxTotal();
+			if (total > 0) {
+				result = Math.max(1, total / 2);
+				if (perKey > 0) {
+					result = Math.min(result, perKey);
+				}
+			} else if (perKey > 0) {
+				result = perKey;
+			}
+		}
+		return result;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @return the time (in milliseconds) a request should wait for an asynchronous conversion
+	 */
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * @param params the conversion params
+	 * @return the future result of the conversion (the converted color cache is checked again when the
+	 * conversion runs - another request may have converted the same color in the meantime)
+	 */
+	public CompletableFuture<ConversionResult> convert(final ColorParams params) {
+		return submit(new Callable<ConversionResult>() {
+			@Override
+			public ConversionResult call() throws Exception {
+				ConversionResult result = converter.getCached(params);
+				return result != null ? result : converter.convertUncached(params);
+			}
+		});
+	}
+
+	/**
+	 * @param paramsList the params for each color
+	 * @return the future results of the conversions (in the same order as the params)
+	 */
+	public CompletableFuture<List<ConversionResult>> convertBatch(final List<ColorParams> paramsList) {
+		return submit(new Callable<List<ConversionResult>>() {
+			@Override
+			public List<ConversionResult> call() throws Exception {
+				return converter.convertBatch(paramsList);
+			}
+		});
+	}
+
+	private <T> CompletableFuture<T> submit(final Callable<T> task) {
+		final CompletableFuture<T> result = new CompletableFuture<T>();
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						result.complete(task.call());
+					} catch (Throwable e) {
+						result.completeExceptionally(e);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// queue full (or shutting down)...
+			rejected.increment();
+			result.completeExceptionally(new ServiceUnavailableException("Too many conversions in progress", retryAfter));
+		}
+		return result;
+	}
+
+	public int getThreads() {
+		return executor == null ? 0 : executor.getMaximumPoolSize();
+	}
+
+	public int getActiveCount() {
+		return executor == null ? 0 : executor.getActiveCount();
+	}
+
+	public int getQueued() {
+		return executor == null ? 0 : executor.getQueue().size();
+	}
+
+	public long getCompletedCount() {
+		return executor == null ? 0L : executor.getCompletedTaskCount();
+	}
+
+	/**
+	 * @return the number of conversions rejected because the queue was full
+	 */
+	public long getRejectedCount() {
+		return rejected.sum();
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+}
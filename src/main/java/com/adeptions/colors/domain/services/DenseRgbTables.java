@@ -0,0 +1,220 @@
+/*
+ * DenseRgbTables.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.services;
+
+import com.adeptions.colors.domain.components.Configuration;
+import com.adeptions.colors.domain.utils.DenseRgbTable;
+import com.adeptions.colors.domain.utils.TransformKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.awt.color.ICC_ColorSpace;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Dense (exact) lookup tables for the hottest 8-bit RGB source transforms
+ *
+ * Once a transform has been used for the configured number of conversions it is given a table
+ * (if the memory budget allows) - the table is then populated lazily by conversions that miss
+ * or, if eager population is configured, by a background thread
+ */
+@Service
+public class DenseRgbTables {
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+	private int maxTables;
+	private long minConversions;
+	private boolean eagerPopulation;
+	private final ConcurrentMap<TransformKey,DenseRgbTable> tables = new ConcurrentHashMap<TransformKey,DenseRgbTable>();
+	private final ConcurrentMap<TransformKey,LongAdder> conversionCounts = new ConcurrentHashMap<TransformKey,LongAdder>();
+	private final AtomicInteger allocatedTables = new AtomicInteger();
+	private ExecutorService populator;
+
+	@Autowired
+	ColorSpacePool colorSpacePool;
+
+	public DenseRgbTables(Configuration config) {
+		maxTables = (int)((config.getDenseRgbTablesMemoryMb() * 1024L * 1024L) / DenseRgbTable.MEMORY_SIZE);
+		minConversions = config.getDenseRgbTablesMinConversions();
+		eagerPopulation = config.isDenseRgbTablesEager();
+		if (maxTables > 0 && eagerPopulation) {
+			populator = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "dense-rgb-table-populator");
+					thread.setDaemon(true);
+					thread.setPriority(Thread.MIN_PRIORITY);
+					return thread;
+				}
+			});
+		}
+	}
+
+	public boolean isEnabled() {
+		return maxTables > 0;
+	}
+
+	public int getTableCount() {
+		return tables.size();
+	}
+
+	/**
+	 * @param key the transform (must have an RGB source)
+	 * @return the table (or null if the transform does not have one)
+	 */
+	public DenseRgbTable get(TransformKey key) {
+		return maxTables == 0 ? null : tables.get(key);
+	}
+
+	/**
+	 * Counts a (successful) conversion by a transform that does not have a table - once the transform
+	 * has been used enough it is given a table (if the memory budget allows)
+	 *
+	 * @param key the transform (must have an RGB source)
+	 */
+	public void countConversion(TransformKey key) {
+		if (maxTables == 0 || allocatedTables.get() >= maxTables) {
+			return;
+		}
+		LongAdder count = conversionCounts.get(key);
+		if (count == null) {
+			LongAdder added = new LongAdder();
+			count = conversionCounts.putIfAbsent(key, added);
+			if (count == null) {
+				count = added;
+			}
+		}
+		count.increment();
+		if (count.sum() >= minConversions) {
+			allocate(key);
+		}
+	}
+
+	/**
+	 * Drops the tables (and conversion counts) of transforms that use a profile (e.g. because the profile
+	 * has been reloaded) - freeing their share of the memory budget
+	 *
+	 * @param profile the profile name
+	 * @return the number of tables dropped
+	 */
+	public int invalidateProfile(String profile) {
+		int result = 0;
+		synchronized (tables) {
+			for (TransformKey key: tables.keySet()) {
+				if (key.references(profile) && tables.remove(key) != null) {
+					allocatedTables.decrementAndGet();
+					result++;
+				}
+			}
+		}
+		for (TransformKey key: conversionCounts.keySet()) {
+			if (key.references(profile)) {
+				conversionCounts.remove(key);
+			}
+		}
+		return result;
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (populator != null) {
+			populator.shutdownNow();
+		}
+	}
+
+	private void allocate(TransformKey key) {
+		synchronized (tables) {
+			if (!tables.containsKey(key) && allocatedTables.get() < maxTables) {
+				DenseRgbTable result = new DenseRgbTable(key.getTargetType());
+				tables.put(key, result);
+				allocatedTables.incrementAndGet();
+				conversionCounts.remove(key);
+				logger.info("Allocated dense RGB table for " + key + " (" + tables.size() + " of " + maxTables + ")");
+				if (populator != null) {
+					populator.submit(new Populator(key, result));
+				}
+			}
+			if (allocatedTables.get() >= maxTables) {
+				// no more tables can be allocated - so no need to keep counting...
+				conversionCounts.clear();
+			}
+		}
+	}
+
+	private void populate(TransformKey key, DenseRgbTable table) throws Exception {
+		ICC_ColorSpace sourceColorSpace = null;
+		ICC_ColorSpace targetColorSpace = null;
+		try {
+			if (key.getSourceProfile() != null) {
+				sourceColorSpace = colorSpacePool.get(key.getSourceProfile());
+			}
+			if (key.getTargetProfile() != null) {
+				targetColorSpace = colorSpacePool.get(key.getTargetProfile());
+			}
+			float[] rgb = new float[3];
+			for (int index = 0; index < DenseRgbTable.ENTRIES; index++) {
+				if (!table.contains(index)) {
+					rgb[0] = ((index >> 16) & 0xff) / 255f;
+					rgb[1] = ((index >> 8) & 0xff) / 255f;
+					rgb[2] = (index & 0xff) / 255f;
+					table.put(index, key.apply(sourceColorSpace, targetColorSpace, rgb));
+				}
+				if ((index & 0xffff) == 0 && (Thread.currentThread().isInterrupted() || tables.get(key) != table)) {
+					// shutting down (or the table has been dropped)...
+					return;
+				}
+			}
+			logger.info("Populated dense RGB table for " + key);
+		} finally {
+			if (sourceColorSpace != null) {
+				colorSpacePool.release(key.getSourceProfile(), sourceColorSpace);
+			}
+			if (targetColorSpace != null) {
+				colorSpacePool.release(key.getTargetProfile(), targetColorSpace);
+			}
+		}
+	}
+
+	private class Populator implements Runnable {
+		private final TransformKey key;
+		private final DenseRgbTable table;
+
+		private Populator(TransformKey key, DenseRgbTable table) {
+			this.key = key;
+			this.table = table;
+		}
+
+		@Override
+		public void run() {
+			try {
+				populate(key, table);
+			} catch (Exception e) {
+				// the table still gets populated lazily by conversions
+				logger.warn("Cannot populate dense RGB table for " + key + " - " + e.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,278 @@
+/*
+ * ImageConverter.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.services;
+
+import com.adeptions.colors.domain.components.Configuration;
+import com.adeptions.colors.domain.components.PooledColorSpaceFactory;
+import com.adeptions.colors.enums.ColorType;
+import com.adeptions.colors.exceptions.BadRequestException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.color.ICC_ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Converts whole images (RGB or CMYK rasters) to RGB or CMYK
+ *
+ * The image is split into strips of rows that are converted in parallel on a fork-join pool - each
+ * strip borrows its own color spaces (or uses the shared LUT/dense table for the transform) and keeps
+ * a small cache of the colors it has already converted (images tend to repeat colors a lot).
+ * RGB pixels are read as 8-bit sRGB values - a source profile, if given, is the RGB profile those values are in
+ * (so it cannot be given for an image that carries its own color space - its pixels are already converted to sRGB).
+ */
+@Service
+public class ImageConverter {
+	private static final int STRIP_ROWS = 16;
+	private static final int STRIP_CACHE_SIZE = 4096;
+	private static final float MAX_8BIT = 255f;
+
+	private long maxPixels;
+	private String defaultCmykProfile;
+	private ForkJoinPool forkJoinPool;
+
+	@Autowired
+	ColorConverter converter;
+
+	@Autowired
+	PooledColorSpaceFactory pooledColorSpaceFactory;
+
+	public ImageConverter(Configuration config) {
+		maxPixels = config.getImageMaxPixels();
+		defaultCmykProfile = config.getColorProfilesDefaultCmykProfile();
+		int parallelism = config.getImageParallelism();
+		forkJoinPool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param image the source image (RGB or CMYK)
+	 * @param sourceProfile the profile the source image is in (or null for sRGB/default CMYK)
+	 * @param targetType the target color type (RGB or CMYK)
+	 * @param targetProfile the target profile (or null for sRGB/default CMYK)
+	 * @return the converted image
+	 * @throws Exception
+	 */
+	public BufferedImage convert(BufferedImage image, String sourceProfile, ColorType targetType, String targetProfile) throws Exception {
+		if (targetType == ColorType.XYZ) {
+			throw new BadRequestException("Images can only be converted to RGB or CMYK");
+		}
+		checkSize(image.getWidth(), image.getHeight());
+		ColorSpace sourceColorSpace = image.getColorModel().getColorSpace();
+		ColorType sourceType = sourceColorSpace.getType() == ColorSpace.TYPE_CMYK ? ColorType.CMYK : ColorType.RGB;
+		if (sourceType == ColorType.RGB && sourceProfile != null && !sourceColorSpace.isCS_sRGB()) {
+			// reading the pixels as sRGB already converts from the image's own color space - applying the source profile would convert twice...
+			throw new BadRequestException("Image has its own color space - a source profile cannot be applied to it");
+		}
+		if (sourceType == ColorType.CMYK && sourceProfile == null) {
+			sourceProfile = defaultCmykProfile;
+		}
+		if (targetType == ColorType.CMYK && targetProfile == null) {
+			targetProfile = defaultCmykProfile;
+		}
+		BufferedImage result = createTargetImage(image, targetType, targetProfile);
+		ImageConversion conversion = new ImageConversion(image, sourceType, sourceProfile, result, targetType, targetProfile,
+				converter.getProfileInvalidations());
+		forkJoinPool.invoke(new Strips(conversion, 0, image.getHeight()));
+		if (conversion.failure.get() != null) {
+			throw conversion.failure.get();
+		}
+		return result;
+	}
+
+	/**
+	 * Checks image dimensions against the maximum pixels (e.g. from the image header - before it is decoded)
+	 *
+	 * @param width the image width
+	 * @param height the image height
+	 * @throws BadRequestException if the image is too big
+	 */
+	public void checkSize(long width, long height) throws BadRequestException {
+		if (width * height > maxPixels) {
+			throw new BadRequestException("Image exceeds maximum of " + maxPixels + " pixels");
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		forkJoinPool.shutdownNow();
+	}
+
+	private BufferedImage createTargetImage(BufferedImage image, ColorType targetType, String targetProfile) throws Exception {
+		if (targetType == ColorType.CMYK) {
+			// the image keeps its color space - so it gets its own (un-pooled) instance...
+			ICC_ColorSpace colorSpace = pooledColorSpaceFactory.makeObject(targetProfile).getObject();
+			if (colorSpace.getType() != ColorSpace.TYPE_CMYK) {
+				throw new BadRequestException("Profile '" + targetProfile + "' is not a CMYK profile");
+			}
+			ComponentColorModel colorModel = new ComponentColorModel(colorSpace, false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+			return new BufferedImage(colorModel, colorModel.createCompatibleWritableRaster(image.getWidth(), image.getHeight()), false, null);
+		}
+		return new BufferedImage(image.getWidth(), image.getHeight(),
+				image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+	}
+
+	private void convertStrip(ImageConversion conversion, int fromRow, int toRow) throws Exception {
+		int width = conversion.source.getWidth();
+		Raster sourceRaster = conversion.source.getRaster();
+		WritableRaster targetRaster = conversion.target.getRaster();
+		int[] sourceSampleMaxes = new int[4];
+		for (int band = 0; band < 4 && conversion.sourceType == ColorType.CMYK; band++) {
+			sourceSampleMaxes[band] = (1 << sourceRaster.getSampleModel().getSampleSize(band)) - 1;
+		}
+		int[] sourceRow = new int[conversion.sourceType == ColorType.CMYK ? width * sourceRaster.getNumBands() : width];
+		int[] targetRow = new int[conversion.targetType == ColorType.CMYK ? width * 4 : width];
+		long[] cacheKeys = new long[STRIP_CACHE_SIZE];
+		int[] cacheValues = new int[STRIP_CACHE_SIZE];
+		Arrays.fill(cacheKeys, -1L);
+		float[] input = new float[conversion.sourceType == ColorType.CMYK ? 4 : 3];
+		Map<String,ICC_ColorSpace> colorSpacesUsed = converter.colorSpacesUsedMap();
+		try {
+			for (int row = fromRow; row < toRow; row++) {
+				if (conversion.failure.get() != null) {
+					return;
+				}
+				if (conversion.sourceType == ColorType.CMYK) {
+					sourceRaster.getPixels(0, row, width, 1, sourceRow);
+				} else {
+					conversion.source.getRGB(0, row, width, 1, sourceRow, 0, width);
+				}
+				for (int x = 0; x < width; x++) {
+					int packedSource = packSource(conversion, sourceRow, x, sourceSampleMaxes);
+					long cacheKey = packedSource & 0xffffffffL;
+					int cacheIndex = (packedSource * 0x9e3779b9) >>> 20;
+					int packedTarget;
+					if (cacheKeys[cacheIndex] == cacheKey) {
+						packedTarget = cacheValues[cacheIndex];
+					} else {
+						for (int channel = 0; channel < input.length; channel++) {
+							input[channel] = ((packedSource >>> ((input.length - 1 - channel) * 8)) & 0xff) / MAX_8BIT;
+						}
+						packedTarget = conversion.identity ? packedSource :
+								pack(converter.transform(conversion.sourceType, conversion.sourceProfile, conversion.targetType, conversion.targetProfile, input, colorSpacesUsed, conversion.invalidations));
+						cacheKeys[cacheIndex] = cacheKey;
+						cacheValues[cacheIndex] = packedTarget;
+					}
+					if (conversion.targetType == ColorType.CMYK) {
+						for (int channel = 0; channel < 4; channel++) {
+							targetRow[(x * 4) + channel] = (packedTarget >>> ((3 - channel) * 8)) & 0xff;
+						}
+					} else {
+						// keep the alpha from the source (if any)...
+						int alpha = conversion.sourceType == ColorType.RGB ? sourceRow[x] & 0xff000000 : 0xff000000;
+						targetRow[x] = alpha | (packedTarget & 0xffffff);
+					}
+				}
+				if (conversion.targetType == ColorType.CMYK) {
+					targetRaster.setPixels(0, row, width, 1, targetRow);
+				} else {
+					conversion.target.setRGB(0, row, width, 1, targetRow, 0, width);
+				}
+			}
+		} finally {
+			converter.releaseColorSpaces(colorSpacesUsed);
+		}
+	}
+
+	/**
+	 * Packs a source pixel as 8-bit components (RGB in the low 24 bits, CMYK in all 32)
+	 */
+	private static int packSource(ImageConversion conversion, int[] sourceRow, int x, int[] sampleMaxes) {
+		if (conversion.sourceType == ColorType.RGB) {
+			return sourceRow[x] & 0xffffff;
+		}
+		int bands = sourceRow.length / conversion.source.getWidth();
+		int result = 0;
+		for (int channel = 0; channel < 4; channel++) {
+			int sample = sourceRow[(x * bands) + channel];
+			result = (result << 8) | (sampleMaxes[channel] == 255 ? sample : Math.round((sample * MAX_8BIT) / sampleMaxes[channel]));
+		}
+		return result;
+	}
+
+	private static int pack(float[] components) {
+		int result = 0;
+		for (float component: components) {
+			result = (result << 8) | Math.max(0, Math.min(255, Math.round(component * MAX_8BIT)));
+		}
+		return result;
+	}
+
+	private static final class ImageConversion {
+		private final BufferedImage source;
+		private final ColorType sourceType;
+		private final String sourceProfile;
+		private final BufferedImage target;
+		private final ColorType targetType;
+		private final String targetProfile;
+		private final boolean identity;
+		private final long invalidations;
+		private final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+
+		private ImageConversion(BufferedImage source, ColorType sourceType, String sourceProfile,
+								BufferedImage target, ColorType targetType, String targetProfile, long invalidations) {
+			this.source = source;
+			this.sourceType = sourceType;
+			this.sourceProfile = sourceProfile;
+			this.target = target;
+			this.targetType = targetType;
+			this.targetProfile = targetProfile;
+			identity = sourceType == targetType
+					&& (sourceProfile == null ? targetProfile == null : sourceProfile.equals(targetProfile));
+			this.invalidations = invalidations;
+		}
+	}
+
+	private class Strips extends RecursiveAction {
+		private final ImageConversion conversion;
+		private final int fromRow;
+		private final int toRow;
+
+		private Strips(ImageConversion conversion, int fromRow, int toRow) {
+			this.conversion = conversion;
+			this.fromRow = fromRow;
+			this.toRow = toRow;
+		}
+
+		@Override
+		protected void compute() {
+			if (toRow - fromRow > STRIP_ROWS) {
+				int middle = (fromRow + toRow) >>> 1;
+				invokeAll(new Strips(conversion, fromRow, middle), new Strips(conversion, middle, toRow));
+				return;
+			}
+			try {
+				convertStrip(conversion, fromRow, toRow);
+			} catch (Exception e) {
+				// only the first failure is reported - the remaining strips give up...
+				conversion.failure.compareAndSet(null, e);
+			}
+		}
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Metrics.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.services;
+
+import com.adeptions.colors.domain.components.ProfileByteStore;
+import com.adeptions.colors.domain.utils.ConcurrentLfuCache;
+import com.adeptions.colors.domain.utils.LatencyHistogram;
+import com.adeptions.colors.dtos.ConversionResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Gathers the instrumentation of the conversion services (conversion latencies by path, color space
+ * pool usage and waits, converted color cache, transform table and profile byte store stats)
+ *
+ * Counts are cumulative since startup - rates are left to whatever scrapes them.
+ */
+@Service
+public class Metrics {
+	@Autowired
+	ColorConverter converter;
+
+	@Autowired
+	ColorSpacePool colorSpacePool;
+
+	@Autowired
+	TransformLuts transformLuts;
+
+	@Autowired
+	DenseRgbTables denseRgbTables;
+
+	@Autowired
+	ProfileByteStore profileByteStore;
+
+	@Autowired
+	ConversionExecutor conversionExecutor;
+
+	@Autowired
+	PersistentConversionCache persistentCache;
+
+	public Map<String,Object> getMetrics() {
+		Map<String,Object> result = new LinkedHashMap<String,Object>();
+		result.put("conversions", getConversionMetrics());
+		result.put("convertedColorCache", getCacheMetrics());
+		result.put("colorSpaces", getColorSpaceMetrics());
+		Map<String,Object> tables = new LinkedHashMap<String,Object>();
+		tables.put("transformLuts", transformLuts.getLutCount());
+		tables.put("denseRgbTables", denseRgbTables.getTableCount());
+		result.put("transformTables", tables);
+		Map<String,Object> profileBytes = new LinkedHashMap<String,Object>();
+		profileBytes.put("profiles", profileByteStore.getProfileCount());
+		profileBytes.put("heapBytes", profileByteStore.getHeapBytes());
+		result.put("profileBytes", profileBytes);
+		Map<String,Object> executor = new LinkedHashMap<String,Object>();
+		executor.put("enabled", conversionExecutor.isEnabled());
+		executor.put("threads", conversionExecutor.getThreads());
+		executor.put("active", conversionExecutor.getActiveCount());
+		executor.put("queued", conversionExecutor.getQueued());
+		executor.put("completed", conversionExecutor.getCompletedCount());
+		executor.put("rejected", conversionExecutor.getRejectedCount());
+		result.put("conversionExecutor", executor);
+		return result;
+	}
+
+	private Map<String,Object> getConversionMetrics() {
+		Map<String,Object> result = new LinkedHashMap<String,Object>();
+		Map<String,Object> paths = new LinkedHashMap<String,Object>();
+		for (Map.Entry<String,LatencyHistogram> path: converter.getPathLatencies().entrySet()) {
+			paths.put(path.getKey(), path.getValue().getSnapshot());
+		}
+		result.put("paths", paths);
+		result.put("cacheHits", converter.getCacheHitLatency().getSnapshot());
+		result.put("errors", converter.getConversionErrors());
+		return result;
+	}
+
+	private Map<String,Object> getCacheMetrics() {
+		Map<String,Object> result = new LinkedHashMap<String,Object>();
+		ConcurrentLfuCache<ConversionResult> cache = converter.getConvertedColorCache();
+		result.put("enabled", cache != null);
+		if (cache != null) {
+			long hits = cache.getHits();
+			long misses = cache.getMisses();
+			result.put("capacity", cache.getCapacity());
+			result.put("size", cache.getSize());
+			result.put("hits", hits);
+			result.put("misses", misses);
+			result.put("evictions", cache.getEvictions());
+			result.put("hitRatio", hits + misses == 0 ? 0d : hits / (double)(hits + misses));
+		}
+		Map<String,Object> persistent = new LinkedHashMap<String,Object>();
+		persistent.put("enabled", persistentCache.isEnabled());
+		if (persistentCache.isEnabled()) {
+			persistent.put("slots", persistentCache.getSlots());
+			persistent.put("hits", persistentCache.getHits());
+			persistent.put("misses", persistentCache.getMisses());
+			persistent.put("writes", persistentCache.getWrites());
+			persistent.put("droppedWrites", persistentCache.getDroppedWrites());
+		}
+		result.put("persistent", persistent);
+		return result;
+	}
+
+	private Map<String,Object> getColorSpaceMetrics() {
+		Map<String,Object> result = new LinkedHashMap<String,Object>();
+		boolean threadAffine = colorSpacePool.isThreadAffine();
+		result.put("threadAffine", threadAffine);
+		result.put("instances", colorSpacePool.getInstanceCount());
+		if (!threadAffine) {
+			result.put("created", colorSpacePool.getCreatedCount());
+			result.put("destroyed", colorSpacePool.getDestroyedCount());
+			result.put("exhausted", colorSpacePool.getExhaustedCount());
+			result.put("borrowWait", colorSpacePool.getBorrowWait().getSnapshot());
+			result.put("rejectedQueueFull", colorSpacePool.getRejectedQueueFullCount());
+			result.put("rejectedTimedOut", colorSpacePool.getRejectedTimedOutCount());
+		}
+		Map<String,Object> profiles = new LinkedHashMap<String,Object>();
+		for (String profile: new TreeSet<String>(colorSpacePool.getProfiles())) {
+			Map<String,Object> profileMetrics = new LinkedHashMap<String,Object>();
+			if (threadAffine) {
+				profileMetrics.put("instances", colorSpacePool.getInstanceCount(profile));
+			} else {
+				profileMetrics.put("active", colorSpacePool.getActiveCount(profile));
+				profileMetrics.put("idle", colorSpacePool.getIdleCount(profile));
+				profileMetrics.put("capacity", colorSpacePool.getCapacity(profile));
+				profileMetrics.put("waiting", colorSpacePool.getWaitingCount(profile));
+				profileMetrics.put("rejected", colorSpacePool.getRejectedCount(profile));
+			}
+			profiles.put(profile, profileMetrics);
+		}
+		result.put("profiles", profiles);
+		return result;
+	}
+}
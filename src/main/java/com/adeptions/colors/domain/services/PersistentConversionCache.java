@@ -0,0 +1,264 @@
+/*
+ * PersistentConversionCache.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.services;
+
+import com.adeptions.colors.domain.components.Configuration;
+import com.adeptions.colors.domain.components.PooledColorSpaceFactory;
+import com.adeptions.colors.domain.components.ProfileByteStore;
+import com.adeptions.colors.domain.components.ProfileBytes;
+import com.adeptions.colors.domain.utils.MappedSlotTable;
+import com.adeptions.colors.domain.utils.TransformKey;
+import com.adeptions.colors.dtos.ColorParams;
+import com.adeptions.colors.dtos.ConversionResult;
+import com.adeptions.colors.enums.ColorType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Second-tier converted color cache held in a memory-mapped file - so that converted colors survive a restart
+ *
+ * Entries are keyed by the conversion (types, crude flag and packed source color - but not profile names)
+ * and tagged with the transform used and the content hashes of its profiles; so an entry is only ever served
+ * for the same transform and while its profiles are still installed with the same content. Writes are made asynchronously by a single
+ * thread (and are dropped if that thread cannot keep up).
+ */
+@Service
+public class PersistentConversionCache {
+	public static final long NO_TAG = 0L;
+
+	private static final int WRITE_QUEUE_SIZE = 10000;
+	private static final long CRUDE_TAG = 0x6372756465L;
+	private static final long IDENTITY_TAG = 0x6964656e74L;
+	private static final long SRGB_HASH = 0x73524742L;
+	private static final long NO_PROFILE_HASH = 0x78797aL;
+	private static final long WRITER_SHUTDOWN_WAIT = 5000L;
+
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+	private MappedSlotTable table;
+	private ThreadPoolExecutor writer;
+	private final long tagSeed;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder writes = new LongAdder();
+	private final LongAdder droppedWrites = new LongAdder();
+
+	@Autowired
+	ProfileByteStore profileByteStore;
+
+	public PersistentConversionCache(Configuration config) {
+		// results converted through transform LUTs are approximate - so they are not served when LUTs are not in use (and vice versa)...
+		tagSeed = config.isUseTransformLuts() ? 0x9e3779b97f4a7c15L : 0x27d4eb2f165667c5L;
+		String file = config.getConvertedColorCacheFile();
+		if (file != null) {
+			try {
+				table = new MappedSlotTable(Paths.get(file), config.getConvertedColorCacheFileSlots(),
+						ColorParams.getPackedColorFormat(config.getConvertedColorCacheCmykBits(), config.getConvertedColorCacheXyzBits()));
+				logger.info("Opened persistent converted color cache '" + file + "' (" + table.getSlots() + " slots"
+						+ (table.isCleared() ? ", empty" : "") + ")");
+			} catch (IOException e) {
+				logger.warn("Cannot open persistent converted color cache '" + file + "' - not used: " + e.getMessage());
+			}
+		}
+		if (table != null) {
+			writer = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<Runnable>(WRITE_QUEUE_SIZE),
+					new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable runnable) {
+							Thread thread = new Thread(runnable, "converted-color-cache-writer");
+							thread.setDaemon(true);
+							thread.setPriority(Thread.MIN_PRIORITY);
+							return thread;
+						}
+					},
+					new RejectedExecutionHandler() {
+						@Override
+						public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+							droppedWrites.increment();
+						}
+					});
+		}
+	}
+
+	public boolean isEnabled() {
+		return table != null;
+	}
+
+	/**
+	 * Gets the tag for a conversion - a hash of the transform the conversion resolves to (which profiles, if any,
+	 * are applied on each side) and the contents of those profiles
+	 *
+	 * The key of an entry does not include profile names - so the tag must distinguish conversions that take
+	 * different paths (e.g. an identity conversion, or RGB via toRGB/fromRGB rather than an explicit sRGB profile).
+	 *
+	 * @param transform the resolved transform (or null if the conversion is an identity - no transform applied)
+	 * @param crude whether a crude conversion
+	 * @return the tag (or NO_TAG if a profile used is not known)
+	 */
+	public long tag(TransformKey transform, boolean crude) {
+		if (crude) {
+			// crude conversions don't use profiles...
+			return CRUDE_TAG;
+		} else if (transform == null) {
+			return IDENTITY_TAG;
+		}
+		long sourceHash = profileHash(transform.getSourceProfile());
+		long targetHash = profileHash(transform.getTargetProfile());
+		if (sourceHash == NO_TAG || targetHash == NO_TAG) {
+			return NO_TAG;
+		}
+		long types = (transform.getSourceType().ordinal() << 2) | transform.getTargetType().ordinal();
+		long result = mix(mix(mix(tagSeed ^ types) ^ sourceHash) ^ targetHash);
+		return result == NO_TAG ? 1L : result;
+	}
+
+	/**
+	 * @param key the conversion key (without profile names)
+	 * @param tag the tag of the conversion
+	 * @param targetType the target color type
+	 * @return the cached result (or null if not cached)
+	 */
+	public ConversionResult get(long key, long tag, ColorType targetType) {
+		float[] values = new float[MappedSlotTable.VALUES];
+		if (tag == NO_TAG || !table.get(key, tag, values)) {
+			misses.increment();
+			return null;
+		}
+		hits.increment();
+		return fromComponents(targetType, values);
+	}
+
+	/**
+	 * Queues a result to be written to the cache
+	 *
+	 * @param key the conversion key (without profile names)
+	 * @param tag the tag of the conversion
+	 * @param result the result
+	 */
+	public void put(final long key, final long tag, ConversionResult result) {
+		if (tag == NO_TAG) {
+			return;
+		}
+		final float[] values = components(result);
+		writer.execute(new Runnable() {
+			@Override
+			public void run() {
+				table.put(key, tag, values);
+				writes.increment();
+			}
+		});
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (writer != null) {
+			// let queued writes finish...
+			writer.shutdown();
+			try {
+				writer.awaitTermination(WRITER_SHUTDOWN_WAIT, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			table.force();
+		}
+	}
+
+	public int getSlots() {
+		return table != null ? table.getSlots() : 0;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getWrites() {
+		return writes.sum();
+	}
+
+	public long getDroppedWrites() {
+		return droppedWrites.sum();
+	}
+
+	/**
+	 * @return the components of a result (CMYK, RGB as 0 to 1 or CIE-XYZ - padded to 4 values)
+	 */
+	static float[] components(ConversionResult result) {
+		float[] values = new float[MappedSlotTable.VALUES];
+		if (result.getC() != null) {
+			values[0] = result.getC();
+			values[1] = result.getM();
+			values[2] = result.getY();
+			values[3] = result.getK();
+		} else if (result.getrPercent() != null) {
+			values[0] = result.getrPercent();
+			values[1] = result.getgPercent();
+			values[2] = result.getbPercent();
+		} else {
+			values[0] = result.getCieX();
+			values[1] = result.getCieY();
+			values[2] = result.getCieZ();
+		}
+		return values;
+	}
+
+	static ConversionResult fromComponents(ColorType targetType, float[] values) {
+		switch (targetType) {
+			case CMYK:
+				return ConversionResult.createCmykResult(values);
+			case RGB:
+				return ConversionResult.createRgbResult(values);
+			default:
+				return ConversionResult.createXyzResult(values);
+		}
+	}
+
+	/**
+	 * @param profile the (resolved) profile name - null meaning no profile is applied on that side (e.g. RGB
+	 *                via toRGB/fromRGB or CIE-XYZ)
+	 */
+	private long profileHash(String profile) {
+		if (profile == null) {
+			return NO_PROFILE_HASH;
+		} else if (PooledColorSpaceFactory.PROFILE_NAME_SRGB.equals(profile)) {
+			return SRGB_HASH;
+		}
+		ProfileBytes bytes = profileByteStore.get(profile);
+		return bytes == null ? NO_TAG : bytes.getContentHashPrefix();
+	}
+
+	private static long mix(long hash) {
+		hash *= 0x9e3779b97f4a7c15L;
+		return hash ^ (hash >>> 31);
+	}
+}
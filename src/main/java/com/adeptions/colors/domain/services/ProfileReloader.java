@@ -0,0 +1,124 @@
+/*
+ * ProfileReloader.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.services;
+
+import com.adeptions.colors.domain.components.PooledColorSpaceFactory;
+import com.adeptions.colors.domain.components.ProfileByteStore;
+import com.adeptions.colors.domain.components.ProfileBytes;
+import org.apache.commons.pool2.PooledObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.awt.color.ICC_ColorSpace;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hot reloads profiles whose content has changed - without a restart losing all warm state
+ *
+ * New color space instances are created (and warmed) from the new version before it is installed;
+ * then the instances for just that profile are swapped and only the cached conversions, transform LUTs
+ * and dense RGB tables that used the profile are dropped.
+ */
+@Service
+public class ProfileReloader {
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	@Autowired
+	ProfileByteStore profileByteStore;
+
+	@Autowired
+	PooledColorSpaceFactory pooledColorSpaceFactory;
+
+	@Autowired
+	ColorSpacePool colorSpacePool;
+
+	@Autowired
+	ColorConverter converter;
+
+	@Autowired
+	TransformLuts transformLuts;
+
+	@Autowired
+	DenseRgbTables denseRgbTables;
+
+	/**
+	 * Installs a new version of a profile (if the content has changed)
+	 *
+	 * @param profile the profile name
+	 * @param bytes the new version of the profile
+	 * @return whether the profile was reloaded
+	 * @throws IllegalArgumentException if the new version is not a valid profile
+	 */
+	public synchronized boolean reload(String profile, ProfileBytes bytes) throws Exception {
+		// not used yet - so nothing to replace (unless a conversion has just read and installed it)...
+		ProfileBytes installed = profileByteStore.installIfAbsent(profile, bytes);
+		if (installed == null || installed.getContentHash().equals(bytes.getContentHash())) {
+			return false;
+		}
+		long started = System.currentTimeMillis();
+		// warm the new version before it is swapped in...
+		int instances = colorSpacePool.isThreadAffine() ? 1 : Math.max(1, colorSpacePool.getInstanceCount(profile));
+		List<PooledObject<ICC_ColorSpace>> warmed = new ArrayList<PooledObject<ICC_ColorSpace>>(instances);
+		for (int instance = 0; instance < instances; instance++) {
+			PooledObject<ICC_ColorSpace> pooledObject = pooledColorSpaceFactory.makeObject(bytes);
+			Warmup.convert(pooledObject.getObject());
+			warmed.add(pooledObject);
+		}
+		int invalidated;
+		converter.beginProfileChange();
+		try {
+			profileByteStore.install(profile, bytes);
+			for (PooledObject<ICC_ColorSpace> pooledObject: warmed) {
+				pooledColorSpaceFactory.offerPrepared(profile, pooledObject);
+			}
+			colorSpacePool.replaceInstances(profile, colorSpacePool.isThreadAffine() ? 0 : instances);
+			invalidated = invalidate(profile);
+		} finally {
+			converter.endProfileChange();
+		}
+		logger.info("Reloaded profile '" + profile + "' in " + (System.currentTimeMillis() - started) + "ms ("
+				+ instances + " instances warmed, " + invalidated + " cached conversions/tables dropped)");
+		return true;
+	}
+
+	/**
+	 * Forgets a profile that has been removed
+	 *
+	 * @param profile the profile name
+	 */
+	public synchronized void remove(String profile) {
+		int invalidated;
+		converter.beginProfileChange();
+		try {
+			profileByteStore.remove(profile);
+			invalidated = invalidate(profile);
+		} finally {
+			converter.endProfileChange();
+		}
+		logger.info("Removed profile '" + profile + "' (" + invalidated + " cached conversions/tables dropped)");
+	}
+
+	private int invalidate(String profile) {
+		return converter.invalidateProfile(profile)
+				+ transformLuts.invalidateProfile(profile)
+				+ denseRgbTables.invalidateProfile(profile);
+	}
+}
@@ -19,97 +19,369 @@ package com.adeptions.colors.domain.services;
 
 import com.adeptions.colors.domain.components.Configuration;
 import com.adeptions.colors.domain.components.PooledColorSpaceFactory;
+import com.adeptions.colors.domain.components.ProfileByteStore;
+import com.adeptions.colors.domain.components.ProfileBytes;
+import com.adeptions.colors.domain.utils.ContentHash;
 import com.adeptions.colors.dtos.ColorParams;
 import com.adeptions.colors.api.endpoints.profiles.ProfilesEndpoint;
 import com.adeptions.colors.exceptions.NotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.awt.color.ICC_ColorSpace;
-import java.io.File;
-import java.io.FileFilter;
+import java.awt.color.ICC_Profile;
 import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Service for listing profiles and obtaining details of specific profile
+ *
+ * Profiles are held in an in-memory catalog (with header details and a content hash for each) that is
+ * built at startup - and, if configured, kept current by watching the files directory for profiles
+ * being added, changed or removed (changed profiles are hot reloaded). Each version of the catalog
+ * (and each entry) has an ETag.
  */
 @Service
 public class Profiles {
+	// how long an unknown profile name is remembered as missing (when the files directory is not watched)...
+	private static final long MISSING_NAME_MILLIS = 5000L;
+	private static final int MAX_MISSING_NAMES = 1024;
+	private static final int REFRESH_LOCKS = 64;
+
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
 	private String colorProfilesResourcesPath;
 	private String colorProfilesFilesPath;
+	private boolean watchFiles;
+	private List<CatalogEntry> fixedEntries = new ArrayList<CatalogEntry>();
+	private final Set<String> fixedNames = new HashSet<String>();
+	private final SortedMap<String,CatalogEntry> fileEntries = new TreeMap<String,CatalogEntry>();
+	private volatile Catalog catalog = new Catalog(Collections.<CatalogEntry>emptyList());
+	private WatchService watchService;
+	private final ConcurrentMap<String,Long> missingNames = new ConcurrentHashMap<String,Long>();
+	private final Object[] refreshLocks = new Object[REFRESH_LOCKS];
 
 	public Profiles(Configuration config) {
 		colorProfilesResourcesPath = config.getColorProfilesResourcesPath();
 		colorProfilesFilesPath = config.getColorProfilesFilesPath();
+		watchFiles = config.isColorProfilesFilesWatch();
+		for (int index = 0; index < REFRESH_LOCKS; index++) {
+			refreshLocks[index] = new Object();
+		}
 	}
 
 	@Autowired
-	private ColorSpacePool colorSpacePool;
-
-	public List<Map<String,Object>> listProfiles() throws IOException {
-		Set<String> seen = new HashSet<String>();
-		List<Map<String,Object>> result = new ArrayList<Map<String,Object>>();
-		seen.add(PooledColorSpaceFactory.PROFILE_NAME_SRGB);
-		result.add(createShortEntry(PooledColorSpaceFactory.PROFILE_NAME_SRGB));
-		String filename;
+	ProfileByteStore profileByteStore;
+
+	@Autowired
+	ProfileReloader profileReloader;
+
+	@PostConstruct
+	public void start() throws IOException {
+		// sRGB (built in) and resource profiles never change...
+		addFixedEntry(PooledColorSpaceFactory.PROFILE_NAME_SRGB);
+		for (String resourceProfileName: listResourceProfileNames()) {
+			addFixedEntry(resourceProfileName);
+		}
+		if (colorProfilesFilesPath != null && Files.isDirectory(Paths.get(colorProfilesFilesPath))) {
+			Path directory = Paths.get(colorProfilesFilesPath);
+			if (watchFiles) {
+				// start watching before the scan - so that no change can be missed...
+				watchService = directory.getFileSystem().newWatchService();
+				directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+				Thread watcher = new Thread(new Watcher(), "profile-catalog-watcher");
+				watcher.setDaemon(true);
+				watcher.start();
+			}
+			scanFiles();
+		} else {
+			publish();
+		}
+		logger.info("Profile catalog has " + catalog.entries.size() + " profiles");
+	}
+
+	@PreDestroy
+	public void shutdown() throws IOException {
+		if (watchService != null) {
+			watchService.close();
+		}
+	}
+
+	public List<Map<String,Object>> listProfiles() {
+		return catalog.list;
+	}
+
+	/**
+	 * @return the ETag of the current version of the catalog
+	 */
+	public String getCatalogETag() {
+		return catalog.eTag;
+	}
+
+	/**
+	 * @return the names of the profiles held in resources
+	 * @throws IOException
+	 */
+	public List<String> listResourceProfileNames() throws IOException {
+		List<String> result = new ArrayList<String>();
 		if (colorProfilesResourcesPath != null) {
 			ClassLoader loader = Thread.currentThread().getContextClassLoader();
 			PathMatchingResourcePatternResolver resourcePatternResolver = new PathMatchingResourcePatternResolver(loader);
 			Resource[] resources = resourcePatternResolver.getResources(colorProfilesResourcesPath + "/*" + ColorParams.ICC_EXT);
 			for (Resource resource: resources) {
-				filename = resource.getFile().getName();
-				seen.add(filename);
-				result.add(createShortEntry(filename));
-			}
-		}
-		if (colorProfilesFilesPath != null) {
-			File colorProfilesDirectory = new File(colorProfilesFilesPath);
-			File[] files = colorProfilesDirectory.listFiles(new FileFilter() {
-				@Override
-				public boolean accept(File file) {
-					return file.isFile() && file.getName().endsWith(ColorParams.ICC_EXT);
-				}
-			});
-			for (File file: files) {
-				filename = file.getName();
-				if (!seen.contains(filename)) {
-					seen.add(filename);
-					result.add(createShortEntry(filename));
-				}
+				result.add(resource.getFilename());
 			}
 		}
 		return result;
 	}
 
 	public Map<String,Object> getProfileInfo(String profileName) throws NotFoundException {
-		Map<String,Object> result = null;
+		return getCatalogEntry(profileName).fullEntry;
+	}
+
+	/**
+	 * @param profileName the profile name
+	 * @return the ETag of the profile's catalog entry
+	 * @throws NotFoundException if the profile is not in the catalog
+	 */
+	public String getProfileETag(String profileName) throws NotFoundException {
+		return getCatalogEntry(profileName).eTag;
+	}
+
+	/**
+	 * @param profileName the profile name
+	 * @return the content hash of the profile (or null if the profile is not in the catalog)
+	 */
+	public String getContentHash(String profileName) {
+		try {
+			return getCatalogEntry(profileName).contentHash;
+		} catch (NotFoundException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @param profileName the profile name
+	 * @return the first 64 bits of the content hash of the profile (or 0 if the profile is not in the catalog)
+	 */
+	public long getContentHashPrefix(String profileName) {
 		try {
-			ICC_ColorSpace colorSpace = colorSpacePool.get(profileName);
-			result = createFullEntry(profileName, colorSpace);
-		} catch (Exception e) {
+			return getCatalogEntry(profileName).contentHashPrefix;
+		} catch (NotFoundException e) {
+			return 0L;
+		}
+	}
+
+	private CatalogEntry getCatalogEntry(String profileName) throws NotFoundException {
+		CatalogEntry result = catalog.entries.get(profileName);
+		if (result == null && watchService == null && !profileName.contains("/") && !profileName.contains("\\")
+				&& !isKnownMissing(profileName)) {
+			// may have been added since the catalog was last updated (the directory isn't watched)...
+			refreshFile(profileName);
+			result = catalog.entries.get(profileName);
+			if (result == null) {
+				rememberMissing(profileName);
+			}
+		}
+		if (result == null) {
 			throw new NotFoundException("Cannot find profile '" + profileName + "'");
 		}
 		return result;
 	}
 
-	private Map<String,Object> createShortEntry(String name) {
-		Map<String,Object> result = new LinkedHashMap<String,Object>();
-		result.put("name", name);
-		result.put("$ref", "/" + ProfilesEndpoint.ENDPOINT_URI_PROFILES + "/" + name);
-		return result;
+	private void addFixedEntry(String name) {
+		CatalogEntry entry;
+		if (PooledColorSpaceFactory.PROFILE_NAME_SRGB.equals(name)) {
+			ICC_Profile profile = ICC_Profile.getInstance(ICC_ColorSpace.CS_sRGB);
+			byte[] data = profile.getData();
+			String contentHash = ContentHash.of(data);
+			entry = new CatalogEntry(name, profile, contentHash, Long.parseUnsignedLong(contentHash.substring(0, 16), 16), data.length);
+		} else {
+			ProfileBytes bytes = profileByteStore.get(name);
+			entry = bytes == null ? null : createEntry(name, bytes);
+		}
+		if (entry != null) {
+			fixedEntries.add(entry);
+		}
+		fixedNames.add(name);
 	}
 
-	private Map<String,Object> createFullEntry(String name, ICC_ColorSpace colorSpace) {
-		Map<String,Object> result = new LinkedHashMap<String,Object>();
-		String actualName = name + (!name.endsWith(ColorParams.ICC_EXT) ? ColorParams.ICC_EXT : "");
-		result.put("name", actualName);
-		result.put("$ref", "/" + ProfilesEndpoint.ENDPOINT_URI_PROFILES + "/" + actualName);
-		result.put("type", colorSpace.getType());
-		result.put("majorVersion", colorSpace.getProfile().getMajorVersion());
-		result.put("minorVersion", colorSpace.getProfile().getMinorVersion());
-		return result;
+	private boolean isKnownMissing(String name) {
+		Long until = missingNames.get(name);
+		return until != null && until > System.currentTimeMillis();
+	}
+
+	private void rememberMissing(String name) {
+		if (missingNames.size() >= MAX_MISSING_NAMES) {
+			missingNames.clear();
+		}
+		missingNames.put(name, System.currentTimeMillis() + MISSING_NAME_MILLIS);
+	}
+
+	private void scanFiles() {
+		Set<String> names;
+		synchronized (fileEntries) {
+			names = new TreeSet<String>(fileEntries.keySet());
+		}
+		try (DirectoryStream<Path> paths = Files.newDirectoryStream(Paths.get(colorProfilesFilesPath), "*" + ColorParams.ICC_EXT)) {
+			for (Path path: paths) {
+				names.add(path.getFileName().toString());
+			}
+		} catch (IOException e) {
+			logger.warn("Cannot scan color profiles files directory - " + e.getMessage());
+		}
+		for (String name: names) {
+			refreshFile(name);
+		}
+		publish();
+	}
+
+	/**
+	 * Brings the catalog entry for a file up to date - reloading the profile if its content has changed
+	 *
+	 * Refreshes are serialised per name (rather than under the catalog lock) - so that reading and reloading
+	 * one profile does not hold up lookups of others.
+	 */
+	private void refreshFile(String name) {
+		if (colorProfilesFilesPath == null || !name.endsWith(ColorParams.ICC_EXT) || fixedNames.contains(name)) {
+			// resource profiles take precedence over files of the same name...
+			return;
+		}
+		synchronized (refreshLocks[(name.hashCode() & Integer.MAX_VALUE) % REFRESH_LOCKS]) {
+			CatalogEntry previous;
+			synchronized (fileEntries) {
+				previous = fileEntries.get(name);
+			}
+			if (Files.isRegularFile(Paths.get(colorProfilesFilesPath, name))) {
+				ProfileBytes bytes = profileByteStore.read(name);
+				CatalogEntry entry = bytes == null ? null : createEntry(name, bytes);
+				if (entry == null || (previous != null && previous.contentHash.equals(entry.contentHash))) {
+					// unchanged (or not a valid profile - e.g. still being written)...
+					return;
+				}
+				try {
+					profileReloader.reload(name, bytes);
+				} catch (Exception e) {
+					logger.warn("Cannot reload profile '" + name + "' - " + e.getMessage());
+					return;
+				}
+				synchronized (fileEntries) {
+					fileEntries.put(name, entry);
+				}
+				missingNames.remove(name);
+				logger.info("Profile '" + name + "' " + (previous == null ? "added" : "changed"));
+				publish();
+			} else if (previous != null) {
+				synchronized (fileEntries) {
+					fileEntries.remove(name);
+				}
+				profileReloader.remove(name);
+				logger.info("Profile '" + name + "' removed");
+				publish();
+			}
+		}
+	}
+
+	private void publish() {
+		List<CatalogEntry> entries = new ArrayList<CatalogEntry>(fixedEntries);
+		synchronized (fileEntries) {
+			entries.addAll(fileEntries.values());
+			// published under the lock - so that an older snapshot cannot replace a newer one...
+			catalog = new Catalog(entries);
+		}
+	}
+
+	private CatalogEntry createEntry(String name, ProfileBytes bytes) {
+		try {
+			return new CatalogEntry(name, bytes.createProfile(), bytes.getContentHash(), bytes.getContentHashPrefix(), bytes.getSize());
+		} catch (IllegalArgumentException e) {
+			// not a valid profile (or still being written)...
+			logger.warn("Cannot read profile '" + name + "' - " + e.getMessage());
+			return null;
+		}
+	}
+
+	private static final class CatalogEntry {
+		private final String name;
+		private final String contentHash;
+		private final long contentHashPrefix;
+		private final String eTag;
+		private final Map<String,Object> shortEntry;
+		private final Map<String,Object> fullEntry;
+
+		private CatalogEntry(String name, ICC_Profile profile, String contentHash, long contentHashPrefix, int size) {
+			this.name = name;
+			this.contentHash = contentHash;
+			this.contentHashPrefix = contentHashPrefix;
+			eTag = "\"" + contentHash + "\"";
+			Map<String,Object> entry = new LinkedHashMap<String,Object>();
+			entry.put("name", name);
+			entry.put("$ref", "/" + ProfilesEndpoint.ENDPOINT_URI_PROFILES + "/" + name);
+			shortEntry = Collections.unmodifiableMap(new LinkedHashMap<String,Object>(entry));
+			entry.put("type", profile.getColorSpaceType());
+			entry.put("majorVersion", profile.getMajorVersion());
+			entry.put("minorVersion", profile.getMinorVersion());
+			entry.put("size", size);
+			fullEntry = Collections.unmodifiableMap(entry);
+		}
+	}
+
+	private static final class Catalog {
+		private final Map<String,CatalogEntry> entries = new HashMap<String,CatalogEntry>();
+		private final List<Map<String,Object>> list;
+		private final String eTag;
+
+		private Catalog(List<CatalogEntry> catalogEntries) {
+			List<Map<String,Object>> shortEntries = new ArrayList<Map<String,Object>>(catalogEntries.size());
+			StringBuilder content = new StringBuilder();
+			for (CatalogEntry entry: catalogEntries) {
+				entries.put(entry.name, entry);
+				shortEntries.add(entry.shortEntry);
+				content.append(entry.name).append(':').append(entry.contentHash).append('\n');
+			}
+			list = Collections.unmodifiableList(shortEntries);
+			eTag = "\"" + ContentHash.of(content.toString()) + "\"";
+		}
+	}
+
+	private class Watcher implements Runnable {
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					WatchKey key = watchService.take();
+					for (WatchEvent<?> event: key.pollEvents()) {
+						if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+							scanFiles();
+						} else {
+							refreshFile(((Path)event.context()).toString());
+						}
+					}
+					if (!key.reset()) {
+						logger.warn("Color profiles files directory is no longer being watched");
+						return;
+					}
+				}
+			} catch (InterruptedException | ClosedWatchServiceException e) {
+				// shutting down
+			}
+		}
 	}
 }
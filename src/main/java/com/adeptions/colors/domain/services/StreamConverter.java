@@ -0,0 +1,124 @@
+/*
+ * StreamConverter.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.services;
+
+import com.adeptions.colors.domain.components.Configuration;
+import com.adeptions.colors.dtos.ColorParams;
+import com.adeptions.colors.dtos.ColorStreamReader;
+import com.adeptions.colors.dtos.ColorStreamWriter;
+import com.adeptions.colors.dtos.ConversionResult;
+import com.adeptions.colors.enums.ColorType;
+import com.adeptions.colors.exceptions.ConversionException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts a stream of colors in micro-batches - each batch is written (and flushed) as soon as it
+ * is converted, so memory use does not grow with the size of the stream
+ *
+ * An invalid row does not stop the stream - an error is written in its place.
+ */
+@Service
+public class StreamConverter {
+	private int batchSize;
+
+	@Autowired
+	ColorConverter converter;
+
+	public StreamConverter(Configuration config) {
+		batchSize = config.getStreamBatchSize();
+	}
+
+	/**
+	 * @param targetType the target color type
+	 * @param reader the source rows
+	 * @param writer the results (one per source row)
+	 * @return the number of rows converted (including rows written as errors)
+	 * @throws IOException if reading or writing the streams fails
+	 */
+	public long convert(ColorType targetType, ColorStreamReader reader, ColorStreamWriter writer) throws IOException {
+		long result = 0;
+		List<ColorParams> batch = new ArrayList<ColorParams>(batchSize);
+		// an error for each row in the batch (null where the row is valid)...
+		List<String> rowErrors = new ArrayList<String>(batchSize);
+		boolean more = true;
+		while (more) {
+			try {
+				Map<String,String[]> row = reader.next();
+				if (row == null) {
+					more = false;
+				} else {
+					try {
+						batch.add(new ColorParams(targetType, row));
+						rowErrors.add(null);
+					} catch (ConversionException e) {
+						batch.add(null);
+						rowErrors.add("Row " + reader.getRowNumber() + ": " + e.getMessage());
+					}
+				}
+			} catch (ConversionException e) {
+				batch.add(null);
+				rowErrors.add(e.getMessage());
+			}
+			if (batch.size() >= batchSize || (!more && !batch.isEmpty())) {
+				result += batch.size();
+				writeBatch(reader.getRowNumber() - batch.size() + 1, batch, rowErrors, writer);
+				batch.clear();
+				rowErrors.clear();
+			}
+		}
+		writer.flush();
+		return result;
+	}
+
+	private void writeBatch(int firstRowNumber, List<ColorParams> batch, List<String> rowErrors, ColorStreamWriter writer) throws IOException {
+		List<ColorParams> valid = new ArrayList<ColorParams>(batch.size());
+		for (ColorParams params: batch) {
+			if (params != null) {
+				valid.add(params);
+			}
+		}
+		List<ConversionResult> results = null;
+		try {
+			results = converter.convertBatch(valid);
+		} catch (Exception e) {
+			// one of the rows failed - so convert them individually to find which...
+		}
+		int validIndex = 0;
+		for (int index = 0; index < batch.size(); index++) {
+			ColorParams params = batch.get(index);
+			if (params == null) {
+				writer.writeError(rowErrors.get(index));
+			} else if (results != null) {
+				writer.writeResult(results.get(validIndex++));
+			} else {
+				try {
+					writer.writeResult(converter.convert(params));
+				} catch (Exception e) {
+					writer.writeError("Row " + (firstRowNumber + index) + ": " + e.getMessage());
+				}
+			}
+		}
+		writer.flush();
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * ThreadColorSpaces.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.services;
+
+import com.adeptions.colors.domain.components.PooledColorSpaceFactory;
+import org.apache.commons.pool2.PooledObject;
+
+import java.awt.color.ICC_ColorSpace;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Thread-affine ICC_ColorSpace instances - each thread gets its own instance per profile
+ * (so no borrowing/returning is needed)
+ *
+ * Instances held by threads that have died, or that have not been used for the idle time, are
+ * dropped by periodic sweeps
+ */
+class ThreadColorSpaces {
+	private final PooledColorSpaceFactory factory;
+	private final long idleTime;
+	private final ConcurrentMap<Thread,ConcurrentMap<String,Held>> holders = new ConcurrentHashMap<Thread,ConcurrentMap<String,Held>>();
+	private final ThreadLocal<ConcurrentMap<String,Held>> held = new ThreadLocal<ConcurrentMap<String,Held>>() {
+		@Override
+		protected ConcurrentMap<String,Held> initialValue() {
+			ConcurrentMap<String,Held> result = new ConcurrentHashMap<String,Held>();
+			holders.put(Thread.currentThread(), result);
+			return result;
+		}
+	};
+
+	ThreadColorSpaces(PooledColorSpaceFactory factory, long idleTime) {
+		this.factory = factory;
+		this.idleTime = idleTime;
+	}
+
+	ICC_ColorSpace get(String profile) throws Exception {
+		ConcurrentMap<String,Held> threadHeld = held.get();
+		Held result = threadHeld.get(profile);
+		if (result == null || !factory.validateObject(profile, result.pooledObject)) {
+			// not yet created by this thread (or created from a version of the profile that has since been replaced)...
+			result = new Held(factory.makeObject(profile));
+			threadHeld.put(profile, result);
+			if (!holders.containsKey(Thread.currentThread())) {
+				// a sweep dropped this thread's instances while it was idle - so re-register...
+				holders.put(Thread.currentThread(), threadHeld);
+			}
+		}
+		result.lastUsed = System.currentTimeMillis();
+		return result.pooledObject.getObject();
+	}
+
+	/**
+	 * Drops instances of dead threads and instances not used within the idle time
+	 */
+	void sweep() {
+		long idleBefore = System.currentTimeMillis() - idleTime;
+		Iterator<Map.Entry<Thread,ConcurrentMap<String,Held>>> holdersIterator = holders.entrySet().iterator();
+		while (holdersIterator.hasNext()) {
+			Map.Entry<Thread,ConcurrentMap<String,Held>> holder = holdersIterator.next();
+			if (!holder.getKey().isAlive()) {
+				holdersIterator.remove();
+				continue;
+			}
+			Iterator<Held> heldIterator = holder.getValue().values().iterator();
+			while (heldIterator.hasNext()) {
+				if (heldIterator.next().lastUsed < idleBefore) {
+					heldIterator.remove();
+				}
+			}
+			if (holder.getValue().isEmpty()) {
+				holdersIterator.remove();
+			}
+		}
+	}
+
+	Set<String> getProfiles() {
+		Set<String> result = new HashSet<String>();
+		for (ConcurrentMap<String,Held> threadHeld: holders.values()) {
+			result.addAll(threadHeld.keySet());
+		}
+		return result;
+	}
+
+	int getInstanceCount() {
+		int result = 0;
+		for (ConcurrentMap<String,Held> threadHeld: holders.values()) {
+			result += threadHeld.size();
+		}
+		return result;
+	}
+
+	int getInstanceCount(String profile) {
+		int result = 0;
+		for (ConcurrentMap<String,Held> threadHeld: holders.values()) {
+			if (threadHeld.containsKey(profile)) {
+				result++;
+			}
+		}
+		return result;
+	}
+
+	private static final class Held {
+		private final PooledObject<ICC_ColorSpace> pooledObject;
+		private volatile long lastUsed;
+
+		private Held(PooledObject<ICC_ColorSpace> pooledObject) {
+			this.pooledObject = pooledObject;
+		}
+	}
+}
@@ -0,0 +1,267 @@
+/*
+ * TransformLuts.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.services;
+
+import com.adeptions.colors.domain.components.Configuration;
+import com.adeptions.colors.domain.utils.TransformKey;
+import com.adeptions.colors.domain.utils.TransformLut;
+import com.adeptions.colors.enums.ColorType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.awt.color.ICC_ColorSpace;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Interpolated lookup tables for ICC transforms
+ *
+ * A LUT is built (in the background) the first time a transform is requested - until it is
+ * ready (or if it cannot meet the configured tolerance) callers fall back to the ICC transform
+ */
+@Service
+public class TransformLuts {
+	private static final int VERIFY_SAMPLES = 2000;
+	private static final long VERIFY_SEED = 0x1CC1CCL;
+
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+	private boolean useTransformLuts;
+	private int gridPoints;
+	private int gridPointsCmyk;
+	private float tolerance;
+	private final ConcurrentMap<TransformKey,TransformLut> luts = new ConcurrentHashMap<TransformKey,TransformLut>();
+	private final Set<TransformKey> requested = ConcurrentHashMap.newKeySet();
+	private ExecutorService builder;
+	// invalidation counts per profile - so that a build only gets discarded if one of its own profiles changed...
+	private final ConcurrentMap<String,AtomicLong> invalidations = new ConcurrentHashMap<String,AtomicLong>();
+	private final Object invalidationLock = new Object();
+
+	@Autowired
+	ColorSpacePool colorSpacePool;
+
+	public TransformLuts(Configuration config) {
+		useTransformLuts = config.isUseTransformLuts();
+		gridPoints = config.getTransformLutsGridPoints();
+		gridPointsCmyk = config.getTransformLutsGridPointsCmyk();
+		tolerance = config.getTransformLutsTolerance();
+		if (useTransformLuts) {
+			builder = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "transform-lut-builder");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+
+	public boolean isUseTransformLuts() {
+		return useTransformLuts;
+	}
+
+	public int getLutCount() {
+		return luts.size();
+	}
+
+	/**
+	 * Gets the LUT for a transform - requesting it be built if it hasn't been already
+	 *
+	 * @param key the transform
+	 * @return the LUT (or null if not available)
+	 */
+	public TransformLut get(TransformKey key) {
+		if (!useTransformLuts) {
+			return null;
+		}
+		TransformLut result = luts.get(key);
+		if (result == null && requested.add(key)) {
+			builder.submit(new Builder(key, invalidationCount(key)));
+		}
+		return result;
+	}
+
+	/**
+	 * Drops the LUTs of transforms that use a profile (e.g. because the profile has been reloaded) - so
+	 * that they get rebuilt when next requested
+	 *
+	 * @param profile the profile name
+	 * @return the number of LUTs dropped
+	 */
+	public int invalidateProfile(String profile) {
+		int result = 0;
+		synchronized (invalidationLock) {
+			invalidationCounter(profile).incrementAndGet();
+			for (TransformKey key: luts.keySet()) {
+				if (key.references(profile) && luts.remove(key) != null) {
+					result++;
+				}
+			}
+			for (TransformKey key: requested) {
+				if (key.references(profile)) {
+					requested.remove(key);
+				}
+			}
+		}
+		return result;
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (builder != null) {
+			builder.shutdownNow();
+		}
+	}
+
+	private AtomicLong invalidationCounter(String profile) {
+		return invalidations.computeIfAbsent(profile, new Function<String,AtomicLong>() {
+			@Override
+			public AtomicLong apply(String profile) {
+				return new AtomicLong();
+			}
+		});
+	}
+
+	/**
+	 * @return the total invalidation count of the profiles a transform uses
+	 */
+	private long invalidationCount(TransformKey key) {
+		long result = 0L;
+		if (key.getSourceProfile() != null) {
+			result += invalidationCounter(key.getSourceProfile()).get();
+		}
+		if (key.getTargetProfile() != null) {
+			result += invalidationCounter(key.getTargetProfile()).get();
+		}
+		return result;
+	}
+
+	private TransformLut build(final TransformKey key) throws Exception {
+		ICC_ColorSpace sourceColorSpace = null;
+		ICC_ColorSpace targetColorSpace = null;
+		try {
+			if (key.getSourceProfile() != null) {
+				sourceColorSpace = colorSpacePool.get(key.getSourceProfile());
+				checkColorSpace(key.getSourceProfile(), key.getSourceType(), sourceColorSpace);
+			}
+			if (key.getTargetProfile() != null) {
+				targetColorSpace = colorSpacePool.get(key.getTargetProfile());
+				checkColorSpace(key.getTargetProfile(), key.getTargetType(), targetColorSpace);
+			}
+			final ICC_ColorSpace source = sourceColorSpace;
+			final ICC_ColorSpace target = targetColorSpace;
+			TransformLut.Sampler sampler = new TransformLut.Sampler() {
+				@Override
+				public float[] sample(float[] input) {
+					return key.apply(source, target, input);
+				}
+			};
+			int points = key.getInputChannels() == 4 ? gridPointsCmyk : gridPoints;
+			TransformLut result = TransformLut.build(points, key.getInputChannels(), key.getOutputChannels(), sampler);
+			float[] errors = verify(result, sampler);
+			if (errors[0] > tolerance) {
+				logger.warn("Transform LUT for " + key + " not used - mean error " + errors[0] + " exceeds tolerance " + tolerance);
+				return null;
+			}
+			logger.info("Built transform LUT for " + key + " (" + points + " grid points, mean error " + errors[0] + ", max error " + errors[1] + ")");
+			return result;
+		} finally {
+			if (sourceColorSpace != null) {
+				colorSpacePool.release(key.getSourceProfile(), sourceColorSpace);
+			}
+			if (targetColorSpace != null) {
+				colorSpacePool.release(key.getTargetProfile(), targetColorSpace);
+			}
+		}
+	}
+
+	/**
+	 * Compares the LUT against the exact transform at pseudo-random points
+	 *
+	 * @return the mean and max absolute error (per channel)
+	 */
+	private static float[] verify(TransformLut lut, TransformLut.Sampler sampler) throws Exception {
+		// deterministic samples - so that a given profile pair always gets the same verdict...
+		Random random = new Random(VERIFY_SEED);
+		float[] input = new float[lut.getInputChannels()];
+		float[] interpolated = new float[lut.getOutputChannels()];
+		double sum = 0d;
+		float max = 0f;
+		for (int sample = 0; sample < VERIFY_SAMPLES; sample++) {
+			for (int channel = 0; channel < input.length; channel++) {
+				input[channel] = random.nextFloat();
+			}
+			float[] exact = sampler.sample(input);
+			lut.transform(input, 0, interpolated, 0);
+			for (int channel = 0; channel < interpolated.length; channel++) {
+				float error = Math.abs(exact[channel] - interpolated[channel]);
+				sum += error;
+				max = Math.max(max, error);
+			}
+		}
+		return new float[] {(float)(sum / (VERIFY_SAMPLES * interpolated.length)), max};
+	}
+
+	private static void checkColorSpace(String profile, ColorType requiredType, ICC_ColorSpace colorSpace) throws Exception {
+		int required = requiredType == ColorType.CMYK ? ICC_ColorSpace.TYPE_CMYK : ICC_ColorSpace.TYPE_RGB;
+		if (colorSpace.getType() != required) {
+			throw new IllegalArgumentException("Profile '" + profile + "' is not a " + requiredType.name() + " profile");
+		}
+	}
+
+	private class Builder implements Runnable {
+		private final TransformKey key;
+		private final long requestedInvalidations;
+
+		private Builder(TransformKey key, long requestedInvalidations) {
+			this.key = key;
+			this.requestedInvalidations = requestedInvalidations;
+		}
+
+		@Override
+		public void run() {
+			try {
+				TransformLut lut = build(key);
+				if (lut != null) {
+					// checked and installed under the invalidation lock - so an invalidation cannot slip in between...
+					synchronized (invalidationLock) {
+						if (requestedInvalidations != invalidationCount(key)) {
+							// one of its profiles was invalidated while building - the LUT may have been built from the old version...
+							requested.remove(key);
+						} else {
+							luts.putIfAbsent(key, lut);
+						}
+					}
+				}
+			} catch (Exception e) {
+				// leave as requested - so that a bad profile pair isn't retried on every conversion
+				logger.warn("Cannot build transform LUT for " + key + " - " + e.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * Warmup.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.services;
+
+import com.adeptions.colors.domain.components.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.awt.color.ICC_ColorSpace;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Warms up color spaces at startup - so that the first conversions after a deploy do not pay
+ * for processing the profiles
+ *
+ * For each profile (the default CMYK profile, every profile in resources and any configured
+ * warm-up profiles) the configured number of instances are created in the pool and dummy conversions
+ * run through each. Then the converted color cache is restored from its snapshot (if configured).
+ * The service is not ready until warm-up has completed.
+ * (With the thread-affine color space strategy only the profile processing is warmed - request
+ * threads still create their own instances on first use)
+ */
+@Service
+public class Warmup {
+	private static final int CONVERSION_STEPS = 16;
+
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+	private boolean warmup;
+	private boolean restoreCacheSnapshot;
+	private int instancesPerProfile;
+	private List<String> configuredProfiles;
+	private String defaultCmykProfile;
+	private volatile boolean ready;
+	private volatile int profileCount;
+	private final AtomicInteger warmedProfileCount = new AtomicInteger();
+
+	@Autowired
+	ColorSpacePool colorSpacePool;
+
+	@Autowired
+	Profiles profiles;
+
+	@Autowired
+	ConversionCacheSnapshot cacheSnapshot;
+
+	public Warmup(Configuration config) {
+		warmup = config.isWarmup();
+		instancesPerProfile = config.getWarmupInstancesPerProfile();
+		configuredProfiles = config.getWarmupProfiles();
+		defaultCmykProfile = config.getColorProfilesDefaultCmykProfile();
+		restoreCacheSnapshot = config.isUseConvertedColorCache() && config.getConvertedColorCacheSnapshot() != null;
+		ready = !warmup && !restoreCacheSnapshot;
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void start() {
+		if (ready) {
+			return;
+		}
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				warmupAll();
+			}
+		}, "profile-warmup");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public boolean isReady() {
+		return ready;
+	}
+
+	public int getProfileCount() {
+		return profileCount;
+	}
+
+	public int getWarmedProfileCount() {
+		return warmedProfileCount.get();
+	}
+
+	void warmupAll() {
+		try {
+			if (warmup) {
+				warmupProfiles();
+			}
+			if (restoreCacheSnapshot) {
+				cacheSnapshot.restore();
+			}
+		} finally {
+			ready = true;
+		}
+	}
+
+	private void warmupProfiles() {
+		long started = System.currentTimeMillis();
+		Set<String> profileNames = new LinkedHashSet<String>();
+		if (defaultCmykProfile != null) {
+			profileNames.add(defaultCmykProfile);
+		}
+		try {
+			profileNames.addAll(profiles.listResourceProfileNames());
+		} catch (Exception e) {
+			logger.warn("Cannot list resource profiles for warm-up - " + e.getMessage());
+		}
+		profileNames.addAll(configuredProfiles);
+		profileCount = profileNames.size();
+		for (String profileName: profileNames) {
+			try {
+				warmup(profileName);
+			} catch (Exception e) {
+				// a profile that can't be warmed will just be cold for the first request that uses it
+				logger.warn("Cannot warm up profile '" + profileName + "' - " + e.getMessage());
+			}
+			warmedProfileCount.incrementAndGet();
+		}
+		logger.info("Warmed up " + profileCount + " profiles in " + (System.currentTimeMillis() - started) + "ms");
+	}
+
+	private void warmup(String profileName) throws Exception {
+		// borrow all instances before returning any - otherwise the pool would just hand back the same one...
+		int instances = colorSpacePool.isThreadAffine() ? 1 : instancesPerProfile;
+		List<ICC_ColorSpace> borrowed = new ArrayList<ICC_ColorSpace>(instances);
+		try {
+			for (int instance = 0; instance < instances; instance++) {
+				ICC_ColorSpace colorSpace = colorSpacePool.get(profileName);
+				borrowed.add(colorSpace);
+				convert(colorSpace);
+			}
+		} finally {
+			for (ICC_ColorSpace colorSpace: borrowed) {
+				colorSpacePool.release(profileName, colorSpace);
+			}
+		}
+	}
+
+	static void convert(ICC_ColorSpace colorSpace) {
+		float[] components = new float[colorSpace.getNumComponents()];
+		for (int step = 0; step <= CONVERSION_STEPS; step++) {
+			Arrays.fill(components, step / (float)CONVERSION_STEPS);
+			colorSpace.fromCIEXYZ(colorSpace.toCIEXYZ(components));
+			colorSpace.fromRGB(colorSpace.toRGB(components));
+		}
+	}
+}
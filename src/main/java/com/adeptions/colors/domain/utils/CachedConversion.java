@@ -0,0 +1,81 @@
+/*
+ * CachedConversion.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.utils;
+
+import com.adeptions.colors.dtos.ConversionResult;
+import com.adeptions.colors.enums.ColorType;
+
+/**
+ * A converted color cache entry in a form that can outlive the process (e.g. for cache snapshots) - the
+ * conversion with its profile names (rather than a profile pair id) and the tag of the profile contents
+ * it was converted with
+ */
+public final class CachedConversion {
+	private final ColorType sourceType;
+	private final String sourceProfile;
+	private final ColorType targetType;
+	private final String targetProfile;
+	private final boolean crude;
+	private final long packedColor;
+	private final long tag;
+	private final ConversionResult result;
+
+	public CachedConversion(ColorType sourceType, String sourceProfile, ColorType targetType, String targetProfile,
+							boolean crude, long packedColor, long tag, ConversionResult result) {
+		this.sourceType = sourceType;
+		this.sourceProfile = sourceProfile;
+		this.targetType = targetType;
+		this.targetProfile = targetProfile;
+		this.crude = crude;
+		this.packedColor = packedColor;
+		this.tag = tag;
+		this.result = result;
+	}
+
+	public ColorType getSourceType() {
+		return sourceType;
+	}
+
+	public String getSourceProfile() {
+		return sourceProfile;
+	}
+
+	public ColorType getTargetType() {
+		return targetType;
+	}
+
+	public String getTargetProfile() {
+		return targetProfile;
+	}
+
+	public boolean isCrude() {
+		return crude;
+	}
+
+	public long getPackedColor() {
+		return packedColor;
+	}
+
+	public long getTag() {
+		return tag;
+	}
+
+	public ConversionResult getResult() {
+		return result;
+	}
+}
@@ -0,0 +1,266 @@
+/*
+ * ConcurrentLfuCache.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongPredicate;
+import java.util.function.Predicate;
+
+/**
+ * Bounded concurrent cache (keyed by primitive long) with lock-free, allocation-free reads
+ * and frequency based (W-TinyLFU style) admission
+ *
+ * New entries go into a small FIFO admission window; when an entry leaves the window it only
+ * replaces the eldest entry of the main region if it has been seen more often (according to
+ * a frequency sketch) - so a scan of one-off keys cannot flush the frequently used entries.
+ * Main region entries that survive a challenge are given a second chance at the back of the queue.
+ *
+ * Entries are held in an open addressing table (never more than half full) of immutable entries.
+ * Writes are made under a lock; a read racing with the removal of another entry may occasionally
+ * miss an entry that is present - which for a cache just means the value gets recomputed.
+ */
+public class ConcurrentLfuCache<V> {
+	private static final int WINDOW_PERCENT = 1;
+
+	private final int capacity;
+	private final int windowCapacity;
+	private final int mainCapacity;
+	private final AtomicReferenceArray<Entry<V>> table;
+	private final int tableMask;
+	private final FrequencySketch sketch;
+	private final ArrayDeque<Entry<V>> window = new ArrayDeque<Entry<V>>();
+	private final ArrayDeque<Entry<V>> main = new ArrayDeque<Entry<V>>();
+	private final ReentrantLock evictionLock = new ReentrantLock();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private volatile int size;
+
+	public ConcurrentLfuCache(int capacity) {
+		this.capacity = Math.max(capacity, 1);
+		windowCapacity = Math.max(1, (this.capacity * WINDOW_PERCENT) / 100);
+		mainCapacity = this.capacity - windowCapacity;
+		int tableSize = Integer.highestOneBit(this.capacity) << 2;
+		table = new AtomicReferenceArray<Entry<V>>(tableSize);
+		tableMask = tableSize - 1;
+		sketch = new FrequencySketch(this.capacity);
+	}
+
+	public V get(long key) {
+		int hash = hash(key);
+		sketch.increment(hash);
+		for (int index = hash & tableMask; ; index = (index + 1) & tableMask) {
+			Entry<V> entry = table.get(index);
+			if (entry == null) {
+				misses.increment();
+				return null;
+			} else if (entry.key == key) {
+				hits.increment();
+				return entry.value;
+			}
+		}
+	}
+
+	public void put(long key, V value) {
+		evictionLock.lock();
+		try {
+			int hash = hash(key);
+			int index = hash & tableMask;
+			for (Entry<V> existing = table.get(index); existing != null; existing = table.get(index)) {
+				if (existing.key == key) {
+					// already added (by a racing put)...
+					return;
+				}
+				index = (index + 1) & tableMask;
+			}
+			Entry<V> entry = new Entry<V>(key, hash, value);
+			table.set(index, entry);
+			size++;
+			window.addLast(entry);
+			if (window.size() > windowCapacity) {
+				admit(window.pollFirst());
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * Removes every entry whose key matches - e.g. to invalidate entries that depend on something that has changed
+	 *
+	 * @param predicate the predicate to test keys with
+	 * @return the number of entries removed
+	 */
+	public int removeIf(LongPredicate predicate) {
+		evictionLock.lock();
+		try {
+			final Set<Entry<V>> removing = Collections.newSetFromMap(new IdentityHashMap<Entry<V>,Boolean>());
+			for (int index = 0; index < table.length(); index++) {
+				Entry<V> entry = table.get(index);
+				if (entry != null && predicate.test(entry.key)) {
+					removing.add(entry);
+				}
+			}
+			if (!removing.isEmpty()) {
+				Predicate<Entry<V>> removingEntry = new Predicate<Entry<V>>() {
+					@Override
+					public boolean test(Entry<V> entry) {
+						return removing.contains(entry);
+					}
+				};
+				window.removeIf(removingEntry);
+				main.removeIf(removingEntry);
+				for (Entry<V> entry: removing) {
+					remove(entry);
+				}
+			}
+			return removing.size();
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the most frequently used entries (e.g. to snapshot the cache) - entries of the main region come
+	 * before admission window entries with the same frequency
+	 *
+	 * @param max the maximum number of entries
+	 * @return the entries (most frequently used first)
+	 */
+	public Map<Long,V> getHottest(int max) {
+		List<Entry<V>> entries;
+		evictionLock.lock();
+		try {
+			entries = new ArrayList<Entry<V>>(main.size() + window.size());
+			entries.addAll(main);
+			entries.addAll(window);
+		} finally {
+			evictionLock.unlock();
+		}
+		final Map<Entry<V>,Integer> frequencies = new IdentityHashMap<Entry<V>,Integer>(entries.size());
+		for (Entry<V> entry: entries) {
+			frequencies.put(entry, sketch.frequency(entry.hash));
+		}
+		// stable sort - so ties keep main region order...
+		Collections.sort(entries, new Comparator<Entry<V>>() {
+			@Override
+			public int compare(Entry<V> entry1, Entry<V> entry2) {
+				return Integer.compare(frequencies.get(entry2), frequencies.get(entry1));
+			}
+		});
+		Map<Long,V> result = new LinkedHashMap<Long,V>();
+		for (int index = 0; index < entries.size() && index < max; index++) {
+			result.put(entries.get(index).key, entries.get(index).value);
+		}
+		return result;
+	}
+
+	private void admit(Entry<V> candidate) {
+		if (mainCapacity == 0) {
+			evict(candidate);
+			return;
+		} else if (main.size() < mainCapacity) {
+			main.addLast(candidate);
+			return;
+		}
+		Entry<V> victim = main.pollFirst();
+		if (sketch.frequency(victim.hash) >= sketch.frequency(candidate.hash)) {
+			// the candidate is rejected - victim gets a second chance...
+			evict(candidate);
+			main.addLast(victim);
+		} else {
+			evict(victim);
+			main.addLast(candidate);
+		}
+	}
+
+	private void evict(Entry<V> entry) {
+		remove(entry);
+		evictions.increment();
+	}
+
+	/**
+	 * Removes an entry from the table (backward shift deletion) - must be called under the eviction lock
+	 */
+	private void remove(Entry<V> entry) {
+		int index = entry.hash & tableMask;
+		while (table.get(index) != entry) {
+			index = (index + 1) & tableMask;
+		}
+		// shift back any following entries that would otherwise become unreachable...
+		int next = (index + 1) & tableMask;
+		for (Entry<V> following = table.get(next); following != null; following = table.get(next)) {
+			int ideal = following.hash & tableMask;
+			if (((next - ideal) & tableMask) >= ((next - index) & tableMask)) {
+				table.set(index, following);
+				index = next;
+			}
+			next = (next + 1) & tableMask;
+		}
+		table.set(index, null);
+		size--;
+	}
+
+	private static int hash(long key) {
+		long result = key * 0x9e3779b97f4a7c15L;
+		return (int)(result ^ (result >>> 32));
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	private static final class Entry<V> {
+		private final long key;
+		private final int hash;
+		private final V value;
+
+		private Entry(long key, int hash, V value) {
+			this.key = key;
+			this.hash = hash;
+			this.value = value;
+		}
+	}
+}
@@ -0,0 +1,53 @@
+/*
+ * ContentHash.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Content hashes (SHA-256 as lower case hex) - used to identify profile content regardless of name
+ */
+public final class ContentHash {
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private ContentHash() {
+	}
+
+	public static String of(byte[] data) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform is required to support SHA-256...
+			throw new IllegalStateException(e);
+		}
+		byte[] hash = digest.digest(data);
+		char[] result = new char[hash.length * 2];
+		for (int index = 0; index < hash.length; index++) {
+			result[index * 2] = HEX_DIGITS[(hash[index] >> 4) & 0xf];
+			result[(index * 2) + 1] = HEX_DIGITS[hash[index] & 0xf];
+		}
+		return new String(result);
+	}
+
+	public static String of(String text) {
+		return of(text.getBytes(StandardCharsets.UTF_8));
+	}
+}
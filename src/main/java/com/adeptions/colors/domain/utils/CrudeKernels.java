@@ -0,0 +1,97 @@
+/*
+ * CrudeKernels.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.utils;
+
+/**
+ * Primitive batch kernels for the crude (formula based) conversions
+ *
+ * Each kernel works on struct-of-arrays buffers (one array per component) in simple counted loops
+ * with no allocation - so that the JIT can unroll and, where the arithmetic allows, auto-vectorize them.
+ * Results are identical to the single color crude conversions in ColorConverter.
+ */
+public final class CrudeKernels {
+	private CrudeKernels() {
+	}
+
+	/**
+	 * Source RGB (each 0 to 255) to CMYK (each 0 to 1)
+	 */
+	public static void rgbToCmyk(float[] red, float[] green, float[] blue,
+								 float[] cyan, float[] magenta, float[] yellow, float[] black, int length) {
+		for (int index = 0; index < length; index++) {
+			float c = (255f - red[index]) / 255f;
+			float m = (255f - green[index]) / 255f;
+			float y = (255f - blue[index]) / 255f;
+			float k = Math.min(c, Math.min(m, y));
+			// for pure black (k = 1) c, m and y equal k - so dividing by a tiny number instead of zero gives zero without a branch...
+			float divisor = Math.max(1f - k, Float.MIN_NORMAL);
+			cyan[index] = (c - k) / divisor;
+			magenta[index] = (m - k) / divisor;
+			yellow[index] = (y - k) / divisor;
+			black[index] = k;
+		}
+	}
+
+	/**
+	 * Source CMYK (each 0 to 1) to RGB (each 0 to 255 - not rounded)
+	 */
+	public static void cmykToRgb(float[] cyan, float[] magenta, float[] yellow, float[] black,
+								 float[] red, float[] green, float[] blue, int length) {
+		for (int index = 0; index < length; index++) {
+			float white = 1 - black[index];
+			red[index] = (1 - cyan[index]) * white * 255f;
+			green[index] = (1 - magenta[index]) * white * 255f;
+			blue[index] = (1 - yellow[index]) * white * 255f;
+		}
+	}
+
+	/**
+	 * Source CIE-XYZ to (companded) sRGB (each nominally 0 to 1)
+	 */
+	public static void xyzToRgb(float[] x, float[] y, float[] z, float[] red, float[] green, float[] blue, int length) {
+		// linear RGB first (this loop vectorizes)...
+		for (int index = 0; index < length; index++) {
+			red[index] = (x[index] * 3.2410f) - (y[index] * 1.5374f) - (z[index] * 0.4986f);
+			green[index] = (-x[index] * 0.9692f) + (y[index] * 1.8760f) + (z[index] * 0.0416f);
+			blue[index] = (x[index] * 0.0556f) - (y[index] * 0.2040f) + (z[index] * 1.0570f);
+		}
+		compand(red, length);
+		compand(green, length);
+		compand(blue, length);
+	}
+
+	/**
+	 * Source sRGB (each a whole number 0 to 255) to CIE-XYZ
+	 */
+	public static void rgbToXyz(float[] red, float[] green, float[] blue, float[] x, float[] y, float[] z, int length) {
+		for (int index = 0; index < length; index++) {
+			double r = SrgbTransfer.linearize((int)red[index]);
+			double g = SrgbTransfer.linearize((int)green[index]);
+			double b = SrgbTransfer.linearize((int)blue[index]);
+			x[index] = (float)((r * 0.4124f) + (g * 0.3576f) + (b * 0.1805f));
+			y[index] = (float)((r * 0.2126f) + (g * 0.7152f) + (b * 0.0722f));
+			z[index] = (float)((r * 0.0193f) + (g * 0.1192f) + (b * 0.9505f));
+		}
+	}
+
+	private static void compand(float[] values, int length) {
+		for (int index = 0; index < length; index++) {
+			values[index] = SrgbTransfer.compand(values[index]);
+		}
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * DenseRgbTable.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.utils;
+
+import com.adeptions.colors.enums.ColorType;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Dense table of transform results for every 8-bit RGB source color (indexed by packed RGB)
+ *
+ * Each entry holds up to four 16-bit output components - the ICC transforms produce components
+ * in steps of 1/65535 (or 1/32768 for CIE-XYZ) so the stored results are exact.
+ * Entries are written once (racing writers write the same value) and read without locking.
+ */
+public final class DenseRgbTable {
+	public static final int ENTRIES = 1 << 24;
+	public static final long MEMORY_SIZE = (long)ENTRIES * 8L;
+
+	private static final long EMPTY = 0L;
+	private static final float SCALE = 65535f;
+	private static final float SCALE_XYZ = 32768f;
+
+	private final AtomicLongArray entries = new AtomicLongArray(ENTRIES);
+	private final int outputChannels;
+	private final float scale;
+
+	public DenseRgbTable(ColorType targetType) {
+		outputChannels = targetType == ColorType.CMYK ? 4 : 3;
+		scale = targetType == ColorType.XYZ ? SCALE_XYZ : SCALE;
+	}
+
+	/**
+	 * @param rgb the RGB components (each 0 to 1 in steps of 1/255)
+	 * @return the table index for the color
+	 */
+	public static int index(float[] rgb) {
+		return (Math.round(rgb[0] * 255f) << 16) | (Math.round(rgb[1] * 255f) << 8) | Math.round(rgb[2] * 255f);
+	}
+
+	public static int index(int red, int green, int blue) {
+		return (red << 16) | (green << 8) | blue;
+	}
+
+	/**
+	 * @param index the packed RGB index
+	 * @return the output components (or null if not yet populated)
+	 */
+	public float[] get(int index) {
+		long entry = entries.get(index);
+		if (entry == EMPTY) {
+			return null;
+		}
+		// entries are stored inverted - so that an all-zero result can be distinguished from empty...
+		long packed = ~entry;
+		float[] result = new float[outputChannels];
+		for (int channel = 0; channel < outputChannels; channel++) {
+			result[channel] = ((packed >>> (channel * 16)) & 0xffffL) / scale;
+		}
+		return result;
+	}
+
+	public boolean contains(int index) {
+		return entries.get(index) != EMPTY;
+	}
+
+	public void put(int index, float[] output) {
+		long packed = 0L;
+		for (int channel = 0; channel < outputChannels; channel++) {
+			long quantized = Math.max(0, Math.min(0xffff, Math.round(output[channel] * scale)));
+			packed |= quantized << (channel * 16);
+		}
+		// a result that inverts to empty (all four channels at max) is simply never cached...
+		entries.lazySet(index, ~packed);
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * FrequencySketch.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.utils;
+
+/**
+ * Count-min sketch of 4-bit counters - estimates how often keys have been seen recently
+ *
+ * Counters are halved once the number of increments reaches ten times the sample size - so that
+ * keys which were popular but are no longer get forgotten.
+ * Updates are deliberately not synchronized. Each counter word is read once and written once - so a
+ * counter never carries into its neighbour, but under contention a write can overwrite another
+ * (an increment or a halving) leaving an estimate slightly out either way, which is harmless for
+ * cache admission decisions.
+ */
+final class FrequencySketch {
+	private static final int[] SEEDS = {0x97cb3127, 0xb1c6c3b5, 0xe4b5f9d3, 0x9e3779b9};
+	private static final long RESET_MASK = 0x7777777777777777L;
+
+	private final long[] table;
+	private final int tableMask;
+	private final int resetSize;
+	private int additions;
+
+	FrequencySketch(int sampleSize) {
+		int length = Integer.highestOneBit(Math.max(sampleSize, 16) - 1) << 1;
+		table = new long[length];
+		tableMask = length - 1;
+		resetSize = Math.max(sampleSize, 16) * 10;
+	}
+
+	int frequency(int hash) {
+		int result = 15;
+		for (int row = 0; row < SEEDS.length; row++) {
+			int rowHash = rehash(hash, row);
+			int offset = (rowHash & 15) << 2;
+			int count = (int)((table[(rowHash >>> 8) & tableMask] >>> offset) & 15L);
+			result = Math.min(result, count);
+		}
+		return result;
+	}
+
+	void increment(int hash) {
+		boolean added = false;
+		for (int row = 0; row < SEEDS.length; row++) {
+			int rowHash = rehash(hash, row);
+			int index = (rowHash >>> 8) & tableMask;
+			int offset = (rowHash & 15) << 2;
+			long value = table[index];
+			if (((value >>> offset) & 15L) != 15L) {
+				table[index] = value + (1L << offset);
+				added = true;
+			}
+		}
+		if (added && ++additions >= resetSize) {
+			reset();
+		}
+	}
+
+	private void reset() {
+		for (int index = 0; index < table.length; index++) {
+			table[index] = (table[index] >>> 1) & RESET_MASK;
+		}
+		additions = additions >>> 1;
+	}
+
+	private static int rehash(int hash, int row) {
+		int result = (hash + row) * SEEDS[row];
+		return result ^ (result >>> 16);
+	}
+}
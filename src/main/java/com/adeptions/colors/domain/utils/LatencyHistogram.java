@@ -0,0 +1,132 @@
+/*
+ * LatencyHistogram.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free, allocation-free histogram of latencies (in nanoseconds)
+ *
+ * Buckets are log-linear - each power of two is split into four sub-buckets - so reported
+ * percentiles are within 25% of the actual value.
+ */
+public final class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 2;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = 64 << SUB_BUCKET_BITS;
+	private static final double NANOS_PER_MICRO = 1000d;
+	private static final double[] PERCENTILES = {50d, 90d, 99d, 99.9d};
+	private static final String[] PERCENTILE_NAMES = {"p50Micros", "p90Micros", "p99Micros", "p999Micros"};
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	public void record(long nanos) {
+		record(nanos, 1L);
+	}
+
+	/**
+	 * Records the same latency a number of times (e.g. the per-item latency of a batch)
+	 */
+	public void record(long nanos, long times) {
+		if (times <= 0L) {
+			return;
+		}
+		long value = Math.max(0L, nanos);
+		counts.addAndGet(bucket(value), times);
+		count.add(times);
+		sum.add(value * times);
+		long currentMax = max.get();
+		while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+			currentMax = max.get();
+		}
+	}
+
+	/**
+	 * Records the time since a start time (as given by System.nanoTime)
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * @return a summary (count, mean, percentiles and max - times in microseconds)
+	 */
+	public Map<String,Object> getSnapshot() {
+		long[] bucketCounts = new long[BUCKETS];
+		long total = 0;
+		for (int index = 0; index < BUCKETS; index++) {
+			bucketCounts[index] = counts.get(index);
+			total += bucketCounts[index];
+		}
+		Map<String,Object> result = new LinkedHashMap<String,Object>();
+		result.put("count", total);
+		long recordedCount = count.sum();
+		result.put("meanMicros", recordedCount == 0 ? 0d : (sum.sum() / (double)recordedCount) / NANOS_PER_MICRO);
+		long maxValue = max.get();
+		for (int percentile = 0; percentile < PERCENTILES.length; percentile++) {
+			// (a bucket's upper bound can exceed the largest value actually recorded)
+			result.put(PERCENTILE_NAMES[percentile], Math.min(valueAt(bucketCounts, total, PERCENTILES[percentile]), maxValue) / NANOS_PER_MICRO);
+		}
+		result.put("maxMicros", maxValue / NANOS_PER_MICRO);
+		return result;
+	}
+
+	private static long valueAt(long[] bucketCounts, long total, double percentile) {
+		if (total == 0) {
+			return 0L;
+		}
+		long target = (long)Math.ceil((percentile / 100d) * total);
+		long seen = 0;
+		for (int index = 0; index < BUCKETS; index++) {
+			seen += bucketCounts[index];
+			if (seen >= target) {
+				return bucketUpperBound(index);
+			}
+		}
+		return bucketUpperBound(BUCKETS - 1);
+	}
+
+	static int bucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int)value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int)(value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + subBucket;
+	}
+
+	static long bucketUpperBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = (index >> SUB_BUCKET_BITS) - 1;
+		long lower = (long)(SUB_BUCKETS | (index & (SUB_BUCKETS - 1))) << shift;
+		return lower + (1L << shift) - 1;
+	}
+}
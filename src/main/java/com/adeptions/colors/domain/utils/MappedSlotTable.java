@@ -0,0 +1,185 @@
+/*
+ * MappedSlotTable.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.utils;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Fixed size open addressing table of (long key, long tag) -> 4 floats held in a memory-mapped file
+ *
+ * Each slot carries a checksum - so a slot that is empty, was torn by a crash (or is being written while
+ * it is read) is simply treated as a miss. Probing is limited to a few slots; when they are all taken
+ * the home slot is overwritten. A file whose header does not match (slot count or format) is cleared.
+ *
+ * Reads may be made from any thread - writes must only be made from a single thread.
+ */
+public final class MappedSlotTable {
+	public static final int VALUES = 4;
+
+	private static final int MAGIC = 0x434f4c43;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 64;
+	private static final int SLOT_SIZE = 40;
+	private static final int KEY_OFFSET = 0;
+	private static final int TAG_OFFSET = 8;
+	private static final int VALUES_OFFSET = 16;
+	private static final int CHECK_OFFSET = 32;
+	private static final int MAX_SLOTS = 1 << 25;
+	private static final int PROBES = 8;
+	private static final int EMPTY = 0;
+
+	private final MappedByteBuffer buffer;
+	private final int slots;
+	private final int slotMask;
+	private final boolean cleared;
+
+	/**
+	 * Opens (or creates) a table file
+	 *
+	 * @param file the file
+	 * @param slots the number of slots (rounded up to a power of two - at most 2^25, as a mapping is limited to 2GB)
+	 * @param format identifies the format of keys and values - a file written with a different format is cleared
+	 * @throws IOException
+	 */
+	public MappedSlotTable(Path file, int slots, int format) throws IOException {
+		this.slots = slots <= 1 ? 1 : Integer.highestOneBit(Math.min(slots, MAX_SLOTS) - 1) << 1;
+		slotMask = this.slots - 1;
+		long size = HEADER_SIZE + ((long)this.slots * SLOT_SIZE);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			boolean matches = channel.size() == size;
+			if (!matches) {
+				// wrong size (or new) - start again with all slots empty...
+				channel.truncate(0L);
+			}
+			// the mapping remains valid once the channel is closed...
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0L, size);
+			if (matches && (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+					|| buffer.getInt(8) != this.slots || buffer.getInt(12) != format)) {
+				for (long offset = 0; offset < size; offset += 8) {
+					buffer.putLong((int)offset, 0L);
+				}
+				matches = false;
+			}
+			cleared = !matches;
+			if (cleared) {
+				buffer.putInt(0, MAGIC);
+				buffer.putInt(4, VERSION);
+				buffer.putInt(8, this.slots);
+				buffer.putInt(12, format);
+			}
+		}
+	}
+
+	/**
+	 * @param key the key
+	 * @param tag the tag (must also match)
+	 * @param values receives the values
+	 * @return whether found
+	 */
+	public boolean get(long key, long tag, float[] values) {
+		int home = home(key, tag);
+		for (int probe = 0; probe < PROBES; probe++) {
+			int offset = offset((home + probe) & slotMask);
+			int check = buffer.getInt(offset + CHECK_OFFSET);
+			if (check != EMPTY && buffer.getLong(offset + KEY_OFFSET) == key && buffer.getLong(offset + TAG_OFFSET) == tag) {
+				for (int index = 0; index < VALUES; index++) {
+					values[index] = buffer.getFloat(offset + VALUES_OFFSET + (index * 4));
+				}
+				// re-read the check - the slot may have been rewritten while it was being read...
+				return check == check(key, tag, values) && check == buffer.getInt(offset + CHECK_OFFSET);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds (or replaces) an entry - only a previous entry with the same key and tag is replaced (entries with the
+	 * same key but another tag are kept, unless all the probed slots are taken and the home slot is overwritten)
+	 *
+	 * @param key the key
+	 * @param tag the tag
+	 * @param values the values
+	 */
+	public void put(long key, long tag, float[] values) {
+		int home = home(key, tag);
+		int offset = offset(home);
+		for (int probe = 0; probe < PROBES; probe++) {
+			int probed = offset((home + probe) & slotMask);
+			if (buffer.getInt(probed + CHECK_OFFSET) == EMPTY
+					|| (buffer.getLong(probed + KEY_OFFSET) == key && buffer.getLong(probed + TAG_OFFSET) == tag)) {
+				offset = probed;
+				break;
+			}
+		}
+		// the slot is marked empty while it is written - so that a torn write is never read...
+		buffer.putInt(offset + CHECK_OFFSET, EMPTY);
+		buffer.putLong(offset + KEY_OFFSET, key);
+		buffer.putLong(offset + TAG_OFFSET, tag);
+		for (int index = 0; index < VALUES; index++) {
+			buffer.putFloat(offset + VALUES_OFFSET + (index * 4), values[index]);
+		}
+		buffer.putInt(offset + CHECK_OFFSET, check(key, tag, values));
+	}
+
+	/**
+	 * Writes changes through to the file
+	 */
+	public void force() {
+		buffer.force();
+	}
+
+	public int getSlots() {
+		return slots;
+	}
+
+	/**
+	 * @return whether the file was new (or did not match and was cleared) when opened
+	 */
+	public boolean isCleared() {
+		return cleared;
+	}
+
+	private int home(long key, long tag) {
+		long hash = (key ^ (tag * 0xc2b2ae3d27d4eb4fL)) * 0x9e3779b97f4a7c15L;
+		return (int)(hash ^ (hash >>> 32)) & slotMask;
+	}
+
+	private static int offset(int slot) {
+		return HEADER_SIZE + (slot * SLOT_SIZE);
+	}
+
+	private static int check(long key, long tag, float[] values) {
+		long hash = 0x27d4eb2f165667c5L;
+		hash = mix(hash ^ key);
+		hash = mix(hash ^ tag);
+		for (int index = 0; index < VALUES; index++) {
+			hash = mix(hash ^ Float.floatToRawIntBits(values[index]));
+		}
+		int result = (int)(hash ^ (hash >>> 32));
+		return result == EMPTY ? 1 : result;
+	}
+
+	private static long mix(long hash) {
+		hash *= 0x9e3779b97f4a7c15L;
+		return hash ^ (hash >>> 29);
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * ProfilePairIds.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Interns (source profile, target profile) pairs as small integer ids - so that they can be packed into cache keys
+ *
+ * Looking up an already interned pair does not allocate. Id 0 is always the pair with no profiles.
+ */
+public final class ProfilePairIds {
+	public static final int NO_PROFILES = 0;
+	public static final int UNKNOWN = -1;
+
+	private static final String NO_PROFILE = "";
+
+	private final int maxId;
+	private final ConcurrentMap<String,ConcurrentMap<String,Integer>> ids = new ConcurrentHashMap<String,ConcurrentMap<String,Integer>>();
+	private final ConcurrentMap<Integer,String[]> pairs = new ConcurrentHashMap<Integer,String[]>();
+	private int nextId = NO_PROFILES + 1;
+
+	/**
+	 * @param bits the number of bits available for an id
+	 */
+	public ProfilePairIds(int bits) {
+		maxId = (1 << bits) - 1;
+	}
+
+	/**
+	 * Finds the id of a previously interned profile pair
+	 *
+	 * @param sourceProfile the source profile (or null)
+	 * @param targetProfile the target profile (or null)
+	 * @return the id (or UNKNOWN if the pair has not been interned)
+	 */
+	public int find(String sourceProfile, String targetProfile) {
+		if (sourceProfile == null && targetProfile == null) {
+			return NO_PROFILES;
+		}
+		ConcurrentMap<String,Integer> targets = ids.get(sourceProfile == null ? NO_PROFILE : sourceProfile);
+		if (targets != null) {
+			Integer result = targets.get(targetProfile == null ? NO_PROFILE : targetProfile);
+			if (result != null) {
+				return result;
+			}
+		}
+		return UNKNOWN;
+	}
+
+	/**
+	 * Interns a profile pair
+	 *
+	 * @param sourceProfile the source profile (or null)
+	 * @param targetProfile the target profile (or null)
+	 * @return the id (or UNKNOWN if all ids have been used)
+	 */
+	public int intern(String sourceProfile, String targetProfile) {
+		int result = find(sourceProfile, targetProfile);
+		if (result != UNKNOWN) {
+			return result;
+		}
+		synchronized (ids) {
+			String source = sourceProfile == null ? NO_PROFILE : sourceProfile;
+			String target = targetProfile == null ? NO_PROFILE : targetProfile;
+			ConcurrentMap<String,Integer> targets = ids.get(source);
+			if (targets == null) {
+				targets = new ConcurrentHashMap<String,Integer>();
+				ids.put(source, targets);
+			}
+			Integer existing = targets.get(target);
+			if (existing != null) {
+				return existing;
+			} else if (nextId > maxId) {
+				return UNKNOWN;
+			}
+			result = nextId++;
+			pairs.put(result, new String[] {sourceProfile, targetProfile});
+			targets.put(target, result);
+		}
+		return result;
+	}
+
+	/**
+	 * @param id the profile pair id
+	 * @return the source and target profiles of the pair (or null if the id is not known)
+	 */
+	public String[] getProfiles(int id) {
+		return id == NO_PROFILES ? new String[2] : pairs.get(id);
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * SrgbTransfer.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.utils;
+
+/**
+ * Precomputed sRGB transfer functions (as used by the crude conversions) - avoiding Math.pow per component
+ *
+ * Linearization of 8-bit values is a straight 256 entry lookup (so exactly the same as the formula).
+ * Companding uses linear interpolation in a dense table over linear values 0 to 1 (values outside that
+ * range use the formula) - the table is within COMPAND_TOLERANCE of the formula (checked by SrgbTransferTest).
+ */
+public final class SrgbTransfer {
+	public static final double COMPAND_TOLERANCE = 0.00005d;
+
+	private static final float LINEAR_THRESHOLD = 0.0031308f;
+	private static final int COMPAND_TABLE_INTERVALS = 4096;
+
+	private static final double[] LINEAR_8BIT = new double[256];
+	private static final float[] COMPANDED = new float[COMPAND_TABLE_INTERVALS + 1];
+
+	static {
+		for (int value = 0; value < LINEAR_8BIT.length; value++) {
+			LINEAR_8BIT[value] = linearizeFormula(value / 255f);
+		}
+		for (int index = 0; index <= COMPAND_TABLE_INTERVALS; index++) {
+			COMPANDED[index] = (float)compandFormula(index / (double)COMPAND_TABLE_INTERVALS);
+		}
+	}
+
+	private SrgbTransfer() {
+	}
+
+	/**
+	 * @param value the 8-bit component value (0 to 255)
+	 * @return the linear value
+	 */
+	public static double linearize(int value) {
+		return LINEAR_8BIT[value];
+	}
+
+	/**
+	 * @param linear the linear value
+	 * @return the companded value (within COMPAND_TOLERANCE of the formula)
+	 */
+	public static float compand(double linear) {
+		if (linear <= LINEAR_THRESHOLD) {
+			return (float)(12.92f * linear);
+		} else if (linear >= 1d) {
+			return (float)compandFormula(linear);
+		}
+		double position = linear * COMPAND_TABLE_INTERVALS;
+		int index = (int)position;
+		float fraction = (float)(position - index);
+		return COMPANDED[index] + ((COMPANDED[index + 1] - COMPANDED[index]) * fraction);
+	}
+
+	static double linearizeFormula(float value) {
+		return (value > 0.04045f) ? Math.pow((value + 0.055f)/(1f + 0.055f), 2.2f) : (value / 12.92f);
+	}
+
+	static double compandFormula(double linear) {
+		return (linear <= LINEAR_THRESHOLD) ? 12.92f * linear : 1.055f * Math.pow(linear, (1.0f/2.4f)) - 0.055f;
+	}
+}
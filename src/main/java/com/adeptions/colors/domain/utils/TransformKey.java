@@ -0,0 +1,119 @@
+/*
+ * TransformKey.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.utils;
+
+import com.adeptions.colors.enums.ColorType;
+
+import java.awt.color.ICC_ColorSpace;
+
+/**
+ * Identifies an ICC transform - source type/profile to target type/profile
+ *
+ * A null source profile means the source is either sRGB (for RGB sources) or CIE-XYZ,
+ * a null target profile means the target is either sRGB (for RGB targets) or CIE-XYZ
+ */
+public final class TransformKey {
+	private final ColorType sourceType;
+	private final String sourceProfile;
+	private final ColorType targetType;
+	private final String targetProfile;
+	private final int hash;
+
+	public TransformKey(ColorType sourceType, String sourceProfile, ColorType targetType, String targetProfile) {
+		this.sourceType = sourceType;
+		this.sourceProfile = sourceProfile;
+		this.targetType = targetType;
+		this.targetProfile = targetProfile;
+		int h = sourceType.ordinal();
+		h = (h * 31) + (sourceProfile != null ? sourceProfile.hashCode() : 0);
+		h = (h * 31) + targetType.ordinal();
+		h = (h * 31) + (targetProfile != null ? targetProfile.hashCode() : 0);
+		hash = h;
+	}
+
+	public ColorType getSourceType() {
+		return sourceType;
+	}
+
+	public String getSourceProfile() {
+		return sourceProfile;
+	}
+
+	public ColorType getTargetType() {
+		return targetType;
+	}
+
+	public String getTargetProfile() {
+		return targetProfile;
+	}
+
+	public int getInputChannels() {
+		return sourceType == ColorType.CMYK ? 4 : 3;
+	}
+
+	public int getOutputChannels() {
+		return targetType == ColorType.CMYK ? 4 : 3;
+	}
+
+	public boolean references(String profile) {
+		return profile.equals(sourceProfile) || profile.equals(targetProfile);
+	}
+
+	/**
+	 * Applies the transform using the supplied color spaces
+	 *
+	 * @param sourceColorSpace the source color space (null if no source profile)
+	 * @param targetColorSpace the target color space (null if no target profile)
+	 * @param input the input color components
+	 * @return the output color components
+	 */
+	public float[] apply(ICC_ColorSpace sourceColorSpace, ICC_ColorSpace targetColorSpace, float[] input) {
+		if (sourceColorSpace == null) {
+			return sourceType == ColorType.RGB ? targetColorSpace.fromRGB(input) : targetColorSpace.fromCIEXYZ(input);
+		} else if (targetColorSpace == null) {
+			return targetType == ColorType.RGB ? sourceColorSpace.toRGB(input) : sourceColorSpace.toCIEXYZ(input);
+		}
+		return targetColorSpace.fromCIEXYZ(sourceColorSpace.toCIEXYZ(input));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		} else if (!(obj instanceof TransformKey)) {
+			return false;
+		}
+		TransformKey other = (TransformKey)obj;
+		return hash == other.hash
+				&& sourceType == other.sourceType
+				&& targetType == other.targetType
+				&& (sourceProfile == null ? other.sourceProfile == null : sourceProfile.equals(other.sourceProfile))
+				&& (targetProfile == null ? other.targetProfile == null : targetProfile.equals(other.targetProfile));
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return sourceType.name() + (sourceProfile != null ? "(" + sourceProfile + ")" : "")
+				+ ">" + targetType.name() + (targetProfile != null ? "(" + targetProfile + ")" : "");
+	}
+}
@@ -0,0 +1,196 @@
+/*
+ * TransformLut.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.utils;
+
+/**
+ * Immutable lookup table of a color transform sampled on a regular grid
+ *
+ * 3 channel inputs (RGB, CIE-XYZ) are interpolated tetrahedrally, 4 channel inputs (CMYK)
+ * are interpolated tetrahedrally in C, M & Y and then linearly between the two nearest K planes.
+ * Once built the table is never modified - so it is safe to share across threads without locking.
+ */
+public final class TransformLut {
+	private final int gridPoints;
+	private final int inputChannels;
+	private final int outputChannels;
+	private final int[] strides;
+	private final float[] table;
+
+	private TransformLut(int gridPoints, int inputChannels, int outputChannels, float[] table) {
+		this.gridPoints = gridPoints;
+		this.inputChannels = inputChannels;
+		this.outputChannels = outputChannels;
+		this.table = table;
+		strides = new int[inputChannels];
+		int stride = outputChannels;
+		for (int channel = inputChannels - 1; channel >= 0; channel--) {
+			strides[channel] = stride;
+			stride *= gridPoints;
+		}
+	}
+
+	/**
+	 * Builds a LUT by sampling a transform at every grid node
+	 *
+	 * @param gridPoints the number of grid points along each input axis (at least 2)
+	 * @param inputChannels the number of input channels (3 or 4)
+	 * @param outputChannels the number of output channels
+	 * @param sampler the transform to be sampled
+	 * @return the built LUT
+	 * @throws Exception if the sampler fails
+	 */
+	public static TransformLut build(int gridPoints, int inputChannels, int outputChannels, Sampler sampler) throws Exception {
+		int nodes = 1;
+		for (int channel = 0; channel < inputChannels; channel++) {
+			nodes *= gridPoints;
+		}
+		float[] table = new float[nodes * outputChannels];
+		float[] input = new float[inputChannels];
+		int[] position = new int[inputChannels];
+		float step = 1f / (gridPoints - 1);
+		for (int node = 0, offset = 0; node < nodes; node++, offset += outputChannels) {
+			for (int channel = 0; channel < inputChannels; channel++) {
+				input[channel] = position[channel] * step;
+			}
+			float[] output = sampler.sample(input);
+			System.arraycopy(output, 0, table, offset, outputChannels);
+			// advance the grid position (last channel varies fastest)...
+			for (int channel = inputChannels - 1; channel >= 0; channel--) {
+				if (++position[channel] < gridPoints) {
+					break;
+				}
+				position[channel] = 0;
+			}
+		}
+		return new TransformLut(gridPoints, inputChannels, outputChannels, table);
+	}
+
+	public int getGridPoints() {
+		return gridPoints;
+	}
+
+	public int getInputChannels() {
+		return inputChannels;
+	}
+
+	public int getOutputChannels() {
+		return outputChannels;
+	}
+
+	/**
+	 * @return the approximate memory used by the table (in bytes)
+	 */
+	public long getMemorySize() {
+		return (long)table.length * 4L;
+	}
+
+	public float[] transform(float[] input) {
+		float[] output = new float[outputChannels];
+		transform(input, 0, output, 0);
+		return output;
+	}
+
+	/**
+	 * Transforms a single color (without allocating)
+	 *
+	 * @param input the input components
+	 * @param inputOffset the offset of the first input component
+	 * @param output the array to receive the output components
+	 * @param outputOffset the offset at which to write the first output component
+	 */
+	public void transform(float[] input, int inputOffset, float[] output, int outputOffset) {
+		for (int channel = 0; channel < outputChannels; channel++) {
+			output[outputOffset + channel] = 0f;
+		}
+		int max = gridPoints - 1;
+		int base = 0;
+		float f0 = 0f, f1 = 0f, f2 = 0f;
+		for (int channel = 0; channel < 3; channel++) {
+			float scaled = clamp(input[inputOffset + channel]) * max;
+			int cell = Math.min((int)scaled, max - 1);
+			base += cell * strides[channel];
+			float fraction = scaled - cell;
+			if (channel == 0) {
+				f0 = fraction;
+			} else if (channel == 1) {
+				f1 = fraction;
+			} else {
+				f2 = fraction;
+			}
+		}
+		if (inputChannels == 3) {
+			tetrahedral(base, f0, f1, f2, 1f, output, outputOffset);
+		} else {
+			float scaled = clamp(input[inputOffset + 3]) * max;
+			int cell = Math.min((int)scaled, max - 1);
+			float fraction = scaled - cell;
+			base += cell * strides[3];
+			tetrahedral(base, f0, f1, f2, 1f - fraction, output, outputOffset);
+			tetrahedral(base + strides[3], f0, f1, f2, fraction, output, outputOffset);
+		}
+	}
+
+	private void tetrahedral(int base, float f0, float f1, float f2, float weight, float[] output, int outputOffset) {
+		if (weight == 0f) {
+			return;
+		}
+		// order the axes by descending fraction - that determines which of the six tetrahedra of the cell is used...
+		int sa, sb, sc;
+		float fa, fb, fc;
+		if (f0 >= f1) {
+			if (f1 >= f2) {
+				sa = strides[0]; sb = strides[1]; sc = strides[2]; fa = f0; fb = f1; fc = f2;
+			} else if (f0 >= f2) {
+				sa = strides[0]; sb = strides[2]; sc = strides[1]; fa = f0; fb = f2; fc = f1;
+			} else {
+				sa = strides[2]; sb = strides[0]; sc = strides[1]; fa = f2; fb = f0; fc = f1;
+			}
+		} else {
+			if (f0 >= f2) {
+				sa = strides[1]; sb = strides[0]; sc = strides[2]; fa = f1; fb = f0; fc = f2;
+			} else if (f1 >= f2) {
+				sa = strides[1]; sb = strides[2]; sc = strides[0]; fa = f1; fb = f2; fc = f0;
+			} else {
+				sa = strides[2]; sb = strides[1]; sc = strides[0]; fa = f2; fb = f1; fc = f0;
+			}
+		}
+		int v0 = base;
+		int v1 = v0 + sa;
+		int v2 = v1 + sb;
+		int v3 = v2 + sc;
+		float w0 = (1f - fa) * weight;
+		float w1 = (fa - fb) * weight;
+		float w2 = (fb - fc) * weight;
+		float w3 = fc * weight;
+		for (int channel = 0; channel < outputChannels; channel++) {
+			output[outputOffset + channel] += (w0 * table[v0 + channel]) + (w1 * table[v1 + channel])
+					+ (w2 * table[v2 + channel]) + (w3 * table[v3 + channel]);
+		}
+	}
+
+	private static float clamp(float value) {
+		return value < 0f ? 0f : (value > 1f ? 1f : value);
+	}
+
+	/**
+	 * The transform sampled at each grid node when building a LUT
+	 */
+	public interface Sampler {
+		float[] sample(float[] input) throws Exception;
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * BatchConversionRequest.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.dtos;
+
+import com.adeptions.colors.enums.ColorType;
+import com.adeptions.colors.exceptions.BadRequestException;
+import com.adeptions.colors.exceptions.ConversionException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Request body for a batch conversion - an array of source colors with shared profile options
+ */
+public class BatchConversionRequest {
+	public static final String PROPERTY_NAME_COLORS = "colors";
+
+	private List<Map<String,Object>> colors;
+	private String profile;
+	private String sourceProfile;
+	private Boolean crude;
+
+	public List<Map<String,Object>> getColors() {
+		return colors;
+	}
+
+	public void setColors(List<Map<String,Object>> colors) {
+		this.colors = colors;
+	}
+
+	public String getProfile() {
+		return profile;
+	}
+
+	public void setProfile(String profile) {
+		this.profile = profile;
+	}
+
+	public String getSourceProfile() {
+		return sourceProfile;
+	}
+
+	public void setSourceProfile(String sourceProfile) {
+		this.sourceProfile = sourceProfile;
+	}
+
+	public Boolean getCrude() {
+		return crude;
+	}
+
+	public void setCrude(Boolean crude) {
+		this.crude = crude;
+	}
+
+	/**
+	 * Creates the params for each color in the batch
+	 *
+	 * @param targetType the target color type
+	 * @param maxColors the maximum number of colors allowed in a batch
+	 * @return the list of params (in the same order as the colors)
+	 * @throws ConversionException if any of the colors are invalid
+	 */
+	public List<ColorParams> toColorParams(ColorType targetType, int maxColors) throws ConversionException {
+		if (colors == null) {
+			throw new BadRequestException("Property '" + PROPERTY_NAME_COLORS + "' must be specified");
+		}
+		if (colors.size() > maxColors) {
+			throw new BadRequestException("Property '" + PROPERTY_NAME_COLORS + "' cannot contain more than " + maxColors + " colors");
+		}
+		List<ColorParams> result = new ArrayList<ColorParams>(colors.size());
+		for (int index = 0; index < colors.size(); index++) {
+			Map<String,Object> color = colors.get(index);
+			if (color == null) {
+				throw new BadRequestException("Color [" + index + "] must be an object");
+			}
+			Map<String,String[]> params = new HashMap<String,String[]>();
+			for (Map.Entry<String,Object> entry: color.entrySet()) {
+				if (entry.getValue() != null) {
+					params.put(entry.getKey(), new String[] {entry.getValue().toString()});
+				}
+			}
+			if (profile != null) {
+				params.put(ColorParams.PARAM_NAME_PROFILE, new String[] {profile});
+			}
+			if (sourceProfile != null) {
+				params.put(ColorParams.PARAM_NAME_SOURCE_PROFILE, new String[] {sourceProfile});
+			}
+			if (crude != null) {
+				params.put(ColorParams.PARAM_NAME_CRUDE, new String[] {crude.toString()});
+			}
+			try {
+				result.add(new ColorParams(targetType, params));
+			} catch (BadRequestException e) {
+				throw new BadRequestException("Color [" + index + "]: " + e.getMessage(), e);
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ * BinaryConversionRequest.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.dtos;
+
+import com.adeptions.colors.enums.ColorType;
+import com.adeptions.colors.exceptions.BadRequestException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Header of a binary (application/octet-stream) bulk conversion request
+ *
+ * All values are big-endian:
+ *   version (uint8 - currently 1), source type (uint8 - 0 = CMYK, 1 = RGB, 2 = CIE-XYZ),
+ *   flags (uint8 - bit 0 = crude), source profile name length (uint8), target profile name length (uint8),
+ *   3 reserved bytes, color count (uint32), source profile name (UTF-8), target profile name (UTF-8)
+ * followed by the packed source colors - RGB as 3 x uint8, CMYK as 4 x float32 and CIE-XYZ as 3 x float32.
+ *
+ * The response is a header of version (uint8), target type (uint8), 2 reserved bytes and color count (uint32)
+ * followed by the packed target colors (in the same encodings).
+ */
+public class BinaryConversionRequest {
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 12;
+	public static final int RESPONSE_HEADER_SIZE = 8;
+	private static final int FLAG_CRUDE = 1;
+	private static final ColorType[] TYPES = {ColorType.CMYK, ColorType.RGB, ColorType.XYZ};
+
+	private final ColorType sourceType;
+	private final boolean crude;
+	private final String sourceProfile;
+	private final String targetProfile;
+	private final int count;
+
+	private BinaryConversionRequest(ColorType sourceType, boolean crude, String sourceProfile, String targetProfile, int count) {
+		this.sourceType = sourceType;
+		this.crude = crude;
+		this.sourceProfile = sourceProfile;
+		this.targetProfile = targetProfile;
+		this.count = count;
+	}
+
+	/**
+	 * Reads the header (leaving the channel positioned at the first color)
+	 *
+	 * @param channel the request body
+	 * @param maxColors the maximum number of colors allowed
+	 * @return the request
+	 * @throws BadRequestException if the header is invalid
+	 * @throws IOException
+	 */
+	public static BinaryConversionRequest read(ReadableByteChannel channel, int maxColors) throws BadRequestException, IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		if (!readFully(channel, header)) {
+			throw new BadRequestException("Binary request body must start with a " + HEADER_SIZE + " byte header");
+		}
+		header.flip();
+		int version = header.get() & 0xff;
+		if (version != VERSION) {
+			throw new BadRequestException("Binary request version " + version + " is not supported (must be " + VERSION + ")");
+		}
+		int typeCode = header.get() & 0xff;
+		if (typeCode >= TYPES.length) {
+			throw new BadRequestException("Binary request source type " + typeCode + " is not valid");
+		}
+		boolean crude = (header.get() & FLAG_CRUDE) != 0;
+		int sourceProfileLength = header.get() & 0xff;
+		int targetProfileLength = header.get() & 0xff;
+		header.position(header.position() + 3);
+		long count = header.getInt() & 0xffffffffL;
+		if (count > maxColors) {
+			throw new BadRequestException("Binary request cannot contain more than " + maxColors + " colors");
+		}
+		ByteBuffer names = ByteBuffer.allocate(sourceProfileLength + targetProfileLength);
+		if (!readFully(channel, names)) {
+			throw new BadRequestException("Binary request body ended within the profile names");
+		}
+		String sourceProfile = profileName(names.array(), 0, sourceProfileLength);
+		String targetProfile = profileName(names.array(), sourceProfileLength, targetProfileLength);
+		if (crude && (sourceProfile != null || targetProfile != null)) {
+			throw new BadRequestException("Crude conversion cannot be used with profiles");
+		}
+		return new BinaryConversionRequest(TYPES[typeCode], crude, sourceProfile, targetProfile, (int)count);
+	}
+
+	/**
+	 * @return whether the buffer was filled (false if the channel ended first)
+	 */
+	public static boolean readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String profileName(byte[] bytes, int offset, int length) {
+		if (length == 0) {
+			return null;
+		}
+		String result = new String(bytes, offset, length, StandardCharsets.UTF_8);
+		return result + (!result.endsWith(ColorParams.ICC_EXT) ? ColorParams.ICC_EXT : "");
+	}
+
+	/**
+	 * @param colorType the color type
+	 * @return the number of bytes for a packed color of the type
+	 */
+	public static int colorSize(ColorType colorType) {
+		switch (colorType) {
+			case RGB:
+				return 3;
+			case CMYK:
+				return 4 * 4;
+			default:
+				return 3 * 4;
+		}
+	}
+
+	/**
+	 * @param colorType the color type
+	 * @return the type code used in the binary headers
+	 */
+	public static int typeCode(ColorType colorType) {
+		for (int code = 0; code < TYPES.length; code++) {
+			if (TYPES[code] == colorType) {
+				return code;
+			}
+		}
+		throw new IllegalArgumentException(colorType.name());
+	}
+
+	/**
+	 * @param targetType the target color type
+	 * @return the length of the response body
+	 */
+	public long getResponseLength(ColorType targetType) {
+		return RESPONSE_HEADER_SIZE + ((long)count * colorSize(targetType));
+	}
+
+	public ColorType getSourceType() {
+		return sourceType;
+	}
+
+	public boolean isCrude() {
+		return crude;
+	}
+
+	public String getSourceProfile() {
+		return sourceProfile;
+	}
+
+	public String getTargetProfile() {
+		return targetProfile;
+	}
+
+	public int getCount() {
+		return count;
+	}
+}
@@ -38,6 +38,10 @@ public class ColorParams {
 	public static final String PARAM_NAME_PROFILE = "profile";
 	public static final String PARAM_NAME_SOURCE_PROFILE = "sourceProfile";
 	public static final String PARAM_NAME_CRUDE = "crude";
+	public static final int PACKED_COLOR_BITS = 48;
+
+	public static final int PACKED_CMYK_BITS = 12;
+	public static final int PACKED_XYZ_BITS = 16;
 
 	private ColorType targetType;
 	private ColorType sourceType;
@@ -54,7 +58,6 @@ public class ColorParams {
 	private String targetProfile;
 	private String sourceProfile;
 	private boolean crudeConversion;
-	private String cacheKey = null;
 
 	public ColorParams(ColorType targetType, Map<String,String[]> params) throws ConversionException {
 		this.targetType = targetType;
@@ -70,8 +73,8 @@ public class ColorParams {
 		yValue = readCmykParam(params, PARAM_NAME_YELLOW);
 		kValue = readCmykParam(params, PARAM_NAME_BLACK);
 		cieXValue = readXyzParam(params, PARAM_NAME_X);
-		cieYValue = readXyzParam(params, PARAM_NAME_X);
-		cieZValue = readXyzParam(params, PARAM_NAME_X);
+		cieYValue = readXyzParam(params, PARAM_NAME_Y);
+		cieZValue = readXyzParam(params, PARAM_NAME_Z);
 		if (rValue != null || gValue != null || bValue != null) {
 			sourceType = ColorType.RGB;
 			if (rValue == null || gValue == null || bValue == null) {
@@ -254,29 +257,55 @@ public class ColorParams {
 		return crudeConversion;
 	}
 
-	public String getCacheKey() {
-		if (cacheKey == null) {
-			StringBuilder cacheKeyBuilder = (new StringBuilder(sourceType.name())).append(":");
-			switch (sourceType) {
-				case CMYK:
-					cacheKeyBuilder.append(cValue).append(",").append(mValue).append(",").append(yValue).append(",").append(kValue);
-					break;
-				case RGB:
-					cacheKeyBuilder.append(rValue).append(",").append(gValue).append(",").append(bValue);
-					break;
-			}
-			if (crudeConversion) {
-				cacheKeyBuilder.append(":!CRUDE!");
-			} else {
-				if (targetProfile != null) {
-					cacheKeyBuilder.append(":T=").append(targetProfile);
-				}
-				if (sourceProfile != null) {
-					cacheKeyBuilder.append(":S=").append(sourceProfile);
-				}
-			}
-			cacheKey = cacheKeyBuilder.toString();
+	/**
+	 * Packs the source color components into (the low 48 bits of) a long - for use in cache keys
+	 *
+	 * RGB components are packed exactly, CMYK components are quantized to 12 bits each and
+	 * CIE-XYZ components to 16 bits each
+	 *
+	 * @return the packed color
+	 */
+	public long getPackedColor() {
+		return getPackedColor(PACKED_CMYK_BITS, PACKED_XYZ_BITS);
+	}
+
+	/**
+	 * Packs the source color components into (the low 48 bits of) a long - quantizing CMYK and CIE-XYZ components
+	 * to the given number of bits (so near identical colors pack the same)
+	 *
+	 * A quantized component is within half a step (0.5 / (2^bits - 1)) of the actual component - so two colors
+	 * that pack the same differ by at most one step in each component.
+	 *
+	 * @param cmykBits the bits per CMYK component (1 to PACKED_CMYK_BITS)
+	 * @param xyzBits the bits per CIE-XYZ component (1 to PACKED_XYZ_BITS)
+	 * @return the packed color
+	 */
+	public long getPackedColor(int cmykBits, int xyzBits) {
+		switch (sourceType) {
+			case CMYK:
+				int cmykSteps = (1 << cmykBits) - 1;
+				return (quantize(cValue, cmykSteps) << (PACKED_CMYK_BITS * 3)) | (quantize(mValue, cmykSteps) << (PACKED_CMYK_BITS * 2))
+						| (quantize(yValue, cmykSteps) << PACKED_CMYK_BITS) | quantize(kValue, cmykSteps);
+			case RGB:
+				return (rValue.longValue() << 16) | (gValue.longValue() << 8) | bValue.longValue();
+			case XYZ:
+				int xyzSteps = (1 << xyzBits) - 1;
+				return (quantize(cieXValue, xyzSteps) << (PACKED_XYZ_BITS * 2)) | (quantize(cieYValue, xyzSteps) << PACKED_XYZ_BITS)
+						| quantize(cieZValue, xyzSteps);
 		}
-		return cacheKey;
+		return 0L;
+	}
+
+	/**
+	 * @param cmykBits the bits per CMYK component
+	 * @param xyzBits the bits per CIE-XYZ component
+	 * @return identifies how colors are packed (so that persisted packed colors can be recognised as still valid)
+	 */
+	public static int getPackedColorFormat(int cmykBits, int xyzBits) {
+		return (cmykBits << 8) | xyzBits;
+	}
+
+	private static long quantize(float value, int steps) {
+		return Math.round(value * steps);
 	}
 }
@@ -0,0 +1,126 @@
+/*
+ * ColorStreamReader.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.dtos;
+
+import com.adeptions.colors.enums.StreamFormat;
+import com.adeptions.colors.exceptions.BadRequestException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads source colors, one row at a time, from an NDJSON or CSV stream
+ *
+ * NDJSON rows are objects with the same properties as the GET params (e.g. {"r": 10, "g": 120, "b": 200});
+ * CSV must start with a header row of param names (e.g. r,g,b) - values are not expected to contain commas.
+ * Shared params (e.g. profile) apply to every row that does not specify its own.
+ */
+public class ColorStreamReader {
+	private final BufferedReader reader;
+	private final StreamFormat format;
+	private final ObjectMapper objectMapper;
+	private final Map<String,String[]> sharedParams;
+	private String[] csvHeaders;
+	private int rowNumber;
+
+	public ColorStreamReader(BufferedReader reader, StreamFormat format, ObjectMapper objectMapper, Map<String,String[]> sharedParams) {
+		this.reader = reader;
+		this.format = format;
+		this.objectMapper = objectMapper;
+		this.sharedParams = sharedParams;
+	}
+
+	/**
+	 * Reads the next row
+	 *
+	 * @return the params for the row (or null at end of stream)
+	 * @throws IOException if the stream cannot be read
+	 * @throws BadRequestException if the row is malformed (the reader can still continue with the next row)
+	 */
+	public Map<String,String[]> next() throws IOException, BadRequestException {
+		String line = nextLine();
+		if (line != null && format == StreamFormat.CSV && csvHeaders == null) {
+			csvHeaders = splitCsv(line);
+			line = nextLine();
+		}
+		if (line == null) {
+			return null;
+		}
+		rowNumber++;
+		Map<String,String[]> result = new HashMap<String,String[]>();
+		if (format == StreamFormat.CSV) {
+			String[] values = splitCsv(line);
+			if (values.length > csvHeaders.length) {
+				throw new BadRequestException("Row " + rowNumber + ": has more values than headers");
+			}
+			for (int index = 0; index < values.length; index++) {
+				if (!values[index].isEmpty()) {
+					result.put(csvHeaders[index], new String[] {values[index]});
+				}
+			}
+		} else {
+			Map<?,?> row;
+			try {
+				row = objectMapper.readValue(line, Map.class);
+			} catch (IOException e) {
+				throw new BadRequestException("Row " + rowNumber + ": must be a JSON object", e);
+			}
+			for (Map.Entry<?,?> entry: row.entrySet()) {
+				if (entry.getValue() != null) {
+					result.put(entry.getKey().toString(), new String[] {entry.getValue().toString()});
+				}
+			}
+		}
+		for (Map.Entry<String,String[]> shared: sharedParams.entrySet()) {
+			if (!result.containsKey(shared.getKey())) {
+				result.put(shared.getKey(), shared.getValue());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the number of the last row read (1 based, excluding any CSV header)
+	 */
+	public int getRowNumber() {
+		return rowNumber;
+	}
+
+	private String nextLine() throws IOException {
+		String result = reader.readLine();
+		while (result != null && result.trim().isEmpty()) {
+			result = reader.readLine();
+		}
+		return result;
+	}
+
+	private static String[] splitCsv(String line) {
+		String[] result = line.split(",", -1);
+		for (int index = 0; index < result.length; index++) {
+			String value = result[index].trim();
+			if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")) {
+				value = value.substring(1, value.length() - 1).trim();
+			}
+			result[index] = value;
+		}
+		return result;
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * ColorStreamWriter.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.dtos;
+
+import com.adeptions.colors.enums.ColorType;
+import com.adeptions.colors.enums.StreamFormat;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+
+/**
+ * Writes conversion results (or row errors), one row per source row, to an NDJSON or CSV stream
+ *
+ * CSV output has a header row of the result property names for the target type plus an error column.
+ */
+public class ColorStreamWriter {
+	public static final String PROPERTY_NAME_ERROR = "error";
+
+	private static final String CSV_HEADER_CMYK = "c,m,y,k," + PROPERTY_NAME_ERROR;
+	private static final String CSV_HEADER_RGB = "r,g,b,rPercent,gPercent,bPercent," + PROPERTY_NAME_ERROR;
+	private static final String CSV_HEADER_XYZ = "cieX,cieY,cieZ," + PROPERTY_NAME_ERROR;
+
+	private final Writer writer;
+	private final StreamFormat format;
+	private final ColorType targetType;
+	private final ObjectMapper objectMapper;
+	private boolean csvHeaderWritten;
+
+	public ColorStreamWriter(Writer writer, StreamFormat format, ColorType targetType, ObjectMapper objectMapper) {
+		this.writer = writer;
+		this.format = format;
+		this.targetType = targetType;
+		this.objectMapper = objectMapper;
+	}
+
+	public void writeResult(ConversionResult result) throws IOException {
+		if (format == StreamFormat.CSV) {
+			writeCsvHeader();
+			switch (targetType) {
+				case CMYK:
+					writeCsvRow(result.getC(), result.getM(), result.getY(), result.getK(), "");
+					break;
+				case RGB:
+					writeCsvRow(result.getR(), result.getG(), result.getB(), result.getrPercent(), result.getgPercent(), result.getbPercent(), "");
+					break;
+				case XYZ:
+					writeCsvRow(result.getCieX(), result.getCieY(), result.getCieZ(), "");
+					break;
+			}
+		} else {
+			// (written as a string - Jackson would otherwise close the writer)
+			writer.write(objectMapper.writeValueAsString(result));
+			writer.write('\n');
+		}
+	}
+
+	public void writeError(String message) throws IOException {
+		if (format == StreamFormat.CSV) {
+			writeCsvHeader();
+			int columns = targetType == ColorType.RGB ? 6 : (targetType == ColorType.CMYK ? 4 : 3);
+			for (int column = 0; column < columns; column++) {
+				writer.write(',');
+			}
+			writer.write('"' + message.replace("\"", "\"\"") + '"');
+			writer.write('\n');
+		} else {
+			writer.write(objectMapper.writeValueAsString(Collections.singletonMap(PROPERTY_NAME_ERROR, message)));
+			writer.write('\n');
+		}
+	}
+
+	public void flush() throws IOException {
+		writer.flush();
+	}
+
+	private void writeCsvHeader() throws IOException {
+		if (!csvHeaderWritten) {
+			csvHeaderWritten = true;
+			writer.write(targetType == ColorType.RGB ? CSV_HEADER_RGB : (targetType == ColorType.CMYK ? CSV_HEADER_CMYK : CSV_HEADER_XYZ));
+			writer.write('\n');
+		}
+	}
+
+	private void writeCsvRow(Object... values) throws IOException {
+		for (int index = 0; index < values.length; index++) {
+			if (index > 0) {
+				writer.write(',');
+			}
+			writer.write(String.valueOf(values[index]));
+		}
+		writer.write('\n');
+	}
+}
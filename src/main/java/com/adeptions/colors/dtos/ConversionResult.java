@@ -19,6 +19,8 @@ package com.adeptions.colors.dtos;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * The result of a color conversion
  */
@@ -36,11 +38,60 @@ public class ConversionResult {
 	private Float cieX;
 	private Float cieY;
 	private Float cieZ;
+	private volatile byte[] json;
 
 	private ConversionResult() {
 
 	}
 
+	/**
+	 * Gets the result encoded as JSON (exactly as Jackson would serialize it - same property order,
+	 * nulls omitted) - encoded without reflection on first use and then kept with the result (so a
+	 * result held in the converted color cache is only ever encoded once)
+	 *
+	 * @return the UTF-8 (in fact ASCII) JSON bytes - must not be modified
+	 */
+	public byte[] toJsonBytes() {
+		byte[] result = json;
+		if (result == null) {
+			StringBuilder builder = new StringBuilder(128);
+			builder.append('{');
+			appendProperty(builder, "c", c);
+			appendProperty(builder, "m", m);
+			appendProperty(builder, "y", y);
+			appendProperty(builder, "k", k);
+			appendProperty(builder, "r", r);
+			appendProperty(builder, "g", g);
+			appendProperty(builder, "b", b);
+			appendProperty(builder, "rPercent", rPercent);
+			appendProperty(builder, "gPercent", gPercent);
+			appendProperty(builder, "bPercent", bPercent);
+			appendProperty(builder, "cieX", cieX);
+			appendProperty(builder, "cieY", cieY);
+			appendProperty(builder, "cieZ", cieZ);
+			builder.append('}');
+			result = builder.toString().getBytes(StandardCharsets.US_ASCII);
+			json = result;
+		}
+		return result;
+	}
+
+	private static void appendProperty(StringBuilder builder, String name, Number value) {
+		if (value == null) {
+			return;
+		}
+		if (builder.length() > 1) {
+			builder.append(',');
+		}
+		builder.append('"').append(name).append("\":");
+		if (value instanceof Float && (((Float)value).isNaN() || ((Float)value).isInfinite())) {
+			// Jackson quotes non-numeric numbers by default...
+			builder.append('"').append(value).append('"');
+		} else {
+			builder.append(value);
+		}
+	}
+
 	public static ConversionResult createRgbResult(float[] rgb) {
 		ConversionResult result = new ConversionResult();
 		result.r = Math.round(rgb[0] * 255f);
@@ -0,0 +1,52 @@
+/*
+ * StreamFormat.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.enums;
+
+public enum StreamFormat {
+	NDJSON(StreamFormat.CONTENT_TYPE_NDJSON),
+	CSV(StreamFormat.CONTENT_TYPE_CSV);
+
+	public static final String CONTENT_TYPE_NDJSON = "application/x-ndjson";
+	public static final String CONTENT_TYPE_CSV = "text/csv";
+
+	private final String contentType;
+
+	StreamFormat(String contentType) {
+		this.contentType = contentType;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * @param contentType the request content type (may include parameters, e.g. charset)
+	 * @return the stream format (or null if the content type is not a stream format)
+	 */
+	public static StreamFormat fromContentType(String contentType) {
+		if (contentType != null) {
+			String mediaType = contentType.split(";")[0].trim();
+			for (StreamFormat format: values()) {
+				if (format.contentType.equalsIgnoreCase(mediaType)) {
+					return format;
+				}
+			}
+		}
+		return null;
+	}
+}
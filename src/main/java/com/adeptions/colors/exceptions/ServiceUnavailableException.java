@@ -0,0 +1,46 @@
+/*
+ * ServiceUnavailableException.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.exceptions;
+
+/**
+ * Thrown when a request cannot be admitted because the service is overloaded (the client should retry later)
+ */
+public class ServiceUnavailableException extends ConversionException {
+	private final long retryAfter;
+
+	@Override
+	public int getStatusCode() {
+		return 503;
+	}
+
+	/**
+	 * @param message the message
+	 * @param retryAfter the number of seconds after which the client may retry
+	 */
+	public ServiceUnavailableException(String message, long retryAfter) {
+		super(message);
+		this.retryAfter = retryAfter;
+	}
+
+	/**
+	 * @return the number of seconds after which the client may retry (for the Retry-After header)
+	 */
+	public long getRetryAfter() {
+		return retryAfter;
+	}
+}
@@ -0,0 +1,32 @@
+/*
+ * UnsupportedMediaTypeException.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.exceptions;
+
+/**
+ * Thrown when an image cannot be read or written in the requested format
+ */
+public class UnsupportedMediaTypeException extends ConversionException {
+	@Override
+	public int getStatusCode() {
+		return 415;
+	}
+
+	public UnsupportedMediaTypeException(String message) {
+		super(message);
+	}
+}
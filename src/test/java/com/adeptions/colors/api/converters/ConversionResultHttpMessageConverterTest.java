@@ -0,0 +1,79 @@
+/*
+ * ConversionResultHttpMessageConverterTest.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.api.converters;
+
+import com.adeptions.colors.domain.components.Configuration;
+import com.adeptions.colors.dtos.ConversionResult;
+import org.junit.Test;
+import org.springframework.core.env.PropertiesPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConversionResultHttpMessageConverterTest {
+	@Test
+	public void writesPreEncodedBytes() throws Exception {
+		ConversionResultHttpMessageConverter converter = converter(true);
+		assertTrue(converter.canWrite(ConversionResult.class, MediaType.APPLICATION_JSON));
+		assertFalse(converter.canRead(ConversionResult.class, MediaType.APPLICATION_JSON));
+		ConversionResult result = ConversionResult.createRgbResult(10, 120, 200);
+		OutputMessage message = new OutputMessage();
+		converter.write(result, MediaType.APPLICATION_JSON, message);
+		assertTrue(Arrays.equals(result.toJsonBytes(), message.body.toByteArray()));
+		assertEquals(result.toJsonBytes().length, message.headers.getContentLength());
+		assertTrue(MediaType.APPLICATION_JSON.isCompatibleWith(message.headers.getContentType()));
+	}
+
+	@Test
+	public void leftToJacksonWhenDisabled() throws Exception {
+		assertFalse(converter(false).canWrite(ConversionResult.class, MediaType.APPLICATION_JSON));
+	}
+
+	private static ConversionResultHttpMessageConverter converter(boolean enabled) {
+		Properties properties = new Properties();
+		properties.setProperty("converted.color.cache.json", String.valueOf(enabled));
+		StandardEnvironment environment = new StandardEnvironment();
+		environment.getPropertySources().addFirst(new PropertiesPropertySource("test", properties));
+		return new ConversionResultHttpMessageConverter(new Configuration(environment));
+	}
+
+	private static class OutputMessage implements HttpOutputMessage {
+		private final HttpHeaders headers = new HttpHeaders();
+		private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+		@Override
+		public OutputStream getBody() {
+			return body;
+		}
+
+		@Override
+		public HttpHeaders getHeaders() {
+			return headers;
+		}
+	}
+}
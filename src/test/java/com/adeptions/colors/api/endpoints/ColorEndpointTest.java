@@ -0,0 +1,202 @@
+/*
+ * ColorEndpointTest.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.api.endpoints;
+
+import com.adeptions.colors.api.endpoints.cmyk.CmykEndpoint;
+import com.adeptions.colors.domain.services.ConverterFixture;
+import com.adeptions.colors.dtos.ConversionResult;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ColorEndpointTest {
+	private static final long ASYNC_WAIT = 10000L;
+
+	private ConverterFixture fixture;
+
+	@After
+	public void tearDown() throws Exception {
+		if (fixture != null) {
+			fixture.getProfiles().shutdown();
+			fixture.shutdown();
+		}
+	}
+
+	@Test
+	public void conditionalGetAnswered304() throws Exception {
+		AbstractColorEndpoint endpoint = endpoint(false);
+		StubResponse first = new StubResponse();
+		Object result = get(endpoint, null, first);
+		assertTrue(result instanceof ConversionResult);
+		String eTag = first.headers.get(HttpHeaders.ETAG);
+		assertNotNull(eTag);
+		assertNotNull(first.headers.get(HttpHeaders.CACHE_CONTROL));
+
+		StubResponse second = new StubResponse();
+		assertNull(get(endpoint, eTag, second));
+		assertEquals(HttpStatus.NOT_MODIFIED.value(), second.status);
+		assertEquals(first.headers.get(HttpHeaders.CACHE_CONTROL), second.headers.get(HttpHeaders.CACHE_CONTROL));
+
+		// a different conversion does not match...
+		StubResponse other = new StubResponse();
+		assertTrue(get(endpoint, eTag, other, "r", "11", "g", "120", "b", "200") instanceof ConversionResult);
+		assertEquals(HttpStatus.OK.value(), other.status);
+	}
+
+	@Test
+	public void cacheHitAnsweredWithoutGoingAsync() throws Exception {
+		AbstractColorEndpoint endpoint = endpoint(true);
+		StubResponse first = new StubResponse();
+		Object result = get(endpoint, null, first);
+		assertTrue(result instanceof DeferredResult);
+		DeferredResult<?> deferred = (DeferredResult<?>)result;
+		long until = System.currentTimeMillis() + ASYNC_WAIT;
+		while (!deferred.hasResult() && System.currentTimeMillis() < until) {
+			Thread.sleep(10L);
+		}
+		assertTrue(deferred.getResult() instanceof ConversionResult);
+		assertNotNull(first.headers.get(HttpHeaders.CACHE_CONTROL));
+
+		StubResponse second = new StubResponse();
+		// the first conversion is now cached...
+		assertTrue(get(endpoint, null, second) instanceof ConversionResult);
+		assertNotNull(second.headers.get(HttpHeaders.CACHE_CONTROL));
+	}
+
+	private AbstractColorEndpoint endpoint(boolean async) throws Exception {
+		Map<String,String> overrides = new HashMap<String,String>();
+		overrides.put("conversion.async", String.valueOf(async));
+		overrides.put("colorprofiles.files.watch", "false");
+		fixture = new ConverterFixture(overrides);
+		fixture.getProfiles().start();
+		AbstractColorEndpoint result = new CmykEndpoint();
+		result.converter = fixture.getConverter();
+		result.config = fixture.getConfig();
+		result.conversionETags = fixture.getConversionETags();
+		result.conversionExecutor = fixture.getConversionExecutor();
+		return result;
+	}
+
+	private static Object get(AbstractColorEndpoint endpoint, String ifNoneMatch, StubResponse response) throws Exception {
+		return get(endpoint, ifNoneMatch, response, "r", "10", "g", "120", "b", "200");
+	}
+
+	private static Object get(AbstractColorEndpoint endpoint, String ifNoneMatch, StubResponse response, String... namesAndValues) throws Exception {
+		Map<String,String[]> params = new HashMap<String,String[]>();
+		for (int index = 0; index < namesAndValues.length; index += 2) {
+			params.put(namesAndValues[index], new String[] {namesAndValues[index + 1]});
+		}
+		HttpServletRequest request = new StubRequest(params, ifNoneMatch).proxy();
+		HttpServletResponse servletResponse = response.proxy();
+		return endpoint.doGet(request, new ServletWebRequest(request, servletResponse), servletResponse);
+	}
+
+	/**
+	 * Just enough of a GET request for the endpoint (and ServletWebRequest.checkNotModified)
+	 */
+	private static class StubRequest implements InvocationHandler {
+		private final Map<String,String[]> params;
+		private final String ifNoneMatch;
+
+		StubRequest(Map<String,String[]> params, String ifNoneMatch) {
+			this.params = params;
+			this.ifNoneMatch = ifNoneMatch;
+		}
+
+		HttpServletRequest proxy() {
+			return (HttpServletRequest)Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {HttpServletRequest.class}, this);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if ("getParameterMap".equals(name)) {
+				return params;
+			} else if ("getMethod".equals(name)) {
+				return "GET";
+			} else if ("getDateHeader".equals(name)) {
+				return -1L;
+			} else if ("getHeader".equals(name)) {
+				return HttpHeaders.IF_NONE_MATCH.equalsIgnoreCase((String)args[0]) ? ifNoneMatch : null;
+			} else if ("getHeaders".equals(name)) {
+				return HttpHeaders.IF_NONE_MATCH.equalsIgnoreCase((String)args[0]) && ifNoneMatch != null
+						? Collections.enumeration(Collections.singletonList(ifNoneMatch))
+						: Collections.enumeration(Collections.<String>emptyList());
+			}
+			return defaultValue(method);
+		}
+	}
+
+	/**
+	 * Records the status and headers set on it
+	 */
+	private static class StubResponse implements InvocationHandler {
+		private final Map<String,String> headers = new HashMap<String,String>();
+		private int status = HttpStatus.OK.value();
+
+		HttpServletResponse proxy() {
+			return (HttpServletResponse)Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {HttpServletResponse.class}, this);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if ("setStatus".equals(name)) {
+				status = (Integer)args[0];
+			} else if ("getStatus".equals(name)) {
+				return status;
+			} else if ("setHeader".equals(name) || "addHeader".equals(name)) {
+				headers.put((String)args[0], (String)args[1]);
+			} else if ("getHeader".equals(name)) {
+				return headers.get(args[0]);
+			} else if ("containsHeader".equals(name)) {
+				return headers.containsKey(args[0]);
+			}
+			return defaultValue(method);
+		}
+	}
+
+	private static Object defaultValue(Method method) {
+		Class<?> type = method.getReturnType();
+		if (type == boolean.class) {
+			return false;
+		} else if (type == int.class) {
+			return 0;
+		} else if (type == long.class) {
+			return 0L;
+		}
+		return null;
+	}
+}
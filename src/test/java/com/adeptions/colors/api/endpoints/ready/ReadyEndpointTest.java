@@ -0,0 +1,63 @@
+/*
+ * ReadyEndpointTest.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.api.endpoints.ready;
+
+import com.adeptions.colors.domain.services.ConversionCacheSnapshot;
+import com.adeptions.colors.domain.services.ConverterFixture;
+import com.adeptions.colors.domain.services.Warmup;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class ReadyEndpointTest {
+	private ConverterFixture fixture;
+
+	@After
+	public void tearDown() {
+		fixture.shutdown();
+	}
+
+	@Test
+	public void unavailableUntilWarmedUp() throws Exception {
+		ReadyEndpoint endpoint = endpoint("true");
+		assertEquals(HttpStatus.SERVICE_UNAVAILABLE, endpoint.doGet().getStatusCode());
+		assertEquals(Boolean.FALSE, endpoint.doGet().getBody().get("ready"));
+	}
+
+	@Test
+	public void readyWithoutWarmup() throws Exception {
+		ReadyEndpoint endpoint = endpoint("false");
+		assertEquals(HttpStatus.OK, endpoint.doGet().getStatusCode());
+		assertEquals(Boolean.TRUE, endpoint.doGet().getBody().get("ready"));
+	}
+
+	private ReadyEndpoint endpoint(String warmup) throws Exception {
+		Map<String,String> overrides = new HashMap<String,String>();
+		overrides.put("warmup", warmup);
+		fixture = new ConverterFixture(overrides);
+		ReadyEndpoint result = new ReadyEndpoint();
+		result.warmup = new Warmup(fixture.getConfig());
+		result.cacheSnapshot = new ConversionCacheSnapshot(fixture.getConfig());
+		return result;
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * ProfileByteStoreTest.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.components;
+
+import com.adeptions.colors.domain.services.ColorSpacePool;
+import com.adeptions.colors.domain.services.ConverterFixture;
+import org.apache.commons.pool2.PooledObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.ClassPathResource;
+
+import java.awt.color.ICC_ColorSpace;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ProfileByteStoreTest {
+	private static final String PROFILE = "ISOcoated_v2_300_eci.icc";
+	private static final String COPY_PROFILE = "Copy.icc";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ConverterFixture fixture;
+	private ProfileByteStore store;
+
+	@Before
+	public void setUp() throws Exception {
+		Files.copy(new ClassPathResource("profiles/" + PROFILE).getInputStream(), new File(folder.getRoot(), COPY_PROFILE).toPath());
+		Map<String,String> overrides = new HashMap<String,String>();
+		overrides.put("colorprofiles.files.path", folder.getRoot().getPath());
+		fixture = new ConverterFixture(overrides);
+		store = fixture.getProfileByteStore();
+	}
+
+	@After
+	public void tearDown() {
+		fixture.shutdown();
+	}
+
+	@Test
+	public void readOnceAndShared() throws Exception {
+		ProfileBytes bytes = store.get(PROFILE);
+		assertSame(bytes, store.get(PROFILE));
+		assertEquals(1, store.getProfileCount());
+		assertEquals(bytes.getSize(), store.getHeapBytes());
+		// many pooled instances - but the bytes are only held once...
+		ColorSpacePool pool = fixture.getColorSpacePool();
+		ICC_ColorSpace first = pool.get(PROFILE);
+		ICC_ColorSpace second = pool.get(PROFILE);
+		assertNotSame(first, second);
+		pool.release(PROFILE, first);
+		pool.release(PROFILE, second);
+		assertSame(bytes, store.getInstalled(PROFILE));
+		assertEquals(1, store.getProfileCount());
+		assertEquals(bytes.getSize(), store.getHeapBytes());
+	}
+
+	@Test
+	public void readFromFiles() throws Exception {
+		ProfileBytes copy = store.get(COPY_PROFILE);
+		assertEquals(store.get(PROFILE).getContentHash(), copy.getContentHash());
+		assertEquals(store.get(PROFILE).getContentHashPrefix(), copy.getContentHashPrefix());
+		assertTrue(copy.getGeneration() != store.get(PROFILE).getGeneration());
+		assertEquals(2, store.getProfileCount());
+	}
+
+	@Test
+	public void readWithoutInstalling() throws Exception {
+		ProfileBytes installed = store.get(PROFILE);
+		ProfileBytes read = store.read(PROFILE);
+		assertNotSame(installed, read);
+		assertTrue(read.getGeneration() != installed.getGeneration());
+		assertEquals(installed.getContentHash(), read.getContentHash());
+		assertSame(installed, store.getInstalled(PROFILE));
+		assertEquals(installed.getGeneration(), store.getGeneration(PROFILE));
+	}
+
+	@Test
+	public void installedVersionIsCurrent() throws Exception {
+		PooledColorSpaceFactory factory = new PooledColorSpaceFactory(store);
+		PooledObject<ICC_ColorSpace> older = factory.makeObject(PROFILE);
+		assertTrue(factory.validateObject(PROFILE, older));
+		ProfileBytes newer = store.read(PROFILE);
+		// already installed (by creating the instance)...
+		assertSame(store.getInstalled(PROFILE), store.installIfAbsent(PROFILE, newer));
+		assertTrue(factory.validateObject(PROFILE, older));
+		store.install(PROFILE, newer);
+		assertEquals(newer.getGeneration(), store.getGeneration(PROFILE));
+		assertFalse(factory.validateObject(PROFILE, older));
+		assertTrue(factory.validateObject(PROFILE, factory.makeObject(PROFILE)));
+	}
+
+	@Test
+	public void unknownAndRemoved() throws Exception {
+		assertNull(store.get("Unknown.icc"));
+		assertEquals(0, store.getProfileCount());
+		store.get(PROFILE);
+		store.remove(PROFILE);
+		assertNull(store.getInstalled(PROFILE));
+		assertEquals(ProfileByteStore.NO_GENERATION, store.getGeneration(PROFILE));
+		assertEquals(0L, store.getHeapBytes());
+	}
+}
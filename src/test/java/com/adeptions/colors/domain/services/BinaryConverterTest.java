@@ -0,0 +1,168 @@
+/*
+ * BinaryConverterTest.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.services;
+
+import com.adeptions.colors.dtos.BinaryConversionRequest;
+import com.adeptions.colors.dtos.ColorParams;
+import com.adeptions.colors.dtos.ConversionResult;
+import com.adeptions.colors.enums.ColorType;
+import com.adeptions.colors.exceptions.BadRequestException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.adeptions.colors.domain.services.ConverterFixture.params;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class BinaryConverterTest {
+	private static final int BLOCK_COLORS = 4096;
+
+	private ConverterFixture fixture;
+	private BinaryConverter binaryConverter;
+	private ByteArrayOutputStream out;
+
+	@Before
+	public void setUp() throws Exception {
+		fixture = new ConverterFixture();
+		binaryConverter = new BinaryConverter();
+		binaryConverter.converter = fixture.getConverter();
+		out = new ByteArrayOutputStream();
+	}
+
+	@After
+	public void tearDown() {
+		fixture.shutdown();
+	}
+
+	@Test
+	public void convertsAllColors() throws Exception {
+		int count = BLOCK_COLORS + 10;
+		ByteBuffer colors = ByteBuffer.allocate(count * 3);
+		for (int index = 0; index < count; index++) {
+			colors.put((byte)index).put((byte)(index >> 8)).put((byte)255);
+		}
+		convert(ColorType.RGB, count, colors.array(), ColorType.XYZ);
+		ByteBuffer response = ByteBuffer.wrap(out.toByteArray());
+		assertEquals(BinaryConversionRequest.RESPONSE_HEADER_SIZE + (count * 3 * 4), response.remaining());
+		assertEquals(BinaryConversionRequest.VERSION, response.get());
+		assertEquals(BinaryConversionRequest.typeCode(ColorType.XYZ), response.get());
+		assertEquals(0, response.getShort());
+		assertEquals(count, response.getInt());
+	}
+
+	@Test
+	public void noColorsWritesHeaderOnly() throws Exception {
+		convert(ColorType.RGB, 0, new byte[0], ColorType.CMYK);
+		assertEquals(BinaryConversionRequest.RESPONSE_HEADER_SIZE, out.size());
+	}
+
+	@Test
+	public void truncatedBodyWritesNothing() throws Exception {
+		try {
+			convert(ColorType.RGB, 2, new byte[5], ColorType.CMYK);
+			fail("Expected BadRequestException");
+		} catch (BadRequestException e) {
+			assertEquals(0, out.size());
+		}
+	}
+
+	@Test
+	public void outOfRangeComponentWritesNothing() throws Exception {
+		ByteBuffer colors = ByteBuffer.allocate(2 * 4 * 4);
+		colors.putFloat(0.1f).putFloat(0.2f).putFloat(0.3f).putFloat(0.4f);
+		colors.putFloat(0.1f).putFloat(1.5f).putFloat(0.3f).putFloat(0.4f);
+		try {
+			convert(ColorType.CMYK, 2, colors.array(), ColorType.RGB);
+			fail("Expected BadRequestException");
+		} catch (BadRequestException e) {
+			assertEquals(0, out.size());
+		}
+	}
+
+	@Test
+	public void failureAfterFirstBlockAborts() throws Exception {
+		int count = BLOCK_COLORS + 1;
+		ByteBuffer colors = ByteBuffer.allocate(count * 3 * 4);
+		for (int index = 0; index < count; index++) {
+			colors.putFloat(0.25f).putFloat(0.5f).putFloat(index < BLOCK_COLORS ? 0.75f : Float.NaN);
+		}
+		try {
+			convert(ColorType.XYZ, count, colors.array(), ColorType.RGB);
+			fail("Expected IOException");
+		} catch (IOException e) {
+			// the first block was written (so the response cannot become an error response)...
+			assertEquals(BinaryConversionRequest.RESPONSE_HEADER_SIZE + (BLOCK_COLORS * 3), out.size());
+		}
+	}
+
+	@Test
+	public void crudeCmykToRgbMatchesJson() throws Exception {
+		float[][] cmyks = {{0.1f, 0.5f, 0.2f, 0.1f}, {0f, 0f, 0f, 0f}, {0.33f, 0.66f, 0.99f, 0.5f}};
+		ByteBuffer colors = ByteBuffer.allocate(cmyks.length * 4 * 4);
+		for (float[] cmyk: cmyks) {
+			for (float component: cmyk) {
+				colors.putFloat(component);
+			}
+		}
+		convert(ColorType.CMYK, true, cmyks.length, colors.array(), ColorType.RGB);
+		ByteBuffer response = ByteBuffer.wrap(out.toByteArray());
+		response.position(BinaryConversionRequest.RESPONSE_HEADER_SIZE);
+		List<ColorParams> batch = new ArrayList<ColorParams>();
+		for (float[] cmyk: cmyks) {
+			batch.add(params(ColorType.RGB, "c", cmyk[0], "m", cmyk[1], "y", cmyk[2], "k", cmyk[3], "crude", "true"));
+		}
+		List<ConversionResult> batchResults = fixture.getConverter().convertBatch(batch);
+		for (int index = 0; index < cmyks.length; index++) {
+			int r = response.get() & 0xff;
+			int g = response.get() & 0xff;
+			int b = response.get() & 0xff;
+			for (ConversionResult result: new ConversionResult[] {fixture.getConverter().convert(batch.get(index)), batchResults.get(index)}) {
+				assertEquals(r, result.getR().intValue());
+				assertEquals(g, result.getG().intValue());
+				assertEquals(b, result.getB().intValue());
+			}
+		}
+	}
+
+	private void convert(ColorType sourceType, int count, byte[] colors, ColorType targetType) throws Exception {
+		convert(sourceType, false, count, colors, targetType);
+	}
+
+	private void convert(ColorType sourceType, boolean crude, int count, byte[] colors, ColorType targetType) throws Exception {
+		ByteBuffer body = ByteBuffer.allocate(BinaryConversionRequest.HEADER_SIZE + colors.length);
+		body.put((byte)BinaryConversionRequest.VERSION);
+		body.put((byte)BinaryConversionRequest.typeCode(sourceType));
+		body.put((byte)(crude ? 1 : 0));
+		body.put(new byte[5]);
+		body.putInt(count);
+		body.put(colors);
+		ReadableByteChannel in = Channels.newChannel(new ByteArrayInputStream(body.array()));
+		BinaryConversionRequest request = BinaryConversionRequest.read(in, Integer.MAX_VALUE);
+		binaryConverter.convert(request, targetType, in, Channels.newChannel(out));
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * ColorConverterCacheKeyTest.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.services;
+
+import com.adeptions.colors.domain.components.PooledColorSpaceFactory;
+import com.adeptions.colors.domain.utils.CachedConversion;
+import com.adeptions.colors.dtos.ColorParams;
+import com.adeptions.colors.dtos.ConversionResult;
+import com.adeptions.colors.enums.ColorType;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.adeptions.colors.domain.services.ConverterFixture.params;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Packed converted color cache keys - unpacked (as snapshot conversions) and packed again (as restored)
+ */
+public class ColorConverterCacheKeyTest {
+	private final List<ConverterFixture> fixtures = new ArrayList<ConverterFixture>();
+
+	@After
+	public void tearDown() {
+		for (ConverterFixture fixture: fixtures) {
+			fixture.shutdown();
+		}
+	}
+
+	@Test
+	public void rgbPacksExactly() throws Exception {
+		ColorParams params = params(ColorType.CMYK, "r", "1", "g", "128", "b", "255");
+		assertEquals((1L << 16) | (128L << 8) | 255L, params.getPackedColor());
+	}
+
+	@Test
+	public void cachedConversionsRoundTrip() throws Exception {
+		List<ColorParams> conversions = Arrays.asList(
+				params(ColorType.CMYK, "r", "1", "g", "128", "b", "255"),
+				params(ColorType.CMYK, "r", "1", "g", "128", "b", "255", "crude", "true"),
+				params(ColorType.RGB, "c", "0.1", "m", "0.5", "y", "0.2", "k", "0.1", "sourceProfile", "ISOcoated_v2_300_eci"),
+				params(ColorType.RGB, "c", "1", "m", "0", "y", "0", "k", "0", "profile", PooledColorSpaceFactory.PROFILE_NAME_SRGB),
+				params(ColorType.XYZ, "r", "0", "g", "0", "b", "0"),
+				params(ColorType.RGB, "cie-x", "0.25", "cie-y", "0.5", "cie-z", "0.75", "crude", "true"));
+		ColorConverter converter = converter();
+		Map<ColorParams,ConversionResult> expected = new HashMap<ColorParams,ConversionResult>();
+		for (ColorParams params: conversions) {
+			expected.put(params, converter.convert(params));
+		}
+		List<CachedConversion> cached = converter.getHottestCached(conversions.size());
+		assertEquals(conversions.size(), cached.size());
+		for (ColorParams params: conversions) {
+			assertTrue("unpacked " + params.getSourceType() + ">" + params.getTargetType(), unpacked(cached, params));
+		}
+		ColorConverter restored = converter();
+		assertEquals(conversions.size(), restored.restoreCached(cached));
+		for (ColorParams params: conversions) {
+			ConversionResult result = restored.getCached(params);
+			assertNotNull(result);
+			assertSame(expected.get(params), result);
+		}
+	}
+
+	@Test
+	public void uninternedProfilePairIsNotCached() throws Exception {
+		ColorConverter converter = converter();
+		assertNull(converter.getCached(params(ColorType.RGB, "c", "0.1", "m", "0.5", "y", "0.2", "k", "0.1",
+				"sourceProfile", "ISOcoated_v2_300_eci")));
+	}
+
+	private ColorConverter converter() throws Exception {
+		Map<String,String> overrides = new HashMap<String,String>();
+		overrides.put("converted.color.cache", "true");
+		overrides.put("converted.color.cache.file", "");
+		ConverterFixture fixture = new ConverterFixture(overrides);
+		fixtures.add(fixture);
+		return fixture.getConverter();
+	}
+
+	private static boolean unpacked(List<CachedConversion> cached, ColorParams params) {
+		for (CachedConversion conversion: cached) {
+			if (conversion.getSourceType() == params.getSourceType()
+					&& conversion.getTargetType() == params.getTargetType()
+					&& equal(conversion.getSourceProfile(), params.getSourceProfile())
+					&& equal(conversion.getTargetProfile(), params.getTargetProfile())
+					&& conversion.isCrude() == params.isCrudeConversion()
+					&& conversion.getPackedColor() == params.getPackedColor()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean equal(String value1, String value2) {
+		return value1 == null ? value2 == null : value1.equals(value2);
+	}
+}
@@ -0,0 +1,219 @@
+/*
+ * ColorSpacePoolTest.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.services;
+
+import com.adeptions.colors.domain.components.PooledColorSpaceFactory;
+import com.adeptions.colors.exceptions.ServiceUnavailableException;
+import org.junit.After;
+import org.junit.Test;
+
+import java.awt.color.ICC_ColorSpace;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ColorSpacePoolTest {
+	private static final String PROFILE = "ISOcoated_v2_300_eci.icc";
+	private static final long MAX_WAIT = 200L;
+	private static final long THREAD_WAIT = 10000L;
+	private static final long SIZER_INTERVAL = 50L;
+
+	private ConverterFixture fixture;
+
+	@After
+	public void tearDown() {
+		fixture.shutdown();
+	}
+
+	@Test
+	public void rejectedWhenWaitQueueFull() throws Exception {
+		ColorSpacePool pool = pool(1, 0);
+		ICC_ColorSpace held = pool.get(PROFILE);
+		try {
+			pool.get(PROFILE);
+			fail("Expected ServiceUnavailableException");
+		} catch (ServiceUnavailableException e) {
+			assertEquals(fixture.getConfig().getAdmissionRetryAfter(), e.getRetryAfter());
+		}
+		assertEquals(1L, pool.getRejectedQueueFullCount());
+		assertEquals(0L, pool.getRejectedTimedOutCount());
+		assertEquals(1L, pool.getRejectedCount(PROFILE));
+		pool.release(PROFILE, held);
+		// admitted again once released...
+		pool.release(PROFILE, pool.get(PROFILE));
+	}
+
+	@Test
+	public void rejectedWhenWaitTimesOut() throws Exception {
+		ColorSpacePool pool = pool(1, 1);
+		ICC_ColorSpace held = pool.get(PROFILE);
+		long started = System.currentTimeMillis();
+		try {
+			pool.get(PROFILE);
+			fail("Expected ServiceUnavailableException");
+		} catch (ServiceUnavailableException e) {
+			assertTrue(System.currentTimeMillis() - started >= MAX_WAIT);
+		}
+		assertEquals(0L, pool.getRejectedQueueFullCount());
+		assertEquals(1L, pool.getRejectedTimedOutCount());
+		assertEquals(0, pool.getWaitingCount(PROFILE));
+		pool.release(PROFILE, held);
+	}
+
+	@Test
+	public void waiterAdmittedWhenReleased() throws Exception {
+		final ColorSpacePool pool = pool(1, 1);
+		ICC_ColorSpace held = pool.get(PROFILE);
+		final AtomicReference<Object> waited = new AtomicReference<Object>();
+		Thread waiter = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					ICC_ColorSpace colorSpace = pool.get(PROFILE);
+					waited.set(colorSpace);
+					pool.release(PROFILE, colorSpace);
+				} catch (Exception e) {
+					waited.set(e);
+				}
+			}
+		});
+		waiter.start();
+		long until = System.currentTimeMillis() + THREAD_WAIT;
+		while (pool.getWaitingCount(PROFILE) == 0 && System.currentTimeMillis() < until) {
+			Thread.sleep(1L);
+		}
+		assertEquals(1, pool.getWaitingCount(PROFILE));
+		pool.release(PROFILE, held);
+		waiter.join(THREAD_WAIT);
+		assertNotNull(waited.get());
+		assertTrue(String.valueOf(waited.get()), waited.get() instanceof ICC_ColorSpace);
+		assertEquals(0L, pool.getRejectedCount(PROFILE));
+		assertEquals(0, pool.getActiveCount(PROFILE));
+	}
+
+	@Test
+	public void perProfileCapacity() throws Exception {
+		Map<String,String> overrides = new HashMap<String,String>();
+		overrides.put("colorspace.pool.profile.max", "ISOcoated_v2_300_eci:3");
+		ColorSpacePool pool = pool(1, 0, overrides);
+		List<ICC_ColorSpace> held = new ArrayList<ICC_ColorSpace>();
+		for (int instance = 0; instance < 3; instance++) {
+			held.add(pool.get(PROFILE));
+		}
+		assertEquals(3, pool.getCapacity(PROFILE));
+		assertEquals(3, pool.getActiveCount(PROFILE));
+		assertRejected(pool, PROFILE);
+		// other profiles get the default...
+		ICC_ColorSpace srgb = pool.get(PooledColorSpaceFactory.PROFILE_NAME_SRGB);
+		assertEquals(1, pool.getCapacity(PooledColorSpaceFactory.PROFILE_NAME_SRGB));
+		assertRejected(pool, PooledColorSpaceFactory.PROFILE_NAME_SRGB);
+		pool.release(PooledColorSpaceFactory.PROFILE_NAME_SRGB, srgb);
+		for (ICC_ColorSpace colorSpace: held) {
+			pool.release(PROFILE, colorSpace);
+		}
+	}
+
+	@Test
+	public void idleTrimmedToProfileMaxIdle() throws Exception {
+		Map<String,String> overrides = new HashMap<String,String>();
+		overrides.put("colorspace.pool.profile.max.idle", "ISOcoated_v2_300_eci:1");
+		overrides.put("colorspace.pool.adaptive.interval", String.valueOf(SIZER_INTERVAL));
+		ColorSpacePool pool = pool(3, 0, overrides);
+		List<ICC_ColorSpace> held = new ArrayList<ICC_ColorSpace>();
+		for (int instance = 0; instance < 3; instance++) {
+			held.add(pool.get(PROFILE));
+		}
+		for (ICC_ColorSpace colorSpace: held) {
+			pool.release(PROFILE, colorSpace);
+		}
+		long until = System.currentTimeMillis() + THREAD_WAIT;
+		while (pool.getIdleCount(PROFILE) > 1 && System.currentTimeMillis() < until) {
+			Thread.sleep(SIZER_INTERVAL);
+		}
+		assertEquals(1, pool.getIdleCount(PROFILE));
+		// capacity is unaffected...
+		assertEquals(3, pool.getCapacity(PROFILE));
+	}
+
+	@Test
+	public void adaptiveCapacity() throws Exception {
+		Map<String,String> overrides = new HashMap<String,String>();
+		overrides.put("colorspace.pool.adaptive", "true");
+		overrides.put("colorspace.pool.adaptive.interval", String.valueOf(SIZER_INTERVAL));
+		overrides.put("colorspace.pool.adaptive.min.per.key", "1");
+		overrides.put("colorspace.pool.admission.max.wait", String.valueOf(THREAD_WAIT));
+		final ColorSpacePool pool = pool(4, 1, overrides);
+		pool.release(PROFILE, pool.get(PROFILE));
+		// shrinks while unused...
+		long until = System.currentTimeMillis() + THREAD_WAIT;
+		while (pool.getCapacity(PROFILE) > 1 && System.currentTimeMillis() < until) {
+			Thread.sleep(SIZER_INTERVAL);
+		}
+		assertEquals(1, pool.getCapacity(PROFILE));
+		// ...and grows when requests have to wait (the waiter is admitted without the held instance being released)...
+		ICC_ColorSpace held = pool.get(PROFILE);
+		final AtomicReference<Object> waited = new AtomicReference<Object>();
+		Thread waiter = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					ICC_ColorSpace colorSpace = pool.get(PROFILE);
+					waited.set(colorSpace);
+					pool.release(PROFILE, colorSpace);
+				} catch (Exception e) {
+					waited.set(e);
+				}
+			}
+		});
+		waiter.start();
+		waiter.join(THREAD_WAIT);
+		assertTrue(String.valueOf(waited.get()), waited.get() instanceof ICC_ColorSpace);
+		assertTrue(pool.getCapacity(PROFILE) > 1);
+		pool.release(PROFILE, held);
+	}
+
+	private static void assertRejected(ColorSpacePool pool, String profile) throws Exception {
+		try {
+			pool.get(profile);
+			fail("Expected ServiceUnavailableException");
+		} catch (ServiceUnavailableException e) {
+			// expected
+		}
+	}
+
+	private ColorSpacePool pool(int maxPerKey, int admissionQueueSize) throws Exception {
+		return pool(maxPerKey, admissionQueueSize, new HashMap<String,String>());
+	}
+
+	private ColorSpacePool pool(int maxPerKey, int admissionQueueSize, Map<String,String> overrides) throws Exception {
+		Map<String,String> settings = new HashMap<String,String>();
+		settings.put("colorspace.pool.max.per.key", String.valueOf(maxPerKey));
+		settings.put("colorspace.pool.admission.queue.size", String.valueOf(admissionQueueSize));
+		settings.put("colorspace.pool.admission.max.wait", String.valueOf(MAX_WAIT));
+		settings.putAll(overrides);
+		fixture = new ConverterFixture(settings);
+		return fixture.getColorSpacePool();
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ * ConversionCacheSnapshotTest.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.services;
+
+import com.adeptions.colors.dtos.ColorParams;
+import com.adeptions.colors.dtos.ConversionResult;
+import com.adeptions.colors.enums.ColorType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.ClassPathResource;
+
+import java.awt.color.ICC_ColorSpace;
+import java.awt.color.ICC_Profile;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.adeptions.colors.domain.services.ConverterFixture.params;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConversionCacheSnapshotTest {
+	private static final String PROFILE = "ISOcoated_v2_300_eci.icc";
+	private static final String COPY_PROFILE = "Copy.icc";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File snapshotFile;
+	private ConverterFixture fixture;
+
+	@Before
+	public void setUp() throws Exception {
+		snapshotFile = new File(folder.getRoot(), "snapshot.bin");
+		Files.copy(new ClassPathResource("profiles/" + PROFILE).getInputStream(), new File(folder.getRoot(), COPY_PROFILE).toPath());
+	}
+
+	@After
+	public void tearDown() {
+		if (fixture != null) {
+			fixture.shutdown();
+		}
+	}
+
+	@Test
+	public void savedAndRestored() throws Exception {
+		List<ColorParams> paramsList = Arrays.asList(
+				params(ColorType.CMYK, "r", "10", "g", "120", "b", "200"),
+				params(ColorType.RGB, "c", "0.1", "m", "0.5", "y", "0.2", "k", "0.1"),
+				params(ColorType.XYZ, "r", "10", "g", "120", "b", "200", "crude", "true"),
+				params(ColorType.CMYK, "r", "10", "g", "120", "b", "200", "profile", COPY_PROFILE));
+		ConversionCacheSnapshot snapshot = snapshot(new HashMap<String,String>());
+		for (ColorParams params: paramsList) {
+			fixture.getConverter().convert(params);
+		}
+		snapshot.save();
+		assertTrue(snapshotFile.isFile());
+
+		snapshot = snapshot(new HashMap<String,String>());
+		assertNull(fixture.getConverter().getCached(paramsList.get(0)));
+		assertEquals(paramsList.size(), snapshot.restore());
+		assertEquals(paramsList.size(), snapshot.getRestoredCount());
+		for (ColorParams params: paramsList) {
+			ConversionResult cached = fixture.getConverter().getCached(params);
+			assertNotNull(cached);
+			assertTrue(Arrays.equals(fixture.getConverter().convertUncached(params).toJsonBytes(), cached.toJsonBytes()));
+		}
+	}
+
+	@Test
+	public void changedProfilesDiscarded() throws Exception {
+		ColorParams defaultProfile = params(ColorType.CMYK, "r", "10", "g", "120", "b", "200");
+		ColorParams copyProfile = params(ColorType.CMYK, "r", "10", "g", "120", "b", "200", "profile", COPY_PROFILE);
+		ConversionCacheSnapshot snapshot = snapshot(new HashMap<String,String>());
+		fixture.getConverter().convert(defaultProfile);
+		fixture.getConverter().convert(copyProfile);
+		snapshot.save();
+
+		// the copy now has different content...
+		File changed = folder.newFile("changed.icc");
+		Files.write(changed.toPath(), ICC_Profile.getInstance(ICC_ColorSpace.CS_sRGB).getData());
+		Files.move(changed.toPath(), new File(folder.getRoot(), COPY_PROFILE).toPath(), StandardCopyOption.REPLACE_EXISTING);
+		snapshot = snapshot(new HashMap<String,String>());
+		assertEquals(1, snapshot.restore());
+		assertNotNull(fixture.getConverter().getCached(defaultProfile));
+		assertNull(fixture.getConverter().getCached(copyProfile));
+	}
+
+	@Test
+	public void hottestSavedUpToSize() throws Exception {
+		Map<String,String> overrides = new HashMap<String,String>();
+		overrides.put("converted.color.cache.snapshot.size", "2");
+		ConversionCacheSnapshot snapshot = snapshot(overrides);
+		for (int blue = 0; blue < 5; blue++) {
+			fixture.getConverter().convert(params(ColorType.CMYK, "r", "10", "g", "120", "b", blue));
+		}
+		snapshot.save();
+		snapshot = snapshot(overrides);
+		assertEquals(2, snapshot.restore());
+	}
+
+	@Test
+	public void missingOrInvalidSnapshot() throws Exception {
+		ConversionCacheSnapshot snapshot = snapshot(new HashMap<String,String>());
+		assertTrue(snapshot.isEnabled());
+		assertEquals(0, snapshot.restore());
+		Files.write(snapshotFile.toPath(), new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+		assertEquals(0, snapshot.restore());
+	}
+
+	@Test
+	public void disabledWithoutCache() throws Exception {
+		Map<String,String> overrides = new HashMap<String,String>();
+		overrides.put("converted.color.cache", "false");
+		ConversionCacheSnapshot snapshot = snapshot(overrides);
+		assertFalse(snapshot.isEnabled());
+		snapshot.save();
+		assertFalse(snapshotFile.exists());
+	}
+
+	@Test
+	public void restoredBeforeReady() throws Exception {
+		ConversionCacheSnapshot snapshot = snapshot(new HashMap<String,String>());
+		fixture.getConverter().convert(params(ColorType.CMYK, "r", "10", "g", "120", "b", "200"));
+		snapshot.save();
+
+		Map<String,String> overrides = new HashMap<String,String>();
+		overrides.put("warmup", "false");
+		snapshot = snapshot(overrides);
+		Warmup warmup = new Warmup(fixture.getConfig());
+		warmup.colorSpacePool = fixture.getColorSpacePool();
+		warmup.profiles = fixture.getProfiles();
+		warmup.cacheSnapshot = snapshot;
+		assertFalse(warmup.isReady());
+		warmup.warmupAll();
+		assertTrue(warmup.isReady());
+		assertEquals(1, snapshot.getRestoredCount());
+	}
+
+	private ConversionCacheSnapshot snapshot(Map<String,String> overrides) throws Exception {
+		if (fixture != null) {
+			fixture.shutdown();
+		}
+		Map<String,String> settings = new HashMap<String,String>();
+		settings.put("converted.color.cache.snapshot", snapshotFile.getPath());
+		settings.put("colorprofiles.files.path", folder.getRoot().getPath());
+		settings.put("colorprofiles.files.watch", "false");
+		settings.putAll(overrides);
+		fixture = new ConverterFixture(settings);
+		ConversionCacheSnapshot result = new ConversionCacheSnapshot(fixture.getConfig());
+		result.converter = fixture.getConverter();
+		return result;
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * ConversionETagsTest.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.services;
+
+import com.adeptions.colors.domain.components.PooledColorSpaceFactory;
+import com.adeptions.colors.enums.ColorType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.adeptions.colors.domain.services.ConverterFixture.params;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConversionETagsTest {
+	private static final String DEFAULT_CMYK_PROFILE = "ISOcoated_v2_300_eci";
+	private static final String COPY_CMYK_PROFILE = "Copy";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ConverterFixture fixture;
+
+	@Before
+	public void setUp() throws Exception {
+		Files.copy(new ClassPathResource("profiles/" + DEFAULT_CMYK_PROFILE + ".icc").getInputStream(),
+				new File(folder.getRoot(), COPY_CMYK_PROFILE + ".icc").toPath());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (fixture != null) {
+			fixture.getProfiles().shutdown();
+			fixture.shutdown();
+		}
+	}
+
+	@Test
+	public void sameConversionSameETag() throws Exception {
+		ConversionETags eTags = eTags(false, false);
+		String eTag = eTags.getETag(params(ColorType.CMYK, "r", "10", "g", "120", "b", "200"));
+		assertTrue(eTag.matches("\"[0-9a-f]{16}\""));
+		assertEquals(eTag, eTags.getETag(params(ColorType.CMYK, "r", "10", "g", "120", "b", "200")));
+		// differently expressed - but the same values...
+		assertEquals(eTags.getETag(params(ColorType.RGB, "c", "0.1", "m", "0.5", "y", "0.2", "k", "0.1")),
+				eTags.getETag(params(ColorType.RGB, "c", "10%", "m", "50%", "y", "20%", "k", "10%")));
+	}
+
+	@Test
+	public void differentConversionDifferentETag() throws Exception {
+		ConversionETags eTags = eTags(false, false);
+		String eTag = eTags.getETag(params(ColorType.CMYK, "r", "10", "g", "120", "b", "200"));
+		assertTrue(!eTag.equals(eTags.getETag(params(ColorType.CMYK, "r", "10", "g", "120", "b", "201"))));
+		assertTrue(!eTag.equals(eTags.getETag(params(ColorType.XYZ, "r", "10", "g", "120", "b", "200"))));
+		assertTrue(!eTag.equals(eTags.getETag(params(ColorType.CMYK, "r", "10", "g", "120", "b", "200", "crude", "true"))));
+		assertTrue(!eTags.getETag(params(ColorType.RGB, "cie-x", "0.1", "cie-y", "0.2", "cie-z", "0.3")).equals(
+				eTags.getETag(params(ColorType.RGB, "cie-x", "0.1", "cie-y", "0.2", "cie-z", "0.30001"))));
+		// source and target profiles are not interchangeable...
+		assertTrue(!eTags.getETag(params(ColorType.CMYK, "c", "0.1", "m", "0.5", "y", "0.2", "k", "0.1", "profile", PooledColorSpaceFactory.PROFILE_NAME_SRGB)).equals(
+				eTags.getETag(params(ColorType.CMYK, "c", "0.1", "m", "0.5", "y", "0.2", "k", "0.1", "sourceProfile", PooledColorSpaceFactory.PROFILE_NAME_SRGB))));
+	}
+
+	@Test
+	public void eTagDependsOnProfileContent() throws Exception {
+		ConversionETags eTags = eTags(false, false);
+		// a copy of the default profile (same content) converts the same...
+		assertEquals(eTags.getETag(params(ColorType.CMYK, "r", "10", "g", "120", "b", "200")),
+				eTags.getETag(params(ColorType.CMYK, "r", "10", "g", "120", "b", "200", "profile", COPY_CMYK_PROFILE)));
+		assertNull(eTags.getETag(params(ColorType.CMYK, "r", "10", "g", "120", "b", "200", "profile", "Unknown")));
+	}
+
+	@Test
+	public void weakWhenResultsMayVary() throws Exception {
+		ConversionETags eTags = eTags(true, false);
+		assertTrue(eTags.getETag(params(ColorType.CMYK, "r", "10", "g", "120", "b", "200")).startsWith("W/\""));
+		fixture.getProfiles().shutdown();
+		fixture.shutdown();
+		eTags = eTags(false, true);
+		// RGB is cached exactly - but CMYK and CIE-XYZ are quantized...
+		assertTrue(eTags.getETag(params(ColorType.CMYK, "r", "10", "g", "120", "b", "200")).startsWith("\""));
+		assertTrue(eTags.getETag(params(ColorType.RGB, "c", "0.1", "m", "0.5", "y", "0.2", "k", "0.1")).startsWith("W/\""));
+	}
+
+	@Test
+	public void disabled() throws Exception {
+		Map<String,String> overrides = new HashMap<String,String>();
+		overrides.put("http.cache", "false");
+		fixture = new ConverterFixture(overrides);
+		assertNull(fixture.getConversionETags().getETag(params(ColorType.CMYK, "r", "10", "g", "120", "b", "200")));
+	}
+
+	private ConversionETags eTags(boolean transformLuts, boolean convertedColorCache) throws Exception {
+		Map<String,String> overrides = new HashMap<String,String>();
+		overrides.put("transform.luts", String.valueOf(transformLuts));
+		overrides.put("converted.color.cache", String.valueOf(convertedColorCache));
+		overrides.put("colorprofiles.files.path", folder.getRoot().getPath());
+		overrides.put("colorprofiles.files.watch", "false");
+		fixture = new ConverterFixture(overrides);
+		fixture.getProfiles().start();
+		return fixture.getConversionETags();
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * ConversionExecutorTest.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.services;
+
+import com.adeptions.colors.dtos.ColorParams;
+import com.adeptions.colors.dtos.ConversionResult;
+import com.adeptions.colors.enums.ColorType;
+import com.adeptions.colors.exceptions.BadRequestException;
+import com.adeptions.colors.exceptions.ServiceUnavailableException;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.adeptions.colors.domain.services.ConverterFixture.params;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConversionExecutorTest {
+	private static final long FUTURE_WAIT = 10000L;
+
+	private ConverterFixture fixture;
+
+	@After
+	public void tearDown() {
+		fixture.shutdown();
+	}
+
+	@Test
+	public void convertsOnExecutor() throws Exception {
+		ConversionExecutor executor = executor(Collections.<String,String>emptyMap());
+		assertTrue(executor.isEnabled());
+		ConversionResult result = executor.convert(params(ColorType.CMYK, "r", "10", "g", "120", "b", "200")).get(FUTURE_WAIT, TimeUnit.MILLISECONDS);
+		ConversionResult expected = fixture.getConverter().convert(params(ColorType.CMYK, "r", "10", "g", "120", "b", "200"));
+		assertEquals(expected.getC(), result.getC());
+		assertEquals(expected.getK(), result.getK());
+		List<ConversionResult> results = executor.convertBatch(Arrays.asList(
+				params(ColorType.RGB, "c", "0.1", "m", "0.5", "y", "0.2", "k", "0.1"),
+				params(ColorType.CMYK, "r", "10", "g", "120", "b", "200"))).get(FUTURE_WAIT, TimeUnit.MILLISECONDS);
+		assertEquals(2, results.size());
+		assertEquals(expected.getC(), results.get(1).getC());
+	}
+
+	@Test
+	public void conversionErrorsCompleteExceptionally() throws Exception {
+		ConversionExecutor executor = executor(Collections.<String,String>emptyMap());
+		CompletableFuture<ConversionResult> future = executor.convert(params(ColorType.CMYK, "r", "10", "g", "120", "b", "200", "profile", "Unknown"));
+		try {
+			future.get(FUTURE_WAIT, TimeUnit.MILLISECONDS);
+			fail("Expected ExecutionException");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof BadRequestException);
+		}
+	}
+
+	@Test
+	public void threadsSizedToPool() throws Exception {
+		Map<String,String> overrides = new HashMap<String,String>();
+		overrides.put("colorspace.pool.max.total", "8");
+		overrides.put("colorspace.pool.max.per.key", "3");
+		assertEquals(3, executor(overrides).getThreads());
+		fixture.shutdown();
+		overrides.put("colorspace.pool.max.per.key", "50");
+		// every thread can hold a source and a target color space...
+		assertEquals(4, executor(overrides).getThreads());
+		fixture.shutdown();
+		overrides.put("conversion.executor.threads", "2");
+		assertEquals(2, executor(overrides).getThreads());
+	}
+
+	@Test
+	public void rejectedWhenQueueFull() throws Exception {
+		Map<String,String> overrides = new HashMap<String,String>();
+		overrides.put("conversion.executor.threads", "1");
+		overrides.put("conversion.executor.queue.size", "1");
+		ConversionExecutor executor = executor(overrides);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch finish = new CountDownLatch(1);
+		executor.converter = new ColorConverter(fixture.getConfig()) {
+			@Override
+			public List<ConversionResult> convertBatch(List<ColorParams> paramsList) throws Exception {
+				started.countDown();
+				finish.await();
+				return Collections.emptyList();
+			}
+		};
+		List<ColorParams> paramsList = Collections.emptyList();
+		CompletableFuture<List<ConversionResult>> running = executor.convertBatch(paramsList);
+		assertTrue(started.await(FUTURE_WAIT, TimeUnit.MILLISECONDS));
+		CompletableFuture<List<ConversionResult>> queued = executor.convertBatch(paramsList);
+		CompletableFuture<List<ConversionResult>> rejected = executor.convertBatch(paramsList);
+		try {
+			rejected.get(FUTURE_WAIT, TimeUnit.MILLISECONDS);
+			fail("Expected ExecutionException");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof ServiceUnavailableException);
+			assertEquals(fixture.getConfig().getAdmissionRetryAfter(), ((ServiceUnavailableException)e.getCause()).getRetryAfter());
+		}
+		assertEquals(1L, executor.getRejectedCount());
+		assertEquals(1, executor.getQueued());
+		assertFalse(queued.isDone());
+		finish.countDown();
+		running.get(FUTURE_WAIT, TimeUnit.MILLISECONDS);
+		queued.get(FUTURE_WAIT, TimeUnit.MILLISECONDS);
+	}
+
+	@Test
+	public void disabled() throws Exception {
+		Map<String,String> overrides = new HashMap<String,String>();
+		overrides.put("conversion.async", "false");
+		ConversionExecutor executor = executor(overrides);
+		assertFalse(executor.isEnabled());
+		assertEquals(0, executor.getThreads());
+	}
+
+	private ConversionExecutor executor(Map<String,String> overrides) throws Exception {
+		fixture = new ConverterFixture(overrides);
+		return fixture.getConversionExecutor();
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * ConverterFixture.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.services;
+
+import com.adeptions.colors.domain.components.Configuration;
+import com.adeptions.colors.domain.components.PooledColorSpaceFactory;
+import com.adeptions.colors.domain.components.ProfileByteStore;
+import com.adeptions.colors.dtos.ColorParams;
+import com.adeptions.colors.enums.ColorType;
+import org.springframework.core.env.PropertiesPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Wires the conversion services (without starting Spring) - for tests and benchmarks
+ *
+ * Settings are read from application.properties - with any overrides given taking precedence
+ */
+public class ConverterFixture {
+	private static final String APPLICATION_PROPERTIES = "application.properties";
+
+	private final Configuration config;
+	private final ProfileByteStore profileByteStore;
+	private final ColorSpacePool colorSpacePool;
+	private final ColorConverter converter;
+	private final Profiles profiles;
+	private final ConversionETags conversionETags;
+	private final ConversionExecutor conversionExecutor;
+
+	public ConverterFixture() throws IOException {
+		this(Collections.<String,String>emptyMap());
+	}
+
+	public ConverterFixture(Map<String,String> overrides) throws IOException {
+		Properties properties = PropertiesLoaderUtils.loadProperties(new ClassPathResource(APPLICATION_PROPERTIES));
+		properties.putAll(overrides);
+		StandardEnvironment environment = new StandardEnvironment();
+		environment.getPropertySources().addFirst(new PropertiesPropertySource(APPLICATION_PROPERTIES, properties));
+		config = new Configuration(environment);
+		profileByteStore = new ProfileByteStore(config);
+		PooledColorSpaceFactory pooledColorSpaceFactory = new PooledColorSpaceFactory(profileByteStore);
+		colorSpacePool = new ColorSpacePool(config, pooledColorSpaceFactory);
+		TransformLuts transformLuts = new TransformLuts(config);
+		transformLuts.colorSpacePool = colorSpacePool;
+		DenseRgbTables denseRgbTables = new DenseRgbTables(config);
+		denseRgbTables.colorSpacePool = colorSpacePool;
+		PersistentConversionCache persistentCache = new PersistentConversionCache(config);
+		persistentCache.profileByteStore = profileByteStore;
+		converter = new ColorConverter(config);
+		converter.colorSpacePool = colorSpacePool;
+		converter.transformLuts = transformLuts;
+		converter.denseRgbTables = denseRgbTables;
+		converter.persistentCache = persistentCache;
+		ProfileReloader profileReloader = new ProfileReloader();
+		profileReloader.profileByteStore = profileByteStore;
+		profileReloader.pooledColorSpaceFactory = pooledColorSpaceFactory;
+		profileReloader.colorSpacePool = colorSpacePool;
+		profileReloader.converter = converter;
+		profileReloader.transformLuts = transformLuts;
+		profileReloader.denseRgbTables = denseRgbTables;
+		profiles = new Profiles(config);
+		profiles.profileByteStore = profileByteStore;
+		profiles.profileReloader = profileReloader;
+		conversionETags = new ConversionETags(config);
+		conversionETags.profiles = profiles;
+		conversionExecutor = new ConversionExecutor(config);
+		conversionExecutor.converter = converter;
+	}
+
+	public Configuration getConfig() {
+		return config;
+	}
+
+	public ProfileByteStore getProfileByteStore() {
+		return profileByteStore;
+	}
+
+	public ColorSpacePool getColorSpacePool() {
+		return colorSpacePool;
+	}
+
+	public ColorConverter getConverter() {
+		return converter;
+	}
+
+	/**
+	 * @return the profiles catalog (not started - callers that start it also shut it down)
+	 */
+	public Profiles getProfiles() {
+		return profiles;
+	}
+
+	public ConversionETags getConversionETags() {
+		return conversionETags;
+	}
+
+	public ConversionExecutor getConversionExecutor() {
+		return conversionExecutor;
+	}
+
+	public void shutdown() {
+		conversionExecutor.shutdown();
+		converter.transformLuts.shutdown();
+		converter.denseRgbTables.shutdown();
+		converter.persistentCache.shutdown();
+		colorSpacePool.shutdown();
+	}
+
+	/**
+	 * Request params from alternating names and values (values as their String.valueOf)
+	 */
+	public static ColorParams params(ColorType targetType, Object... namesAndValues) throws Exception {
+		Map<String,String[]> params = new HashMap<String,String[]>();
+		for (int index = 0; index < namesAndValues.length; index += 2) {
+			params.put((String)namesAndValues[index], new String[] {String.valueOf(namesAndValues[index + 1])});
+		}
+		return new ColorParams(targetType, params);
+	}
+}
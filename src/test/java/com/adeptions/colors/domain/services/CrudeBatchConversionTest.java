@@ -0,0 +1,107 @@
+/*
+ * CrudeBatchConversionTest.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.services;
+
+import com.adeptions.colors.dtos.ColorParams;
+import com.adeptions.colors.dtos.ConversionResult;
+import com.adeptions.colors.enums.ColorType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.adeptions.colors.domain.services.ConverterFixture.params;
+import static org.junit.Assert.assertEquals;
+
+public class CrudeBatchConversionTest {
+	private static final int[] RGB_VALUES = {0, 1, 10, 64, 127, 128, 200, 254, 255};
+	private static final float[] UNIT_VALUES = {0f, 0.01f, 0.25f, 0.5f, 0.75f, 0.999f, 1f};
+
+	private ConverterFixture fixture;
+
+	@Before
+	public void setUp() throws Exception {
+		// (uncached - so that single conversions are not quantized)...
+		Map<String,String> overrides = new HashMap<String,String>();
+		overrides.put("converted.color.cache", "false");
+		fixture = new ConverterFixture(overrides);
+	}
+
+	@After
+	public void tearDown() {
+		fixture.shutdown();
+	}
+
+	@Test
+	public void rgbKernelsMatchSingleConversions() throws Exception {
+		for (ColorType targetType: new ColorType[] {ColorType.CMYK, ColorType.XYZ}) {
+			List<ColorParams> paramsList = new ArrayList<ColorParams>();
+			for (int red: RGB_VALUES) {
+				for (int green: RGB_VALUES) {
+					for (int blue: RGB_VALUES) {
+						paramsList.add(params(targetType, "r", red, "g", green, "b", blue, "crude", true));
+					}
+				}
+			}
+			assertBatchMatchesSingle(paramsList);
+		}
+	}
+
+	@Test
+	public void cmykKernelMatchesSingleConversions() throws Exception {
+		List<ColorParams> paramsList = new ArrayList<ColorParams>();
+		for (float cyan: UNIT_VALUES) {
+			for (float magenta: UNIT_VALUES) {
+				for (float black: UNIT_VALUES) {
+					paramsList.add(params(ColorType.RGB, "c", cyan, "m", magenta, "y", 1f - cyan, "k", black, "crude", true));
+				}
+			}
+		}
+		assertBatchMatchesSingle(paramsList);
+	}
+
+	@Test
+	public void xyzKernelMatchesSingleConversions() throws Exception {
+		List<ColorParams> paramsList = new ArrayList<ColorParams>();
+		for (float x: UNIT_VALUES) {
+			for (float y: UNIT_VALUES) {
+				for (float z: UNIT_VALUES) {
+					paramsList.add(params(ColorType.RGB, "cie-x", x, "cie-y", y, "cie-z", z, "crude", true));
+				}
+			}
+		}
+		assertBatchMatchesSingle(paramsList);
+	}
+
+	private void assertBatchMatchesSingle(List<ColorParams> paramsList) throws Exception {
+		List<ConversionResult> results = fixture.getConverter().convertBatch(paramsList);
+		assertEquals(paramsList.size(), results.size());
+		for (int index = 0; index < paramsList.size(); index++) {
+			assertEquals(json(fixture.getConverter().convertUncached(paramsList.get(index))), json(results.get(index)));
+		}
+	}
+
+	private static String json(ConversionResult result) {
+		return new String(result.toJsonBytes(), StandardCharsets.US_ASCII);
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * DenseRgbTablesTest.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.services;
+
+import com.adeptions.colors.dtos.ColorParams;
+import com.adeptions.colors.dtos.ConversionResult;
+import com.adeptions.colors.enums.ColorType;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.adeptions.colors.domain.services.ConverterFixture.params;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DenseRgbTablesTest {
+	private static final int MIN_CONVERSIONS = 20;
+	private static final long LUT_WAIT = 30000L;
+
+	private final List<ConverterFixture> fixtures = new ArrayList<ConverterFixture>();
+
+	@After
+	public void tearDown() {
+		for (ConverterFixture fixture: fixtures) {
+			fixture.shutdown();
+		}
+	}
+
+	@Test
+	public void hotTransformGetsTableWhenLutAvailable() throws Exception {
+		ColorConverter converter = converter(true, true);
+		converter.convert(rgb(0));
+		long until = System.currentTimeMillis() + LUT_WAIT;
+		while (converter.transformLuts.getLutCount() == 0 && System.currentTimeMillis() < until) {
+			Thread.sleep(10L);
+		}
+		assertEquals(1, converter.transformLuts.getLutCount());
+		assertEquals(0, converter.denseRgbTables.getTableCount());
+		// conversions by the LUT count towards a dense table...
+		for (int index = 1; index <= MIN_CONVERSIONS; index++) {
+			converter.convert(rgb(index));
+		}
+		assertEquals(1, converter.denseRgbTables.getTableCount());
+		// ...which is then used ahead of the LUT - giving exact results...
+		ColorConverter exact = converter(false, false);
+		for (int index = 0; index <= MIN_CONVERSIONS; index++) {
+			ConversionResult expected = exact.convert(rgb(index));
+			for (int pass = 0; pass < 2; pass++) {
+				ConversionResult result = converter.convert(rgb(index));
+				assertEquals(expected.getC(), result.getC(), 0f);
+				assertEquals(expected.getM(), result.getM(), 0f);
+				assertEquals(expected.getY(), result.getY(), 0f);
+				assertEquals(expected.getK(), result.getK(), 0f);
+			}
+		}
+		assertTrue(converter.transformLuts.getLutCount() > 0);
+	}
+
+	private ColorConverter converter(boolean transformLuts, boolean denseRgbTables) throws Exception {
+		Map<String,String> overrides = new HashMap<String,String>();
+		overrides.put("converted.color.cache", "false");
+		overrides.put("converted.color.cache.file", "");
+		overrides.put("transform.luts", String.valueOf(transformLuts));
+		overrides.put("dense.rgb.tables.memory.mb", denseRgbTables ? "128" : "0");
+		overrides.put("dense.rgb.tables.min.conversions", String.valueOf(MIN_CONVERSIONS));
+		ConverterFixture fixture = new ConverterFixture(overrides);
+		fixtures.add(fixture);
+		return fixture.getConverter();
+	}
+
+	private static ColorParams rgb(int index) throws Exception {
+		return params(ColorType.CMYK, "r", 10 + index, "g", 120, "b", 200 - index);
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * ImageConverterTest.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.services;
+
+import com.adeptions.colors.domain.components.PooledColorSpaceFactory;
+import com.adeptions.colors.dtos.ConversionResult;
+import com.adeptions.colors.enums.ColorType;
+import com.adeptions.colors.exceptions.BadRequestException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.adeptions.colors.domain.services.ConverterFixture.params;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ImageConverterTest {
+	private static final String PROFILE = "ISOcoated_v2_300_eci.icc";
+	// more rows than a strip - so that the image is converted in parallel...
+	private static final int WIDTH = 7;
+	private static final int HEIGHT = 40;
+	private static final int MAX_PIXELS = WIDTH * HEIGHT;
+
+	private ConverterFixture fixture;
+	private ImageConverter imageConverter;
+
+	@Before
+	public void setUp() throws Exception {
+		Map<String,String> overrides = new HashMap<String,String>();
+		overrides.put("image.max.pixels", String.valueOf(MAX_PIXELS));
+		overrides.put("image.parallelism", "2");
+		fixture = new ConverterFixture(overrides);
+		imageConverter = new ImageConverter(fixture.getConfig());
+		imageConverter.converter = fixture.getConverter();
+		imageConverter.pooledColorSpaceFactory = new PooledColorSpaceFactory(fixture.getProfileByteStore());
+	}
+
+	@After
+	public void tearDown() {
+		imageConverter.shutdown();
+		fixture.shutdown();
+	}
+
+	@Test
+	public void rgbToCmykMatchesSingleConversions() throws Exception {
+		BufferedImage image = rgbImage(BufferedImage.TYPE_INT_RGB);
+		BufferedImage result = imageConverter.convert(image, null, ColorType.CMYK, null);
+		assertEquals(ColorSpace.TYPE_CMYK, result.getColorModel().getColorSpace().getType());
+		WritableRaster raster = result.getRaster();
+		int[] cmyk = new int[4];
+		for (int y = 0; y < HEIGHT; y++) {
+			for (int x = 0; x < WIDTH; x++) {
+				int rgb = image.getRGB(x, y);
+				ConversionResult expected = fixture.getConverter().convert(params(ColorType.CMYK,
+						"r", (rgb >> 16) & 0xff, "g", (rgb >> 8) & 0xff, "b", rgb & 0xff));
+				raster.getPixel(x, y, cmyk);
+				assertEquals8Bit(expected.getC(), cmyk[0]);
+				assertEquals8Bit(expected.getM(), cmyk[1]);
+				assertEquals8Bit(expected.getY(), cmyk[2]);
+				assertEquals8Bit(expected.getK(), cmyk[3]);
+			}
+		}
+	}
+
+	@Test
+	public void cmykToRgbMatchesSingleConversions() throws Exception {
+		BufferedImage cmykImage = imageConverter.convert(rgbImage(BufferedImage.TYPE_INT_RGB), null, ColorType.CMYK, PROFILE);
+		BufferedImage result = imageConverter.convert(cmykImage, null, ColorType.RGB, null);
+		WritableRaster raster = cmykImage.getRaster();
+		int[] cmyk = new int[4];
+		for (int y = 0; y < HEIGHT; y++) {
+			for (int x = 0; x < WIDTH; x++) {
+				raster.getPixel(x, y, cmyk);
+				ConversionResult expected = fixture.getConverter().convert(params(ColorType.RGB,
+						"c", cmyk[0] / 255f, "m", cmyk[1] / 255f, "y", cmyk[2] / 255f, "k", cmyk[3] / 255f));
+				int rgb = result.getRGB(x, y);
+				assertEquals(expected.getR(), (rgb >> 16) & 0xff, 1);
+				assertEquals(expected.getG(), (rgb >> 8) & 0xff, 1);
+				assertEquals(expected.getB(), rgb & 0xff, 1);
+			}
+		}
+	}
+
+	@Test
+	public void alphaKept() throws Exception {
+		BufferedImage image = rgbImage(BufferedImage.TYPE_INT_ARGB);
+		image.setRGB(1, 1, 0x40102030);
+		BufferedImage result = imageConverter.convert(image, null, ColorType.RGB, null);
+		assertEquals(0x40, result.getRGB(1, 1) >>> 24);
+		assertEquals(0xff, result.getRGB(0, 0) >>> 24);
+	}
+
+	@Test
+	public void badRequests() throws Exception {
+		BufferedImage image = rgbImage(BufferedImage.TYPE_INT_RGB);
+		assertBadRequest(image, null, ColorType.XYZ);
+		// target profile must be CMYK...
+		assertBadRequest(image, PooledColorSpaceFactory.PROFILE_NAME_SRGB, ColorType.CMYK);
+		assertBadRequest(new BufferedImage(WIDTH, HEIGHT + 1, BufferedImage.TYPE_INT_RGB), null, ColorType.CMYK);
+	}
+
+	private void assertBadRequest(BufferedImage image, String targetProfile, ColorType targetType) throws Exception {
+		try {
+			imageConverter.convert(image, null, targetType, targetProfile);
+			fail("Expected BadRequestException");
+		} catch (BadRequestException e) {
+			// expected
+		}
+	}
+
+	private static BufferedImage rgbImage(int imageType) {
+		BufferedImage result = new BufferedImage(WIDTH, HEIGHT, imageType);
+		for (int y = 0; y < HEIGHT; y++) {
+			for (int x = 0; x < WIDTH; x++) {
+				// (some colors repeated - for the strip caches)...
+				result.setRGB(x, y, 0xff000000 | ((x * 37) << 16) | ((y * 6) << 8) | ((x + y) * 3));
+			}
+		}
+		return result;
+	}
+
+	private static void assertEquals8Bit(Float expected, int actual) {
+		assertEquals(expected * 255f, actual, 1f);
+	}
+}
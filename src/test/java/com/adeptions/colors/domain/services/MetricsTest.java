@@ -0,0 +1,102 @@
+/*
+ * MetricsTest.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.services;
+
+import com.adeptions.colors.enums.ColorType;
+import com.adeptions.colors.exceptions.BadRequestException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static com.adeptions.colors.domain.services.ConverterFixture.params;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MetricsTest {
+	private static final String PROFILE = "ISOcoated_v2_300_eci.icc";
+
+	private ConverterFixture fixture;
+	private Metrics metrics;
+
+	@Before
+	public void setUp() throws Exception {
+		fixture = new ConverterFixture();
+		metrics = new Metrics();
+		metrics.converter = fixture.getConverter();
+		metrics.colorSpacePool = fixture.getColorSpacePool();
+		metrics.transformLuts = fixture.getConverter().transformLuts;
+		metrics.denseRgbTables = fixture.getConverter().denseRgbTables;
+		metrics.profileByteStore = fixture.getProfileByteStore();
+		metrics.conversionExecutor = fixture.getConversionExecutor();
+		metrics.persistentCache = fixture.getConverter().persistentCache;
+	}
+
+	@After
+	public void tearDown() {
+		fixture.shutdown();
+	}
+
+	@Test
+	public void conversionsByPath() throws Exception {
+		ColorConverter converter = fixture.getConverter();
+		converter.convert(params(ColorType.CMYK, "r", "10", "g", "120", "b", "200"));
+		// cache hit...
+		converter.convert(params(ColorType.CMYK, "r", "10", "g", "120", "b", "200"));
+		converter.convert(params(ColorType.CMYK, "r", "10", "g", "120", "b", "201", "profile", PROFILE));
+		converter.convert(params(ColorType.CMYK, "r", "10", "g", "120", "b", "202", "crude", "true"));
+		try {
+			converter.convert(params(ColorType.CMYK, "r", "10", "g", "120", "b", "203", "profile", "Unknown"));
+			fail("Expected BadRequestException");
+		} catch (BadRequestException e) {
+			// expected
+		}
+		Map<String,Object> conversions = section(metrics.getMetrics(), "conversions");
+		Map<String,Object> paths = section(conversions, "paths");
+		assertEquals(1L, section(paths, "RGB>CMYK:default").get("count"));
+		assertEquals(1L, section(paths, "RGB>CMYK:crude").get("count"));
+		assertTrue(paths.containsKey("RGB>CMYK:profile"));
+		assertEquals(1L, section(conversions, "cacheHits").get("count"));
+		assertEquals(1L, conversions.get("errors"));
+	}
+
+	@Test
+	public void cacheAndColorSpaces() throws Exception {
+		ColorConverter converter = fixture.getConverter();
+		converter.convert(params(ColorType.CMYK, "r", "10", "g", "120", "b", "200"));
+		converter.convert(params(ColorType.CMYK, "r", "10", "g", "120", "b", "200"));
+		Map<String,Object> result = metrics.getMetrics();
+		Map<String,Object> cache = section(result, "convertedColorCache");
+		assertEquals(Boolean.TRUE, cache.get("enabled"));
+		assertEquals(1L, cache.get("hits"));
+		assertEquals(0.5d, (Double)cache.get("hitRatio"), 0d);
+		Map<String,Object> colorSpaces = section(result, "colorSpaces");
+		assertEquals(Boolean.FALSE, colorSpaces.get("threadAffine"));
+		Map<String,Object> profile = section(section(colorSpaces, "profiles"), PROFILE);
+		assertEquals(0, profile.get("active"));
+		assertTrue((Integer)profile.get("idle") > 0);
+		assertTrue((Integer)section(result, "profileBytes").get("profiles") > 0);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String,Object> section(Map<String,Object> metrics, String name) {
+		return (Map<String,Object>)metrics.get(name);
+	}
+}
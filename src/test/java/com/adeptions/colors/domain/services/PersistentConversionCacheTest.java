@@ -0,0 +1,141 @@
+/*
+ * PersistentConversionCacheTest.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.services;
+
+import com.adeptions.colors.domain.components.PooledColorSpaceFactory;
+import com.adeptions.colors.dtos.ColorParams;
+import com.adeptions.colors.dtos.ConversionResult;
+import com.adeptions.colors.enums.ColorType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.adeptions.colors.domain.services.ConverterFixture.params;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PersistentConversionCacheTest {
+	private static final String DEFAULT_CMYK_PROFILE = "ISOcoated_v2_300_eci";
+	private static final String OTHER_CMYK_PROFILE = "Other";
+	private static final long WRITE_WAIT = 5000L;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File cacheFile;
+	private File profilesDirectory;
+	private final List<ConverterFixture> fixtures = new ArrayList<ConverterFixture>();
+
+	@Before
+	public void setUp() throws Exception {
+		cacheFile = new File(folder.getRoot(), "conversions.cache");
+		profilesDirectory = folder.newFolder("profiles");
+		// a second CMYK profile (same content, different name) - converting between the two is a real ICC transform...
+		Files.copy(new ClassPathResource("profiles/" + DEFAULT_CMYK_PROFILE + ".icc").getInputStream(),
+				new File(profilesDirectory, OTHER_CMYK_PROFILE + ".icc").toPath());
+	}
+
+	@After
+	public void tearDown() {
+		for (ConverterFixture fixture: fixtures) {
+			fixture.shutdown();
+		}
+	}
+
+	@Test
+	public void identityConversionIsNotServedForProfileConversion() throws Exception {
+		ColorConverter converter = converter(true);
+		// no source profile - so no actual conversion...
+		ConversionResult identity = converter.convert(params(ColorType.CMYK, "c", "0.1", "m", "0.5", "y", "0.2", "k", "0.1",
+				"profile", OTHER_CMYK_PROFILE));
+		assertEquals(0.1f, identity.getC(), 0f);
+		awaitWrites(converter, 1);
+		ColorParams converting = params(ColorType.CMYK, "c", "0.1", "m", "0.5", "y", "0.2", "k", "0.1",
+				"sourceProfile", DEFAULT_CMYK_PROFILE, "profile", OTHER_CMYK_PROFILE);
+		ConversionResult expected = converter(false).convert(converting);
+		assertFalse(expected.getC().equals(identity.getC()));
+		assertCmyk(expected, converter.convert(converting));
+	}
+
+	@Test
+	public void toRgbConversionIsNotServedForExplicitSrgbProfile() throws Exception {
+		ColorConverter converter = converter(true);
+		// no target profile - so converted with toRGB...
+		ConversionResult toRgb = converter.convert(params(ColorType.RGB, "c", "0.1", "m", "0.5", "y", "0.2", "k", "0.1"));
+		awaitWrites(converter, 1);
+		ColorParams explicit = params(ColorType.RGB, "c", "0.1", "m", "0.5", "y", "0.2", "k", "0.1",
+				"profile", PooledColorSpaceFactory.PROFILE_NAME_SRGB);
+		ConversionResult expected = converter(false).convert(explicit);
+		assertFalse(expected.getR().equals(toRgb.getR()) && expected.getG().equals(toRgb.getG()) && expected.getB().equals(toRgb.getB()));
+		ConversionResult result = converter.convert(explicit);
+		assertEquals(expected.getR(), result.getR());
+		assertEquals(expected.getG(), result.getG());
+		assertEquals(expected.getB(), result.getB());
+	}
+
+	@Test
+	public void entriesSurviveRestart() throws Exception {
+		ColorParams converting = params(ColorType.CMYK, "c", "0.1", "m", "0.5", "y", "0.2", "k", "0.1",
+				"sourceProfile", DEFAULT_CMYK_PROFILE, "profile", OTHER_CMYK_PROFILE);
+		ColorConverter converter = converter(true);
+		ConversionResult expected = converter.convert(converting);
+		awaitWrites(converter, 1);
+		converter.persistentCache.shutdown();
+		ColorConverter restarted = converter(true);
+		assertCmyk(expected, restarted.convert(converting));
+		assertEquals(1L, restarted.persistentCache.getHits());
+	}
+
+	private ColorConverter converter(boolean persistent) throws Exception {
+		Map<String,String> overrides = new HashMap<String,String>();
+		// only the persistent tier (so that it is actually used)...
+		overrides.put("converted.color.cache", "false");
+		overrides.put("converted.color.cache.file", persistent ? cacheFile.getPath() : "");
+		overrides.put("converted.color.cache.file.slots", "1024");
+		overrides.put("colorprofiles.files.path", profilesDirectory.getPath());
+		ConverterFixture fixture = new ConverterFixture(overrides);
+		fixtures.add(fixture);
+		return fixture.getConverter();
+	}
+
+	private static void awaitWrites(ColorConverter converter, long writes) throws InterruptedException {
+		long until = System.currentTimeMillis() + WRITE_WAIT;
+		while (converter.persistentCache.getWrites() < writes && System.currentTimeMillis() < until) {
+			Thread.sleep(10L);
+		}
+		assertTrue(converter.persistentCache.getWrites() >= writes);
+	}
+
+	private static void assertCmyk(ConversionResult expected, ConversionResult actual) {
+		assertEquals(expected.getC(), actual.getC(), 0f);
+		assertEquals(expected.getM(), actual.getM(), 0f);
+		assertEquals(expected.getY(), actual.getY(), 0f);
+		assertEquals(expected.getK(), actual.getK(), 0f);
+	}
+}
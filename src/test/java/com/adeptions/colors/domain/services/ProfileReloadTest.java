@@ -0,0 +1,141 @@
+/*
+ * ProfileReloadTest.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.services;
+
+import com.adeptions.colors.domain.utils.ContentHash;
+import com.adeptions.colors.dtos.ColorParams;
+import com.adeptions.colors.dtos.ConversionResult;
+import com.adeptions.colors.enums.ColorType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.StreamUtils;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.adeptions.colors.domain.services.ConverterFixture.params;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Changes to a watched profile file - only the cached conversions that used the profile are dropped
+ */
+public class ProfileReloadTest {
+	private static final String DEFAULT_CMYK_PROFILE = "ISOcoated_v2_300_eci";
+	private static final String OTHER_CMYK_PROFILE = "Other";
+	private static final String OTHER_CMYK_FILE = OTHER_CMYK_PROFILE + ".icc";
+	// offset of the (unvalidated) creation date in the profile header...
+	private static final int CREATED_OFFSET = 24;
+	private static final long WATCH_WAIT = 10000L;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private byte[] profileBytes;
+	private File profilesDirectory;
+	private ConverterFixture fixture;
+	private ColorConverter converter;
+
+	@Before
+	public void setUp() throws Exception {
+		try (InputStream inputStream = new ClassPathResource("profiles/" + DEFAULT_CMYK_PROFILE + ".icc").getInputStream()) {
+			profileBytes = StreamUtils.copyToByteArray(inputStream);
+		}
+		profilesDirectory = folder.newFolder("profiles");
+		Files.write(new File(profilesDirectory, OTHER_CMYK_FILE).toPath(), profileBytes);
+		Map<String,String> overrides = new HashMap<String,String>();
+		overrides.put("converted.color.cache", "true");
+		overrides.put("converted.color.cache.file", "");
+		overrides.put("colorprofiles.files.path", profilesDirectory.getPath());
+		overrides.put("colorprofiles.files.watch", "true");
+		fixture = new ConverterFixture(overrides);
+		fixture.getProfiles().start();
+		converter = fixture.getConverter();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		fixture.getProfiles().shutdown();
+		fixture.shutdown();
+	}
+
+	@Test
+	public void changedProfileDropsOnlyItsConversions() throws Exception {
+		ColorParams usingOther = params(ColorType.CMYK, "c", "0.1", "m", "0.5", "y", "0.2", "k", "0.1",
+				"sourceProfile", DEFAULT_CMYK_PROFILE, "profile", OTHER_CMYK_PROFILE);
+		ColorParams notUsingOther = params(ColorType.CMYK, "r", "10", "g", "120", "b", "200");
+		ConversionResult before = converter.convert(usingOther);
+		converter.convert(notUsingOther);
+		assertNotNull(converter.getCached(usingOther));
+		assertNotNull(converter.getCached(notUsingOther));
+		// same color data - but different content...
+		byte[] changed = profileBytes.clone();
+		changed[CREATED_OFFSET]++;
+		replaceProfile(changed);
+		awaitContentHash(ContentHash.of(changed));
+		assertNull(converter.getCached(usingOther));
+		assertNotNull(converter.getCached(notUsingOther));
+		ConversionResult after = converter.convert(usingOther);
+		assertEquals(before.getC(), after.getC(), 0f);
+		assertEquals(before.getK(), after.getK(), 0f);
+		assertNotNull(converter.getCached(usingOther));
+	}
+
+	@Test
+	public void removedProfileDropsItsConversions() throws Exception {
+		ColorParams usingOther = params(ColorType.RGB, "c", "0.1", "m", "0.5", "y", "0.2", "k", "0.1",
+				"sourceProfile", OTHER_CMYK_PROFILE);
+		converter.convert(usingOther);
+		assertNotNull(converter.getCached(usingOther));
+		Files.delete(new File(profilesDirectory, OTHER_CMYK_FILE).toPath());
+		awaitContentHash(null);
+		assertNull(converter.getCached(usingOther));
+	}
+
+	private void replaceProfile(byte[] bytes) throws Exception {
+		// written elsewhere and moved in - so the watcher never sees a partly written file...
+		Path written = folder.newFile(OTHER_CMYK_FILE).toPath();
+		Files.write(written, bytes);
+		Files.move(written, new File(profilesDirectory, OTHER_CMYK_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * @param contentHash the content hash expected once the watcher has seen the change (null for removed)
+	 */
+	private void awaitContentHash(String contentHash) throws InterruptedException {
+		long until = System.currentTimeMillis() + WATCH_WAIT;
+		while (!equal(contentHash, fixture.getProfiles().getContentHash(OTHER_CMYK_FILE)) && System.currentTimeMillis() < until) {
+			Thread.sleep(10L);
+		}
+		assertEquals(contentHash, fixture.getProfiles().getContentHash(OTHER_CMYK_FILE));
+	}
+
+	private static boolean equal(String value1, String value2) {
+		return value1 == null ? value2 == null : value1.equals(value2);
+	}
+}
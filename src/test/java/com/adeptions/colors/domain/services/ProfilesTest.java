@@ -0,0 +1,140 @@
+/*
+ * ProfilesTest.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.services;
+
+import com.adeptions.colors.domain.components.PooledColorSpaceFactory;
+import com.adeptions.colors.exceptions.NotFoundException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ProfilesTest {
+	private static final String PROFILE = "ISOcoated_v2_300_eci.icc";
+	private static final String COPY_PROFILE = "Copy.icc";
+	private static final String ADDED_PROFILE = "Added.icc";
+	private static final String INVALID_PROFILE = "Invalid.icc";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ConverterFixture fixture;
+	private Profiles profiles;
+
+	@Before
+	public void setUp() throws Exception {
+		copyProfile(COPY_PROFILE);
+		Files.write(new File(folder.getRoot(), INVALID_PROFILE).toPath(), new byte[] {1, 2, 3});
+		// a file cannot replace a resource profile...
+		Files.write(new File(folder.getRoot(), PROFILE).toPath(), new byte[] {1, 2, 3});
+		Map<String,String> overrides = new HashMap<String,String>();
+		overrides.put("colorprofiles.files.path", folder.getRoot().getPath());
+		overrides.put("colorprofiles.files.watch", "false");
+		fixture = new ConverterFixture(overrides);
+		profiles = fixture.getProfiles();
+		profiles.start();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		profiles.shutdown();
+		fixture.shutdown();
+	}
+
+	@Test
+	public void catalogListsValidProfiles() throws Exception {
+		List<String> names = new ArrayList<String>();
+		for (Map<String,Object> entry: profiles.listProfiles()) {
+			names.add((String)entry.get("name"));
+			assertEquals("/profiles/" + entry.get("name"), entry.get("$ref"));
+		}
+		assertEquals(3, names.size());
+		assertTrue(names.contains(PooledColorSpaceFactory.PROFILE_NAME_SRGB));
+		assertTrue(names.contains(PROFILE));
+		assertTrue(names.contains(COPY_PROFILE));
+		// same catalog version - same list and ETag...
+		assertSame(profiles.listProfiles(), profiles.listProfiles());
+		assertEquals(profiles.getCatalogETag(), profiles.getCatalogETag());
+	}
+
+	@Test
+	public void profileDetailsAndETags() throws Exception {
+		Map<String,Object> info = profiles.getProfileInfo(PROFILE);
+		assertEquals(PROFILE, info.get("name"));
+		assertEquals((int)new ClassPathResource("profiles/" + PROFILE).contentLength(), info.get("size"));
+		// the copy has the same content (but is a different profile)...
+		assertEquals(profiles.getContentHash(PROFILE), profiles.getContentHash(COPY_PROFILE));
+		assertEquals(profiles.getProfileETag(PROFILE), profiles.getProfileETag(COPY_PROFILE));
+		assertEquals("\"" + profiles.getContentHash(PROFILE) + "\"", profiles.getProfileETag(PROFILE));
+		assertEquals(fixture.getProfileByteStore().get(PROFILE).getContentHashPrefix(), profiles.getContentHashPrefix(COPY_PROFILE));
+	}
+
+	@Test
+	public void addedFileFoundWithoutWatching() throws Exception {
+		String catalogETag = profiles.getCatalogETag();
+		copyProfile(ADDED_PROFILE);
+		assertEquals(profiles.getContentHash(PROFILE), profiles.getContentHash(ADDED_PROFILE));
+		assertEquals(4, profiles.listProfiles().size());
+		assertTrue(!catalogETag.equals(profiles.getCatalogETag()));
+	}
+
+	@Test
+	public void missingNamesRemembered() throws Exception {
+		assertNotFound(ADDED_PROFILE);
+		copyProfile(ADDED_PROFILE);
+		// (not looked for again until it has been missing for a while)...
+		assertNotFound(ADDED_PROFILE);
+		assertEquals(3, profiles.listProfiles().size());
+	}
+
+	@Test
+	public void unknownProfiles() throws Exception {
+		assertNotFound("Unknown.icc");
+		assertNotFound(INVALID_PROFILE);
+		assertNotFound("../" + COPY_PROFILE);
+		assertEquals(null, profiles.getContentHash("Unknown.icc"));
+		assertEquals(0L, profiles.getContentHashPrefix("Unknown.icc"));
+	}
+
+	private void copyProfile(String name) throws Exception {
+		Files.copy(new ClassPathResource("profiles/" + PROFILE).getInputStream(), new File(folder.getRoot(), name).toPath());
+	}
+
+	private void assertNotFound(String name) {
+		try {
+			profiles.getProfileInfo(name);
+			fail("Expected NotFoundException");
+		} catch (NotFoundException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * StreamConverterTest.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.services;
+
+import com.adeptions.colors.dtos.ColorStreamReader;
+import com.adeptions.colors.dtos.ColorStreamWriter;
+import com.adeptions.colors.dtos.ConversionResult;
+import com.adeptions.colors.enums.ColorType;
+import com.adeptions.colors.enums.StreamFormat;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.Map;
+
+import static com.adeptions.colors.domain.services.ConverterFixture.params;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StreamConverterTest {
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+	private ConverterFixture fixture;
+	private StreamConverter streamConverter;
+
+	@Before
+	public void setUp() throws Exception {
+		// small batches - so that a stream spans several...
+		fixture = new ConverterFixture(Collections.singletonMap("stream.batch.size", "2"));
+		streamConverter = new StreamConverter(fixture.getConfig());
+		streamConverter.converter = fixture.getConverter();
+	}
+
+	@After
+	public void tearDown() {
+		fixture.shutdown();
+	}
+
+	@Test
+	public void ndjsonResultPerRow() throws Exception {
+		String[] lines = convert(StreamFormat.NDJSON, ColorType.CMYK,
+				"{\"r\": 10, \"g\": 120, \"b\": 200}\n{\"r\": 300}\nnot json\n{\"r\": 0, \"g\": 0, \"b\": 0}\n{\"r\": 255, \"g\": 255, \"b\": 255}\n", 5);
+		assertCmyk(lines[0], fixture.getConverter().convert(params(ColorType.CMYK, "r", 10, "g", 120, "b", 200)));
+		assertTrue(lines[1], lines[1].startsWith("{\"" + ColorStreamWriter.PROPERTY_NAME_ERROR + "\":\"Row 2:"));
+		assertTrue(lines[2], lines[2].startsWith("{\"" + ColorStreamWriter.PROPERTY_NAME_ERROR + "\":\"Row 3:"));
+		assertCmyk(lines[3], fixture.getConverter().convert(params(ColorType.CMYK, "r", 0, "g", 0, "b", 0)));
+		assertCmyk(lines[4], fixture.getConverter().convert(params(ColorType.CMYK, "r", 255, "g", 255, "b", 255)));
+	}
+
+	@Test
+	public void csvResultPerRow() throws Exception {
+		String[] lines = convert(StreamFormat.CSV, ColorType.RGB, "c,m,y,k\n0.1,0.5,0.2,0.1\n2,0,0,0\n0,0,0,0\n", 3);
+		assertEquals("r,g,b,rPercent,gPercent,bPercent," + ColorStreamWriter.PROPERTY_NAME_ERROR, lines[0]);
+		ConversionResult expected = fixture.getConverter().convert(params(ColorType.RGB, "c", "0.1", "m", "0.5", "y", "0.2", "k", "0.1"));
+		String[] values = lines[1].split(",", -1);
+		assertEquals(7, values.length);
+		assertEquals(String.valueOf(expected.getR()), values[0]);
+		assertEquals(String.valueOf(expected.getG()), values[1]);
+		assertEquals(String.valueOf(expected.getB()), values[2]);
+		assertEquals("", values[6]);
+		assertTrue(lines[2], lines[2].startsWith(",,,,,,\"Row 2:"));
+		assertTrue(lines[3], lines[3].startsWith("255,255,255,"));
+	}
+
+	private String[] convert(StreamFormat format, ColorType targetType, String content, long rows) throws Exception {
+		StringWriter out = new StringWriter();
+		ColorStreamReader reader = new ColorStreamReader(new BufferedReader(new StringReader(content)), format, OBJECT_MAPPER,
+				Collections.<String,String[]>emptyMap());
+		assertEquals(rows, streamConverter.convert(targetType, reader, new ColorStreamWriter(out, format, targetType, OBJECT_MAPPER)));
+		return out.toString().split("\n");
+	}
+
+	private static void assertCmyk(String line, ConversionResult expected) throws Exception {
+		Map<?,?> result = OBJECT_MAPPER.readValue(line, Map.class);
+		assertEquals(expected.getC(), ((Number)result.get("c")).floatValue(), 0f);
+		assertEquals(expected.getM(), ((Number)result.get("m")).floatValue(), 0f);
+		assertEquals(expected.getY(), ((Number)result.get("y")).floatValue(), 0f);
+		assertEquals(expected.getK(), ((Number)result.get("k")).floatValue(), 0f);
+	}
+}
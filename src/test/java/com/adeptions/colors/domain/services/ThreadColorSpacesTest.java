@@ -0,0 +1,140 @@
+/*
+ * ThreadColorSpacesTest.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.services;
+
+import com.adeptions.colors.domain.components.PooledColorSpaceFactory;
+import com.adeptions.colors.domain.components.ProfileByteStore;
+import com.adeptions.colors.dtos.ConversionResult;
+import com.adeptions.colors.enums.ColorType;
+import org.junit.After;
+import org.junit.Test;
+
+import java.awt.color.ICC_ColorSpace;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.adeptions.colors.domain.services.ConverterFixture.params;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ThreadColorSpacesTest {
+	private static final String PROFILE = "ISOcoated_v2_300_eci.icc";
+
+	private ConverterFixture fixture;
+
+	@After
+	public void tearDown() {
+		if (fixture != null) {
+			fixture.shutdown();
+		}
+	}
+
+	@Test
+	public void instancePerThread() throws Exception {
+		final ThreadColorSpaces colorSpaces = threadColorSpaces(Long.MAX_VALUE);
+		ICC_ColorSpace first = colorSpaces.get(PROFILE);
+		assertSame(first, colorSpaces.get(PROFILE));
+		assertEquals(1, colorSpaces.getInstanceCount());
+		ICC_ColorSpace other = getOnOtherThread(colorSpaces);
+		assertNotSame(first, other);
+		assertEquals(2, colorSpaces.getInstanceCount());
+		assertEquals(2, colorSpaces.getInstanceCount(PROFILE));
+		assertEquals(Collections.singleton(PROFILE), colorSpaces.getProfiles());
+	}
+
+	@Test
+	public void sweepDropsDeadThreads() throws Exception {
+		ThreadColorSpaces colorSpaces = threadColorSpaces(Long.MAX_VALUE);
+		colorSpaces.get(PROFILE);
+		getOnOtherThread(colorSpaces);
+		assertEquals(2, colorSpaces.getInstanceCount());
+		colorSpaces.sweep();
+		assertEquals(1, colorSpaces.getInstanceCount());
+	}
+
+	@Test
+	public void sweepDropsIdleInstances() throws Exception {
+		ThreadColorSpaces colorSpaces = threadColorSpaces(0L);
+		ICC_ColorSpace first = colorSpaces.get(PROFILE);
+		Thread.sleep(5L);
+		colorSpaces.sweep();
+		assertEquals(0, colorSpaces.getInstanceCount());
+		assertTrue(colorSpaces.getProfiles().isEmpty());
+		// re-registered when used again...
+		assertNotSame(first, colorSpaces.get(PROFILE));
+		assertEquals(1, colorSpaces.getInstanceCount());
+	}
+
+	@Test
+	public void replacedProfileRecreated() throws Exception {
+		ThreadColorSpaces colorSpaces = threadColorSpaces(Long.MAX_VALUE);
+		ICC_ColorSpace first = colorSpaces.get(PROFILE);
+		ProfileByteStore profileByteStore = fixture.getProfileByteStore();
+		profileByteStore.install(PROFILE, profileByteStore.read(PROFILE));
+		ICC_ColorSpace second = colorSpaces.get(PROFILE);
+		assertNotSame(first, second);
+		assertSame(second, colorSpaces.get(PROFILE));
+		assertEquals(1, colorSpaces.getInstanceCount());
+	}
+
+	@Test
+	public void threadAffineConvertsSameAsPooled() throws Exception {
+		fixture = new ConverterFixture();
+		ConversionResult pooled = fixture.getConverter().convertUncached(params(ColorType.CMYK, "r", "10", "g", "120", "b", "200"));
+		fixture.shutdown();
+		Map<String,String> overrides = new HashMap<String,String>();
+		overrides.put("colorspace.pool.strategy", "thread-affine");
+		fixture = new ConverterFixture(overrides);
+		assertTrue(fixture.getColorSpacePool().isThreadAffine());
+		ConversionResult threadAffine = fixture.getConverter().convertUncached(params(ColorType.CMYK, "r", "10", "g", "120", "b", "200"));
+		assertEquals(pooled.getC(), threadAffine.getC());
+		assertEquals(pooled.getM(), threadAffine.getM());
+		assertEquals(pooled.getY(), threadAffine.getY());
+		assertEquals(pooled.getK(), threadAffine.getK());
+		assertEquals(1, fixture.getColorSpacePool().getInstanceCount(PROFILE));
+	}
+
+	private ThreadColorSpaces threadColorSpaces(long idleTime) throws Exception {
+		fixture = new ConverterFixture();
+		return new ThreadColorSpaces(new PooledColorSpaceFactory(fixture.getProfileByteStore()), idleTime);
+	}
+
+	private static ICC_ColorSpace getOnOtherThread(final ThreadColorSpaces colorSpaces) throws Exception {
+		final AtomicReference<Object> result = new AtomicReference<Object>();
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					result.set(colorSpaces.get(PROFILE));
+				} catch (Exception e) {
+					result.set(e);
+				}
+			}
+		});
+		thread.start();
+		thread.join();
+		if (result.get() instanceof Exception) {
+			throw (Exception)result.get();
+		}
+		return (ICC_ColorSpace)result.get();
+	}
+}
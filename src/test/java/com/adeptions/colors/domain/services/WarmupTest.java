@@ -0,0 +1,89 @@
+/*
+ * WarmupTest.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.services;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WarmupTest {
+	private static final String PROFILE = "ISOcoated_v2_300_eci.icc";
+
+	private ConverterFixture fixture;
+
+	@After
+	public void tearDown() {
+		fixture.shutdown();
+	}
+
+	@Test
+	public void readyOnceEveryProfileWarmed() throws Exception {
+		Map<String,String> overrides = new HashMap<String,String>();
+		overrides.put("warmup.instances.per.profile", "2");
+		// (the default profile is also in resources - so is only warmed once)...
+		overrides.put("warmup.profiles", "Unknown.icc");
+		Warmup warmup = warmup(overrides);
+		assertFalse(warmup.isReady());
+		warmup.warmupAll();
+		assertTrue(warmup.isReady());
+		// a profile that cannot be warmed does not stop the service becoming ready...
+		assertEquals(2, warmup.getProfileCount());
+		assertEquals(2, warmup.getWarmedProfileCount());
+		assertEquals(2, fixture.getColorSpacePool().getInstanceCount(PROFILE));
+	}
+
+	@Test
+	public void threadAffineWarmsOnce() throws Exception {
+		Map<String,String> overrides = new HashMap<String,String>();
+		overrides.put("warmup.instances.per.profile", "2");
+		overrides.put("colorspace.pool.strategy", "thread-affine");
+		Warmup warmup = warmup(overrides);
+		warmup.warmupAll();
+		assertTrue(warmup.isReady());
+		assertEquals(1, fixture.getColorSpacePool().getInstanceCount(PROFILE));
+	}
+
+	@Test
+	public void readyWithoutWarmup() throws Exception {
+		Map<String,String> overrides = new HashMap<String,String>();
+		overrides.put("warmup", "false");
+		Warmup warmup = warmup(overrides);
+		assertTrue(warmup.isReady());
+		// nothing to do...
+		warmup.start();
+		assertEquals(0, warmup.getProfileCount());
+		assertEquals(0, fixture.getColorSpacePool().getInstanceCount());
+	}
+
+	private Warmup warmup(Map<String,String> overrides) throws Exception {
+		fixture = new ConverterFixture(overrides);
+		Warmup result = new Warmup(fixture.getConfig());
+		result.colorSpacePool = fixture.getColorSpacePool();
+		result.profiles = fixture.getProfiles();
+		ConversionCacheSnapshot cacheSnapshot = new ConversionCacheSnapshot(fixture.getConfig());
+		cacheSnapshot.converter = fixture.getConverter();
+		result.cacheSnapshot = cacheSnapshot;
+		return result;
+	}
+}
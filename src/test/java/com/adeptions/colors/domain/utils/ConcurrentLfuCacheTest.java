@@ -0,0 +1,192 @@
+/*
+ * ConcurrentLfuCacheTest.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongPredicate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentLfuCacheTest {
+	private static final int CAPACITY = 100;
+	// the table size for CAPACITY (4 x the highest power of two in the capacity)...
+	private static final int TABLE_MASK = (Integer.highestOneBit(CAPACITY) << 2) - 1;
+
+	@Test
+	public void getReturnsWhatWasPut() {
+		ConcurrentLfuCache<String> cache = new ConcurrentLfuCache<String>(CAPACITY);
+		assertNull(cache.get(1L));
+		cache.put(1L, "one");
+		cache.put(-1L, "minus one");
+		assertEquals("one", cache.get(1L));
+		assertEquals("minus one", cache.get(-1L));
+		assertEquals(2, cache.getSize());
+		assertEquals(2L, cache.getHits());
+		assertEquals(1L, cache.getMisses());
+	}
+
+	@Test
+	public void putDoesNotReplaceExistingEntry() {
+		ConcurrentLfuCache<String> cache = new ConcurrentLfuCache<String>(CAPACITY);
+		cache.put(1L, "first");
+		cache.put(1L, "second");
+		assertEquals("first", cache.get(1L));
+		assertEquals(1, cache.getSize());
+	}
+
+	@Test
+	public void collidingKeysAreAllFound() {
+		ConcurrentLfuCache<Long> cache = new ConcurrentLfuCache<Long>(CAPACITY);
+		List<Long> keys = collidingKeys(5);
+		for (long key: keys) {
+			cache.put(key, key);
+		}
+		for (long key: keys) {
+			assertEquals(Long.valueOf(key), cache.get(key));
+		}
+	}
+
+	@Test
+	public void removingCollidingKeyKeepsTheOthersReachable() {
+		ConcurrentLfuCache<Long> cache = new ConcurrentLfuCache<Long>(CAPACITY);
+		final List<Long> keys = collidingKeys(5);
+		for (long key: keys) {
+			cache.put(key, key);
+		}
+		// remove from the middle of the probe sequence...
+		int removed = cache.removeIf(new LongPredicate() {
+			@Override
+			public boolean test(long key) {
+				return key == keys.get(1) || key == keys.get(3);
+			}
+		});
+		assertEquals(2, removed);
+		assertEquals(3, cache.getSize());
+		for (int index = 0; index < keys.size(); index++) {
+			Long expected = index == 1 || index == 3 ? null : keys.get(index);
+			assertEquals(expected, cache.get(keys.get(index)));
+		}
+		// removed keys can be added again...
+		cache.put(keys.get(1), keys.get(1));
+		assertEquals(keys.get(1), cache.get(keys.get(1)));
+	}
+
+	@Test
+	public void removeIfRemovesOnlyMatchingKeys() {
+		ConcurrentLfuCache<Long> cache = new ConcurrentLfuCache<Long>(CAPACITY);
+		for (long key = 0; key < 50; key++) {
+			cache.put(key, key);
+		}
+		int removed = cache.removeIf(new LongPredicate() {
+			@Override
+			public boolean test(long key) {
+				return (key & 1L) == 0L;
+			}
+		});
+		assertEquals(25, removed);
+		assertEquals(25, cache.getSize());
+		for (long key = 0; key < 50; key++) {
+			assertEquals((key & 1L) == 0L ? null : Long.valueOf(key), cache.get(key));
+		}
+	}
+
+	@Test
+	public void sizeIsBoundedByCapacity() {
+		ConcurrentLfuCache<Long> cache = new ConcurrentLfuCache<Long>(CAPACITY);
+		for (long key = 0; key < CAPACITY * 10; key++) {
+			cache.put(key, key);
+			assertTrue(cache.getSize() <= CAPACITY);
+		}
+		assertEquals(CAPACITY, cache.getSize());
+		assertEquals(CAPACITY * 9, cache.getEvictions());
+		int found = 0;
+		for (long key = 0; key < CAPACITY * 10; key++) {
+			found += cache.get(key) != null ? 1 : 0;
+		}
+		assertEquals(CAPACITY, found);
+	}
+
+	@Test
+	public void frequentlyUsedEntriesSurviveScan() {
+		ConcurrentLfuCache<Long> cache = new ConcurrentLfuCache<Long>(CAPACITY);
+		int hot = CAPACITY / 2;
+		for (long key = 0; key < hot; key++) {
+			cache.put(key, key);
+		}
+		for (int round = 0; round < 5; round++) {
+			for (long key = 0; key < hot; key++) {
+				cache.get(key);
+			}
+		}
+		// a scan of one-off keys (each seen once - missed, then put)...
+		for (long key = 1000; key < 1000 + (CAPACITY * 5); key++) {
+			cache.get(key);
+			cache.put(key, key);
+		}
+		for (long key = 0; key < hot; key++) {
+			assertEquals(Long.valueOf(key), cache.get(key));
+		}
+	}
+
+	@Test
+	public void hottestAreMostFrequentlyUsedFirst() {
+		ConcurrentLfuCache<Long> cache = new ConcurrentLfuCache<Long>(CAPACITY);
+		for (long key = 0; key < 10; key++) {
+			cache.put(key, key);
+			for (long use = 0; use < key; use++) {
+				cache.get(key);
+			}
+		}
+		Map<Long,Long> hottest = cache.getHottest(3);
+		assertEquals(3, hottest.size());
+		List<Long> keys = new ArrayList<Long>(hottest.keySet());
+		assertEquals(Long.valueOf(9L), keys.get(0));
+		assertEquals(Long.valueOf(8L), keys.get(1));
+		assertEquals(Long.valueOf(7L), keys.get(2));
+	}
+
+	/**
+	 * @return keys that all start probing at the same table slot (so are stored in one probe sequence)
+	 */
+	private static List<Long> collidingKeys(int count) {
+		List<Long> result = new ArrayList<Long>();
+		int slot = -1;
+		for (long key = 0; result.size() < count; key++) {
+			int keySlot = hash(key) & TABLE_MASK;
+			if (slot == -1) {
+				slot = keySlot;
+			}
+			if (keySlot == slot) {
+				result.add(key);
+			}
+		}
+		return result;
+	}
+
+	// (as ConcurrentLfuCache)...
+	private static int hash(long key) {
+		long result = key * 0x9e3779b97f4a7c15L;
+		return (int)(result ^ (result >>> 32));
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * FrequencySketchTest.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FrequencySketchTest {
+	private static final int SAMPLE_SIZE = 64;
+
+	@Test
+	public void unseenHashHasNoFrequency() {
+		FrequencySketch sketch = new FrequencySketch(SAMPLE_SIZE);
+		assertEquals(0, sketch.frequency(12345));
+	}
+
+	@Test
+	public void frequencyCountsIncrements() {
+		FrequencySketch sketch = new FrequencySketch(SAMPLE_SIZE);
+		for (int increment = 1; increment <= 5; increment++) {
+			sketch.increment(12345);
+			assertEquals(increment, sketch.frequency(12345));
+		}
+	}
+
+	@Test
+	public void frequencySaturatesAtFifteen() {
+		FrequencySketch sketch = new FrequencySketch(SAMPLE_SIZE);
+		for (int increment = 0; increment < 40; increment++) {
+			sketch.increment(12345);
+		}
+		assertEquals(15, sketch.frequency(12345));
+	}
+
+	@Test
+	public void frequencyIsNeverUnderestimatedWithoutReset() {
+		FrequencySketch sketch = new FrequencySketch(SAMPLE_SIZE);
+		// fewer increments than the reset size - so counts are never halved...
+		for (int hash = 0; hash < SAMPLE_SIZE; hash++) {
+			for (int increment = 0; increment <= hash % 4; increment++) {
+				sketch.increment(hash * 0x9e3779b9);
+			}
+		}
+		for (int hash = 0; hash < SAMPLE_SIZE; hash++) {
+			assertTrue(sketch.frequency(hash * 0x9e3779b9) >= (hash % 4) + 1);
+		}
+	}
+
+	@Test
+	public void countsAreHalvedOnReset() {
+		FrequencySketch sketch = new FrequencySketch(SAMPLE_SIZE);
+		for (int increment = 0; increment < 8; increment++) {
+			sketch.increment(12345);
+		}
+		// other keys seen until the reset size (ten times the sample size) is reached...
+		for (int hash = 0; hash < SAMPLE_SIZE * 10; hash++) {
+			sketch.increment((hash + 1) * 0x61c88647);
+		}
+		assertTrue(sketch.frequency(12345) <= 4);
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * LatencyHistogramTest.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.utils;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+	private static final double NANOS_PER_MICRO = 1000d;
+
+	@Test
+	public void bucketsCoverEveryValue() {
+		long[] values = {0L, 1L, 3L, 4L, 5L, 7L, 8L, 1000L, 1023L, 1024L, 123456789L, Long.MAX_VALUE};
+		for (long value: values) {
+			int bucket = LatencyHistogram.bucket(value);
+			long upperBound = LatencyHistogram.bucketUpperBound(bucket);
+			assertTrue(value + " <= " + upperBound, value <= upperBound);
+			if (bucket > 0) {
+				assertTrue(value + " > " + LatencyHistogram.bucketUpperBound(bucket - 1), value > LatencyHistogram.bucketUpperBound(bucket - 1));
+			}
+			// within 25% of the value...
+			assertTrue(upperBound - value <= value / 4);
+		}
+	}
+
+	@Test
+	public void percentilesWithinBucketAccuracy() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long micros = 1; micros <= 1000; micros++) {
+			histogram.record(micros * 1000L);
+		}
+		Map<String,Object> snapshot = histogram.getSnapshot();
+		assertEquals(1000L, snapshot.get("count"));
+		assertEquals(500.5d, (Double)snapshot.get("meanMicros"), 0.001d);
+		assertWithin(500d, (Double)snapshot.get("p50Micros"));
+		assertWithin(900d, (Double)snapshot.get("p90Micros"));
+		assertWithin(990d, (Double)snapshot.get("p99Micros"));
+		// (never more than the max actually recorded)...
+		assertEquals(1000d, (Double)snapshot.get("p999Micros"), 0d);
+		assertEquals(1000d, (Double)snapshot.get("maxMicros"), 0d);
+	}
+
+	@Test
+	public void recordTimes() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(2000L, 3L);
+		histogram.record(5000L, 0L);
+		histogram.record(-1L);
+		assertEquals(4L, histogram.getCount());
+		Map<String,Object> snapshot = histogram.getSnapshot();
+		assertEquals(4L, snapshot.get("count"));
+		assertEquals(6000d / 4 / NANOS_PER_MICRO, (Double)snapshot.get("meanMicros"), 0.001d);
+		assertEquals(2d, (Double)snapshot.get("maxMicros"), 0d);
+	}
+
+	@Test
+	public void empty() {
+		Map<String,Object> snapshot = new LatencyHistogram().getSnapshot();
+		assertEquals(0L, snapshot.get("count"));
+		assertEquals(0d, (Double)snapshot.get("meanMicros"), 0d);
+		assertEquals(0d, (Double)snapshot.get("p99Micros"), 0d);
+		assertEquals(0d, (Double)snapshot.get("maxMicros"), 0d);
+	}
+
+	private static void assertWithin(double expected, double actual) {
+		assertTrue(actual + " within 25% of " + expected, actual >= expected && actual <= expected * 1.25d);
+	}
+}
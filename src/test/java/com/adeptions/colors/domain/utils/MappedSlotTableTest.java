@@ -0,0 +1,104 @@
+/*
+ * MappedSlotTableTest.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MappedSlotTableTest {
+	private static final int SLOTS = 64;
+	private static final int FORMAT = 1;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void sameKeyDifferentTagsAreKept() throws Exception {
+		MappedSlotTable table = new MappedSlotTable(file(), SLOTS, FORMAT);
+		table.put(42L, 1L, values(1f));
+		table.put(42L, 2L, values(2f));
+		assertValues(table, 42L, 1L, 1f);
+		assertValues(table, 42L, 2L, 2f);
+	}
+
+	@Test
+	public void sameKeyDifferentTagsAreKeptWhenHomesCollide() throws Exception {
+		// with two slots some of the tags share the first entry's home slot...
+		for (long tag = 2L; tag <= 20L; tag++) {
+			MappedSlotTable table = new MappedSlotTable(folder.newFile("collide" + tag + ".table").toPath(), 2, FORMAT);
+			table.put(42L, 1L, values(1f));
+			table.put(42L, tag, values(2f));
+			assertValues(table, 42L, 1L, 1f);
+			assertValues(table, 42L, tag, 2f);
+		}
+	}
+
+	@Test
+	public void sameKeyAndTagIsReplaced() throws Exception {
+		MappedSlotTable table = new MappedSlotTable(file(), SLOTS, FORMAT);
+		table.put(42L, 1L, values(1f));
+		table.put(42L, 1L, values(3f));
+		assertValues(table, 42L, 1L, 3f);
+		assertFalse(table.get(42L, 2L, new float[MappedSlotTable.VALUES]));
+	}
+
+	@Test
+	public void entriesSurviveReopen() throws Exception {
+		Path file = file();
+		MappedSlotTable table = new MappedSlotTable(file, SLOTS, FORMAT);
+		assertTrue(table.isCleared());
+		table.put(42L, 1L, values(1f));
+		table.force();
+		table = new MappedSlotTable(file, SLOTS, FORMAT);
+		assertFalse(table.isCleared());
+		assertValues(table, 42L, 1L, 1f);
+	}
+
+	@Test
+	public void differentFormatIsCleared() throws Exception {
+		Path file = file();
+		MappedSlotTable table = new MappedSlotTable(file, SLOTS, FORMAT);
+		table.put(42L, 1L, values(1f));
+		table.force();
+		table = new MappedSlotTable(file, SLOTS, FORMAT + 1);
+		assertTrue(table.isCleared());
+		assertFalse(table.get(42L, 1L, new float[MappedSlotTable.VALUES]));
+	}
+
+	private Path file() throws Exception {
+		return folder.newFile("slots.table").toPath();
+	}
+
+	private static float[] values(float first) {
+		return new float[] {first, 0.25f, 0.5f, 0.75f};
+	}
+
+	private static void assertValues(MappedSlotTable table, long key, long tag, float first) {
+		float[] values = new float[MappedSlotTable.VALUES];
+		assertTrue(table.get(key, tag, values));
+		assertEquals(first, values[0], 0f);
+		assertEquals(0.75f, values[3], 0f);
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * ProfilePairIdsTest.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ProfilePairIdsTest {
+	@Test
+	public void noProfilesIsAlwaysKnown() {
+		ProfilePairIds ids = new ProfilePairIds(4);
+		assertEquals(ProfilePairIds.NO_PROFILES, ids.find(null, null));
+		assertEquals(ProfilePairIds.NO_PROFILES, ids.intern(null, null));
+		assertArrayEquals(new String[2], ids.getProfiles(ProfilePairIds.NO_PROFILES));
+	}
+
+	@Test
+	public void pairsRoundTrip() {
+		ProfilePairIds ids = new ProfilePairIds(4);
+		String[][] pairs = {{"a.icc", "b.icc"}, {"b.icc", "a.icc"}, {"a.icc", null}, {null, "a.icc"}, {"a.icc", "a.icc"}};
+		int[] interned = new int[pairs.length];
+		for (int index = 0; index < pairs.length; index++) {
+			assertEquals(ProfilePairIds.UNKNOWN, ids.find(pairs[index][0], pairs[index][1]));
+			interned[index] = ids.intern(pairs[index][0], pairs[index][1]);
+			assertTrue(interned[index] != ProfilePairIds.UNKNOWN);
+			assertTrue(interned[index] != ProfilePairIds.NO_PROFILES);
+		}
+		for (int index = 0; index < pairs.length; index++) {
+			// distinct (and stable) ids for each pair - in either direction...
+			for (int other = 0; other < index; other++) {
+				assertTrue(interned[index] != interned[other]);
+			}
+			assertEquals(interned[index], ids.find(pairs[index][0], pairs[index][1]));
+			assertEquals(interned[index], ids.intern(pairs[index][0], pairs[index][1]));
+			assertArrayEquals(pairs[index], ids.getProfiles(interned[index]));
+		}
+	}
+
+	@Test
+	public void idsAreLimitedByBits() {
+		ProfilePairIds ids = new ProfilePairIds(2);
+		// ids 1 to 3 (0 is no profiles)...
+		for (int index = 1; index <= 3; index++) {
+			assertEquals(index, ids.intern("source" + index + ".icc", null));
+		}
+		assertEquals(ProfilePairIds.UNKNOWN, ids.intern("source4.icc", null));
+		assertEquals(ProfilePairIds.UNKNOWN, ids.find("source4.icc", null));
+		assertNull(ids.getProfiles(4));
+		// already interned pairs are still found...
+		assertEquals(2, ids.intern("source2.icc", null));
+	}
+}
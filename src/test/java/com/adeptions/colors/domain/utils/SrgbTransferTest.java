@@ -0,0 +1,50 @@
+/*
+ * SrgbTransferTest.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SrgbTransferTest {
+	private static final int COMPAND_SAMPLES = 1 << 18;
+
+	@Test
+	public void compandWithinTolerance() {
+		double maxError = 0d;
+		for (int sample = 0; sample <= COMPAND_SAMPLES; sample++) {
+			double linear = sample / (double)COMPAND_SAMPLES;
+			maxError = Math.max(maxError, Math.abs(SrgbTransfer.compand(linear) - SrgbTransfer.compandFormula(linear)));
+		}
+		assertTrue("compand table error " + maxError, maxError <= SrgbTransfer.COMPAND_TOLERANCE);
+	}
+
+	@Test
+	public void compandOutsideTableUsesFormula() {
+		assertEquals(SrgbTransfer.compandFormula(1.5d), SrgbTransfer.compand(1.5d), 1e-6d);
+		assertEquals(SrgbTransfer.compandFormula(-0.5d), SrgbTransfer.compand(-0.5d), 1e-6d);
+	}
+
+	@Test
+	public void linearizeMatchesFormula() {
+		for (int value = 0; value < 256; value++) {
+			assertEquals(SrgbTransfer.linearizeFormula(value / 255f), SrgbTransfer.linearize(value), 0d);
+		}
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * TransformLutTest.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.domain.utils;
+
+import com.adeptions.colors.enums.ColorType;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.awt.color.ICC_ColorSpace;
+import java.awt.color.ICC_Profile;
+import java.io.InputStream;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TransformLutTest {
+	private static final float EXACT = 1e-6f;
+	// the configured default tolerance (mean error) for transform LUTs...
+	private static final float TOLERANCE = 0.002f;
+	private static final int SAMPLES = 2000;
+
+	private static ICC_ColorSpace cmykColorSpace;
+
+	@BeforeClass
+	public static void loadProfile() throws Exception {
+		try (InputStream inputStream = new ClassPathResource("profiles/ISOcoated_v2_300_eci.icc").getInputStream()) {
+			cmykColorSpace = new ICC_ColorSpace(ICC_Profile.getInstance(inputStream));
+		}
+	}
+
+	@Test
+	public void rgbToCmykMatchesIccAtGridCorners() throws Exception {
+		TransformLut.Sampler sampler = sampler(new TransformKey(ColorType.RGB, null, ColorType.CMYK, "cmyk"));
+		assertMatchesAtCorners(TransformLut.build(9, 3, 4, sampler), sampler);
+	}
+
+	@Test
+	public void cmykToRgbMatchesIccAtGridCorners() throws Exception {
+		TransformLut.Sampler sampler = sampler(new TransformKey(ColorType.CMYK, "cmyk", ColorType.RGB, null));
+		assertMatchesAtCorners(TransformLut.build(5, 4, 3, sampler), sampler);
+	}
+
+	@Test
+	public void matchesIccAtGridNodes() throws Exception {
+		TransformLut.Sampler sampler = sampler(new TransformKey(ColorType.RGB, null, ColorType.CMYK, "cmyk"));
+		int gridPoints = 9;
+		TransformLut lut = TransformLut.build(gridPoints, 3, 4, sampler);
+		float step = 1f / (gridPoints - 1);
+		for (int red = 0; red < gridPoints; red += 2) {
+			for (int green = 0; green < gridPoints; green += 3) {
+				for (int blue = 0; blue < gridPoints; blue += 4) {
+					assertMatches(lut, sampler, new float[] {red * step, green * step, blue * step}, EXACT);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void linearTransformIsInterpolatedExactly() throws Exception {
+		TransformLut.Sampler linear = new TransformLut.Sampler() {
+			@Override
+			public float[] sample(float[] input) {
+				return new float[] {(input[0] + input[1] + input[2]) / 3f, input[0] * 0.5f + 0.25f, 1f - input[2]};
+			}
+		};
+		TransformLut lut = TransformLut.build(5, 3, 3, linear);
+		Random random = new Random(1L);
+		for (int sample = 0; sample < SAMPLES; sample++) {
+			assertMatches(lut, linear, new float[] {random.nextFloat(), random.nextFloat(), random.nextFloat()}, 1e-5f);
+		}
+	}
+
+	@Test
+	public void meanErrorWithinToleranceAtDefaultGridPoints() throws Exception {
+		TransformLut.Sampler sampler = sampler(new TransformKey(ColorType.RGB, null, ColorType.CMYK, "cmyk"));
+		TransformLut lut = TransformLut.build(33, 3, 4, sampler);
+		Random random = new Random(1L);
+		double sum = 0d;
+		for (int sample = 0; sample < SAMPLES; sample++) {
+			float[] input = {random.nextFloat(), random.nextFloat(), random.nextFloat()};
+			float[] exact = sampler.sample(input);
+			float[] interpolated = lut.transform(input);
+			for (int channel = 0; channel < exact.length; channel++) {
+				sum += Math.abs(exact[channel] - interpolated[channel]);
+			}
+		}
+		assertTrue(sum / (SAMPLES * 4) <= TOLERANCE);
+	}
+
+	private static void assertMatchesAtCorners(TransformLut lut, TransformLut.Sampler sampler) throws Exception {
+		int channels = lut.getInputChannels();
+		for (int corner = 0; corner < (1 << channels); corner++) {
+			float[] input = new float[channels];
+			for (int channel = 0; channel < channels; channel++) {
+				input[channel] = (corner >>> channel) & 1;
+			}
+			assertMatches(lut, sampler, input, EXACT);
+		}
+	}
+
+	private static void assertMatches(TransformLut lut, TransformLut.Sampler sampler, float[] input, float delta) throws Exception {
+		float[] exact = sampler.sample(input.clone());
+		float[] interpolated = lut.transform(input);
+		assertEquals(exact.length, interpolated.length);
+		for (int channel = 0; channel < exact.length; channel++) {
+			assertEquals(exact[channel], interpolated[channel], delta);
+		}
+	}
+
+	private static TransformLut.Sampler sampler(final TransformKey key) {
+		return new TransformLut.Sampler() {
+			@Override
+			public float[] sample(float[] input) {
+				return key.apply(key.getSourceProfile() != null ? cmykColorSpace : null,
+						key.getTargetProfile() != null ? cmykColorSpace : null, input);
+			}
+		};
+	}
+}
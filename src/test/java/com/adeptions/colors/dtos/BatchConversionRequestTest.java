@@ -0,0 +1,115 @@
+/*
+ * BatchConversionRequestTest.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.dtos;
+
+import com.adeptions.colors.enums.ColorType;
+import com.adeptions.colors.exceptions.BadRequestException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BatchConversionRequestTest {
+	private static final int MAX_COLORS = 3;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	public void paramsInColorOrder() throws Exception {
+		List<ColorParams> paramsList = read("{\"colors\":[{\"r\":10,\"g\":120,\"b\":200},{\"c\":\"10%\",\"m\":0.5,\"y\":0.2,\"k\":0},{\"cie-x\":0.1,\"cie-y\":0.2,\"cie-z\":0.3}]}")
+				.toColorParams(ColorType.CMYK, MAX_COLORS);
+		assertEquals(3, paramsList.size());
+		assertEquals(ColorType.RGB, paramsList.get(0).getSourceType());
+		assertEquals(Integer.valueOf(120), paramsList.get(0).getGreenValue());
+		assertEquals(ColorType.CMYK, paramsList.get(1).getSourceType());
+		assertEquals(0.1f, paramsList.get(1).getCyanValue(), 0f);
+		assertEquals(ColorType.XYZ, paramsList.get(2).getSourceType());
+		for (ColorParams params: paramsList) {
+			assertEquals(ColorType.CMYK, params.getTargetType());
+			assertNull(params.getTargetProfile());
+			assertNull(params.getSourceProfile());
+			assertFalse(params.isCrudeConversion());
+		}
+	}
+
+	@Test
+	public void sharedProfileOptionsApplyToEveryColor() throws Exception {
+		List<ColorParams> paramsList = read("{\"colors\":[{\"r\":10,\"g\":120,\"b\":200},{\"r\":0,\"g\":0,\"b\":0}],\"profile\":\"Target\",\"sourceProfile\":\"Source.icc\"}")
+				.toColorParams(ColorType.CMYK, MAX_COLORS);
+		for (ColorParams params: paramsList) {
+			assertEquals("Target.icc", params.getTargetProfile());
+			assertEquals("Source.icc", params.getSourceProfile());
+		}
+		paramsList = read("{\"colors\":[{\"r\":10,\"g\":120,\"b\":200},{\"r\":0,\"g\":0,\"b\":0}],\"crude\":true}")
+				.toColorParams(ColorType.CMYK, MAX_COLORS);
+		for (ColorParams params: paramsList) {
+			assertTrue(params.isCrudeConversion());
+		}
+	}
+
+	@Test
+	public void sharedProfileOptionsOverrideColors() throws Exception {
+		ColorParams params = read("{\"colors\":[{\"r\":10,\"g\":120,\"b\":200,\"profile\":\"Other\"}],\"profile\":\"Target\"}")
+				.toColorParams(ColorType.CMYK, MAX_COLORS).get(0);
+		assertEquals("Target.icc", params.getTargetProfile());
+	}
+
+	@Test
+	public void emptyBatch() throws Exception {
+		assertTrue(read("{\"colors\":[]}").toColorParams(ColorType.RGB, MAX_COLORS).isEmpty());
+	}
+
+	@Test
+	public void missingColors() throws Exception {
+		assertBadRequest("{}", null);
+	}
+
+	@Test
+	public void tooManyColors() throws Exception {
+		assertBadRequest("{\"colors\":[{\"r\":1,\"g\":1,\"b\":1},{\"r\":2,\"g\":2,\"b\":2},{\"r\":3,\"g\":3,\"b\":3},{\"r\":4,\"g\":4,\"b\":4}]}", null);
+	}
+
+	@Test
+	public void badColorIdentifiedByIndex() throws Exception {
+		assertBadRequest("{\"colors\":[{\"r\":1,\"g\":1,\"b\":1},{\"r\":2,\"g\":2}]}", "Color [1]: ");
+		assertBadRequest("{\"colors\":[{\"r\":1,\"g\":1,\"b\":1},null]}", "Color [1] ");
+		// shared options are validated with each color...
+		assertBadRequest("{\"colors\":[{\"r\":1,\"g\":1,\"b\":1}],\"profile\":\"Target\",\"crude\":true}", "Color [0]: ");
+	}
+
+	private BatchConversionRequest read(String json) throws Exception {
+		return objectMapper.readValue(json, BatchConversionRequest.class);
+	}
+
+	private void assertBadRequest(String json, String messagePrefix) throws Exception {
+		try {
+			read(json).toColorParams(ColorType.CMYK, MAX_COLORS);
+			fail("Expected BadRequestException");
+		} catch (BadRequestException e) {
+			if (messagePrefix != null) {
+				assertTrue(e.getMessage(), e.getMessage().startsWith(messagePrefix));
+			}
+		}
+	}
+}
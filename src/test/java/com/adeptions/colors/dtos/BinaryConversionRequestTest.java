@@ -0,0 +1,146 @@
+/*
+ * BinaryConversionRequestTest.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.dtos;
+
+import com.adeptions.colors.enums.ColorType;
+import com.adeptions.colors.exceptions.BadRequestException;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BinaryConversionRequestTest {
+	private static final int MAX_COLORS = 100;
+
+	@Test
+	public void roundTripsEachType() throws Exception {
+		ColorType[] types = {ColorType.CMYK, ColorType.RGB, ColorType.XYZ};
+		for (ColorType type: types) {
+			ReadableByteChannel channel = channel(header(1, BinaryConversionRequest.typeCode(type), 0, "source", "target.icc", 7), new byte[] {42});
+			BinaryConversionRequest request = BinaryConversionRequest.read(channel, MAX_COLORS);
+			assertEquals(type, request.getSourceType());
+			assertFalse(request.isCrude());
+			assertEquals("source.icc", request.getSourceProfile());
+			assertEquals("target.icc", request.getTargetProfile());
+			assertEquals(7, request.getCount());
+			assertEquals(BinaryConversionRequest.RESPONSE_HEADER_SIZE + (7L * BinaryConversionRequest.colorSize(type)),
+					request.getResponseLength(type));
+			// left positioned at the first color...
+			ByteBuffer next = ByteBuffer.allocate(1);
+			assertTrue(BinaryConversionRequest.readFully(channel, next));
+			assertEquals(42, next.get(0));
+		}
+	}
+
+	@Test
+	public void crudeWithoutProfiles() throws Exception {
+		BinaryConversionRequest request = BinaryConversionRequest.read(channel(header(1, 1, 1, null, null, MAX_COLORS)), MAX_COLORS);
+		assertTrue(request.isCrude());
+		assertNull(request.getSourceProfile());
+		assertNull(request.getTargetProfile());
+		assertEquals(MAX_COLORS, request.getCount());
+	}
+
+	@Test
+	public void badVersion() throws Exception {
+		assertBadRequest(header(2, 1, 0, null, null, 1));
+		assertBadRequest(header(0, 1, 0, null, null, 1));
+	}
+
+	@Test
+	public void badType() throws Exception {
+		assertBadRequest(header(1, 3, 0, null, null, 1));
+		assertBadRequest(header(1, 255, 0, null, null, 1));
+	}
+
+	@Test
+	public void shortHeader() throws Exception {
+		byte[] header = header(1, 1, 0, null, null, 1);
+		byte[] truncated = new byte[BinaryConversionRequest.HEADER_SIZE - 1];
+		System.arraycopy(header, 0, truncated, 0, truncated.length);
+		assertBadRequest(truncated);
+		assertBadRequest(new byte[0]);
+	}
+
+	@Test
+	public void namesLongerThanBody() throws Exception {
+		byte[] header = header(1, 1, 0, "source", "target", 1);
+		byte[] truncated = new byte[header.length - 1];
+		System.arraycopy(header, 0, truncated, 0, truncated.length);
+		assertBadRequest(truncated);
+	}
+
+	@Test
+	public void tooManyColors() throws Exception {
+		assertBadRequest(header(1, 1, 0, null, null, MAX_COLORS + 1));
+		// (count is unsigned)...
+		assertBadRequest(header(1, 1, 0, null, null, -1));
+	}
+
+	@Test
+	public void crudeWithProfiles() throws Exception {
+		assertBadRequest(header(1, 1, 1, "source", null, 1));
+		assertBadRequest(header(1, 1, 1, null, "target", 1));
+	}
+
+	private static void assertBadRequest(byte[] body) throws Exception {
+		try {
+			BinaryConversionRequest.read(channel(body), MAX_COLORS);
+			fail("Expected BadRequestException");
+		} catch (BadRequestException e) {
+			// expected
+		}
+	}
+
+	private static byte[] header(int version, int typeCode, int flags, String sourceProfile, String targetProfile, int count) {
+		byte[] source = sourceProfile != null ? sourceProfile.getBytes(StandardCharsets.UTF_8) : new byte[0];
+		byte[] target = targetProfile != null ? targetProfile.getBytes(StandardCharsets.UTF_8) : new byte[0];
+		ByteBuffer result = ByteBuffer.allocate(BinaryConversionRequest.HEADER_SIZE + source.length + target.length);
+		result.put((byte)version);
+		result.put((byte)typeCode);
+		result.put((byte)flags);
+		result.put((byte)source.length);
+		result.put((byte)target.length);
+		result.put(new byte[3]);
+		result.putInt(count);
+		result.put(source);
+		result.put(target);
+		return result.array();
+	}
+
+	private static ReadableByteChannel channel(byte[]... parts) {
+		int length = 0;
+		for (byte[] part: parts) {
+			length += part.length;
+		}
+		ByteBuffer result = ByteBuffer.allocate(length);
+		for (byte[] part: parts) {
+			result.put(part);
+		}
+		return Channels.newChannel(new ByteArrayInputStream(result.array()));
+	}
+}
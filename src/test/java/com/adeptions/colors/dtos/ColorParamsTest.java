@@ -0,0 +1,127 @@
+/*
+ * ColorParamsTest.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.dtos;
+
+import com.adeptions.colors.enums.ColorType;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static com.adeptions.colors.domain.services.ConverterFixture.params;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ColorParamsTest {
+	private static final int SAMPLES = 500;
+
+	@Test
+	public void cmykQuantizedWithinHalfStep() throws Exception {
+		Random random = new Random(1L);
+		for (int bits = 1; bits <= ColorParams.PACKED_CMYK_BITS; bits++) {
+			int steps = (1 << bits) - 1;
+			for (int sample = 0; sample < SAMPLES; sample++) {
+				float[] cmyk = {random.nextFloat(), random.nextFloat(), random.nextFloat(), random.nextFloat()};
+				long packed = cmykParams(cmyk).getPackedColor(bits, ColorParams.PACKED_XYZ_BITS);
+				assertWithinHalfStep(packed, ColorParams.PACKED_CMYK_BITS, cmyk, steps);
+			}
+		}
+	}
+
+	@Test
+	public void xyzQuantizedWithinHalfStep() throws Exception {
+		Random random = new Random(1L);
+		for (int bits = 1; bits <= ColorParams.PACKED_XYZ_BITS; bits++) {
+			int steps = (1 << bits) - 1;
+			for (int sample = 0; sample < SAMPLES; sample++) {
+				float[] xyz = {random.nextFloat(), random.nextFloat(), random.nextFloat()};
+				long packed = xyzParams(xyz).getPackedColor(ColorParams.PACKED_CMYK_BITS, bits);
+				assertWithinHalfStep(packed, ColorParams.PACKED_XYZ_BITS, xyz, steps);
+			}
+		}
+	}
+
+	@Test
+	public void rangeEndsPackToFirstAndLastSteps() throws Exception {
+		for (int bits = 1; bits <= ColorParams.PACKED_CMYK_BITS; bits++) {
+			long steps = (1L << bits) - 1L;
+			assertEquals(0L, cmykParams(new float[] {0f, 0f, 0f, 0f}).getPackedColor(bits, ColorParams.PACKED_XYZ_BITS));
+			long packed = cmykParams(new float[] {1f, 1f, 1f, 1f}).getPackedColor(bits, ColorParams.PACKED_XYZ_BITS);
+			for (int component = 0; component < 4; component++) {
+				assertEquals(steps, component(packed, ColorParams.PACKED_CMYK_BITS, 4, component));
+			}
+		}
+		for (int bits = 1; bits <= ColorParams.PACKED_XYZ_BITS; bits++) {
+			long steps = (1L << bits) - 1L;
+			assertEquals(0L, xyzParams(new float[] {0f, 0f, 0f}).getPackedColor(ColorParams.PACKED_CMYK_BITS, bits));
+			long packed = xyzParams(new float[] {1f, 1f, 1f}).getPackedColor(ColorParams.PACKED_CMYK_BITS, bits);
+			for (int component = 0; component < 3; component++) {
+				assertEquals(steps, component(packed, ColorParams.PACKED_XYZ_BITS, 3, component));
+			}
+		}
+	}
+
+	@Test
+	public void packedColorsFitInPackedBits() throws Exception {
+		long mask = (1L << ColorParams.PACKED_COLOR_BITS) - 1L;
+		assertEquals(mask, cmykParams(new float[] {1f, 1f, 1f, 1f}).getPackedColor());
+		assertEquals(mask, xyzParams(new float[] {1f, 1f, 1f}).getPackedColor());
+		assertEquals(0xffffffL, rgbParams(255, 255, 255).getPackedColor());
+	}
+
+	@Test
+	public void nearbyColorsShareKeyOnlyWithinOneStep() throws Exception {
+		int bits = 8;
+		int steps = (1 << bits) - 1;
+		float[] base = {0.5f, 0.25f, 0.75f, 0.1f};
+		long packed = cmykParams(base).getPackedColor(bits, ColorParams.PACKED_XYZ_BITS);
+		// well within half a step - same key...
+		float[] near = {base[0] + (0.1f / steps), base[1] - (0.1f / steps), base[2], base[3]};
+		assertEquals(packed, cmykParams(near).getPackedColor(bits, ColorParams.PACKED_XYZ_BITS));
+		// more than one step away - different key...
+		float[] far = {base[0] + (1.01f / steps), base[1], base[2], base[3]};
+		assertTrue(packed != cmykParams(far).getPackedColor(bits, ColorParams.PACKED_XYZ_BITS));
+	}
+
+	private static void assertWithinHalfStep(long packed, int componentBits, float[] values, int steps) {
+		for (int component = 0; component < values.length; component++) {
+			long quantized = component(packed, componentBits, values.length, component);
+			assertTrue(quantized >= 0L && quantized <= steps);
+			// (allowing for float rounding of the parsed value)...
+			assertEquals(values[component], quantized / (double)steps, (0.5d / steps) + 1e-6d);
+		}
+	}
+
+	private static long component(long packed, int componentBits, int components, int component) {
+		return (packed >>> (componentBits * (components - 1 - component))) & ((1L << componentBits) - 1L);
+	}
+
+	private static ColorParams cmykParams(float[] cmyk) throws Exception {
+		return params(ColorType.RGB, ColorParams.PARAM_NAME_CYAN, cmyk[0], ColorParams.PARAM_NAME_MAGENTA, cmyk[1],
+				ColorParams.PARAM_NAME_YELLOW, cmyk[2], ColorParams.PARAM_NAME_BLACK, cmyk[3]);
+	}
+
+	private static ColorParams xyzParams(float[] xyz) throws Exception {
+		return params(ColorType.RGB, ColorParams.PARAM_NAME_X, xyz[0], ColorParams.PARAM_NAME_Y, xyz[1],
+				ColorParams.PARAM_NAME_Z, xyz[2]);
+	}
+
+	private static ColorParams rgbParams(int red, int green, int blue) throws Exception {
+		return params(ColorType.CMYK, ColorParams.PARAM_NAME_RED, red, ColorParams.PARAM_NAME_GREEN, green,
+				ColorParams.PARAM_NAME_BLUE, blue);
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * ColorStreamReaderTest.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.dtos;
+
+import com.adeptions.colors.enums.StreamFormat;
+import com.adeptions.colors.exceptions.BadRequestException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class ColorStreamReaderTest {
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+	@Test
+	public void ndjsonRows() throws Exception {
+		ColorStreamReader reader = reader(StreamFormat.NDJSON, "{\"r\": 10, \"g\": 120, \"b\": 200}\n\n  \n{\"c\": 0.5, \"m\": null}\n");
+		Map<String,String[]> row = reader.next();
+		assertArrayEquals(new String[] {"10"}, row.get("r"));
+		assertArrayEquals(new String[] {"120"}, row.get("g"));
+		assertArrayEquals(new String[] {"200"}, row.get("b"));
+		assertEquals(1, reader.getRowNumber());
+		// (blank lines are skipped and null values omitted)...
+		row = reader.next();
+		assertEquals(Collections.singleton("c"), row.keySet());
+		assertEquals(2, reader.getRowNumber());
+		assertNull(reader.next());
+	}
+
+	@Test
+	public void malformedNdjsonRowDoesNotStopStream() throws Exception {
+		ColorStreamReader reader = reader(StreamFormat.NDJSON, "{\"r\": 1}\nnot json\n[1, 2]\n{\"r\": 4}\n");
+		assertArrayEquals(new String[] {"1"}, reader.next().get("r"));
+		assertBadRequest(reader, "Row 2:");
+		assertBadRequest(reader, "Row 3:");
+		assertArrayEquals(new String[] {"4"}, reader.next().get("r"));
+		assertEquals(4, reader.getRowNumber());
+		assertNull(reader.next());
+	}
+
+	@Test
+	public void csvRows() throws Exception {
+		ColorStreamReader reader = reader(StreamFormat.CSV, "r, g ,\"b\"\n10,120,200\n\n\"11\",,201\n");
+		Map<String,String[]> row = reader.next();
+		assertArrayEquals(new String[] {"10"}, row.get("r"));
+		assertArrayEquals(new String[] {"120"}, row.get("g"));
+		assertArrayEquals(new String[] {"200"}, row.get("b"));
+		assertEquals(1, reader.getRowNumber());
+		// (empty values are omitted)...
+		row = reader.next();
+		assertArrayEquals(new String[] {"11"}, row.get("r"));
+		assertFalse(row.containsKey("g"));
+		assertArrayEquals(new String[] {"201"}, row.get("b"));
+		assertEquals(2, reader.getRowNumber());
+		assertNull(reader.next());
+	}
+
+	@Test
+	public void csvRowWithTooManyValues() throws Exception {
+		ColorStreamReader reader = reader(StreamFormat.CSV, "r,g,b\n1,2,3,4\n5,6,7\n");
+		assertBadRequest(reader, "Row 1:");
+		assertArrayEquals(new String[] {"5"}, reader.next().get("r"));
+	}
+
+	@Test
+	public void headerOnlyCsv() throws Exception {
+		assertNull(reader(StreamFormat.CSV, "r,g,b\n").next());
+		assertNull(reader(StreamFormat.CSV, "").next());
+	}
+
+	@Test
+	public void sharedParamsApplyUnlessRowHasOwn() throws Exception {
+		Map<String,String[]> shared = new HashMap<String,String[]>();
+		shared.put("profile", new String[] {"Shared"});
+		ColorStreamReader reader = new ColorStreamReader(new BufferedReader(new StringReader(
+				"{\"r\": 1}\n{\"r\": 2, \"profile\": \"Own\"}\n")), StreamFormat.NDJSON, OBJECT_MAPPER, shared);
+		assertArrayEquals(new String[] {"Shared"}, reader.next().get("profile"));
+		assertArrayEquals(new String[] {"Own"}, reader.next().get("profile"));
+	}
+
+	private static ColorStreamReader reader(StreamFormat format, String content) {
+		return new ColorStreamReader(new BufferedReader(new StringReader(content)), format, OBJECT_MAPPER,
+				Collections.<String,String[]>emptyMap());
+	}
+
+	private static void assertBadRequest(ColorStreamReader reader, String messageStart) throws Exception {
+		try {
+			reader.next();
+			fail("Expected BadRequestException");
+		} catch (BadRequestException e) {
+			assertEquals(messageStart, e.getMessage().substring(0, messageStart.length()));
+		}
+	}
+}
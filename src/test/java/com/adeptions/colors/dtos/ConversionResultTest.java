@@ -0,0 +1,51 @@
+/*
+ * ConversionResultTest.java
+ *
+ * Copyright 2017 Martin Rowlinson. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.adeptions.colors.dtos;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ConversionResultTest {
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	public void jsonBytesSameAsJackson() throws Exception {
+		assertSameAsJackson(ConversionResult.createRgbResult(new float[] {0.1f, 0.5f, 1f}));
+		assertSameAsJackson(ConversionResult.createRgbResult(10, 120, 200));
+		assertSameAsJackson(ConversionResult.createCmykResult(new float[] {0f, 0.123456789f, 1e-7f, 1f}));
+		assertSameAsJackson(ConversionResult.createCmykResult(0.25f, null, 0.75f, 1f));
+		assertSameAsJackson(ConversionResult.createXyzResult(new float[] {0.9642f, 1f, 12345678f}));
+		// non-numeric values are quoted...
+		assertSameAsJackson(ConversionResult.createXyzResult(Float.NaN, Float.POSITIVE_INFINITY, -0f));
+	}
+
+	@Test
+	public void jsonBytesEncodedOnce() {
+		ConversionResult result = ConversionResult.createCmykResult(new float[] {0.1f, 0.2f, 0.3f, 0.4f});
+		assertSame(result.toJsonBytes(), result.toJsonBytes());
+	}
+
+	private void assertSameAsJackson(ConversionResult result) throws Exception {
+		assertEquals(objectMapper.writeValueAsString(result), new String(result.toJsonBytes(), StandardCharsets.US_ASCII));
+	}
+}